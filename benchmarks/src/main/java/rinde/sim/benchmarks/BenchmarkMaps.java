@@ -0,0 +1,57 @@
+package rinde.sim.benchmarks;
+
+import java.io.IOException;
+
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.MultimapGraph;
+import rinde.sim.core.graph.Point;
+import rinde.sim.serializers.DotGraphSerializer;
+
+/**
+ * Loads the maps of the benchmarks. A map is either the path of a dot file,
+ * read with {@link DotGraphSerializer}, or <code>grid:n</code> for a
+ * synthetic n by n grid of bidirectional roads of 100 m, which makes it easy
+ * to vary the size of the map.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class BenchmarkMaps {
+
+	static final String LEUVEN = "../core/files/maps/leuven-simple.dot";
+	static final String GRID_PREFIX = "grid:";
+
+	private BenchmarkMaps() {}
+
+	static Graph<MultiAttributeEdgeData> load(String map) throws IOException {
+		if (map.startsWith(GRID_PREFIX)) {
+			return grid(Integer.parseInt(map.substring(GRID_PREFIX.length())));
+		}
+		return DotGraphSerializer.getMultiAttributeGraphSerializer().read(map);
+	}
+
+	static Graph<MultiAttributeEdgeData> grid(int n) {
+		if (n < 2) {
+			throw new IllegalArgumentException("a grid needs at least 2 by 2 nodes");
+		}
+		Graph<MultiAttributeEdgeData> graph = new MultimapGraph<MultiAttributeEdgeData>();
+		double spacing = 100;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				Point p = new Point(i * spacing, j * spacing);
+				if (i > 0) {
+					connect(graph, p, new Point((i - 1) * spacing, j * spacing), spacing);
+				}
+				if (j > 0) {
+					connect(graph, p, new Point(i * spacing, (j - 1) * spacing), spacing);
+				}
+			}
+		}
+		return graph;
+	}
+
+	private static void connect(Graph<MultiAttributeEdgeData> graph, Point a, Point b, double length) {
+		graph.addConnection(a, b, new MultiAttributeEdgeData(length));
+		graph.addConnection(b, a, new MultiAttributeEdgeData(length));
+	}
+}
@@ -0,0 +1,40 @@
+package rinde.sim.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of <code>benchmarks.jar</code>. Accepts the same options as the
+ * JMH launcher, but writes the results as JSON to
+ * <code>jmh-result.json</code> unless another format (<code>-rf</code>) or
+ * file (<code>-rff</code>) is specified, so that results of different
+ * releases can be compared by tools.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar Broadcast -p agents=5000 -rff broadcast.json
+ * </pre>
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class BenchmarkRunner {
+
+	static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	private BenchmarkRunner() {}
+
+	public static void main(String[] args) throws Exception {
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		if (!arguments.contains("-rf")) {
+			arguments.add("-rf");
+			arguments.add("json");
+		}
+		if (!arguments.contains("-rff")) {
+			arguments.add("-rff");
+			arguments.add(DEFAULT_RESULT_FILE);
+		}
+		Main.main(arguments.toArray(new String[arguments.size()]));
+	}
+}
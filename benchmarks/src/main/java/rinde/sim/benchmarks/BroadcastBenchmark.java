@@ -0,0 +1,125 @@
+package rinde.sim.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.communication.CommunicationAPI;
+import rinde.sim.core.model.communication.CommunicationModel;
+import rinde.sim.core.model.communication.CommunicationModel2;
+import rinde.sim.core.model.communication.CommunicationUser;
+import rinde.sim.core.model.communication.Message;
+
+/**
+ * Measures one communication round: a number of agents broadcast a message
+ * and all messages are delivered in {@link CommunicationModel#afterTick(long, long)}.
+ * The agents are spread uniformly over a square, the density is the radius
+ * of an agent relative to the side of the square.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+	static final double SIDE = 10000;
+
+	@Param({ "CommunicationModel", "CommunicationModel2" })
+	public String model;
+
+	@Param({ "1000", "5000" })
+	public int agents;
+
+	@Param({ "0.01", "0.1" })
+	public double density;
+
+	@Param("100")
+	public int broadcasters;
+
+	CommunicationModel communication;
+	Agent[] users;
+	long received;
+
+	@Setup
+	public void setUp() {
+		RandomGenerator rng = new MersenneTwister(123);
+		if (model.equals("CommunicationModel2")) {
+			communication = new CommunicationModel2(new MersenneTwister(123));
+		} else if (model.equals("CommunicationModel")) {
+			communication = new CommunicationModel(new MersenneTwister(123));
+		} else {
+			throw new IllegalArgumentException("unknown model: " + model);
+		}
+		users = new Agent[agents];
+		for (int i = 0; i < agents; i++) {
+			users[i] = new Agent(new Point(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE), density * SIDE);
+			communication.register(users[i]);
+		}
+	}
+
+	@Benchmark
+	public long broadcast() {
+		int n = Math.min(broadcasters, agents);
+		for (int i = 0; i < n; i++) {
+			communication.broadcast(new Ping(users[i * agents / n]));
+		}
+		communication.afterTick(0, 1000);
+		return received;
+	}
+
+	class Agent implements CommunicationUser {
+		final Point position;
+		final double radius;
+
+		Agent(Point position, double radius) {
+			this.position = position;
+			this.radius = radius;
+		}
+
+		@Override
+		public void setCommunicationAPI(CommunicationAPI api) {}
+
+		@Override
+		public Point getPosition() {
+			return position;
+		}
+
+		@Override
+		public double getRadius() {
+			return radius;
+		}
+
+		@Override
+		public double getReliability() {
+			return 1;
+		}
+
+		@Override
+		public void receive(Message message) {
+			received++;
+		}
+	}
+
+	static class Ping extends Message {
+		Ping(CommunicationUser sender) {
+			super(sender);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package rinde.sim.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rinde.sim.core.Simulator;
+import rinde.sim.core.SimulatorAPI;
+import rinde.sim.core.SimulatorUser;
+import rinde.sim.core.TickListener;
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
+import rinde.sim.core.checkpoint.Checkpointer;
+import rinde.sim.core.checkpoint.StateHook;
+
+/**
+ * Compares continuing a simulation from a checkpoint with replaying it from
+ * the start: <code>replay</code> registers the agents and executes all
+ * ticks, <code>restore</code> restores the checkpoint that was written after
+ * these ticks. Run with
+ * <code>java -jar target/benchmarks.jar Checkpoint</code>.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CheckpointBenchmark {
+
+	@Param({ "1000" })
+	public int agents;
+
+	@Param({ "1000" })
+	public int ticks;
+
+	File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = File.createTempFile("checkpoint", ".bin");
+		Simulator simulator = replay();
+		new Checkpointer(simulator, null, new WalkerHook()).write(file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Simulator replay() {
+		Simulator simulator = createSimulator();
+		for (int i = 0; i < agents; i++) {
+			simulator.register(new Walker());
+		}
+		for (int i = 0; i < ticks; i++) {
+			simulator.tick();
+		}
+		return simulator;
+	}
+
+	@Benchmark
+	public Simulator restore() throws IOException {
+		Simulator simulator = createSimulator();
+		new Checkpointer(simulator, null, new WalkerHook()).restore(file);
+		return simulator;
+	}
+
+	static Simulator createSimulator() {
+		Simulator simulator = new Simulator(new MersenneTwister(123), 1000);
+		simulator.configure();
+		return simulator;
+	}
+
+	/**
+	 * Performs a random walk using its own random stream.
+	 */
+	static class Walker implements TickListener, SimulatorUser {
+		RandomGenerator rng;
+		double x;
+		double y;
+
+		@Override
+		public void setSimulator(SimulatorAPI api) {
+			rng = api.getRandomGenerator(this);
+		}
+
+		@Override
+		public void tick(long currentTime, long timeStep) {
+			for (int i = 0; i < 10; i++) {
+				x += rng.nextDouble() - .5;
+				y += rng.nextDouble() - .5;
+			}
+		}
+
+		@Override
+		public void afterTick(long currentTime, long timeStep) {}
+	}
+
+	static class WalkerHook implements StateHook<Walker> {
+		@Override
+		public String getId() {
+			return "walker";
+		}
+
+		@Override
+		public Class<Walker> getType() {
+			return Walker.class;
+		}
+
+		@Override
+		public void save(Walker walker, CheckpointOutput out) throws IOException {
+			out.writeDouble(walker.x);
+			out.writeDouble(walker.y);
+		}
+
+		@Override
+		public Walker restore(CheckpointInput in) throws IOException {
+			Walker walker = new Walker();
+			walker.x = in.readDouble();
+			walker.y = in.readDouble();
+			return walker;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package rinde.sim.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rinde.sim.core.graph.CompactGraph;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.serializers.BinaryGraphSerializer;
+import rinde.sim.serializers.DotGraphSerializer;
+
+/**
+ * Compares loading a map with {@link DotGraphSerializer} and mapping the same
+ * map with {@link BinaryGraphSerializer}. Both files are written during the
+ * setup, the benchmark measures the time until the graph can be used. Run
+ * with <code>java -jar target/benchmarks.jar GraphLoad -p map=&lt;map&gt;</code>.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GraphLoadBenchmark {
+
+	@Param({ BenchmarkMaps.LEUVEN, "grid:100" })
+	public String map;
+
+	File dotFile;
+	File binaryFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		Graph<MultiAttributeEdgeData> graph = BenchmarkMaps.load(map);
+		dotFile = File.createTempFile("map", ".dot");
+		DotGraphSerializer.getMultiAttributeGraphSerializer().write(graph, dotFile);
+		binaryFile = File.createTempFile("map", ".bin");
+		BinaryGraphSerializer.write(graph, binaryFile);
+	}
+
+	@TearDown
+	public void tearDown() {
+		dotFile.delete();
+		binaryFile.delete();
+	}
+
+	@Benchmark
+	public Graph<MultiAttributeEdgeData> readDot() throws IOException {
+		return DotGraphSerializer.getMultiAttributeGraphSerializer().read(dotFile);
+	}
+
+	@Benchmark
+	public Graph<MultiAttributeEdgeData> mapBinary() throws IOException {
+		return BinaryGraphSerializer.map(binaryFile, CompactGraph.MULTI_ATTRIBUTE_DATA);
+	}
+}
@@ -0,0 +1,160 @@
+package rinde.sim.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.PathNotFoundException;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.MovingRoadUser;
+import rinde.sim.core.model.RoadModel;
+import rinde.sim.core.model.RouteCursor;
+
+/**
+ * Measures {@link RoadModel#followPath(MovingRoadUser, Queue, long)},
+ * {@link RoadModel#followRoute(MovingRoadUser, RouteCursor, long)} and
+ * {@link RoadModel#moveFleet(long, ExecutorService)}: every invocation moves
+ * all agents for one time step of a second along a path to a random
+ * destination. An agent that arrives gets a new destination, the path
+ * computation is included in the measurement. The concurrent fleet uses a
+ * thread per available processor.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MovementBenchmark {
+
+	@Param({ BenchmarkMaps.LEUVEN, "grid:50" })
+	public String map;
+
+	@Param({ "100", "1000" })
+	public int agents;
+
+	RoadModel model;
+	List<Point> nodes;
+	RandomGenerator rng;
+	Agent[] fleet;
+	ExecutorService executor;
+
+	@Setup
+	public void setUp() throws IOException {
+		Graph<MultiAttributeEdgeData> graph = BenchmarkMaps.load(map);
+		model = new RoadModel(graph);
+		nodes = new ArrayList<Point>(graph.getNodes());
+		rng = new MersenneTwister(123);
+		fleet = new Agent[agents];
+		for (int i = 0; i < agents; i++) {
+			fleet[i] = new Agent(model);
+			model.addObjectAt(fleet[i], nodes.get(rng.nextInt(nodes.size())));
+			model.addToFleet(fleet[i], fleet[i].cursor);
+		}
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public void followPath(Blackhole bh) {
+		for (Agent a : fleet) {
+			if (a.path.isEmpty()) {
+				plan(a);
+			}
+			if (!a.path.isEmpty()) {
+				bh.consume(model.followPath(a, a.path, 1000));
+			}
+		}
+	}
+
+	@Benchmark
+	public void followRoute(Blackhole bh) {
+		for (Agent a : fleet) {
+			if (!a.cursor.hasNext()) {
+				plan(a);
+				a.cursor.setRoute(a.path);
+				a.path.clear();
+			}
+			if (a.cursor.hasNext()) {
+				bh.consume(model.followRoute(a, a.cursor, 1000));
+			}
+		}
+	}
+
+	@Benchmark
+	public void moveFleet() {
+		replan();
+		model.moveFleet(1000);
+	}
+
+	@Benchmark
+	public void moveFleetConcurrently() {
+		replan();
+		model.moveFleet(1000, executor);
+	}
+
+	private void replan() {
+		for (Agent a : fleet) {
+			if (!a.cursor.hasNext()) {
+				plan(a);
+				a.cursor.setRoute(a.path);
+				a.path.clear();
+			}
+		}
+	}
+
+	private void plan(Agent a) {
+		Point destination = nodes.get(rng.nextInt(nodes.size()));
+		try {
+			a.path.addAll(model.getShortestPathTo(a, destination));
+		} catch (PathNotFoundException e) {
+			// try another destination in the next invocation
+		}
+	}
+
+	static class Agent implements MovingRoadUser {
+		final Queue<Point> path = new LinkedList<Point>();
+		final RouteCursor cursor;
+
+		Agent(RoadModel model) {
+			cursor = new RouteCursor(model);
+		}
+
+		@Override
+		public void initRoadUser(RoadModel m) {}
+
+		@Override
+		public double getSpeed() {
+			return 50;
+		}
+	}
+}
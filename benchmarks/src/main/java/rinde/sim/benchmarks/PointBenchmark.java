@@ -0,0 +1,117 @@
+package rinde.sim.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.PathNotFoundException;
+import rinde.sim.core.graph.Point;
+import rinde.sim.serializers.DotGraphSerializer;
+
+/**
+ * Measures the workloads that are dominated by creating and hashing
+ * {@link Point}s: loading a map, the {@link HashMap} based A* of
+ * {@link Graphs#shortestPathEuclidianDistance(Graph, Point, Point)} and
+ * looking up nodes with equal but not identical points.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PointBenchmark {
+
+	@Param(BenchmarkMaps.LEUVEN)
+	public String map;
+
+	@Param("64")
+	public int queries;
+
+	Graph<MultiAttributeEdgeData> graph;
+	Map<Point, Integer> nodeIds;
+	Point[] copies;
+	Point[] origins;
+	Point[] destinations;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = BenchmarkMaps.load(map);
+		List<Point> nodes = new ArrayList<Point>(graph.getNodes());
+		nodeIds = new HashMap<Point, Integer>();
+		copies = new Point[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			nodeIds.put(nodes.get(i), i);
+			copies[i] = new Point(nodes.get(i).x, nodes.get(i).y);
+		}
+
+		RandomGenerator rng = new MersenneTwister(123);
+		origins = new Point[queries];
+		destinations = new Point[queries];
+		int i = 0;
+		while (i < queries) {
+			Point from = nodes.get(rng.nextInt(nodes.size()));
+			Point to = nodes.get(rng.nextInt(nodes.size()));
+			try {
+				Graphs.shortestPathEuclidianDistance(graph, from, to);
+			} catch (PathNotFoundException e) {
+				continue;
+			}
+			origins[i] = from;
+			destinations[i] = to;
+			i++;
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Graph<MultiAttributeEdgeData> loadMap() throws IOException {
+		return DotGraphSerializer.getMultiAttributeGraphSerializer().read(map);
+	}
+
+	@Benchmark
+	public void astar(Blackhole bh) {
+		for (int i = 0; i < queries; i++) {
+			bh.consume(Graphs.shortestPathEuclidianDistance(graph, origins[i], destinations[i]));
+		}
+	}
+
+	@Benchmark
+	public void lookup(Blackhole bh) {
+		for (Point p : copies) {
+			bh.consume(nodeIds.get(p));
+		}
+	}
+
+	@Benchmark
+	public int createPoints() {
+		int h = 0;
+		for (int i = 0; i < 1000; i++) {
+			h += new Point(i * .5, i * .25).hashCode();
+		}
+		return h;
+	}
+}
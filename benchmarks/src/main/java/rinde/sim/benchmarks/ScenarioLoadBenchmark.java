@@ -0,0 +1,89 @@
+package rinde.sim.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rinde.sim.event.pdp.StandardType;
+import rinde.sim.scenario.Scenario;
+import rinde.sim.scenario.TimedEvent;
+import rinde.sim.serializers.BinaryScenarioSerializer;
+import rinde.sim.serializers.ScenarioWriter;
+import rinde.sim.util.IO;
+
+/**
+ * Compares loading a scenario with Java serialization ({@link IO}) and
+ * mapping the same scenario with {@link BinaryScenarioSerializer}. Both
+ * benchmarks read every event of the scenario. Run with
+ * <code>java -jar target/benchmarks.jar ScenarioLoad</code>.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ScenarioLoadBenchmark {
+
+	@Param({ "100000" })
+	public int events;
+
+	File serializedFile;
+	File binaryFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		Scenario scenario = new Scenario();
+		binaryFile = File.createTempFile("scenario", ".bin");
+		ScenarioWriter writer = BinaryScenarioSerializer.newWriter(binaryFile, scenario.getPossibleEventTypes());
+		StandardType[] types = StandardType.values();
+		for (int i = 0; i < events; i++) {
+			TimedEvent e = new TimedEvent(types[i % types.length], i / 10 * 1000L);
+			scenario.add(e);
+			writer.add(e);
+		}
+		writer.close();
+		serializedFile = File.createTempFile("scenario", ".scen");
+		IO.serialize(scenario, serializedFile.getPath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		serializedFile.delete();
+		binaryFile.delete();
+	}
+
+	@Benchmark
+	public long deserialize() {
+		return drain(IO.deserialize(serializedFile.getPath(), Scenario.class));
+	}
+
+	@Benchmark
+	public long mapBinary() throws IOException {
+		return drain(BinaryScenarioSerializer.map(binaryFile));
+	}
+
+	static long drain(Scenario scenario) {
+		long sum = 0;
+		TimedEvent e;
+		while ((e = scenario.poll()) != null) {
+			sum += e.time;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,111 @@
+package rinde.sim.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import rinde.sim.core.graph.AStarSearch;
+import rinde.sim.core.graph.ContractionHierarchy;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.PathNotFoundException;
+import rinde.sim.core.graph.Point;
+
+/**
+ * Compares {@link Graphs#shortestPathEuclidianDistance(Graph, Point, Point)}
+ * with {@link AStarSearch} and {@link ContractionHierarchy} on a fixed set of
+ * reachable origin-destination pairs of a map. Run with
+ * <code>java -jar target/benchmarks.jar ShortestPath -p map=&lt;map&gt;</code>,
+ * where the map is a dot file or <code>grid:n</code> for a generated n by n
+ * grid.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ShortestPathBenchmark {
+
+	@Param({ BenchmarkMaps.LEUVEN, "grid:32", "grid:100" })
+	public String map;
+
+	@Param("256")
+	public int queries;
+
+	Graph<MultiAttributeEdgeData> graph;
+	AStarSearch search;
+	ContractionHierarchy hierarchy;
+	Point[] origins;
+	Point[] destinations;
+	int cursor;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = BenchmarkMaps.load(map);
+		search = new AStarSearch(GraphIndex.create(graph));
+		hierarchy = ContractionHierarchy.create(graph);
+
+		List<Point> nodes = new ArrayList<Point>(graph.getNodes());
+		RandomGenerator rng = new MersenneTwister(123);
+		origins = new Point[queries];
+		destinations = new Point[queries];
+		int i = 0;
+		while (i < queries) {
+			Point from = nodes.get(rng.nextInt(nodes.size()));
+			Point to = nodes.get(rng.nextInt(nodes.size()));
+			try {
+				search.shortestPath(from, to);
+			} catch (PathNotFoundException e) {
+				continue;
+			}
+			origins[i] = from;
+			destinations[i] = to;
+			i++;
+		}
+	}
+
+	@Benchmark
+	public void graphs(Blackhole bh) {
+		int i = next();
+		bh.consume(Graphs.shortestPathEuclidianDistance(graph, origins[i], destinations[i]));
+	}
+
+	@Benchmark
+	public void indexedAStar(Blackhole bh) {
+		int i = next();
+		bh.consume(search.shortestPath(origins[i], destinations[i]));
+	}
+
+	@Benchmark
+	public void contractionHierarchy(Blackhole bh) {
+		int i = next();
+		bh.consume(hierarchy.shortestPath(origins[i], destinations[i]));
+	}
+
+	private int next() {
+		int i = cursor;
+		cursor = (cursor + 1) % queries;
+		return i;
+	}
+}
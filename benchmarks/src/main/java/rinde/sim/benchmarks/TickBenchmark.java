@@ -0,0 +1,111 @@
+package rinde.sim.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rinde.sim.core.IndependentTickListener;
+import rinde.sim.core.Simulator;
+import rinde.sim.core.SimulatorAPI;
+import rinde.sim.core.SimulatorUser;
+
+/**
+ * Measures {@link Simulator#tick()} with a number of
+ * {@link IndependentTickListener}s that each do a fixed amount of work. With
+ * <code>threads=0</code> the listeners are ticked sequentially, otherwise a
+ * tick executor with the given number of threads is used.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TickBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int agents;
+
+	@Param({ "0", "4" })
+	public int threads;
+
+	@Param("100")
+	public int work;
+
+	Simulator simulator;
+	ExecutorService executor;
+
+	@Setup
+	public void setUp() {
+		simulator = new Simulator(new MersenneTwister(123), 1000);
+		simulator.configure();
+		if (threads > 0) {
+			executor = Executors.newFixedThreadPool(threads);
+			simulator.setTickExecutor(executor);
+		}
+		for (int i = 0; i < agents; i++) {
+			simulator.register(new Walker(work));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Benchmark
+	public long tick() {
+		simulator.tick();
+		return simulator.getCurrentTime();
+	}
+
+	/**
+	 * Performs a random walk of <code>work</code> steps per tick using its own
+	 * random stream.
+	 */
+	static class Walker implements IndependentTickListener, SimulatorUser {
+		final int work;
+		RandomGenerator rng;
+		double x;
+		double y;
+
+		Walker(int work) {
+			this.work = work;
+		}
+
+		@Override
+		public void setSimulator(SimulatorAPI api) {
+			rng = api.getRandomGenerator(this);
+		}
+
+		@Override
+		public void tick(long currentTime, long timeStep) {
+			for (int i = 0; i < work; i++) {
+				x += rng.nextDouble() - .5;
+				y += rng.nextDouble() - .5;
+			}
+		}
+
+		@Override
+		public void afterTick(long currentTime, long timeStep) {}
+	}
+}
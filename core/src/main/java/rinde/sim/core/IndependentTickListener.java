@@ -0,0 +1,26 @@
+package rinde.sim.core;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Marks a {@link TickListener} whose {@link #tick(long, long)} does not
+ * depend on the {@link #tick(long, long)} of other listeners. When the
+ * {@link Simulator} has a tick executor (see
+ * {@link Simulator#setTickExecutor(ExecutorService)}) consecutively added
+ * independent listeners are ticked concurrently. The
+ * {@link #afterTick(long, long)} method is always called sequentially, after
+ * all listeners have been ticked.
+ * <p>
+ * An implementation may only use models that are safe to use from multiple
+ * threads (e.g. {@link rinde.sim.core.model.RoadModel} and
+ * {@link rinde.sim.core.model.communication.CommunicationModel}) and should
+ * not share mutable state or a {@link org.apache.commons.math.random.RandomGenerator}
+ * with other listeners, otherwise the outcome of a simulation is no longer
+ * determined by its seed. Objects can be unregistered from the simulator
+ * during the tick, but they should not be registered.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface IndependentTickListener extends TickListener {
+
+}
@@ -3,30 +3,45 @@
  */
 package rinde.sim.core;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.math.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
+import rinde.sim.core.checkpoint.Checkpointable;
 import rinde.sim.core.model.Model;
 import rinde.sim.core.model.ModelManager;
 import rinde.sim.event.Event;
 import rinde.sim.event.EventDispatcher;
 import rinde.sim.event.Events;
+import rinde.sim.util.RandomStreams;
 
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
  * @author Bartosz Michalik <bartosz.michalik@cs.kuleuven.be> - simulator API changes
  * 
  */
-public class Simulator implements SimulatorAPI {
+public class Simulator implements SimulatorAPI, Checkpointable {
 	
 	protected static final Logger LOGGER = LoggerFactory.getLogger(Simulator.class); 
 
@@ -39,13 +54,30 @@ public class Simulator implements SimulatorAPI {
 	}
 
 	protected volatile Set<TickListener> tickListeners;
+	// snapshot of the tick listeners, guarded by tickListeners
+	private volatile TickPlan tickPlan;
+	private volatile ExecutorService tickExecutor;
 	
 	private final RandomGenerator rand;
+	// the random streams of registered objects, guarded by itself
+	private final Map<Object, RandomStream> streams;
+	private long registrations;
+	private RandomStreams randomStreams;
 	public final Events events;
 	protected final EventDispatcher dispatcher;
 	protected final long timeStep;
 	protected volatile boolean isPlaying;
 	protected long time;
+	// time of the next tick of the tick listeners, equals time in fixed-step mode
+	private long nextTickTime;
+	// time of the last tick or wake-up, after a tick time is already advanced
+	private long lastStepTime;
+	// true while the tick listeners are in afterTick, time is then not advanced yet
+	private volatile boolean afterTickPhase;
+	private volatile boolean eventDriven;
+	// guarded by itself
+	private final PriorityQueue<WakeUp> wakeUps;
+	private long wakeUpSequence;
 	
 	protected ModelManager modelManager;
 	private boolean configure;
@@ -68,6 +100,8 @@ public class Simulator implements SimulatorAPI {
 		toUnregister = new LinkedHashSet<Object>();
 		
 		rand = r;
+		streams = new IdentityHashMap<Object, RandomStream>();
+		wakeUps = new PriorityQueue<WakeUp>();
 		time = 0L;
 
 		modelManager = new ModelManager();
@@ -76,8 +110,18 @@ public class Simulator implements SimulatorAPI {
 		events = dispatcher.getEvents();
 	}
 	
+	/**
+	 * Configures the models and fixes the seed of the random streams of
+	 * {@link #getRandomGenerator(Object)}, which is drawn from the main random
+	 * generator. Objects can only be registered after this method is called.
+	 */
 	public void configure() {
 		modelManager.configure();
+		synchronized (streams) {
+			if (randomStreams == null) {
+				randomStreams = new RandomStreams(rand.nextLong());
+			}
+		}
 		configure = true;
 	}
 	
@@ -88,6 +132,7 @@ public class Simulator implements SimulatorAPI {
 		if(configure) throw new IllegalStateException("cannot add model after calling configure()");
 		boolean result = modelManager.add(model);
 		if(result) {
+			addRandomStream(model);
 			LOGGER.info("registering model :" + model.getClass().getName() + " for type:" + model.getSupportedType().getName());
 			if(model instanceof TickListener) {
 				LOGGER.info("adding " + model.getClass().getName() + " as a tick listener");
@@ -103,6 +148,7 @@ public class Simulator implements SimulatorAPI {
 		if(o instanceof Model<?>) return register((Model<?>) o);
 		if(!configure) throw new IllegalStateException("cannot add object before calling configure()");
 		
+		addRandomStream(o);
 		injectDependencies(o);
 		if(o instanceof TickListener) {
 			addTickListener((TickListener) o);
@@ -123,6 +169,7 @@ public class Simulator implements SimulatorAPI {
 		if(!configure) throw new IllegalStateException("cannot add object before calling configure()");
 		
 		if(o instanceof TickListener) removeTickListener((TickListener) o);
+		if(o instanceof WakeUpListener) cancelWakeUps((WakeUpListener) o);
 		
 		unregisterLock.lock();
 		toUnregister.add(o);
@@ -161,14 +208,130 @@ public class Simulator implements SimulatorAPI {
 
 
 	public void addTickListener(TickListener listener) {
-		tickListeners.add(listener);
+		synchronized (tickListeners) {
+			if (tickListeners.add(listener)) {
+				tickPlan = null;
+			}
+		}
 	}
 
 	/**
 	 * O(1)
 	 */
 	public void removeTickListener(TickListener listener) {
-		tickListeners.remove(listener);
+		synchronized (tickListeners) {
+			if (tickListeners.remove(listener)) {
+				tickPlan = null;
+			}
+		}
+	}
+
+	/**
+	 * Sets the executor that is used for ticking {@link IndependentTickListener}s
+	 * concurrently. Each run of consecutively added independent listeners is
+	 * ticked on the executor, the simulator waits until all of them are
+	 * finished before it continues with the next listener. All other
+	 * listeners and all calls to {@link TickListener#afterTick(long, long)}
+	 * are executed sequentially on the thread that calls {@link #tick()}.
+	 * The simulator does not shut down the executor.
+	 * @param executor The executor, for example
+	 *            {@link java.util.concurrent.Executors#newFixedThreadPool(int)},
+	 *            or <code>null</code> to tick all listeners sequentially
+	 *            (default).
+	 */
+	public void setTickExecutor(ExecutorService executor) {
+		tickExecutor = executor;
+	}
+
+	/**
+	 * @return The executor used for ticking independent listeners, or
+	 *         <code>null</code> if all listeners are ticked sequentially.
+	 */
+	public ExecutorService getTickExecutor() {
+		return tickExecutor;
+	}
+
+	/**
+	 * Models that are used by {@link IndependentTickListener}s can use this
+	 * method to postpone work that depends on the order in which the
+	 * listeners are ticked.
+	 * @return <code>true</code> if the calling thread is ticking a listener
+	 *         on the tick executor, <code>false</code> otherwise.
+	 * @see #setTickExecutor(ExecutorService)
+	 */
+	public static boolean isTickingConcurrently() {
+		return CONCURRENT_TICK.get() != null;
+	}
+
+	/**
+	 * Enables or disables the event-driven mode. In the default fixed-step
+	 * mode {@link #start()} calls {@link #tick()} until the simulator is
+	 * stopped. In event-driven mode {@link #start()} calls {@link #step()},
+	 * the clock jumps directly to the next scheduled wake-up when there are no
+	 * {@link TickListener}s, the simulation ends when nothing is scheduled
+	 * anymore. When there are tick listeners they are still ticked every
+	 * time step, wake-ups that are scheduled in between ticks are executed at
+	 * their exact time.
+	 * @param eventDriven <code>true</code> to enable the event-driven mode.
+	 */
+	public void setEventDriven(boolean eventDriven) {
+		this.eventDriven = eventDriven;
+	}
+
+	/**
+	 * @return <code>true</code> if the simulator is in event-driven mode.
+	 * @see #setEventDriven(boolean)
+	 */
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+	/**
+	 * Wake-ups with the same time are executed in the order in which the
+	 * listeners were registered (listeners that are not registered in the
+	 * simulator first) and then in the order in which they were scheduled.
+	 * Wake-ups in the past are executed as soon as possible.
+	 * @see rinde.sim.core.SimulatorAPI#scheduleWakeUp(WakeUpListener, long)
+	 */
+	@Override
+	public void scheduleWakeUp(WakeUpListener listener, long wakeUpTime) {
+		if(listener == null) throw new IllegalArgumentException("listener cannot be null");
+		long id = -1;
+		synchronized (streams) {
+			RandomStream stream = streams.get(listener);
+			if (stream != null) {
+				id = stream.id;
+			}
+		}
+		synchronized (wakeUps) {
+			wakeUps.add(new WakeUp(listener, wakeUpTime, id, wakeUpSequence++));
+		}
+	}
+
+	/**
+	 * Removes all scheduled wake-ups of the listener, this is done
+	 * automatically when the listener is unregistered.
+	 * @param listener The listener.
+	 */
+	public void cancelWakeUps(WakeUpListener listener) {
+		synchronized (wakeUps) {
+			for (Iterator<WakeUp> it = wakeUps.iterator(); it.hasNext();) {
+				if (it.next().listener == listener) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The time of the earliest scheduled wake-up, or
+	 *         {@link Long#MAX_VALUE} if nothing is scheduled.
+	 */
+	public long getNextWakeUpTime() {
+		synchronized (wakeUps) {
+			WakeUp w = wakeUps.peek();
+			return w == null ? Long.MAX_VALUE : w.time;
+		}
 	}
 
 	/**
@@ -180,12 +343,61 @@ public class Simulator implements SimulatorAPI {
 		}
 		isPlaying = true;
 		while (isPlaying) {
-			tick();
+			if (eventDriven) {
+				if (!step()) {
+					isPlaying = false;
+				}
+			} else {
+				tick();
+			}
 		}
 		dispatcher.dispatchEvent(new Event(EventTypes.STOPPED, this));
 	}
 
-	public void tick() {
+	/**
+	 * Advances the simulation to the next moment at which something is
+	 * scheduled: either the next tick of the tick listeners (see
+	 * {@link #tick()}) or the next wake-up, whichever comes first.
+	 * @return <code>false</code> if there are no tick listeners and no
+	 *         wake-ups, the simulation is then finished.
+	 */
+	public boolean step() {
+		processUnregistrations();
+		long next = getNextWakeUpTime();
+		if (getTickPlan().listeners.length > 0) {
+			if (nextTickTime <= next) {
+				tick();
+				return true;
+			}
+		} else if (next == Long.MAX_VALUE) {
+			return false;
+		}
+		time = Math.max(lastStepTime, next);
+		lastStepTime = time;
+		if (time > nextTickTime) {
+			// the next tick stays on the grid of time steps
+			nextTickTime += (time - nextTickTime + timeStep - 1) / timeStep * timeStep;
+		}
+		wakeUp();
+		return true;
+	}
+
+	// executes all wake-ups that are due at the current time
+	private void wakeUp() {
+		while (true) {
+			WakeUp w;
+			synchronized (wakeUps) {
+				w = wakeUps.peek();
+				if (w == null || w.time > time) {
+					return;
+				}
+				wakeUps.poll();
+			}
+			w.listener.wakeUp(time);
+		}
+	}
+
+	private void processUnregistrations() {
 		//unregister all pending objects
 		unregisterLock.lock();
 		Set<Object> copy = toUnregister;
@@ -195,30 +407,118 @@ public class Simulator implements SimulatorAPI {
 		for (Object c : copy) {
 			modelManager.unregister(c);
 		}
+		if (!copy.isEmpty()) {
+			synchronized (streams) {
+				streams.keySet().removeAll(copy);
+			}
+		}
+	}
+
+	/**
+	 * Ticks all tick listeners. Wake-ups that are due are executed before the
+	 * tick listeners.
+	 */
+	public void tick() {
+		processUnregistrations();
+		time = nextTickTime;
+		lastStepTime = time;
+		wakeUp();
 		
-		// using a copy to avoid concurrent modifications of this set
+		// using a snapshot to avoid concurrent modifications of this set
 		// this also means that adding or removing a TickListener is 
 		// effectively executed after a 'tick'
 
-		List<TickListener> localCopy = new ArrayList<TickListener>();
 		long timeS = System.currentTimeMillis();
-		localCopy.addAll(tickListeners);
-		for (TickListener t : localCopy) {
-			t.tick(time, timeStep);
+		TickPlan plan = getTickPlan();
+		ExecutorService executor = tickExecutor;
+		for (int i = 0; i < plan.stages.size(); i++) {
+			TickListener[] stage = plan.stages.get(i);
+			if (executor != null && plan.independent.get(i) && stage.length > 1) {
+				tickConcurrently(executor, stage);
+			} else {
+				for (TickListener t : stage) {
+					t.tick(time, timeStep);
+				}
+			}
 		}
 		if(LOGGER.isDebugEnabled()) {
 			LOGGER.debug("tick(): " + (System.currentTimeMillis() - timeS));
 			timeS = System.currentTimeMillis();			
 		}
-		for (TickListener t : tickListeners) {
-			t.afterTick(time, timeStep);
+		afterTickPhase = true;
+		try {
+			for (TickListener t : getTickPlan().listeners) {
+				t.afterTick(time, timeStep);
+			}
+		} finally {
+			afterTickPhase = false;
 		}
 		if(LOGGER.isDebugEnabled()) {
 			LOGGER.debug("aftertick(): " + (System.currentTimeMillis() - timeS));			
 		}
 		
 		time += timeStep;
+		nextTickTime = time;
+	}
+
+	private TickPlan getTickPlan() {
+		TickPlan plan = tickPlan;
+		if (plan == null) {
+			synchronized (tickListeners) {
+				plan = tickPlan;
+				if (plan == null) {
+					plan = new TickPlan(tickListeners.toArray(new TickListener[tickListeners.size()]));
+					tickPlan = plan;
+				}
+			}
+		}
+		return plan;
+	}
 
+	/**
+	 * Ticks the listeners on the executor and waits until all are done. The
+	 * listeners are divided in a few chunks per available processor to limit
+	 * the scheduling overhead. The first exception (in listener order) is
+	 * rethrown.
+	 */
+	private void tickConcurrently(ExecutorService executor, final TickListener[] stage) {
+		final long currentTime = time;
+		int chunks = Math.min(stage.length, CHUNKS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int from = (int) ((long) stage.length * c / chunks);
+			final int to = (int) ((long) stage.length * (c + 1) / chunks);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					CONCURRENT_TICK.set(Boolean.TRUE);
+					try {
+						for (int i = from; i < to; i++) {
+							stage[i].tick(currentTime, timeStep);
+						}
+					} finally {
+						CONCURRENT_TICK.remove();
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Object> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for the tick listeners", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
 	}
 
 	/**
@@ -233,6 +533,8 @@ public class Simulator implements SimulatorAPI {
 
 	public void resetTime() {
 		time = 0L;
+		nextTickTime = 0L;
+		lastStepTime = 0L;
 	}
 
 	/**
@@ -257,4 +559,255 @@ public class Simulator implements SimulatorAPI {
 	public RandomGenerator getRandomGenerator() {
 		return rand;
 	}
+
+	/**
+	 * The stream of an object is identified by the order in which the object
+	 * was registered. The seed of the streams is drawn from the main random
+	 * generator in {@link #configure()}, so the streams do not depend on how
+	 * the main generator is used afterwards.
+	 * @throws IllegalStateException if {@link #configure()} is not called yet.
+	 * @see rinde.sim.core.SimulatorAPI#getRandomGenerator(java.lang.Object)
+	 */
+	@Override
+	public RandomGenerator getRandomGenerator(Object o) {
+		synchronized (streams) {
+			RandomStream stream = streams.get(o);
+			if (stream == null) {
+				throw new IllegalArgumentException("object is not registered: " + o);
+			}
+			if (stream.generator == null) {
+				if (randomStreams == null) {
+					throw new IllegalStateException("random streams are not available before calling configure()");
+				}
+				stream.generator = randomStreams.get(stream.id);
+			}
+			return stream.generator;
+		}
+	}
+
+	private void addRandomStream(Object o) {
+		synchronized (streams) {
+			if (!streams.containsKey(o)) {
+				streams.put(o, new RandomStream(registrations++));
+			}
+		}
+	}
+
+	/**
+	 * @return The objects that are registered in this simulator, in the order
+	 *         in which they were registered. Models and objects that are
+	 *         unregistered but not yet removed from the models are not
+	 *         included.
+	 */
+	public List<Object> getRegisteredObjects() {
+		List<Object> objects = new ArrayList<Object>();
+		unregisterLock.lock();
+		try {
+			synchronized (streams) {
+				for (Object o : streams.keySet()) {
+					if (!(o instanceof Model<?>) && !toUnregister.contains(o)) {
+						objects.add(o);
+					}
+				}
+				sortByRegistration(objects);
+			}
+		} finally {
+			unregisterLock.unlock();
+		}
+		return objects;
+	}
+
+	// must be called while holding the lock on streams
+	private void sortByRegistration(List<Object> objects) {
+		Collections.sort(objects, new Comparator<Object>() {
+			@Override
+			public int compare(Object o1, Object o2) {
+				long id1 = streams.get(o1).id;
+				long id2 = streams.get(o2).id;
+				return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+			}
+		});
+	}
+
+	/**
+	 * Saves the time, the state of the random generators and the wake-ups.
+	 * When this method is called during
+	 * {@link TickListener#afterTick(long, long)} the time is saved as it is
+	 * after the tick. The streams of objects that are not part of the
+	 * checkpoint are skipped, wake-ups must belong to objects that are part
+	 * of the checkpoint.
+	 * @see rinde.sim.core.checkpoint.Checkpointer
+	 */
+	@Override
+	public void saveState(CheckpointOutput out) throws IOException {
+		boolean ticked = afterTickPhase;
+		out.writeLong(ticked ? time + timeStep : time);
+		out.writeLong(ticked ? time + timeStep : nextTickTime);
+		out.writeLong(lastStepTime);
+		out.writeVarint(registrations);
+		out.writeVarint(wakeUpSequence);
+		out.writeRandomGenerator(rand);
+		synchronized (streams) {
+			out.writeBoolean(randomStreams != null);
+			if (randomStreams != null) {
+				out.writeLong(randomStreams.getSeed());
+			}
+			List<Object> objects = new ArrayList<Object>();
+			for (Object o : streams.keySet()) {
+				if (out.isReferable(o)) {
+					objects.add(o);
+				}
+			}
+			sortByRegistration(objects);
+			out.writeVarint(objects.size());
+			for (Object o : objects) {
+				RandomStream stream = streams.get(o);
+				out.writeReference(o);
+				out.writeVarint(stream.id);
+				out.writeBoolean(stream.generator != null);
+				if (stream.generator != null) {
+					out.writeRandomGenerator(stream.generator);
+				}
+			}
+		}
+		WakeUp[] scheduled;
+		synchronized (wakeUps) {
+			scheduled = wakeUps.toArray(new WakeUp[wakeUps.size()]);
+		}
+		Arrays.sort(scheduled);
+		out.writeVarint(scheduled.length);
+		for (WakeUp w : scheduled) {
+			out.writeReference(w.listener);
+			out.writeLong(w.time);
+			out.writeVarint(w.sequence);
+		}
+	}
+
+	/**
+	 * Restores the state that was saved by
+	 * {@link #saveState(CheckpointOutput)}, all wake-ups that were scheduled
+	 * before are removed. The generator of {@link #getRandomGenerator()} and
+	 * the generators of the streams that already exist keep their identity,
+	 * only their state is replaced.
+	 */
+	@Override
+	public void restoreState(CheckpointInput in) throws IOException {
+		time = in.readLong();
+		nextTickTime = in.readLong();
+		lastStepTime = in.readLong();
+		registrations = in.readVarLong();
+		wakeUpSequence = in.readVarLong();
+		in.readRandomGenerator(rand);
+		synchronized (streams) {
+			randomStreams = in.readBoolean() ? new RandomStreams(in.readLong()) : null;
+			int n = in.readVarint();
+			for (int i = 0; i < n; i++) {
+				Object o = in.readReference();
+				RandomStream current = streams.get(o);
+				if (current == null) {
+					throw new IOException("object is not registered: " + o);
+				}
+				RandomStream stream = new RandomStream(in.readVarLong());
+				if (in.readBoolean()) {
+					if (randomStreams == null) {
+						throw new IOException("random stream without a seed");
+					}
+					stream.generator = current.generator != null ? current.generator : randomStreams.get(stream.id);
+					in.readRandomGenerator(stream.generator);
+				}
+				streams.put(o, stream);
+			}
+		}
+		int n = in.readVarint();
+		List<WakeUp> scheduled = new ArrayList<WakeUp>(n);
+		for (int i = 0; i < n; i++) {
+			WakeUpListener listener = in.readReference(WakeUpListener.class);
+			if (listener == null) {
+				throw new IOException("wake-up without a listener");
+			}
+			long wakeUpTime = in.readLong();
+			long sequence = in.readVarLong();
+			long id = -1;
+			synchronized (streams) {
+				RandomStream stream = streams.get(listener);
+				if (stream != null) {
+					id = stream.id;
+				}
+			}
+			scheduled.add(new WakeUp(listener, wakeUpTime, id, sequence));
+		}
+		synchronized (wakeUps) {
+			wakeUps.clear();
+			wakeUps.addAll(scheduled);
+		}
+	}
+
+	private static final int CHUNKS_PER_PROCESSOR = 4;
+
+	// set while a thread ticks listeners on the tick executor
+	private static final ThreadLocal<Boolean> CONCURRENT_TICK = new ThreadLocal<Boolean>();
+
+	private static final class WakeUp implements Comparable<WakeUp> {
+		final WakeUpListener listener;
+		final long time;
+		final long listenerId;
+		final long sequence;
+
+		WakeUp(WakeUpListener listener, long time, long listenerId, long sequence) {
+			this.listener = listener;
+			this.time = time;
+			this.listenerId = listenerId;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(WakeUp o) {
+			if (time != o.time) {
+				return time < o.time ? -1 : 1;
+			}
+			if (listenerId != o.listenerId) {
+				return listenerId < o.listenerId ? -1 : 1;
+			}
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+	}
+
+	private static final class RandomStream {
+		final long id;
+		RandomGenerator generator;
+
+		RandomStream(long id) {
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the tick listeners, divided in stages of
+	 * consecutive listeners that are either all independent or all dependent.
+	 */
+	private static final class TickPlan {
+		final TickListener[] listeners;
+		final List<TickListener[]> stages;
+		final List<Boolean> independent;
+
+		TickPlan(TickListener[] listeners) {
+			this.listeners = listeners;
+			stages = new ArrayList<TickListener[]>();
+			independent = new ArrayList<Boolean>();
+			int start = 0;
+			for (int i = 1; i <= listeners.length; i++) {
+				if (i == listeners.length || isIndependent(listeners[i]) != isIndependent(listeners[start])) {
+					TickListener[] stage = new TickListener[i - start];
+					System.arraycopy(listeners, start, stage, 0, stage.length);
+					stages.add(stage);
+					independent.add(isIndependent(listeners[start]));
+					start = i;
+				}
+			}
+		}
+
+		static boolean isIndependent(TickListener l) {
+			return l instanceof IndependentTickListener;
+		}
+	}
 }
@@ -37,4 +37,32 @@ public interface SimulatorAPI {
 	 * @return the random generator of the simulatsor
 	 */
 	public RandomGenerator getRandomGenerator();
+
+	/**
+	 * Get access to the random generator of a registered object (or model).
+	 * Each object has its own stream which is determined by the seed of the
+	 * simulator and the order of registration, the stream does not depend on
+	 * how often or in which order other objects use their generators. This
+	 * makes simulations reproducible when listeners are ticked in parallel
+	 * (see {@link IndependentTickListener}).
+	 * @param o A registered object.
+	 * @return The random generator of the object, always the same instance
+	 *         for the same object.
+	 * @throws IllegalArgumentException if the object is not registered.
+	 */
+	public RandomGenerator getRandomGenerator(Object o);
+
+	/**
+	 * @return The current time of the simulation.
+	 */
+	public long getCurrentTime();
+
+	/**
+	 * Schedules a call to {@link WakeUpListener#wakeUp(long)} at the specified
+	 * time. A listener can have multiple wake-ups scheduled, the scheduled
+	 * wake-ups of a listener are cancelled when it is unregistered.
+	 * @param listener The listener to wake up.
+	 * @param wakeUpTime The time at which the listener is woken up.
+	 */
+	public void scheduleWakeUp(WakeUpListener listener, long wakeUpTime);
 }
@@ -0,0 +1,21 @@
+package rinde.sim.core;
+
+/**
+ * Listener that is called by the {@link Simulator} at the times it has
+ * scheduled via {@link SimulatorAPI#scheduleWakeUp(WakeUpListener, long)}.
+ * Unlike a {@link TickListener} it is not called every tick, this allows the
+ * simulator to skip idle periods in event-driven mode (see
+ * {@link Simulator#setEventDriven(boolean)}).
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface WakeUpListener {
+
+	/**
+	 * Called when a scheduled wake-up is due.
+	 * @param currentTime The current time of the simulation, this is the
+	 *            scheduled time unless the wake-up was scheduled in the past
+	 *            or in between two ticks in fixed-step mode.
+	 */
+	void wakeUp(long currentTime);
+}
@@ -0,0 +1,144 @@
+package rinde.sim.core.checkpoint;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+import rinde.sim.core.graph.Point;
+
+/**
+ * The input from which the state of a simulation is restored, it reads what
+ * was written by a {@link CheckpointOutput}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class CheckpointInput extends DataInputStream {
+
+	private final List<Object> references;
+	// the hooks in the order of the table of the checkpoint
+	private StateHook<?>[] hooks;
+
+	CheckpointInput(InputStream in) {
+		super(in);
+		hooks = new StateHook<?>[0];
+		references = new ArrayList<Object>();
+	}
+
+	void setHooks(StateHook<?>[] hooks) {
+		this.hooks = hooks;
+	}
+
+	void addReference(Object o) {
+		references.add(o);
+	}
+
+	/**
+	 * Reads a number that was written by
+	 * {@link CheckpointOutput#writeVarint(long)}.
+	 * @return The number.
+	 * @throws IOException if the input cannot be read or is malformed.
+	 */
+	public long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/**
+	 * Reads a number that was written by
+	 * {@link CheckpointOutput#writeVarint(long)} and that fits in an
+	 * <code>int</code>.
+	 * @return The number.
+	 * @throws IOException if the input cannot be read or is malformed.
+	 */
+	public int readVarint() throws IOException {
+		long value = readVarLong();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IOException("varint is out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Reads a reference that was written by
+	 * {@link CheckpointOutput#writeReference(Object)}.
+	 * @return The model or registered object of the restored simulation, or
+	 *         <code>null</code>.
+	 * @throws IOException if the input cannot be read or refers to an object
+	 *             that is not restored yet.
+	 */
+	public Object readReference() throws IOException {
+		int id = readVarint();
+		if (id == 0) {
+			return null;
+		}
+		if (id > references.size()) {
+			throw new IOException("reference to an object that is not restored yet: " + (id - 1));
+		}
+		return references.get(id - 1);
+	}
+
+	/**
+	 * Reads a reference to an object of a certain type.
+	 * @param type The type of the object.
+	 * @return The object or <code>null</code>.
+	 * @throws IOException if the input cannot be read, refers to an object
+	 *             that is not restored yet or to an object of another type.
+	 * @see #readReference()
+	 */
+	public <T> T readReference(Class<T> type) throws IOException {
+		Object o = readReference();
+		if (o != null && !type.isInstance(o)) {
+			throw new IOException("expected a reference to a " + type.getName() + " but found: " + o);
+		}
+		return type.cast(o);
+	}
+
+	/**
+	 * Reads an object that was written by
+	 * {@link CheckpointOutput#writeValue(Object)}.
+	 * @return A new object or <code>null</code>.
+	 * @throws IOException if the input cannot be read.
+	 */
+	public Object readValue() throws IOException {
+		int index = readVarint();
+		if (index == 0) {
+			return null;
+		}
+		if (index > hooks.length) {
+			throw new IOException("unknown state hook: " + (index - 1));
+		}
+		return hooks[index - 1].restore(this);
+	}
+
+	/**
+	 * Restores the state of a random generator that was written by
+	 * {@link CheckpointOutput#writeRandomGenerator(RandomGenerator)}. The
+	 * state is copied into the given generator, it must be of the same class
+	 * as the generator that was written.
+	 * @param generator The generator.
+	 * @throws IOException if the input cannot be read or the generator is of
+	 *             another class.
+	 */
+	public void readRandomGenerator(RandomGenerator generator) throws IOException {
+		RandomState.read(generator, this);
+	}
+
+	/**
+	 * @return The point.
+	 * @throws IOException if the input cannot be read.
+	 */
+	public Point readPoint() throws IOException {
+		return new Point(readDouble(), readDouble());
+	}
+}
@@ -0,0 +1,127 @@
+package rinde.sim.core.checkpoint;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+import rinde.sim.core.graph.Point;
+
+/**
+ * The output to which the state of a simulation is written. Besides the
+ * methods of {@link DataOutputStream} it writes compact numbers, references
+ * to the models and registered objects of the simulation and objects that
+ * have a {@link StateHook}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class CheckpointOutput extends DataOutputStream {
+
+	private final Map<Object, Integer> references;
+	private final List<StateHook<?>> hooks;
+
+	CheckpointOutput(OutputStream out, List<StateHook<?>> hooks) {
+		super(out);
+		this.hooks = hooks;
+		references = new IdentityHashMap<Object, Integer>();
+	}
+
+	void addReference(Object o) {
+		references.put(o, references.size());
+	}
+
+	/**
+	 * Writes an unsigned number in 1 to 10 bytes, 7 bits per byte with the
+	 * lowest bits first.
+	 * @param value The number, negative numbers take 10 bytes.
+	 * @throws IOException if the output cannot be written.
+	 */
+	public void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		write((int) value);
+	}
+
+	/**
+	 * @param o An object.
+	 * @return <code>true</code> if the object can be written with
+	 *         {@link #writeReference(Object)}.
+	 */
+	public boolean isReferable(Object o) {
+		return references.containsKey(o);
+	}
+
+	/**
+	 * Writes a reference to a model, to the scenario controller or to an
+	 * object that is registered in the simulator.
+	 * @param o The object or <code>null</code>.
+	 * @throws IOException if the output cannot be written.
+	 */
+	public void writeReference(Object o) throws IOException {
+		if (o == null) {
+			writeVarint(0);
+			return;
+		}
+		Integer id = references.get(o);
+		if (id == null) {
+			throw new IllegalArgumentException("object is not part of the checkpoint: " + o);
+		}
+		writeVarint(id + 1);
+	}
+
+	/**
+	 * Writes an object with its {@link StateHook}, the object is restored as
+	 * a new instance by {@link CheckpointInput#readValue()}.
+	 * @param o The object or <code>null</code>.
+	 * @throws IOException if the output cannot be written.
+	 */
+	@SuppressWarnings("unchecked")
+	public void writeValue(Object o) throws IOException {
+		if (o == null) {
+			writeVarint(0);
+			return;
+		}
+		int index = findHook(o.getClass());
+		writeVarint(index + 1);
+		((StateHook<Object>) hooks.get(index)).save(o, this);
+	}
+
+	private int findHook(Class<?> type) {
+		for (int i = 0; i < hooks.size(); i++) {
+			if (hooks.get(i).getType() == type) {
+				return i;
+			}
+		}
+		for (int i = 0; i < hooks.size(); i++) {
+			if (hooks.get(i).getType().isAssignableFrom(type)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("no state hook for objects of " + type.getName());
+	}
+
+	/**
+	 * Writes the state of a random generator, see
+	 * {@link CheckpointInput#readRandomGenerator(RandomGenerator)}.
+	 * @param generator The generator.
+	 * @throws IOException if the output cannot be written.
+	 */
+	public void writeRandomGenerator(RandomGenerator generator) throws IOException {
+		RandomState.write(generator, this);
+	}
+
+	/**
+	 * @param p The point.
+	 * @throws IOException if the output cannot be written.
+	 */
+	public void writePoint(Point p) throws IOException {
+		writeDouble(p.x);
+		writeDouble(p.y);
+	}
+}
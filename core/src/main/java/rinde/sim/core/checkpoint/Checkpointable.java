@@ -0,0 +1,33 @@
+package rinde.sim.core.checkpoint;
+
+import java.io.IOException;
+
+/**
+ * A part of a simulation that saves its own state in a checkpoint, for
+ * example the {@link rinde.sim.core.Simulator} and the models. The state is
+ * restored into a freshly created instance that is configured in the same
+ * way as the instance that was saved, see {@link Checkpointer}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface Checkpointable {
+
+	/**
+	 * Writes the state. Registered objects are written with
+	 * {@link CheckpointOutput#writeReference(Object)}.
+	 * @param out The output.
+	 * @throws IOException if the output cannot be written.
+	 */
+	void saveState(CheckpointOutput out) throws IOException;
+
+	/**
+	 * Reads the state that was written by {@link #saveState(CheckpointOutput)}
+	 * and replaces the current state. When this method is called the
+	 * registered objects of the checkpoint are already restored and
+	 * registered.
+	 * @param in The input.
+	 * @throws IOException if the input cannot be read or does not match this
+	 *             instance.
+	 */
+	void restoreState(CheckpointInput in) throws IOException;
+}
@@ -0,0 +1,417 @@
+package rinde.sim.core.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import rinde.sim.core.Simulator;
+import rinde.sim.core.TickListener;
+import rinde.sim.core.model.Model;
+
+/**
+ * Saves the state of a running simulation in a checkpoint and restores it in
+ * a new simulation, such that a long simulation can be continued from the
+ * last checkpoint instead of being replayed from the start. A checkpoint
+ * contains:
+ * <ul>
+ * <li>the time, the random generators and the wake-ups of the
+ * {@link Simulator},</li>
+ * <li>the objects that are registered in the simulator, saved by a
+ * {@link StateHook} of their class,</li>
+ * <li>the state of the models that are {@link Checkpointable}, e.g. the
+ * positions of the objects in a {@link rinde.sim.core.model.RoadModel} and
+ * the messages that are waiting in a
+ * {@link rinde.sim.core.model.communication.CommunicationModel},</li>
+ * <li>the state of the controller, e.g. the number of events of a
+ * {@link rinde.sim.scenario.ScenarioController} that were dispatched.</li>
+ * </ul>
+ * The state is restored into a new simulator that is configured in the same
+ * way: with the same models, registered in the same order, and with a new
+ * controller of the same scenario, but without registered objects. The
+ * objects of the checkpoint are created by their hooks and registered in the
+ * order in which they were registered originally, after that the state of
+ * the simulator, the models and the controller is replaced.
+ * <p>
+ * {@link #capture()} saves the state in memory, the state is then compressed
+ * and written on another thread by {@link #write(File, ExecutorService)}.
+ * Checkpoints are written periodically when the checkpointer is added as a
+ * tick listener, see {@link #setInterval(long, File, ExecutorService)}. A
+ * checkpoint is only consistent at the end of a tick or in between two
+ * {@link Simulator#step()}s, not during the tick phase.
+ * <p>
+ * The file consists of the <code>int</code>s {@value #MAGIC}, the version
+ * {@value #VERSION} and the length of the state, followed by the state
+ * compressed with {@link Deflater}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class Checkpointer implements TickListener {
+
+	/**
+	 * The first <code>int</code> of a checkpoint file.
+	 */
+	public static final int MAGIC = 0x5253434B;
+
+	/**
+	 * The version of the format that is written.
+	 */
+	public static final int VERSION = 1;
+
+	private final Simulator simulator;
+	private final Checkpointable controller;
+	private final List<StateHook<?>> hooks;
+
+	// periodic checkpoints, the file is null when disabled
+	private long interval;
+	private File file;
+	private ExecutorService executor;
+	private long nextCheckpoint;
+	private Future<?> lastWrite;
+	// the last periodic checkpoint that was captured and written, written is guarded by this
+	private long captured;
+	private long written;
+
+	/**
+	 * @param simulator The simulator.
+	 * @param controller The controller of the simulation, for example a
+	 *            {@link rinde.sim.scenario.ScenarioController}, or
+	 *            <code>null</code>.
+	 * @param hooks The hooks for the registered objects and for the messages
+	 *            of the simulation. An object is saved by the hook of its
+	 *            class, or else by the first hook of a superclass.
+	 */
+	public Checkpointer(Simulator simulator, Checkpointable controller, StateHook<?>... hooks) {
+		if (simulator == null || hooks == null) {
+			throw new IllegalArgumentException("simulator and hooks cannot be null");
+		}
+		this.simulator = simulator;
+		this.controller = controller;
+		this.hooks = new ArrayList<StateHook<?>>(Arrays.asList(hooks));
+	}
+
+	/**
+	 * Saves the current state of the simulation in memory.
+	 * @return The uncompressed state.
+	 * @throws IllegalArgumentException if a registered object has no hook or
+	 *             refers to an object that is not part of the checkpoint.
+	 */
+	public byte[] capture() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CheckpointOutput out = new CheckpointOutput(bytes, hooks);
+		try {
+			out.writeVarint(hooks.size());
+			for (StateHook<?> h : hooks) {
+				out.writeUTF(h.getId());
+			}
+			List<Model<?>> models = simulator.getModels();
+			out.writeVarint(models.size());
+			for (Model<?> m : models) {
+				out.writeUTF(m.getClass().getName());
+				out.addReference(m);
+			}
+			out.writeBoolean(controller != null);
+			if (controller != null) {
+				out.addReference(controller);
+			}
+			List<Object> objects = simulator.getRegisteredObjects();
+			for (Object o : objects) {
+				out.addReference(o);
+			}
+			out.writeVarint(objects.size());
+			for (Object o : objects) {
+				out.writeValue(o);
+			}
+
+			simulator.saveState(out);
+			for (Model<?> m : models) {
+				if (m instanceof Checkpointable) {
+					((Checkpointable) m).saveState(out);
+				}
+			}
+			if (controller != null) {
+				controller.saveState(out);
+			}
+			out.flush();
+		} catch (IOException e) {
+			// a byte array output stream does not throw
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Saves the current state of the simulation in a file.
+	 * @param target The file, it is replaced when the checkpoint is written
+	 *            completely.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(File target) throws IOException {
+		writeFile(capture(), target);
+	}
+
+	/**
+	 * Saves the current state of the simulation in memory and writes it to a
+	 * file on the executor.
+	 * @param target The file, it is replaced when the checkpoint is written
+	 *            completely.
+	 * @param exec The executor that writes the file.
+	 * @return The future of the write, it throws the {@link IOException} if
+	 *         the file cannot be written.
+	 */
+	public Future<?> write(final File target, ExecutorService exec) {
+		if (target == null || exec == null) {
+			throw new IllegalArgumentException("file and executor cannot be null");
+		}
+		final byte[] state = capture();
+		return exec.submit(new Callable<Object>() {
+			@Override
+			public Object call() throws IOException {
+				writeFile(state, target);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Writes a checkpoint every <code>interval</code> time units while the
+	 * checkpointer is a tick listener of the simulator. The checkpoint is
+	 * captured when all other tick listeners are done with the tick: if the
+	 * checkpointer is not the last tick listener it moves itself to the end
+	 * and captures the checkpoint after the next tick. Every checkpoint
+	 * replaces the previous one.
+	 * @param checkpointInterval The interval in units of simulation time.
+	 * @param target The file or <code>null</code> to stop writing
+	 *            checkpoints.
+	 * @param exec The executor that writes the checkpoints, or
+	 *            <code>null</code> to write them in the thread of the
+	 *            simulation.
+	 */
+	public void setInterval(long checkpointInterval, File target, ExecutorService exec) {
+		if (target != null && checkpointInterval <= 0) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		interval = checkpointInterval;
+		file = target;
+		executor = exec;
+		nextCheckpoint = simulator.getCurrentTime() + checkpointInterval;
+	}
+
+	/**
+	 * @return The future of the last periodic checkpoint or <code>null</code>
+	 *         if no checkpoint was written yet. It throws the
+	 *         {@link IOException} if the checkpoint could not be written.
+	 */
+	public Future<?> getLastWrite() {
+		return lastWrite;
+	}
+
+	@Override
+	public void tick(long currentTime, long timeStep) {
+		// the checkpoints are captured in afterTick
+	}
+
+	@Override
+	public void afterTick(long currentTime, long timeStep) {
+		if (file == null || currentTime + timeStep < nextCheckpoint) {
+			return;
+		}
+		if (!isLastTickListener()) {
+			// takes effect in the next tick
+			simulator.removeTickListener(this);
+			simulator.addTickListener(this);
+			return;
+		}
+		long end = currentTime + timeStep;
+		nextCheckpoint = (end / interval + 1) * interval;
+
+		final byte[] state = capture();
+		final File target = file;
+		final long sequence = ++captured;
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			@Override
+			public Object call() throws IOException {
+				synchronized (Checkpointer.this) {
+					// an older checkpoint never replaces a newer one
+					if (sequence > written) {
+						writeFile(state, target);
+						written = sequence;
+					}
+				}
+				return null;
+			}
+		});
+		lastWrite = task;
+		if (executor == null) {
+			task.run();
+		} else {
+			executor.execute(task);
+		}
+	}
+
+	private boolean isLastTickListener() {
+		Object last = null;
+		for (Iterator<?> it = simulator.getTickListeners().iterator(); it.hasNext();) {
+			last = it.next();
+		}
+		return last == this;
+	}
+
+	/**
+	 * Restores a checkpoint that was written by {@link #write(File)}.
+	 * @param source The file.
+	 * @throws IOException if the file cannot be read or does not match the
+	 *             simulation.
+	 * @see #restore(byte[])
+	 */
+	public void restore(File source) throws IOException {
+		restore(readFile(source));
+	}
+
+	/**
+	 * Restores a state that was saved by {@link #capture()} into the
+	 * simulation of this checkpointer. The simulator must be configured with
+	 * the same models as the simulator of which the state was saved and no
+	 * objects can be registered yet.
+	 * @param state The uncompressed state.
+	 * @throws IOException if the state does not match the simulation or
+	 *             needs a hook that is not given.
+	 */
+	public void restore(byte[] state) throws IOException {
+		if (!simulator.getRegisteredObjects().isEmpty()) {
+			throw new IllegalStateException("the state can only be restored in a simulator without registered objects");
+		}
+		CheckpointInput in = new CheckpointInput(new ByteArrayInputStream(state));
+		Map<String, StateHook<?>> hooksById = new HashMap<String, StateHook<?>>();
+		for (StateHook<?> h : hooks) {
+			hooksById.put(h.getId(), h);
+		}
+		StateHook<?>[] table = new StateHook<?>[in.readVarint()];
+		for (int i = 0; i < table.length; i++) {
+			String id = in.readUTF();
+			table[i] = hooksById.get(id);
+			if (table[i] == null) {
+				throw new IOException("no state hook for objects of: " + id);
+			}
+		}
+		in.setHooks(table);
+
+		List<Model<?>> models = simulator.getModels();
+		int n = in.readVarint();
+		if (n != models.size()) {
+			throw new IOException("the checkpoint has " + n + " models, the simulator " + models.size());
+		}
+		for (Model<?> m : models) {
+			String name = in.readUTF();
+			if (!name.equals(m.getClass().getName())) {
+				throw new IOException("the checkpoint has a " + name + " where the simulator has a "
+						+ m.getClass().getName());
+			}
+			in.addReference(m);
+		}
+		if (in.readBoolean() != (controller != null)) {
+			throw new IOException(controller == null ? "the checkpoint has a controller" : "the checkpoint has no controller");
+		}
+		if (controller != null) {
+			in.addReference(controller);
+		}
+
+		int count = in.readVarint();
+		List<Object> objects = new ArrayList<Object>(count);
+		for (int i = 0; i < count; i++) {
+			Object o = in.readValue();
+			if (o == null) {
+				throw new IOException("registered object is null");
+			}
+			in.addReference(o);
+			objects.add(o);
+		}
+		for (Object o : objects) {
+			simulator.register(o);
+		}
+
+		simulator.restoreState(in);
+		for (Model<?> m : models) {
+			if (m instanceof Checkpointable) {
+				((Checkpointable) m).restoreState(in);
+			}
+		}
+		if (controller != null) {
+			controller.restoreState(in);
+		}
+		if (in.read() != -1) {
+			throw new IOException("the checkpoint has more data than was restored");
+		}
+	}
+
+	private static void writeFile(byte[] state, File target) throws IOException {
+		File tmp = new File(target.getPath() + ".tmp");
+		Deflater deflater = new Deflater();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(state.length);
+			DeflaterOutputStream z = new DeflaterOutputStream(out, deflater);
+			z.write(state);
+			z.finish();
+		} finally {
+			deflater.end();
+			out.close();
+		}
+		// the previous checkpoint remains until the new one is complete
+		if (target.exists() && !target.delete()) {
+			throw new IOException("cannot replace checkpoint: " + target);
+		}
+		if (!tmp.renameTo(target)) {
+			throw new IOException("cannot rename " + tmp + " to " + target);
+		}
+	}
+
+	private static byte[] readFile(File source) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("not a checkpoint: " + source);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported version of checkpoint: " + version);
+			}
+			int length = in.readInt();
+			if (length < 0) {
+				throw new IOException("corrupt checkpoint: " + source);
+			}
+			byte[] state = new byte[length];
+			Inflater inflater = new Inflater();
+			try {
+				new DataInputStream(new InflaterInputStream(in, inflater)).readFully(state);
+			} finally {
+				inflater.end();
+			}
+			return state;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package rinde.sim.core.checkpoint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+/**
+ * Copies the state of a random generator. {@link RandomGenerator} has no
+ * methods to get or set the state, the state is read from the fields of the
+ * generator instead: all instance fields of the class and its superclasses,
+ * including for example the cached gaussian of
+ * {@link org.apache.commons.math.random.BitsStreamGenerator}. This works for
+ * all generators of which the state consists of primitives and arrays of
+ * <code>int</code> or <code>long</code>, such as
+ * {@link org.apache.commons.math.random.MersenneTwister} and
+ * {@link rinde.sim.util.XoroshiroRandomGenerator}. The state is restored
+ * into an existing generator, objects that hold a reference to the generator
+ * continue with the restored sequence.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class RandomState {
+
+	private RandomState() {}
+
+	static void write(RandomGenerator generator, DataOutput out) throws IOException {
+		out.writeUTF(generator.getClass().getName());
+		try {
+			for (Field f : fields(generator.getClass())) {
+				writeField(f, generator, out);
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("cannot read the state of " + generator.getClass().getName(), e);
+		}
+	}
+
+	static void read(RandomGenerator generator, DataInput in) throws IOException {
+		String className = in.readUTF();
+		if (!className.equals(generator.getClass().getName())) {
+			throw new IOException("the checkpoint contains the state of a " + className + ", not of a "
+					+ generator.getClass().getName());
+		}
+		try {
+			for (Field f : fields(generator.getClass())) {
+				readField(f, generator, in);
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("cannot restore the state of " + className, e);
+		}
+	}
+
+	private static void writeField(Field f, Object o, DataOutput out) throws IllegalAccessException, IOException {
+		Class<?> type = f.getType();
+		if (type == long.class) {
+			out.writeLong(f.getLong(o));
+		} else if (type == int.class) {
+			out.writeInt(f.getInt(o));
+		} else if (type == double.class) {
+			out.writeDouble(f.getDouble(o));
+		} else if (type == float.class) {
+			out.writeFloat(f.getFloat(o));
+		} else if (type == boolean.class) {
+			out.writeBoolean(f.getBoolean(o));
+		} else if (type == int[].class) {
+			int[] values = (int[]) f.get(o);
+			out.writeInt(values.length);
+			for (int v : values) {
+				out.writeInt(v);
+			}
+		} else if (type == long[].class) {
+			long[] values = (long[]) f.get(o);
+			out.writeInt(values.length);
+			for (long v : values) {
+				out.writeLong(v);
+			}
+		} else {
+			throw new IllegalArgumentException("cannot checkpoint the state of " + o.getClass().getName()
+					+ ", field " + f.getName() + " has an unsupported type: " + type.getName());
+		}
+	}
+
+	private static void readField(Field f, Object o, DataInput in) throws IllegalAccessException, IOException {
+		Class<?> type = f.getType();
+		if (type == long.class) {
+			f.setLong(o, in.readLong());
+		} else if (type == int.class) {
+			f.setInt(o, in.readInt());
+		} else if (type == double.class) {
+			f.setDouble(o, in.readDouble());
+		} else if (type == float.class) {
+			f.setFloat(o, in.readFloat());
+		} else if (type == boolean.class) {
+			f.setBoolean(o, in.readBoolean());
+		} else if (type == int[].class) {
+			int[] values = new int[in.readInt()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.readInt();
+			}
+			f.set(o, values);
+		} else if (type == long[].class) {
+			long[] values = new long[in.readInt()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.readLong();
+			}
+			f.set(o, values);
+		} else {
+			throw new IllegalArgumentException("cannot restore the state of " + o.getClass().getName()
+					+ ", field " + f.getName() + " has an unsupported type: " + type.getName());
+		}
+	}
+
+	// the instance fields of the class and its superclasses in a fixed order
+	private static List<Field> fields(Class<?> type) {
+		List<Field> result = new ArrayList<Field>();
+		for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+			Field[] declared = c.getDeclaredFields();
+			Arrays.sort(declared, new Comparator<Field>() {
+				@Override
+				public int compare(Field f1, Field f2) {
+					return f1.getName().compareTo(f2.getName());
+				}
+			});
+			for (Field f : declared) {
+				if (!Modifier.isStatic(f.getModifiers())) {
+					f.setAccessible(true);
+					result.add(f);
+				}
+			}
+		}
+		return result;
+	}
+}
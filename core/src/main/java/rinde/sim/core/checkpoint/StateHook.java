@@ -0,0 +1,47 @@
+package rinde.sim.core.checkpoint;
+
+import java.io.IOException;
+
+/**
+ * Saves and restores the objects of a class that are not part of the
+ * simulator itself: the agents that are registered in the simulator and the
+ * messages that are waiting to be delivered. A restored object is a new
+ * instance, an agent is registered in the simulator after it is restored.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface StateHook<T> {
+
+	/**
+	 * @return The name of the hook that is stored in the checkpoint, the hook
+	 *         of an object is found with this name when the checkpoint is
+	 *         restored.
+	 */
+	String getId();
+
+	/**
+	 * @return The class of the objects, the hook is also used for subclasses
+	 *         that do not have a hook of their own.
+	 */
+	Class<T> getType();
+
+	/**
+	 * Writes the state of the object. Other registered objects are written
+	 * with {@link CheckpointOutput#writeReference(Object)}.
+	 * @param object The object.
+	 * @param out The output.
+	 * @throws IOException if the output cannot be written.
+	 */
+	void save(T object, CheckpointOutput out) throws IOException;
+
+	/**
+	 * Creates an object with the state that was written by
+	 * {@link #save(Object, CheckpointOutput)}. Registered objects are read
+	 * with {@link CheckpointInput#readReference()}, only the models and the
+	 * objects that were registered before this object are available.
+	 * @param in The input.
+	 * @return A new object.
+	 * @throws IOException if the input cannot be read.
+	 */
+	T restore(CheckpointInput in) throws IOException;
+}
@@ -0,0 +1,146 @@
+package rinde.sim.core.graph;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A* search over a {@link GraphIndex}. The cost of a connection and the
+ * heuristic are both the euclidean distance between nodes, this search
+ * therefore computes the same paths as
+ * {@link Graphs#shortestPathEuclidianDistance(Graph, Point, Point)}.
+ * <p>
+ * All working memory (scores, open set and closed set) is allocated once and
+ * reused between queries, making a query cost O((V + E) log V) without any
+ * hashing of {@link Point}s. Instances are not thread-safe, use one instance
+ * per thread. The underlying {@link GraphIndex} can be shared.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class AStarSearch implements RoutingStrategy {
+
+	private static final int UNVISITED = Integer.MIN_VALUE;
+
+	private final GraphIndex index;
+	private final double[] gScore;
+	private final int[] cameFrom;
+	private final BitSet closed;
+	private final IndexedMinHeap open;
+	// nodes of which the gScore was set during the last query
+	private final int[] touched;
+	private int touchedCount;
+
+	public AStarSearch(GraphIndex index) {
+		if (index == null) {
+			throw new IllegalArgumentException("index cannot be null");
+		}
+		this.index = index;
+		int n = index.getNumberOfNodes();
+		gScore = new double[n];
+		cameFrom = new int[n];
+		closed = new BitSet(n);
+		open = new IndexedMinHeap(n);
+		touched = new int[n];
+		Arrays.fill(cameFrom, UNVISITED);
+	}
+
+	public GraphIndex getIndex() {
+		return index;
+	}
+
+	@Override
+	public List<Point> shortestPath(Point from, Point to) {
+		int f = index.indexOf(from);
+		if (f < 0) {
+			throw new IllegalArgumentException("from should be valid vertex. " + from);
+		}
+		int t = index.indexOf(to);
+		if (t < 0) {
+			throw new PathNotFoundException("Cannot reach " + to + " from " + from);
+		}
+		return index.toPath(shortestPath(f, t));
+	}
+
+	/**
+	 * Computes the shortest path between two node indices.
+	 * @param from The index of the start node.
+	 * @param to The index of the destination node.
+	 * @return The node indices of the path, including <code>from</code> and
+	 *         <code>to</code>.
+	 * @throws PathNotFoundException when <code>to</code> cannot be reached.
+	 */
+	public int[] shortestPath(int from, int to) {
+		final double[] xs = index.xs;
+		final double[] ys = index.ys;
+		final int[] offsets = index.offsets;
+		final int[] targets = index.targets;
+		final double tx = xs[to];
+		final double ty = ys[to];
+
+		reset();
+		setScore(from, 0, -1);
+		open.update(from, distance(xs[from], ys[from], tx, ty));
+
+		while (!open.isEmpty()) {
+			final int current = open.poll();
+			if (current == to) {
+				return reconstructPath(to);
+			}
+			closed.set(current);
+
+			final double cx = xs[current];
+			final double cy = ys[current];
+			final double g = gScore[current];
+			for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+				final int next = targets[e];
+				if (closed.get(next)) {
+					continue;
+				}
+				final double tentative = g + distance(cx, cy, xs[next], ys[next]);
+				if (!open.contains(next) || tentative < gScore[next]) {
+					setScore(next, tentative, current);
+					open.update(next, tentative + distance(xs[next], ys[next], tx, ty));
+				}
+			}
+		}
+		throw new PathNotFoundException("Cannot reach " + index.getNode(to) + " from " + index.getNode(from));
+	}
+
+	private void setScore(int node, double score, int parent) {
+		if (cameFrom[node] == UNVISITED) {
+			touched[touchedCount++] = node;
+		}
+		gScore[node] = score;
+		cameFrom[node] = parent;
+	}
+
+	private void reset() {
+		for (int i = 0; i < touchedCount; i++) {
+			cameFrom[touched[i]] = UNVISITED;
+		}
+		touchedCount = 0;
+		closed.clear();
+		open.clear();
+	}
+
+	private int[] reconstructPath(int to) {
+		int length = 1;
+		for (int n = to; cameFrom[n] >= 0; n = cameFrom[n]) {
+			length++;
+		}
+		int[] path = new int[length];
+		int n = to;
+		for (int i = length - 1; i >= 0; i--) {
+			path[i] = n;
+			n = cameFrom[n];
+		}
+		return path;
+	}
+
+	// identical to Point.distance(Point, Point)
+	static double distance(double x1, double y1, double x2, double y2) {
+		double dx = x1 - x2;
+		double dy = y1 - y2;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
@@ -0,0 +1,517 @@
+package rinde.sim.core.graph;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+/**
+ * Immutable {@link Graph} implementation that stores its topology in
+ * compressed sparse row (CSR) form. Node coordinates are kept in primitive
+ * arrays (see {@link GraphIndex}), the outgoing and incoming connections of
+ * a node are slices of <code>int[]</code> arrays and the length and maximum
+ * speed of every connection are stored in parallel <code>double[]</code>
+ * arrays. Edge data objects are not stored, they are recreated on request by
+ * an {@link EdgeDataFactory}. As a consequence only the length and maximum
+ * speed of the edge data survive the conversion.
+ * <p>
+ * Instances are created by freezing an existing graph with
+ * {@link #copyOf(Graph, EdgeDataFactory)} or by using a {@link Builder}. All
+ * methods that modify the graph throw an
+ * {@link UnsupportedOperationException}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class CompactGraph<E extends EdgeData> implements Graph<E> {
+
+	/**
+	 * Creates {@link LengthEdgeData} instances.
+	 */
+	public static final EdgeDataFactory<LengthEdgeData> LENGTH_DATA = new EdgeDataFactory<LengthEdgeData>() {
+		@Override
+		public LengthEdgeData create(double length, double maxSpeed) {
+			return new LengthEdgeData(length);
+		}
+	};
+
+	/**
+	 * Creates {@link MultiAttributeEdgeData} instances, the maximum speed is
+	 * only set when it is defined.
+	 */
+	public static final EdgeDataFactory<MultiAttributeEdgeData> MULTI_ATTRIBUTE_DATA = new EdgeDataFactory<MultiAttributeEdgeData>() {
+		@Override
+		public MultiAttributeEdgeData create(double length, double maxSpeed) {
+			if (Double.isNaN(maxSpeed)) {
+				return new MultiAttributeEdgeData(length);
+			}
+			return new MultiAttributeEdgeData(length, maxSpeed);
+		}
+	};
+
+	private final GraphIndex index;
+	private final int[] inOffsets;
+	private final int[] inSources;
+	private final double[] lengths;
+	private final double[] maxSpeeds;
+	// connections for which edge data was specified
+	private final BitSet hasData;
+	private final EdgeDataFactory<E> factory;
+	private final Set<Point> nodeSet;
+
+	CompactGraph(GraphIndex index, int[] inOffsets, int[] inSources, double[] lengths, double[] maxSpeeds, BitSet hasData, EdgeDataFactory<E> factory) {
+		this.index = index;
+		this.inOffsets = inOffsets;
+		this.inSources = inSources;
+		this.lengths = lengths;
+		this.maxSpeeds = maxSpeeds;
+		this.hasData = hasData;
+		this.factory = factory;
+		nodeSet = new NodeSet();
+	}
+
+	/**
+	 * Creates an immutable copy of the specified graph. The nodes and the
+	 * outgoing connections of each node keep the iteration order of the
+	 * original graph.
+	 * @param graph The graph to copy.
+	 * @param factory The factory used for recreating edge data.
+	 * @return A new compact graph.
+	 */
+	public static <E extends EdgeData> CompactGraph<E> copyOf(Graph<? extends E> graph, EdgeDataFactory<E> factory) {
+		if (graph instanceof CompactGraph && ((CompactGraph<?>) graph).factory == factory) {
+			@SuppressWarnings("unchecked")
+			CompactGraph<E> g = (CompactGraph<E>) graph;
+			return g;
+		}
+		return new Builder<E>(factory).addGraph(graph).build();
+	}
+
+	/**
+	 * @return The int-indexed topology of this graph. The node indices used by
+	 *         the index are the indices used by this graph.
+	 */
+	public GraphIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @param from The start node.
+	 * @param to The end node.
+	 * @return The maximum speed of the connection or {@link Double#NaN} when
+	 *         it is not defined.
+	 * @throws IllegalArgumentException when the connection does not exist.
+	 */
+	public double connectionMaxSpeed(Point from, Point to) {
+		return maxSpeeds[existingEdge(from, to)];
+	}
+
+	@Override
+	public boolean containsNode(Point node) {
+		return index.indexOf(node) >= 0;
+	}
+
+	@Override
+	public Collection<Point> getOutgoingConnections(Point node) {
+		int i = index.indexOf(node);
+		if (i < 0) {
+			return new NodeList(index.targets, 0, 0);
+		}
+		return new NodeList(index.targets, index.offsets[i], index.offsets[i + 1]);
+	}
+
+	@Override
+	public Collection<Point> getIncomingConnections(Point node) {
+		int i = index.indexOf(node);
+		if (i < 0) {
+			return new NodeList(inSources, 0, 0);
+		}
+		return new NodeList(inSources, inOffsets[i], inOffsets[i + 1]);
+	}
+
+	@Override
+	public boolean hasConnection(Point from, Point to) {
+		return edge(from, to) >= 0;
+	}
+
+	@Override
+	public Connection<E> getConnection(Point from, Point to) {
+		int e = edge(from, to);
+		if (e < 0) {
+			throw new IllegalArgumentException(from + " -> " + to + " is not a connection.");
+		}
+		return new Connection<E>(from, to, data(e));
+	}
+
+	@Override
+	public E connectionData(Point from, Point to) {
+		int e = edge(from, to);
+		return e < 0 ? null : data(e);
+	}
+
+	@Override
+	public double connectionLength(Point from, Point to) {
+		return lengths[existingEdge(from, to)];
+	}
+
+	@Override
+	public int getNumberOfConnections() {
+		return index.targets.length;
+	}
+
+	@Override
+	public List<Connection<E>> getConnections() {
+		List<Connection<E>> connections = new ArrayList<Connection<E>>(getNumberOfConnections());
+		for (int i = 0; i < index.nodes.length; i++) {
+			for (int e = index.offsets[i]; e < index.offsets[i + 1]; e++) {
+				connections.add(new Connection<E>(index.nodes[i], index.nodes[index.targets[e]], data(e)));
+			}
+		}
+		return connections;
+	}
+
+	@Override
+	public int getNumberOfNodes() {
+		return index.nodes.length;
+	}
+
+	@Override
+	public Set<Point> getNodes() {
+		return nodeSet;
+	}
+
+	@Override
+	public void addConnection(Point from, Point to, E edgeData) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public void addConnection(Point from, Point to) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public void addConnection(Connection<E> connection) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public E setEdgeData(Point from, Point to, E edgeData) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public void addConnections(Collection<Connection<E>> connections) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public void merge(Graph<E> other) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return index.targets.length == 0;
+	}
+
+	@Override
+	public void removeNode(Point node) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@Override
+	public void removeConnection(Point from, Point to) {
+		throw new UnsupportedOperationException("CompactGraph is immutable");
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Graph ? equals((Graph) other) : false;
+	}
+
+	@Override
+	public boolean equals(Graph<? extends E> other) {
+		return Graphs.equals(this, other);
+	}
+
+	@Override
+	public int hashCode() {
+		return Graphs.hashCode(this);
+	}
+
+	@Override
+	public Point getRandomNode(RandomGenerator generator) {
+		if (getNumberOfNodes() == 0) {
+			throw new IllegalStateException("no nodes in the graph");
+		}
+		return index.nodes[generator.nextInt(index.nodes.length)];
+	}
+
+	private int edge(Point from, Point to) {
+		int f = index.indexOf(from);
+		if (f < 0 || to == null) {
+			return -1;
+		}
+		for (int e = index.offsets[f]; e < index.offsets[f + 1]; e++) {
+			int t = index.targets[e];
+			if (index.xs[t] == to.x && index.ys[t] == to.y) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	private int existingEdge(Point from, Point to) {
+		int e = edge(from, to);
+		if (e < 0) {
+			throw new IllegalArgumentException("Can not get connection length from a non-existing connection.");
+		}
+		return e;
+	}
+
+	private E data(int edge) {
+		return hasData.get(edge) ? factory.create(lengths[edge], maxSpeeds[edge]) : null;
+	}
+
+	/**
+	 * Recreates edge data from the values stored by a {@link CompactGraph}.
+	 * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+	 * @since 2.1
+	 */
+	public interface EdgeDataFactory<E extends EdgeData> {
+		/**
+		 * @param length The length of the connection.
+		 * @param maxSpeed The maximum speed on the connection or
+		 *            {@link Double#NaN} if it is not defined.
+		 * @return A new edge data instance.
+		 */
+		E create(double length, double maxSpeed);
+	}
+
+	/**
+	 * Collects connections and freezes them into a {@link CompactGraph}. Nodes
+	 * are numbered in order of appearance, outgoing connections keep the order
+	 * in which they were added.
+	 * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+	 * @since 2.1
+	 */
+	public static class Builder<E extends EdgeData> {
+		private final EdgeDataFactory<E> factory;
+		private final Map<Point, Integer> ids;
+		private final List<Point> nodes;
+		private int[] froms;
+		private int[] tos;
+		private double[] lengths;
+		private double[] maxSpeeds;
+		private final BitSet hasData;
+		private int size;
+
+		public Builder(EdgeDataFactory<E> factory) {
+			if (factory == null) {
+				throw new IllegalArgumentException("factory cannot be null");
+			}
+			this.factory = factory;
+			ids = new LinkedHashMap<Point, Integer>();
+			nodes = new ArrayList<Point>();
+			froms = new int[16];
+			tos = new int[16];
+			lengths = new double[16];
+			maxSpeeds = new double[16];
+			hasData = new BitSet();
+		}
+
+		/**
+		 * Adds all nodes and connections of the specified graph.
+		 * @param graph The graph to add.
+		 * @return This builder.
+		 */
+		public Builder<E> addGraph(Graph<? extends E> graph) {
+			for (Point p : graph.getNodes()) {
+				id(p);
+			}
+			for (Point from : graph.getNodes()) {
+				for (Point to : graph.getOutgoingConnections(from)) {
+					add(from, to, graph.connectionData(from, to), graph.connectionLength(from, to));
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a connection.
+		 * @param from The start node.
+		 * @param to The end node.
+		 * @param edgeData The data of the connection, may be <code>null</code>.
+		 * @return This builder.
+		 */
+		public Builder<E> addConnection(Point from, Point to, E edgeData) {
+			if (from.equals(to)) {
+				throw new IllegalArgumentException("A connection cannot be circular: " + from + " -> " + to);
+			}
+			add(from, to, edgeData, edgeData == null ? Point.distance(from, to) : edgeData.getLength());
+			return this;
+		}
+
+		public Builder<E> addConnection(Point from, Point to) {
+			return addConnection(from, to, null);
+		}
+
+		private void add(Point from, Point to, EdgeData data, double length) {
+			if (size == froms.length) {
+				int capacity = size * 2;
+				froms = Arrays.copyOf(froms, capacity);
+				tos = Arrays.copyOf(tos, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				maxSpeeds = Arrays.copyOf(maxSpeeds, capacity);
+			}
+			froms[size] = id(from);
+			tos[size] = id(to);
+			lengths[size] = length;
+			maxSpeeds[size] = data instanceof MultiAttributeEdgeData ? ((MultiAttributeEdgeData) data).getMaxSpeed() : Double.NaN;
+			if (data != null) {
+				hasData.set(size);
+			}
+			size++;
+		}
+
+		private int id(Point p) {
+			Integer id = ids.get(p);
+			if (id == null) {
+				id = nodes.size();
+				ids.put(p, id);
+				nodes.add(p);
+			}
+			return id;
+		}
+
+		/**
+		 * @return A new immutable graph containing all added connections.
+		 * @throws IllegalArgumentException when a connection was added more
+		 *             than once.
+		 */
+		public CompactGraph<E> build() {
+			int n = nodes.size();
+			int[] offsets = new int[n + 1];
+			int[] inOffsets = new int[n + 1];
+			for (int e = 0; e < size; e++) {
+				offsets[froms[e] + 1]++;
+				inOffsets[tos[e] + 1]++;
+			}
+			for (int i = 0; i < n; i++) {
+				offsets[i + 1] += offsets[i];
+				inOffsets[i + 1] += inOffsets[i];
+			}
+
+			// stable counting sort on the start node
+			int[] targets = new int[size];
+			double[] sortedLengths = new double[size];
+			double[] sortedSpeeds = new double[size];
+			BitSet sortedData = new BitSet(size);
+			int[] sources = new int[size];
+			int[] inSources = new int[size];
+			int[] out = Arrays.copyOf(offsets, n);
+			for (int e = 0; e < size; e++) {
+				int pos = out[froms[e]]++;
+				targets[pos] = tos[e];
+				sources[pos] = froms[e];
+				sortedLengths[pos] = lengths[e];
+				sortedSpeeds[pos] = maxSpeeds[e];
+				if (hasData.get(e)) {
+					sortedData.set(pos);
+				}
+			}
+			int[] in = Arrays.copyOf(inOffsets, n);
+			for (int e = 0; e < size; e++) {
+				inSources[in[targets[e]]++] = sources[e];
+			}
+
+			Point[] nodeArray = nodes.toArray(new Point[n]);
+			for (int i = 0; i < n; i++) {
+				for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+					for (int d = offsets[i]; d < e; d++) {
+						if (targets[d] == targets[e]) {
+							throw new IllegalArgumentException("Connection already exists: " + nodeArray[i] + " -> "
+									+ nodeArray[targets[e]]);
+						}
+					}
+				}
+			}
+			GraphIndex index = new GraphIndex(nodeArray, offsets, targets);
+			return new CompactGraph<E>(index, inOffsets, inSources, sortedLengths, sortedSpeeds, sortedData, factory);
+		}
+	}
+
+	// unmodifiable view on a slice of node indices
+	private class NodeList extends AbstractList<Point> {
+		private final int[] elements;
+		private final int from;
+		private final int to;
+
+		NodeList(int[] elements, int from, int to) {
+			this.elements = elements;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Point get(int i) {
+			if (i < 0 || i >= to - from) {
+				throw new IndexOutOfBoundsException("index: " + i + " size: " + size());
+			}
+			return index.nodes[elements[from + i]];
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	private class NodeSet extends AbstractSet<Point> {
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Point && index.indexOf((Point) o) >= 0;
+		}
+
+		@Override
+		public Iterator<Point> iterator() {
+			return new Iterator<Point>() {
+				private int i;
+
+				@Override
+				public boolean hasNext() {
+					return i < index.nodes.length;
+				}
+
+				@Override
+				public Point next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return index.nodes[i++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("CompactGraph is immutable");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return index.nodes.length;
+		}
+	}
+}
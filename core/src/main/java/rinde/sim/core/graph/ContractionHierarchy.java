@@ -0,0 +1,653 @@
+package rinde.sim.core.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Contraction hierarchy of a graph, a {@link RoutingStrategy} that answers
+ * shortest path queries much faster than {@link AStarSearch} at the cost of
+ * a one-time preprocessing step.
+ * <p>
+ * The preprocessing ({@link #create(Graph)}) contracts the nodes one by one
+ * in order of importance (edge difference plus the number of contracted
+ * neighbours, with lazy updates). When a node is contracted, a shortcut is
+ * added between each pair of its neighbours for which no shorter witness
+ * path exists. A query is a bidirectional Dijkstra search that only follows
+ * connections towards more important nodes, the shortcuts of the resulting
+ * path are unpacked into the original connections.
+ * <p>
+ * Like {@link AStarSearch} the cost of a connection is the euclidean
+ * distance between its nodes, a hierarchy therefore computes paths of the
+ * same length as the default routing of the
+ * {@link rinde.sim.core.model.RoadModel}. A hierarchy does not follow
+ * modifications of the graph it was created from. Preprocessing results can
+ * be stored with {@link #write(OutputStream)} and loaded with
+ * {@link #read(InputStream)}. Instances are not thread-safe.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class ContractionHierarchy implements RoutingStrategy {
+
+	// "RSCH"
+	static final int MAGIC = 0x52534348;
+	static final int VERSION = 1;
+
+	private static final int NONE = -1;
+
+	private final GraphIndex index;
+	private final int[] rank;
+	// original connections first (in index order) followed by the shortcuts
+	private final int[] edgeFrom;
+	private final int[] edgeTo;
+	private final double[] edgeWeight;
+	// the two edges a shortcut replaces, NONE for original connections
+	private final int[] edgeFirst;
+	private final int[] edgeSecond;
+
+	// upward graph for the forward search, stored at the start node
+	private final int[] forwardOffsets;
+	private final int[] forwardEdges;
+	// upward graph for the backward search, stored at the end node
+	private final int[] backwardOffsets;
+	private final int[] backwardEdges;
+
+	// query state
+	private final double[] forwardDist;
+	private final double[] backwardDist;
+	private final int[] forwardParent;
+	private final int[] backwardParent;
+	private final IndexedMinHeap forwardQueue;
+	private final IndexedMinHeap backwardQueue;
+	private final int[] touched;
+	private int touchedCount;
+
+	ContractionHierarchy(GraphIndex index, int[] rank, int[] edgeFrom, int[] edgeTo, double[] edgeWeight, int[] edgeFirst, int[] edgeSecond) {
+		this.index = index;
+		this.rank = rank;
+		this.edgeFrom = edgeFrom;
+		this.edgeTo = edgeTo;
+		this.edgeWeight = edgeWeight;
+		this.edgeFirst = edgeFirst;
+		this.edgeSecond = edgeSecond;
+
+		int n = index.getNumberOfNodes();
+		forwardOffsets = new int[n + 1];
+		backwardOffsets = new int[n + 1];
+		for (int e = 0; e < edgeFrom.length; e++) {
+			if (isUpward(e)) {
+				forwardOffsets[edgeFrom[e] + 1]++;
+			} else {
+				backwardOffsets[edgeTo[e] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			forwardOffsets[i + 1] += forwardOffsets[i];
+			backwardOffsets[i + 1] += backwardOffsets[i];
+		}
+		forwardEdges = new int[forwardOffsets[n]];
+		backwardEdges = new int[backwardOffsets[n]];
+		int[] f = Arrays.copyOf(forwardOffsets, n);
+		int[] b = Arrays.copyOf(backwardOffsets, n);
+		for (int e = 0; e < edgeFrom.length; e++) {
+			if (isUpward(e)) {
+				forwardEdges[f[edgeFrom[e]]++] = e;
+			} else {
+				backwardEdges[b[edgeTo[e]]++] = e;
+			}
+		}
+
+		forwardDist = new double[n];
+		backwardDist = new double[n];
+		Arrays.fill(forwardDist, Double.POSITIVE_INFINITY);
+		Arrays.fill(backwardDist, Double.POSITIVE_INFINITY);
+		forwardParent = new int[n];
+		backwardParent = new int[n];
+		forwardQueue = new IndexedMinHeap(n);
+		backwardQueue = new IndexedMinHeap(n);
+		touched = new int[n];
+	}
+
+	/**
+	 * Preprocesses the specified graph.
+	 * @param graph The graph.
+	 * @return The contraction hierarchy of the graph.
+	 */
+	public static ContractionHierarchy create(Graph<? extends EdgeData> graph) {
+		if (graph == null) {
+			throw new IllegalArgumentException("graph cannot be null");
+		}
+		GraphIndex index = graph instanceof CompactGraph ? ((CompactGraph<?>) graph).getIndex() : GraphIndex.create(graph);
+		return new Contractor(index).contract();
+	}
+
+	public GraphIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return The number of shortcuts that were added by the preprocessing.
+	 */
+	public int getNumberOfShortcuts() {
+		return edgeFrom.length - index.getNumberOfConnections();
+	}
+
+	@Override
+	public List<Point> shortestPath(Point from, Point to) {
+		int f = index.indexOf(from);
+		if (f < 0) {
+			throw new IllegalArgumentException("from should be valid vertex. " + from);
+		}
+		int t = index.indexOf(to);
+		if (t < 0) {
+			throw new PathNotFoundException("Cannot reach " + to + " from " + from);
+		}
+		return index.toPath(shortestPath(f, t));
+	}
+
+	/**
+	 * Computes the shortest path between two node indices.
+	 * @param from The index of the start node.
+	 * @param to The index of the destination node.
+	 * @return The node indices of the path, including <code>from</code> and
+	 *         <code>to</code>.
+	 * @throws PathNotFoundException when <code>to</code> cannot be reached.
+	 */
+	public int[] shortestPath(int from, int to) {
+		if (from == to) {
+			return new int[] { from };
+		}
+		reset();
+		setForward(from, 0, NONE);
+		forwardQueue.update(from, 0);
+		setBackward(to, 0, NONE);
+		backwardQueue.update(to, 0);
+
+		double best = Double.POSITIVE_INFINITY;
+		int meeting = NONE;
+		while (true) {
+			boolean forwardDone = forwardQueue.isEmpty() || forwardQueue.key(forwardQueue.peek()) >= best;
+			boolean backwardDone = backwardQueue.isEmpty() || backwardQueue.key(backwardQueue.peek()) >= best;
+			if (forwardDone && backwardDone) {
+				break;
+			}
+			boolean forward = !forwardDone
+					&& (backwardDone || forwardQueue.key(forwardQueue.peek()) <= backwardQueue.key(backwardQueue.peek()));
+			if (forward) {
+				int x = forwardQueue.poll();
+				if (forwardDist[x] + backwardDist[x] < best) {
+					best = forwardDist[x] + backwardDist[x];
+					meeting = x;
+				}
+				for (int i = forwardOffsets[x]; i < forwardOffsets[x + 1]; i++) {
+					int e = forwardEdges[i];
+					int y = edgeTo[e];
+					double d = forwardDist[x] + edgeWeight[e];
+					if (d < forwardDist[y]) {
+						setForward(y, d, e);
+						forwardQueue.update(y, d);
+					}
+				}
+			} else {
+				int x = backwardQueue.poll();
+				if (forwardDist[x] + backwardDist[x] < best) {
+					best = forwardDist[x] + backwardDist[x];
+					meeting = x;
+				}
+				for (int i = backwardOffsets[x]; i < backwardOffsets[x + 1]; i++) {
+					int e = backwardEdges[i];
+					int y = edgeFrom[e];
+					double d = backwardDist[x] + edgeWeight[e];
+					if (d < backwardDist[y]) {
+						setBackward(y, d, e);
+						backwardQueue.update(y, d);
+					}
+				}
+			}
+		}
+		if (meeting == NONE) {
+			throw new PathNotFoundException("Cannot reach " + index.getNode(to) + " from " + index.getNode(from));
+		}
+		return path(from, meeting);
+	}
+
+	private int[] path(int from, int meeting) {
+		IntList edges = new IntList();
+		for (int x = meeting; forwardParent[x] != NONE; x = edgeFrom[forwardParent[x]]) {
+			edges.add(forwardParent[x]);
+		}
+		IntList path = new IntList();
+		path.add(from);
+		IntList stack = new IntList();
+		for (int i = edges.size() - 1; i >= 0; i--) {
+			unpack(edges.get(i), path, stack);
+		}
+		for (int x = meeting; backwardParent[x] != NONE; x = edgeTo[backwardParent[x]]) {
+			unpack(backwardParent[x], path, stack);
+		}
+		return path.toArray();
+	}
+
+	// appends the nodes of the edge, except its start node, to the path
+	private void unpack(int edge, IntList path, IntList stack) {
+		stack.add(edge);
+		while (stack.size() > 0) {
+			int e = stack.removeLast();
+			if (edgeFirst[e] == NONE) {
+				path.add(edgeTo[e]);
+			} else {
+				stack.add(edgeSecond[e]);
+				stack.add(edgeFirst[e]);
+			}
+		}
+	}
+
+	private void setForward(int node, double dist, int parent) {
+		touch(node);
+		forwardDist[node] = dist;
+		forwardParent[node] = parent;
+	}
+
+	private void setBackward(int node, double dist, int parent) {
+		touch(node);
+		backwardDist[node] = dist;
+		backwardParent[node] = parent;
+	}
+
+	private void touch(int node) {
+		if (forwardDist[node] == Double.POSITIVE_INFINITY && backwardDist[node] == Double.POSITIVE_INFINITY) {
+			touched[touchedCount++] = node;
+		}
+	}
+
+	private void reset() {
+		for (int i = 0; i < touchedCount; i++) {
+			forwardDist[touched[i]] = Double.POSITIVE_INFINITY;
+			backwardDist[touched[i]] = Double.POSITIVE_INFINITY;
+		}
+		touchedCount = 0;
+		forwardQueue.clear();
+		backwardQueue.clear();
+	}
+
+	private boolean isUpward(int edge) {
+		return rank[edgeTo[edge]] > rank[edgeFrom[edge]];
+	}
+
+	/**
+	 * Writes this hierarchy in a binary format to the specified stream. The
+	 * stream is not closed.
+	 * @param out The stream to write to.
+	 * @throws IOException when writing fails.
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		int n = index.getNumberOfNodes();
+		data.writeInt(n);
+		for (int i = 0; i < n; i++) {
+			data.writeDouble(index.xs[i]);
+			data.writeDouble(index.ys[i]);
+			data.writeInt(rank[i]);
+		}
+		data.writeInt(edgeFrom.length);
+		for (int e = 0; e < edgeFrom.length; e++) {
+			data.writeInt(edgeFrom[e]);
+			data.writeInt(edgeTo[e]);
+			data.writeDouble(edgeWeight[e]);
+			data.writeInt(edgeFirst[e]);
+			data.writeInt(edgeSecond[e]);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Writes this hierarchy to a file.
+	 * @param file The path of the file.
+	 * @throws IOException when writing fails.
+	 * @see #write(OutputStream)
+	 */
+	public void write(String file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a hierarchy that was written by {@link #write(OutputStream)}. The
+	 * stream is not closed and nothing after the hierarchy is read from it,
+	 * it is not buffered so a buffered stream should be passed for speed.
+	 * @param in The stream to read from.
+	 * @return The hierarchy.
+	 * @throws IOException when reading fails or when the stream does not
+	 *             contain a valid hierarchy.
+	 */
+	public static ContractionHierarchy read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("The stream does not contain a contraction hierarchy.");
+		}
+		int version = data.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported contraction hierarchy version: " + version);
+		}
+		int n = data.readInt();
+		if (n < 0) {
+			throw new IOException("corrupt contraction hierarchy, number of nodes: " + n);
+		}
+		Point[] nodes = new Point[n];
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++) {
+			nodes[i] = new Point(data.readDouble(), data.readDouble());
+			rank[i] = data.readInt();
+		}
+		int m = data.readInt();
+		if (m < 0) {
+			throw new IOException("corrupt contraction hierarchy, number of edges: " + m);
+		}
+		int[] edgeFrom = new int[m];
+		int[] edgeTo = new int[m];
+		double[] edgeWeight = new double[m];
+		int[] edgeFirst = new int[m];
+		int[] edgeSecond = new int[m];
+		int originals = 0;
+		for (int e = 0; e < m; e++) {
+			edgeFrom[e] = data.readInt();
+			edgeTo[e] = data.readInt();
+			edgeWeight[e] = data.readDouble();
+			edgeFirst[e] = data.readInt();
+			edgeSecond[e] = data.readInt();
+			if (edgeFrom[e] < 0 || edgeFrom[e] >= n || edgeTo[e] < 0 || edgeTo[e] >= n) {
+				throw new IOException("corrupt contraction hierarchy, edge " + e + " has an invalid node");
+			}
+			if (edgeFirst[e] == NONE) {
+				// the original connections come first, sorted by start node
+				if (edgeSecond[e] != NONE || originals != e || e > 0 && edgeFrom[e] < edgeFrom[e - 1]) {
+					throw new IOException("corrupt contraction hierarchy, edge " + e + " is out of order");
+				}
+				originals++;
+			} else if (edgeFirst[e] < 0 || edgeFirst[e] >= e || edgeSecond[e] < 0 || edgeSecond[e] >= e) {
+				// a shortcut replaces two edges that were created before it
+				throw new IOException("corrupt contraction hierarchy, shortcut " + e + " has an invalid edge");
+			}
+		}
+
+		// the original connections are stored in index order
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[originals];
+		for (int e = 0; e < originals; e++) {
+			offsets[edgeFrom[e] + 1]++;
+			targets[e] = edgeTo[e];
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		GraphIndex index = new GraphIndex(nodes, offsets, targets);
+		return new ContractionHierarchy(index, rank, edgeFrom, edgeTo, edgeWeight, edgeFirst, edgeSecond);
+	}
+
+	/**
+	 * Reads a hierarchy from a file.
+	 * @param file The path of the file.
+	 * @return The hierarchy.
+	 * @throws IOException when reading fails.
+	 * @see #read(InputStream)
+	 */
+	public static ContractionHierarchy read(String file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Performs the node contraction.
+	 */
+	private static class Contractor {
+		// maximum number of nodes settled by a witness search
+		private static final int SETTLE_LIMIT = 500;
+
+		private final GraphIndex index;
+		private final int n;
+		private final IntList[] out;
+		private final IntList[] in;
+		private final boolean[] contracted;
+		private final int[] deletedNeighbours;
+
+		private int[] edgeFrom;
+		private int[] edgeTo;
+		private double[] edgeWeight;
+		private int[] edgeFirst;
+		private int[] edgeSecond;
+		private int edges;
+
+		private final double[] witnessDist;
+		private final IndexedMinHeap witnessQueue;
+		private final IntList witnessTouched;
+
+		Contractor(GraphIndex index) {
+			this.index = index;
+			n = index.getNumberOfNodes();
+			out = new IntList[n];
+			in = new IntList[n];
+			for (int i = 0; i < n; i++) {
+				out[i] = new IntList();
+				in[i] = new IntList();
+			}
+			contracted = new boolean[n];
+			deletedNeighbours = new int[n];
+
+			int capacity = Math.max(16, index.getNumberOfConnections() * 2);
+			edgeFrom = new int[capacity];
+			edgeTo = new int[capacity];
+			edgeWeight = new double[capacity];
+			edgeFirst = new int[capacity];
+			edgeSecond = new int[capacity];
+
+			witnessDist = new double[n];
+			Arrays.fill(witnessDist, Double.POSITIVE_INFINITY);
+			witnessQueue = new IndexedMinHeap(n);
+			witnessTouched = new IntList();
+
+			for (int i = 0; i < n; i++) {
+				for (int e = index.offsets[i]; e < index.offsets[i + 1]; e++) {
+					int t = index.targets[e];
+					addEdge(i, t, AStarSearch.distance(index.xs[i], index.ys[i], index.xs[t], index.ys[t]), NONE, NONE);
+				}
+			}
+		}
+
+		ContractionHierarchy contract() {
+			int[] rank = new int[n];
+			IndexedMinHeap queue = new IndexedMinHeap(n);
+			for (int v = 0; v < n; v++) {
+				queue.update(v, priority(v));
+			}
+			int order = 0;
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				// lazy update: the priority may have changed since insertion
+				double p = priority(v);
+				if (!queue.isEmpty() && p > queue.key(queue.peek())) {
+					queue.update(v, p);
+					continue;
+				}
+				shortcuts(v, true);
+				contracted[v] = true;
+				rank[v] = order++;
+
+				IntList neighbours = new IntList();
+				for (int i = 0; i < in[v].size(); i++) {
+					int e = in[v].get(i);
+					out[edgeFrom[e]].remove(e);
+					neighbours.add(edgeFrom[e]);
+				}
+				for (int i = 0; i < out[v].size(); i++) {
+					int e = out[v].get(i);
+					in[edgeTo[e]].remove(e);
+					neighbours.add(edgeTo[e]);
+				}
+				for (int i = 0; i < neighbours.size(); i++) {
+					int u = neighbours.get(i);
+					deletedNeighbours[u]++;
+					queue.update(u, priority(u));
+				}
+			}
+			return new ContractionHierarchy(index, rank, Arrays.copyOf(edgeFrom, edges), Arrays.copyOf(edgeTo, edges),
+					Arrays.copyOf(edgeWeight, edges), Arrays.copyOf(edgeFirst, edges), Arrays.copyOf(edgeSecond, edges));
+		}
+
+		private double priority(int v) {
+			return shortcuts(v, false) - in[v].size() - out[v].size() + deletedNeighbours[v];
+		}
+
+		/**
+		 * Computes the shortcuts needed when contracting the node, when
+		 * <code>add</code> is <code>true</code> the shortcuts are added.
+		 */
+		private int shortcuts(int v, boolean add) {
+			int count = 0;
+			IntList incoming = in[v];
+			IntList outgoing = out[v];
+			for (int i = 0; i < incoming.size(); i++) {
+				int ie = incoming.get(i);
+				int u = edgeFrom[ie];
+				double max = -1;
+				for (int j = 0; j < outgoing.size(); j++) {
+					int oe = outgoing.get(j);
+					if (edgeTo[oe] != u) {
+						max = Math.max(max, edgeWeight[ie] + edgeWeight[oe]);
+					}
+				}
+				if (max < 0) {
+					continue;
+				}
+				witnessSearch(u, v, max);
+				for (int j = 0; j < outgoing.size(); j++) {
+					int oe = outgoing.get(j);
+					int w = edgeTo[oe];
+					double cost = edgeWeight[ie] + edgeWeight[oe];
+					if (w != u && witnessDist[w] > cost) {
+						count++;
+						if (add) {
+							addEdge(u, w, cost, ie, oe);
+						}
+					}
+				}
+			}
+			return count;
+		}
+
+		// dijkstra from source ignoring the excluded node
+		private void witnessSearch(int source, int excluded, double maxCost) {
+			for (int i = 0; i < witnessTouched.size(); i++) {
+				witnessDist[witnessTouched.get(i)] = Double.POSITIVE_INFINITY;
+			}
+			witnessTouched.clear();
+			witnessQueue.clear();
+
+			witnessDist[source] = 0;
+			witnessTouched.add(source);
+			witnessQueue.update(source, 0);
+			int settled = 0;
+			while (!witnessQueue.isEmpty()) {
+				int x = witnessQueue.poll();
+				if (witnessDist[x] > maxCost || ++settled > SETTLE_LIMIT) {
+					break;
+				}
+				IntList edgeList = out[x];
+				for (int i = 0; i < edgeList.size(); i++) {
+					int e = edgeList.get(i);
+					int y = edgeTo[e];
+					if (y == excluded) {
+						continue;
+					}
+					double d = witnessDist[x] + edgeWeight[e];
+					if (d < witnessDist[y]) {
+						if (witnessDist[y] == Double.POSITIVE_INFINITY) {
+							witnessTouched.add(y);
+						}
+						witnessDist[y] = d;
+						witnessQueue.update(y, d);
+					}
+				}
+			}
+		}
+
+		private void addEdge(int from, int to, double weight, int first, int second) {
+			if (edges == edgeFrom.length) {
+				int capacity = edges * 2;
+				edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+				edgeTo = Arrays.copyOf(edgeTo, capacity);
+				edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+				edgeFirst = Arrays.copyOf(edgeFirst, capacity);
+				edgeSecond = Arrays.copyOf(edgeSecond, capacity);
+			}
+			edgeFrom[edges] = from;
+			edgeTo[edges] = to;
+			edgeWeight[edges] = weight;
+			edgeFirst[edges] = first;
+			edgeSecond[edges] = second;
+			out[from].add(edges);
+			in[to].add(edges);
+			edges++;
+		}
+	}
+
+	// minimal growable int array
+	private static class IntList {
+		private int[] elements = new int[4];
+		private int size;
+
+		void add(int value) {
+			if (size == elements.length) {
+				elements = Arrays.copyOf(elements, size * 2);
+			}
+			elements[size++] = value;
+		}
+
+		int get(int i) {
+			return elements[i];
+		}
+
+		int size() {
+			return size;
+		}
+
+		int removeLast() {
+			return elements[--size];
+		}
+
+		// removes the first occurrence of the value, order is not preserved
+		void remove(int value) {
+			for (int i = 0; i < size; i++) {
+				if (elements[i] == value) {
+					elements[i] = elements[--size];
+					return;
+				}
+			}
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(elements, size);
+		}
+	}
+}
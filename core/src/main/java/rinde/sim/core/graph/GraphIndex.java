@@ -0,0 +1,135 @@
+package rinde.sim.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable, int-indexed snapshot of the topology of a {@link Graph}. Nodes
+ * are numbered <code>0 .. n-1</code> in the iteration order of
+ * {@link Graph#getNodes()}, their coordinates are kept in primitive arrays
+ * and the outgoing connections are stored in compressed sparse row (CSR)
+ * form: the neighbours of node <code>i</code> are
+ * <code>targets[offsets[i]] .. targets[offsets[i + 1] - 1]</code>.
+ * <p>
+ * The snapshot does not follow later modifications of the graph it was
+ * created from.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class GraphIndex {
+
+	final Point[] nodes;
+	final double[] xs;
+	final double[] ys;
+	final int[] offsets;
+	final int[] targets;
+
+	// open addressing table, contains node index + 1 (0 means empty)
+	private final int[] slots;
+	private final int mask;
+
+	GraphIndex(Point[] nodes, int[] offsets, int[] targets) {
+		this.nodes = nodes;
+		this.offsets = offsets;
+		this.targets = targets;
+		xs = new double[nodes.length];
+		ys = new double[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			xs[i] = nodes[i].x;
+			ys[i] = nodes[i].y;
+		}
+
+		int capacity = Integer.highestOneBit(Math.max(2, nodes.length) * 2 - 1) << 1;
+		slots = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < nodes.length; i++) {
+			int slot = spread(nodes[i].hashCode()) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+	}
+
+	/**
+	 * Creates a snapshot of the specified graph.
+	 * @param graph The graph to index.
+	 * @return A new index.
+	 */
+	public static GraphIndex create(Graph<? extends EdgeData> graph) {
+		if (graph == null) {
+			throw new IllegalArgumentException("graph cannot be null");
+		}
+		Collection<Point> nodeSet = graph.getNodes();
+		Point[] nodes = nodeSet.toArray(new Point[nodeSet.size()]);
+		int[] offsets = new int[nodes.length + 1];
+		int[] targets = new int[graph.getNumberOfConnections()];
+
+		GraphIndex lookup = new GraphIndex(nodes, offsets, targets);
+		int edge = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			offsets[i] = edge;
+			for (Point p : graph.getOutgoingConnections(nodes[i])) {
+				targets[edge++] = lookup.indexOf(p);
+			}
+		}
+		offsets[nodes.length] = edge;
+		assert edge == targets.length : "number of connections does not match the outgoing connections";
+		return lookup;
+	}
+
+	/**
+	 * @param p The node to look up.
+	 * @return The index of the node, or <code>-1</code> if the node is not
+	 *         part of this index.
+	 */
+	public int indexOf(Point p) {
+		if (p == null) {
+			return -1;
+		}
+		int slot = spread(p.hashCode()) & mask;
+		int i;
+		while ((i = slots[slot]) != 0) {
+			if (xs[i - 1] == p.x && ys[i - 1] == p.y) {
+				return i - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index The index of the node.
+	 * @return The node instance of the indexed graph.
+	 */
+	public Point getNode(int index) {
+		return nodes[index];
+	}
+
+	public int getNumberOfNodes() {
+		return nodes.length;
+	}
+
+	public int getNumberOfConnections() {
+		return targets.length;
+	}
+
+	/**
+	 * Converts a path of node indices to a path of {@link Point}s.
+	 * @param path The node indices.
+	 * @return A new modifiable list.
+	 */
+	public List<Point> toPath(int[] path) {
+		List<Point> result = new ArrayList<Point>(path.length);
+		for (int i : path) {
+			result.add(nodes[i]);
+		}
+		return result;
+	}
+
+	static int spread(int h) {
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+}
@@ -13,6 +13,7 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -24,6 +25,7 @@ import rinde.sim.core.model.RoadUser;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 
 /**
@@ -88,6 +90,26 @@ public class Graphs {
 
 	}
 
+	/**
+	 * Computes a hash code that is consistent with
+	 * {@link #equals(Graph, Graph)}: it only depends on the number of nodes
+	 * and on the connections, not on the edge data or the order of the
+	 * connections.
+	 * @param graph The graph.
+	 * @return The hash code.
+	 * @since 2.1
+	 */
+	public static int hashCode(Graph<?> graph) {
+		int h = 0;
+		for (Point from : graph.getNodes()) {
+			int f = 31 * from.hashCode();
+			for (Point to : graph.getOutgoingConnections(from)) {
+				h += f + to.hashCode();
+			}
+		}
+		return 31 * graph.getNumberOfNodes() + h;
+	}
+
 	private static class UnmodifiableMultiAttributeEdgeData extends MultiAttributeEdgeData {
 
 		public UnmodifiableMultiAttributeEdgeData(double length, double maxSpeed) {
@@ -317,10 +339,11 @@ public class Graphs {
 	 * @param rs
 	 * @param type
 	 * @return
-	 * @see #findClosestObject(Point, RoadModel, Collection)
+	 * @see RoadModel#getClosestObjects(Point, Class, int)
 	 */
 	public static <T extends RoadUser> T findClosestObject(Point pos, RoadModel rs, final Class<T> type) {
-		return findClosestObject(pos, rs, rs.getObjectsOfType(type));
+		List<T> closest = rs.getClosestObjects(pos, type, 1);
+		return closest.isEmpty() ? null : closest.get(0);
 	}
 
 	/**
@@ -329,11 +352,11 @@ public class Graphs {
 	 * @param rs
 	 * @param predicate
 	 * @return
-	 * @see #findClosestObject(Point, RoadModel, Collection)
+	 * @see RoadModel#getClosestObjects(Point, Predicate, int)
 	 */
 	public static RoadUser findClosestObject(Point pos, RoadModel rs, Predicate<RoadUser> predicate) {
-		Collection<RoadUser> filtered = Collections2.filter(rs.getObjects(), predicate);
-		return findClosestObject(pos, rs, filtered);
+		List<RoadUser> closest = rs.getClosestObjects(pos, predicate, 1);
+		return closest.isEmpty() ? null : closest.get(0);
 	}
 
 	public static <T extends RoadUser> T findClosestObject(Point pos, RoadModel rm, Collection<T> objects) {
@@ -357,25 +380,27 @@ public class Graphs {
 	static class RoadUserWithDistance<T> implements Comparable<RoadUserWithDistance<T>> {
 		public final double dist;
 		public final T obj;
+		private final int index;
 
-		public RoadUserWithDistance(T obj, double dist) {
+		public RoadUserWithDistance(T obj, double dist, int index) {
 			this.obj = obj;
 			this.dist = dist;
+			this.index = index;
 		}
 
 		@Override
 		public int compareTo(RoadUserWithDistance<T> o) {
-			return Double.compare(dist, o.dist);
+			int c = Double.compare(dist, o.dist);
+			return c != 0 ? c : (index < o.index ? -1 : (index == o.index ? 0 : 1));
 		}
 	}
 
 	public static List<RoadUser> findClosestObjects(Point pos, RoadModel rm, Predicate<RoadUser> predicate, int n) {
-		Collection<RoadUser> filtered = Collections2.filter(rm.getObjects(), predicate);
-		return findClosestObjects(pos, rm, filtered, n);
+		return rm.getClosestObjects(pos, predicate, n);
 	}
 
 	public static <T extends RoadUser> List<T> findClosestObjects(Point pos, RoadModel rm, Class<T> type, int n) {
-		return findClosestObjects(pos, rm, rm.getObjectsOfType(type), n);
+		return rm.getClosestObjects(pos, type, n);
 	}
 
 	public static <T extends RoadUser> List<T> findClosestObjects(Point pos, RoadModel rm, Collection<T> objects, int n) {
@@ -383,14 +408,26 @@ public class Graphs {
 	}
 
 	public static <T> List<T> findClosestObjects(Point pos, Collection<T> objects, Function<T, Point> transformation, int n) {
-		List<RoadUserWithDistance<T>> objs = new ArrayList<RoadUserWithDistance<T>>();
+		if (n <= 0) {
+			return new ArrayList<T>();
+		}
+		// bounded max-heap of the n closest objects, ties are resolved by
+		// iteration order
+		PriorityQueue<RoadUserWithDistance<T>> closest = new PriorityQueue<RoadUserWithDistance<T>>(Math.min(n, Math.max(1, objects.size())), Collections.reverseOrder());
+		int index = 0;
 		for (T obj : objects) {
-			Point objPos = transformation.apply(obj);
-			objs.add(new RoadUserWithDistance<T>(obj, Point.distance(pos, objPos)));
+			RoadUserWithDistance<T> o = new RoadUserWithDistance<T>(obj, Point.distance(pos, transformation.apply(obj)), index++);
+			if (closest.size() < n) {
+				closest.add(o);
+			} else if (o.compareTo(closest.peek()) < 0) {
+				closest.poll();
+				closest.add(o);
+			}
 		}
+		List<RoadUserWithDistance<T>> objs = new ArrayList<RoadUserWithDistance<T>>(closest);
 		Collections.sort(objs);
-		List<T> results = new ArrayList<T>();
-		for (RoadUserWithDistance<T> o : objs.subList(0, Math.min(n, objs.size()))) {
+		List<T> results = new ArrayList<T>(objs.size());
+		for (RoadUserWithDistance<T> o : objs) {
 			results.add(o.obj);
 		}
 		return results;
@@ -410,11 +447,11 @@ public class Graphs {
 	}
 
 	public static Collection<RoadUser> findObjectsWithinRadius(final Point position, final RoadModel model, final double radius) {
-		return Graphs.findObjectsWithinRadius(position, model, radius, model.getObjects());
+		return model.getObjectsWithinRadius(position, radius, Predicates.alwaysTrue());
 	}
 
 	public static <T extends RoadUser> Collection<T> findObjectsWithinRadius(final Point position, final RoadModel model, final double radius, final Class<T> type) {
-		return findObjectsWithinRadius(position, model, radius, model.getObjectsOfType(type));
+		return model.getObjectsWithinRadius(position, radius, type);
 	}
 
 	protected static <T extends RoadUser> Collection<T> findObjectsWithinRadius(final Point position, final RoadModel model, final double radius, Collection<T> objects) {
@@ -0,0 +1,123 @@
+package rinde.sim.core.graph;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the int elements <code>0 .. capacity-1</code> with a
+ * <code>double</code> key per element and support for decrease-key. Elements
+ * with equal keys are polled in the order in which they were (re)inserted.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class IndexedMinHeap {
+
+	private final int[] heap;
+	// position of each element in the heap, -1 when not in the heap
+	private final int[] position;
+	private final double[] keys;
+	private final long[] order;
+	private long counter;
+	private int size;
+
+	IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new double[capacity];
+		order = new long[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int element) {
+		return position[element] >= 0;
+	}
+
+	double key(int element) {
+		return keys[element];
+	}
+
+	/**
+	 * Inserts the element or, when it is already present, changes its key.
+	 */
+	void update(int element, double key) {
+		keys[element] = key;
+		order[element] = counter++;
+		if (position[element] < 0) {
+			position[element] = size;
+			heap[size] = element;
+			size++;
+			siftUp(size - 1);
+		} else {
+			siftUp(position[element]);
+			siftDown(position[element]);
+		}
+	}
+
+	/**
+	 * @return The element with the smallest key, without removing it.
+	 */
+	int peek() {
+		return heap[0];
+	}
+
+	int poll() {
+		int top = heap[0];
+		size--;
+		position[top] = -1;
+		if (size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = -1;
+		}
+		size = 0;
+		counter = 0;
+	}
+
+	private boolean less(int a, int b) {
+		return keys[a] < keys[b] || (keys[a] == keys[b] && order[a] < order[b]);
+	}
+
+	private void siftUp(int i) {
+		int element = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!less(element, heap[parent])) {
+				break;
+			}
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = element;
+		position[element] = i;
+	}
+
+	private void siftDown(int i) {
+		int element = heap[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!less(heap[child], element)) {
+				break;
+			}
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = element;
+		position[element] = i;
+	}
+}
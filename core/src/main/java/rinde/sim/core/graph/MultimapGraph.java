@@ -23,11 +23,12 @@ import com.google.common.collect.Multimaps;
  * @author Bartosz Michalik <bartosz.michalik@cs.kuleuven.be> - added edge data
  *         + and dead end nodes
  */
-public class MultimapGraph<E extends EdgeData> implements Graph<E> {
+public class MultimapGraph<E extends EdgeData> implements VersionedGraph<E> {
 
 	private final Multimap<Point, Point> data;
 	private final HashMap<Connection<E>, E> edgeData;
 	private final HashSet<Point> deadEndNodes;
+	private long version;
 
 	public MultimapGraph(Multimap<Point, Point> data) {
 		this.data = LinkedHashMultimap.create(data);
@@ -79,6 +80,7 @@ public class MultimapGraph<E extends EdgeData> implements Graph<E> {
 		if (from.equals(to)) {
 			throw new IllegalArgumentException("A connection cannot be circular");
 		}
+		version++;
 
 		if (data.put(from, to)) {
 			deadEndNodes.remove(from);
@@ -104,6 +106,7 @@ public class MultimapGraph<E extends EdgeData> implements Graph<E> {
 		if (!hasConnection(from, to)) {
 			throw new IllegalArgumentException("the connection " + from + " -> " + to + "does not exist");
 		}
+		version++;
 		return this.edgeData.put(new Connection<E>(from, to, null), edgeData);
 	}
 
@@ -181,11 +184,13 @@ public class MultimapGraph<E extends EdgeData> implements Graph<E> {
 			removeConnection(p, node);
 		}
 		deadEndNodes.remove(node);
+		version++;
 	}
 
 	@Override
 	public void removeConnection(Point from, Point to) {
 		if (hasConnection(from, to)) {
+			version++;
 			if (data.remove(from, to)) {
 				removeData(from, to);
 				if (!data.containsKey(to)) {
@@ -201,6 +206,11 @@ public class MultimapGraph<E extends EdgeData> implements Graph<E> {
 		edgeData.remove(new Connection<EdgeData>(from, to, null));
 	}
 
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
 	@Override
 	public double connectionLength(Point from, Point to) {
 		if (hasConnection(from, to)) {
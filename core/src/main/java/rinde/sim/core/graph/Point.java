@@ -5,8 +5,6 @@ package rinde.sim.core.graph;
 
 import java.io.Serializable;
 
-import org.apache.commons.lang.builder.HashCodeBuilder;
-
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
  * 
@@ -17,12 +15,12 @@ public class Point implements Serializable {
 	public final double x;
 	public final double y;
 
-	private final int hashCode;
+	// lazily computed, zero until the first call of hashCode()
+	private transient int hash;
 
 	public Point(double x, double y) {
 		this.x = x;
 		this.y = y;
-		hashCode = new HashCodeBuilder(17, 37).append(x + "," + y).toHashCode();
 	}
 
 	public static double distance(Point p1, Point p2) {
@@ -54,10 +52,36 @@ public class Point implements Serializable {
 
 	@Override
 	public int hashCode() {
-		return hashCode;
+		int h = hash;
+		if (h == 0) {
+			h = hash(x, y);
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Computes the hash code of a point from the bits of its coordinates.
+	 * Equal points have the same hash code, also when a coordinate is
+	 * <code>0.0</code> and the other <code>-0.0</code>. The node table of
+	 * {@link rinde.sim.serializers.BinaryGraphSerializer} files is indexed
+	 * with this hash, changing it breaks existing files.
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The hash code of <code>new Point(x, y)</code>.
+	 * @since 2.1
+	 */
+	public static int hash(double x, double y) {
+		// 0.0 == -0.0, so both must have the same hash code
+		long h = (x == 0 ? 0 : Double.doubleToLongBits(x)) * 0x9e3779b97f4a7c15L + (y == 0 ? 0 : Double.doubleToLongBits(y));
+		h = (h ^ (h >>> 31)) * 0xbf58476d1ce4e5b9L;
+		return (int) (h ^ (h >>> 32));
 	}
 
 	public boolean equals(Point p) {
+		if (p == this) {
+			return true;
+		}
 		if (p == null) {
 			return false;
 		}
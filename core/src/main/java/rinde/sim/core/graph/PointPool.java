@@ -0,0 +1,100 @@
+package rinde.sim.core.graph;
+
+import java.util.Arrays;
+
+/**
+ * Keeps one canonical instance per coordinate pair. Graph loaders use a pool
+ * so that all connections and all nodes with the same coordinates share a
+ * single {@link Point}, equality checks between these points then reduce to
+ * an identity check and memory is only used once per coordinate pair. The
+ * pool is not thread-safe.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class PointPool {
+
+	// open addressing with linear probing, at most half full
+	private Point[] table;
+	private int size;
+
+	public PointPool() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize The expected number of distinct points.
+	 */
+	public PointPool(int expectedSize) {
+		if(expectedSize < 0) throw new IllegalArgumentException("expectedSize can not be negative");
+		int capacity = 16;
+		while (capacity < expectedSize * 2 && capacity < 1 << 30) {
+			capacity <<= 1;
+		}
+		table = new Point[capacity];
+	}
+
+	/**
+	 * Returns the canonical point with the specified coordinates, the point
+	 * is created if it is not yet in the pool.
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The canonical point.
+	 */
+	public Point get(double x, double y) {
+		int i = slot(x, y);
+		Point p = table[i];
+		if(p == null) {
+			p = new Point(x, y);
+			add(i, p);
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the canonical point that is equal to the specified point. If
+	 * the pool does not contain such a point the specified point becomes the
+	 * canonical point, unless it is a subclass of {@link Point}.
+	 * @param p The point.
+	 * @return The canonical point.
+	 */
+	public Point intern(Point p) {
+		int i = slot(p.x, p.y);
+		Point q = table[i];
+		if(q == null) {
+			q = p.getClass() == Point.class ? p : new Point(p.x, p.y);
+			add(i, q);
+		}
+		return q;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(table, null);
+		size = 0;
+	}
+
+	private int slot(double x, double y) {
+		int mask = table.length - 1;
+		int i = Point.hash(x, y) & mask;
+		Point p;
+		while ((p = table[i]) != null && !(p.x == x && p.y == y)) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void add(int slot, Point p) {
+		table[slot] = p;
+		size++;
+		if(size * 2 > table.length) {
+			Point[] old = table;
+			table = new Point[old.length * 2];
+			for (Point q : old) {
+				if(q != null) table[slot(q.x, q.y)] = q;
+			}
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package rinde.sim.core.graph;
+
+import java.util.List;
+
+/**
+ * Computes shortest paths in a graph.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface RoutingStrategy {
+
+	/**
+	 * Computes the shortest path between two nodes.
+	 * @param from The start node.
+	 * @param to The destination node.
+	 * @return The shortest path, including <code>from</code> and
+	 *         <code>to</code>.
+	 * @throws IllegalArgumentException when <code>from</code> is not a node of
+	 *             the graph.
+	 * @throws PathNotFoundException when <code>to</code> cannot be reached.
+	 */
+	List<Point> shortestPath(Point from, Point to);
+}
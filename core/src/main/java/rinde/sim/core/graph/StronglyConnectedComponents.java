@@ -0,0 +1,200 @@
+package rinde.sim.core.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The strongly connected components of a {@link GraphIndex}: every node can
+ * reach every other node of its component. The components are computed in
+ * one pass with Tarjan's algorithm in O(V + E). The recursion of the
+ * algorithm is replaced by an explicit stack, such that large road networks
+ * do not overflow the call stack.
+ * <p>
+ * Components are numbered <code>0 .. c-1</code> in the order in which
+ * Tarjan's algorithm completes them, which is a reverse topological order of
+ * the condensation: a connection between two components always goes from a
+ * higher to a lower number.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class StronglyConnectedComponents {
+
+	private final GraphIndex index;
+	private final int[] component;
+	private final int[] sizes;
+	// the nodes of component c are members[memberOffsets[c]] ..
+	// members[memberOffsets[c + 1] - 1]
+	private final int[] memberOffsets;
+	private final int[] members;
+
+	private StronglyConnectedComponents(GraphIndex index, int[] component, int[] sizes) {
+		this.index = index;
+		this.component = component;
+		this.sizes = sizes;
+		memberOffsets = new int[sizes.length + 1];
+		for (int c = 0; c < sizes.length; c++) {
+			memberOffsets[c + 1] = memberOffsets[c] + sizes[c];
+		}
+		members = new int[component.length];
+		int[] next = Arrays.copyOf(memberOffsets, sizes.length);
+		for (int i = 0; i < component.length; i++) {
+			members[next[component[i]]++] = i;
+		}
+	}
+
+	/**
+	 * Computes the components of the graph.
+	 * @param index The graph.
+	 * @return The components.
+	 */
+	public static StronglyConnectedComponents compute(GraphIndex index) {
+		if (index == null) {
+			throw new IllegalArgumentException("index cannot be null");
+		}
+		final int n = index.getNumberOfNodes();
+		final int[] offsets = index.offsets;
+		final int[] targets = index.targets;
+
+		// the order in which the nodes were discovered, -1 if not discovered
+		int[] order = new int[n];
+		int[] low = new int[n];
+		int[] component = new int[n];
+		Arrays.fill(order, -1);
+		Arrays.fill(component, -1);
+		// the nodes that are not yet assigned to a component
+		int[] stack = new int[n];
+		int stackSize = 0;
+		// the explicit call stack: node and position of the next connection
+		int[] callNodes = new int[n];
+		int[] callEdges = new int[n];
+		int[] sizes = new int[Math.max(1, n)];
+		int count = 0;
+		int discovered = 0;
+
+		for (int root = 0; root < n; root++) {
+			if (order[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			callNodes[0] = root;
+			callEdges[0] = offsets[root];
+			order[root] = low[root] = discovered++;
+			stack[stackSize++] = root;
+			while (depth >= 0) {
+				int v = callNodes[depth];
+				int e = callEdges[depth];
+				if (e < offsets[v + 1]) {
+					callEdges[depth]++;
+					int w = targets[e];
+					if (order[w] < 0) {
+						order[w] = low[w] = discovered++;
+						stack[stackSize++] = w;
+						depth++;
+						callNodes[depth] = w;
+						callEdges[depth] = offsets[w];
+					} else if (component[w] < 0 && order[w] < low[v]) {
+						// w is on the stack
+						low[v] = order[w];
+					}
+				} else {
+					if (low[v] == order[v]) {
+						int w;
+						do {
+							w = stack[--stackSize];
+							component[w] = count;
+							sizes[count]++;
+						} while (w != v);
+						count++;
+					}
+					depth--;
+					if (depth >= 0) {
+						int parent = callNodes[depth];
+						if (low[v] < low[parent]) {
+							low[parent] = low[v];
+						}
+					}
+				}
+			}
+		}
+		return new StronglyConnectedComponents(index, component, Arrays.copyOf(sizes, count));
+	}
+
+	public GraphIndex getIndex() {
+		return index;
+	}
+
+	public int getNumberOfComponents() {
+		return sizes.length;
+	}
+
+	/**
+	 * @return <code>true</code> if the graph consists of at most one
+	 *         component.
+	 */
+	public boolean isStronglyConnected() {
+		return sizes.length <= 1;
+	}
+
+	/**
+	 * @param node The index of a node.
+	 * @return The component of the node.
+	 */
+	public int getComponent(int node) {
+		return component[node];
+	}
+
+	/**
+	 * @param node A node.
+	 * @return The component of the node or <code>-1</code> if the node is not
+	 *         part of the graph.
+	 */
+	public int getComponent(Point node) {
+		int i = index.indexOf(node);
+		return i < 0 ? -1 : component[i];
+	}
+
+	/**
+	 * @param c The component.
+	 * @return The number of nodes in the component.
+	 */
+	public int getSize(int c) {
+		return sizes[c];
+	}
+
+	/**
+	 * @return The component with the most nodes, the lowest number in case of
+	 *         a tie, or <code>-1</code> if the graph has no nodes.
+	 */
+	public int getLargestComponent() {
+		int largest = -1;
+		for (int c = 0; c < sizes.length; c++) {
+			if (largest < 0 || sizes[c] > sizes[largest]) {
+				largest = c;
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * @param c The component.
+	 * @return A new array of the indices of the nodes of the component in
+	 *         increasing order.
+	 */
+	public int[] getNodeIndices(int c) {
+		return Arrays.copyOfRange(members, memberOffsets[c], memberOffsets[c + 1]);
+	}
+
+	/**
+	 * @param c The component.
+	 * @return A new list of the nodes of the component, in the order of the
+	 *         index.
+	 */
+	public List<Point> getNodes(int c) {
+		List<Point> nodes = new ArrayList<Point>(sizes[c]);
+		for (int i : getNodeIndices(c)) {
+			nodes.add(index.nodes[i]);
+		}
+		return nodes;
+	}
+}
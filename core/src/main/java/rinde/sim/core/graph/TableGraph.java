@@ -24,12 +24,14 @@ import com.google.common.collect.Table.Cell;
  *         parametric version
  * 
  */
-public class TableGraph<E extends EdgeData> implements Graph<E> {
+public class TableGraph<E extends EdgeData> implements VersionedGraph<E> {
 
 	private final Table<Point, Point, E> data;
 
 	private final E EMPTY;
 
+	private long version;
+
 	public TableGraph(E emptyValue) {
 		if (emptyValue == null) {
 			throw new IllegalArgumentException("the representation of empty value is needed");
@@ -82,12 +84,14 @@ public class TableGraph<E extends EdgeData> implements Graph<E> {
 	public void removeNode(Point node) {
 		data.row(node).clear();
 		data.column(node).clear();
+		version++;
 	}
 
 	@Override
 	public void removeConnection(Point from, Point to) {
 		if (hasConnection(from, to)) {
 			data.remove(from, to);
+			version++;
 		} else {
 			throw new IllegalArgumentException("Can not remove non-existing connection: " + from + " -> " + to);
 		}
@@ -177,6 +181,7 @@ public class TableGraph<E extends EdgeData> implements Graph<E> {
 		} else {
 			data.put(from, to, edgeData);
 		}
+		version++;
 	}
 
 	@Override
@@ -190,6 +195,7 @@ public class TableGraph<E extends EdgeData> implements Graph<E> {
 	@Override
 	public E setEdgeData(Point from, Point to, E edgeData) {
 		if (hasConnection(from, to)) {
+			version++;
 			E e = data.put(from, to, edgeData);
 			if (EMPTY.equals(e)) {
 				return null;
@@ -199,6 +205,11 @@ public class TableGraph<E extends EdgeData> implements Graph<E> {
 		throw new IllegalArgumentException("Can not get connection length from a non-existing connection.");
 	}
 
+	@Override
+	public long getVersion() {
+		return version;
+	}
+
 	@Override
 	public boolean equals(Graph<? extends E> other) {
 		return Graphs.equals(this, other);
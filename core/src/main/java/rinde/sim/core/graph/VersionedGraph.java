@@ -0,0 +1,18 @@
+package rinde.sim.core.graph;
+
+/**
+ * A {@link Graph} that counts its modifications, such that a snapshot of the
+ * graph (e.g. a {@link GraphIndex}) can detect that it is out of date, also
+ * when the graph is modified by its owner after the snapshot was taken.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface VersionedGraph<E extends EdgeData> extends Graph<E> {
+
+	/**
+	 * @return A number that changes with every modification of the nodes,
+	 *         the connections or the edge data made via the methods of
+	 *         {@link Graph}.
+	 */
+	long getVersion();
+}
@@ -3,53 +3,148 @@
  */
 package rinde.sim.core.model;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import rinde.sim.core.graph.EdgeData;
 import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
+import rinde.sim.core.graph.PathNotFoundException;
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.RoutingStrategy;
+import rinde.sim.util.IO;
 
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
+import com.google.common.collect.Multimaps;
 
 /**
+ * {@link RoadModel} that caches the shortest paths it computes in a
+ * {@link PathCache}. By default an {@link LruPathCache} is used that holds at
+ * most {@link #DEFAULT_MAXIMUM_PATH_NODES} path nodes. The cache is cleared
+ * when the graph or the routing strategy changes.
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
  * 
  */
 public class CachedRoadModel extends RoadModel {
 
-	private Table<Point, Point, List<Point>> pathTable;
+	/**
+	 * The bound on the number of path nodes of the default cache.
+	 */
+	public static final long DEFAULT_MAXIMUM_PATH_NODES = 1 << 22;
+
+	private volatile PathCache pathCache;
+	// the index that is used for the node indices in the cache
+	private volatile GraphIndex cacheIndex;
 
 	private final Multimap<Class<?>, RoadUser> classObjectMap;
 
-	public CachedRoadModel(Graph graph) {
+	public CachedRoadModel(Graph<? extends EdgeData> graph) {
+		this(graph, new LruPathCache(DEFAULT_MAXIMUM_PATH_NODES));
+	}
+
+	public CachedRoadModel(Graph<? extends EdgeData> graph, PathCache pathCache) {
 		super(graph);
+		setPathCache(pathCache);
+		classObjectMap = Multimaps.synchronizedSetMultimap(LinkedHashMultimap.<Class<?>, RoadUser> create());
+	}
 
-		pathTable = HashBasedTable.create();
-		classObjectMap = LinkedHashMultimap.create();
+	public void setPathCache(PathCache pathCache) {
+		if (pathCache == null) {
+			throw new IllegalArgumentException("pathCache cannot be null");
+		}
+		this.pathCache = pathCache;
+		cacheIndex = null;
 	}
 
-	public void setPathCache(Table<Point, Point, List<Point>> pathTable) {
-		this.pathTable = pathTable;
+	public PathCache getPathCache() {
+		return pathCache;
 	}
 
-	public Table<Point, Point, List<Point>> getPathCache() {
-		return pathTable;
+	@Override
+	public void setRoutingStrategy(RoutingStrategy strategy) {
+		super.setRoutingStrategy(strategy);
+		cacheIndex = null;
 	}
 
 	// overrides internal func to add caching
 	@Override
 	protected List<Point> doGetShortestPathTo(Point from, Point to) {
-		if (pathTable.contains(from, to)) {
-			return pathTable.get(from, to);
-		} else {
-			List<Point> path = super.doGetShortestPathTo(from, to);
-			pathTable.put(from, to, path);
-			return path;
+		GraphIndex index = getGraphIndex();
+		if (index != cacheIndex) {
+			synchronized (this) {
+				if (index != cacheIndex) {
+					pathCache.invalidateAll();
+					cacheIndex = index;
+				}
+			}
+		}
+		int f = index.indexOf(from);
+		int t = index.indexOf(to);
+		if (f < 0 || t < 0) {
+			return super.doGetShortestPathTo(from, to);
+		}
+		int[] cached = pathCache.get(f, t);
+		if (cached != null) {
+			return index.toPath(cached);
 		}
+		List<Point> path = super.doGetShortestPathTo(from, to);
+		int[] indices = new int[path.size()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = index.indexOf(path.get(i));
+		}
+		pathCache.put(f, t, indices);
+		return path;
+	}
+
+	/**
+	 * Writes the origin-destination pairs that are currently cached to a file,
+	 * the file can be used by {@link #warmUp(String)} in a later run on the
+	 * same graph.
+	 * @param file The file to write to.
+	 */
+	public void writeCachedPairs(String file) {
+		GraphIndex index = getGraphIndex();
+		List<int[]> pairs = index == cacheIndex ? pathCache.getPairs() : new ArrayList<int[]>();
+		double[] coordinates = new double[pairs.size() * 4];
+		int i = 0;
+		for (int[] pair : pairs) {
+			Point from = index.getNode(pair[0]);
+			Point to = index.getNode(pair[1]);
+			coordinates[i++] = from.x;
+			coordinates[i++] = from.y;
+			coordinates[i++] = to.x;
+			coordinates[i++] = to.y;
+		}
+		IO.serialize(coordinates, file);
+	}
+
+	/**
+	 * Fills the cache with the shortest paths between the origin-destination
+	 * pairs in the specified file. Pairs that are not connected in the graph
+	 * are ignored.
+	 * @param file A file written by {@link #writeCachedPairs(String)}.
+	 * @return The number of paths that were computed.
+	 */
+	public int warmUp(String file) {
+		double[] coordinates = IO.deserialize(file, double[].class);
+		int count = 0;
+		for (int i = 0; i + 3 < coordinates.length; i += 4) {
+			Point from = new Point(coordinates[i], coordinates[i + 1]);
+			Point to = new Point(coordinates[i + 2], coordinates[i + 3]);
+			if (!graph.containsNode(from) || !graph.containsNode(to)) {
+				continue;
+			}
+			try {
+				doGetShortestPathTo(from, to);
+				count++;
+			} catch (PathNotFoundException e) {
+				// not connected in this graph
+			}
+		}
+		return count;
 	}
 
 	@Override
@@ -74,7 +169,9 @@ public class CachedRoadModel extends RoadModel {
 	@Override
 	public <Y extends RoadUser> Set<Y> getObjectsOfType(final Class<Y> type) {
 		Set<Y> set = new LinkedHashSet<Y>();
-		set.addAll((Set<Y>) classObjectMap.get(type));
+		synchronized (classObjectMap) {
+			set.addAll((Set<Y>) classObjectMap.get(type));
+		}
 		return set;
 	}
 
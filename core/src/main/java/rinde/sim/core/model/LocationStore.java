@@ -0,0 +1,312 @@
+package rinde.sim.core.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rinde.sim.core.graph.GraphIndex;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.RoadModel.Location;
+
+/**
+ * The locations of the objects in a {@link RoadModel}. Every object has a
+ * dense handle, the handles are assigned in the order in which the objects
+ * are added. The node indices, relative position and coordinates of an object
+ * are kept in primitive arrays at its handle, such that a
+ * {@link PositionSnapshot} is a copy of a few arrays. A removed object leaves
+ * a hole that is closed when there are as many holes as objects. An object
+ * that is moved with {@link #move(int, int, int, double, double, double)} only
+ * changes the arrays, its {@link Location} is created when it is asked for.
+ * <p>
+ * All methods synchronize on the store, a {@link RoadModel} uses the same
+ * lock for the spatial index of the positions. Every modification increments
+ * the version, {@link #snapshot()} reuses the last snapshot as long as the
+ * version has not changed without taking the lock.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class LocationStore {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int NONE = -1;
+
+	private final RoadModel model;
+	private final Map<RoadUser, Integer> handles;
+	private RoadUser[] objects;
+	private Location[] locations;
+	private int[] from;
+	private int[] to;
+	private double[] relativePos;
+	private double[] xs;
+	private double[] ys;
+	// the handle of the next object, handles below it can be holes
+	private int end;
+	// the index to which the node indices refer
+	private GraphIndex index;
+
+	private volatile long version;
+	private volatile PositionSnapshot snapshot;
+
+	LocationStore(RoadModel model) {
+		this.model = model;
+		handles = new HashMap<RoadUser, Integer>();
+		objects = new RoadUser[INITIAL_CAPACITY];
+		locations = new Location[INITIAL_CAPACITY];
+		from = new int[INITIAL_CAPACITY];
+		to = new int[INITIAL_CAPACITY];
+		relativePos = new double[INITIAL_CAPACITY];
+		xs = new double[INITIAL_CAPACITY];
+		ys = new double[INITIAL_CAPACITY];
+	}
+
+	synchronized boolean contains(RoadUser obj) {
+		return handles.containsKey(obj);
+	}
+
+	/**
+	 * @param obj The object.
+	 * @return The location of the object or <code>null</code> if the object
+	 *         is not in the store.
+	 */
+	synchronized Location get(RoadUser obj) {
+		Integer h = handles.get(obj);
+		return h == null ? null : location(h);
+	}
+
+	// must be called while holding the lock
+	private Location location(int h) {
+		if (locations[h] == null) {
+			locations[h] = model.new Location(index.getNode(from[h]), to[h] == NONE ? null : index.getNode(to[h]), relativePos[h]);
+		}
+		return locations[h];
+	}
+
+	/**
+	 * @param obj The object.
+	 * @param hint The handle that the object had before, or <code>-1</code>.
+	 * @return The handle of the object or <code>-1</code> if the object is not
+	 *         in the store.
+	 */
+	synchronized int handle(RoadUser obj, int hint) {
+		if (hint >= 0 && hint < end && objects[hint] == obj) {
+			return hint;
+		}
+		Integer h = handles.get(obj);
+		return h == null ? NONE : h;
+	}
+
+	/**
+	 * Makes sure that the node indices refer to the specified index.
+	 * @param graphIndex The current index of the graph.
+	 */
+	synchronized void setIndex(GraphIndex graphIndex) {
+		if (graphIndex != index) {
+			reindex(graphIndex);
+		}
+	}
+
+	synchronized int getFrom(int h) {
+		return from[h];
+	}
+
+	synchronized int getTo(int h) {
+		return to[h];
+	}
+
+	synchronized double getRelativePosition(int h) {
+		return relativePos[h];
+	}
+
+	/**
+	 * Changes the location of an object without creating a {@link Location}.
+	 * @param h The handle of the object.
+	 * @param fromNode The index of the node where the object is or from which
+	 *            it is traveling.
+	 * @param toNode The index of the node to which the object is traveling or
+	 *            <code>-1</code>.
+	 * @param relPos The distance traveled on the connection or
+	 *            <code>-1</code>.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 */
+	synchronized void move(int h, int fromNode, int toNode, double relPos, double x, double y) {
+		locations[h] = null;
+		from[h] = fromNode;
+		to[h] = toNode;
+		relativePos[h] = relPos;
+		xs[h] = x;
+		ys[h] = y;
+		version++;
+	}
+
+	/**
+	 * Adds the object or changes its location.
+	 * @param obj The object.
+	 * @param loc The location.
+	 * @param pos The position of the location.
+	 * @param graphIndex The current index of the graph.
+	 */
+	synchronized void put(RoadUser obj, Location loc, Point pos, GraphIndex graphIndex) {
+		if (graphIndex != index) {
+			reindex(graphIndex);
+		}
+		Integer h = handles.get(obj);
+		int i;
+		if (h == null) {
+			if (end == objects.length) {
+				grow();
+			}
+			i = end++;
+			handles.put(obj, i);
+			objects[i] = obj;
+		} else {
+			i = h;
+		}
+		locations[i] = loc;
+		from[i] = index.indexOf(loc.from);
+		to[i] = loc.to == null ? NONE : index.indexOf(loc.to);
+		relativePos[i] = loc.relativePos;
+		xs[i] = pos.x;
+		ys[i] = pos.y;
+		version++;
+	}
+
+	/**
+	 * @param obj The object.
+	 * @return <code>true</code> if the object was in the store.
+	 */
+	synchronized boolean remove(RoadUser obj) {
+		Integer h = handles.remove(obj);
+		if (h == null) {
+			return false;
+		}
+		objects[h] = null;
+		locations[h] = null;
+		if (end - handles.size() > Math.max(INITIAL_CAPACITY, handles.size())) {
+			compact();
+		}
+		version++;
+		return true;
+	}
+
+	synchronized void clear() {
+		handles.clear();
+		Arrays.fill(objects, 0, end, null);
+		Arrays.fill(locations, 0, end, null);
+		end = 0;
+		version++;
+	}
+
+	synchronized int size() {
+		return handles.size();
+	}
+
+	synchronized boolean isEmpty() {
+		return handles.isEmpty();
+	}
+
+	/**
+	 * @return A new list of the objects in the order in which they were added.
+	 */
+	synchronized List<RoadUser> getObjects() {
+		List<RoadUser> list = new ArrayList<RoadUser>(handles.size());
+		for (int i = 0; i < end; i++) {
+			if (objects[i] != null) {
+				list.add(objects[i]);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Copies the objects and their locations in the order in which they were
+	 * added.
+	 * @param objs The list to which the objects are added.
+	 * @param locs The list to which the locations are added.
+	 */
+	synchronized void copyTo(List<RoadUser> objs, List<Location> locs) {
+		for (int i = 0; i < end; i++) {
+			if (objects[i] != null) {
+				objs.add(objects[i]);
+				locs.add(location(i));
+			}
+		}
+	}
+
+	/**
+	 * @return A snapshot of the current positions, it is only created when
+	 *         the store was modified since the last snapshot.
+	 */
+	PositionSnapshot snapshot() {
+		PositionSnapshot s = snapshot;
+		if (s != null && s.getEpoch() == version) {
+			return s;
+		}
+		synchronized (this) {
+			s = snapshot;
+			if (s != null && s.getEpoch() == version) {
+				return s;
+			}
+			if (end != handles.size()) {
+				compact();
+			}
+			int n = end;
+			s = new PositionSnapshot(version, index, Arrays.copyOf(objects, n), Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), Arrays.copyOf(from, n), Arrays.copyOf(to, n), Arrays.copyOf(relativePos, n));
+			snapshot = s;
+			return s;
+		}
+	}
+
+	private void reindex(GraphIndex graphIndex) {
+		for (int i = 0; i < end; i++) {
+			if (objects[i] != null) {
+				// the nodes of a moved object are only known by the old index
+				location(i);
+			}
+		}
+		index = graphIndex;
+		for (int i = 0; i < end; i++) {
+			if (objects[i] != null) {
+				from[i] = index.indexOf(locations[i].from);
+				to[i] = locations[i].to == null ? NONE : index.indexOf(locations[i].to);
+			}
+		}
+	}
+
+	private void grow() {
+		int capacity = objects.length * 2;
+		objects = Arrays.copyOf(objects, capacity);
+		locations = Arrays.copyOf(locations, capacity);
+		from = Arrays.copyOf(from, capacity);
+		to = Arrays.copyOf(to, capacity);
+		relativePos = Arrays.copyOf(relativePos, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+	}
+
+	// closes the holes, keeps the order of the objects
+	private void compact() {
+		int k = 0;
+		for (int i = 0; i < end; i++) {
+			if (objects[i] == null) {
+				continue;
+			}
+			if (k != i) {
+				objects[k] = objects[i];
+				locations[k] = locations[i];
+				from[k] = from[i];
+				to[k] = to[i];
+				relativePos[k] = relativePos[i];
+				xs[k] = xs[i];
+				ys[k] = ys[i];
+				handles.put(objects[k], k);
+			}
+			k++;
+		}
+		Arrays.fill(objects, k, end, null);
+		Arrays.fill(locations, k, end, null);
+		end = k;
+	}
+}
@@ -0,0 +1,75 @@
+package rinde.sim.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * {@link PathCache} with a bound on the total number of cached path nodes.
+ * When the bound is exceeded the least recently used paths are evicted.
+ * Backed by a concurrent Guava {@link Cache}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class LruPathCache implements PathCache {
+
+	private final Cache<Long, int[]> cache;
+
+	/**
+	 * @param maximumNodes The maximum number of path nodes, summed over all
+	 *            cached paths.
+	 */
+	public LruPathCache(long maximumNodes) {
+		if (maximumNodes <= 0) {
+			throw new IllegalArgumentException("maximumNodes must be positive");
+		}
+		cache = CacheBuilder.newBuilder().maximumWeight(maximumNodes).weigher(new Weigher<Long, int[]>() {
+			@Override
+			public int weigh(Long key, int[] path) {
+				return path.length;
+			}
+		}).build();
+	}
+
+	@Override
+	public int[] get(int from, int to) {
+		return cache.getIfPresent(key(from, to));
+	}
+
+	@Override
+	public void put(int from, int to, int[] path) {
+		cache.put(key(from, to), path);
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	@Override
+	public List<int[]> getPairs() {
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (Long key : cache.asMap().keySet()) {
+			pairs.add(new int[] { (int) (key >>> 32), (int) key.longValue() });
+		}
+		return pairs;
+	}
+
+	static long key(int from, int to) {
+		return ((long) from << 32) | (to & 0xFFFFFFFFL);
+	}
+}
@@ -1,12 +1,11 @@
 package rinde.sim.core.model;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
@@ -24,11 +23,14 @@ public class ModelManager {
 	private Multimap<Class<? extends Object>, Model<? extends Object>> registry;
 	private LinkedList<Model<? extends Object>> models;
 	private boolean configured;
+	// per concrete class the models that support it, in registration order
+	private final Map<Class<?>, Model<Object>[]> dispatch;
 	
 	
 	public ModelManager() {
 		registry = LinkedListMultimap.create();
 		models = new LinkedList<Model<? extends Object>>();
+		dispatch = new HashMap<Class<?>, Model<Object>[]>();
 	}
 	
 	/**
@@ -50,6 +52,7 @@ public class ModelManager {
 		if (!result) {
 			models.remove(model);
 		}
+		dispatch.clear();
 		return result;
 	}
 	
@@ -75,20 +78,12 @@ public class ModelManager {
 		
 		if(!configured) throw new IllegalStateException("call configure()");
 		boolean result = false;
-		Set<Class<?>> keys = registry.keySet();
-		for (Class<?> k : keys) {
-			if(k.isAssignableFrom(o.getClass())) {
-				Collection<Model<?>> modelsByType = registry.get(k);
-				for (Model<?> m : modelsByType) {
-					try {
-						Method method = m.getClass().getMethod("register", k);
-						if(!Modifier.isPublic(method.getModifiers())) continue;
-						method.invoke(m, o);
-						result = true;
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
+		for (Model<Object> m : getModels(o.getClass())) {
+			try {
+				m.register(o);
+				result = true;
+			} catch (RuntimeException e) {
+				e.printStackTrace();
 			}
 		}
 		return result;
@@ -108,21 +103,36 @@ public class ModelManager {
 		if(!configured) throw new IllegalStateException("call configure()");
 		
 		boolean result = false;
-		Set<Class<?>> keys = registry.keySet();
-		for (Class<?> k : keys) {
-			if(k.isAssignableFrom(o.getClass())) {
-				Collection<Model<?>> modelsByType = registry.get(k);
-				for (Model<?> m : modelsByType) {
-					try {
-						Method method = m.getClass().getMethod("unregister", k);
-						if(!Modifier.isPublic(method.getModifiers())) continue;
-						method.invoke(m, o);
-						result = true;
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
+		for (Model<Object> m : getModels(o.getClass())) {
+			try {
+				m.unregister(o);
+				result = true;
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the models that support objects of a class, the result is
+	 * cached per class until a model is added.
+	 * @param clazz the class of the objects
+	 * @return the models in the order in which their types were added
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Model<Object>[] getModels(Class<?> clazz) {
+		Model<Object>[] result = dispatch.get(clazz);
+		if(result == null) {
+			List<Model<?>> supporting = new ArrayList<Model<?>>();
+			for (Class<?> k : registry.keySet()) {
+				if(k.isAssignableFrom(clazz)) {
+					supporting.addAll(registry.get(k));
 				}
 			}
+			// the type check is done above, a model accepts all instances of clazz
+			result = supporting.toArray(new Model[supporting.size()]);
+			dispatch.put(clazz, result);
 		}
 		return result;
 	}
@@ -0,0 +1,53 @@
+package rinde.sim.core.model;
+
+import java.util.List;
+
+import rinde.sim.core.graph.GraphIndex;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Cache of shortest paths used by the {@link CachedRoadModel}. Paths are
+ * stored compactly as arrays of node indices of a {@link GraphIndex}.
+ * Implementations must be safe for concurrent use.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface PathCache {
+
+	/**
+	 * @param from The index of the start node.
+	 * @param to The index of the destination node.
+	 * @return The cached path or <code>null</code> if it is not cached.
+	 */
+	int[] get(int from, int to);
+
+	/**
+	 * Adds a path to the cache.
+	 * @param from The index of the start node.
+	 * @param to The index of the destination node.
+	 * @param path The node indices of the path.
+	 */
+	void put(int from, int to, int[] path);
+
+	/**
+	 * Removes all paths from the cache.
+	 */
+	void invalidateAll();
+
+	/**
+	 * @return The number of cached paths.
+	 */
+	long size();
+
+	/**
+	 * @return The hit, miss and eviction counters of this cache.
+	 */
+	CacheStats stats();
+
+	/**
+	 * @return The origin-destination pairs that are currently cached, each
+	 *         element is an array <code>{from, to}</code>.
+	 */
+	List<int[]> getPairs();
+}
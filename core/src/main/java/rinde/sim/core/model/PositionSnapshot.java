@@ -0,0 +1,109 @@
+package rinde.sim.core.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rinde.sim.core.graph.GraphIndex;
+import rinde.sim.core.graph.Point;
+
+/**
+ * Immutable copy of the positions of all objects in a {@link RoadModel} at a
+ * certain moment. The objects are in the order in which they were added to
+ * the model. Every change of the model increments its epoch, a snapshot with
+ * the same epoch as a previous snapshot has the same content.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ * @see RoadModel#getSnapshot()
+ */
+public final class PositionSnapshot {
+
+	private final long epoch;
+	private final GraphIndex index;
+	private final RoadUser[] objects;
+	private final double[] xs;
+	private final double[] ys;
+	private final int[] from;
+	private final int[] to;
+	private final double[] relativePos;
+
+	PositionSnapshot(long epoch, GraphIndex index, RoadUser[] objects, double[] xs, double[] ys, int[] from, int[] to, double[] relativePos) {
+		this.epoch = epoch;
+		this.index = index;
+		this.objects = objects;
+		this.xs = xs;
+		this.ys = ys;
+		this.from = from;
+		this.to = to;
+		this.relativePos = relativePos;
+	}
+
+	/**
+	 * @return The number of modifications of the model before this snapshot
+	 *         was taken.
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public int size() {
+		return objects.length;
+	}
+
+	public RoadUser getObject(int i) {
+		return objects[i];
+	}
+
+	public double getX(int i) {
+		return xs[i];
+	}
+
+	public double getY(int i) {
+		return ys[i];
+	}
+
+	/**
+	 * @param i The index of the object in this snapshot.
+	 * @return The index (in {@link #getGraphIndex()}) of the node where the
+	 *         object is or from which it is traveling.
+	 */
+	public int getFromNode(int i) {
+		return from[i];
+	}
+
+	/**
+	 * @param i The index of the object in this snapshot.
+	 * @return The index (in {@link #getGraphIndex()}) of the node to which
+	 *         the object is traveling, or <code>-1</code> if the object is on
+	 *         a node.
+	 */
+	public int getToNode(int i) {
+		return to[i];
+	}
+
+	/**
+	 * @param i The index of the object in this snapshot.
+	 * @return The distance that the object traveled on its current
+	 *         connection, or <code>-1</code> if the object is on a node.
+	 */
+	public double getRelativePosition(int i) {
+		return relativePos[i];
+	}
+
+	/**
+	 * @return The index of the graph to which the node indices refer.
+	 */
+	public GraphIndex getGraphIndex() {
+		return index;
+	}
+
+	/**
+	 * @return A new map of the objects to their positions.
+	 */
+	public Map<RoadUser, Point> toMap() {
+		Map<RoadUser, Point> map = new LinkedHashMap<RoadUser, Point>();
+		for (int i = 0; i < objects.length; i++) {
+			map.put(objects[i], new Point(xs[i], ys[i]));
+		}
+		return map;
+	}
+}
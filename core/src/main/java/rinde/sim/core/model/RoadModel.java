@@ -3,9 +3,9 @@
  */
 package rinde.sim.core.model;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -14,16 +14,28 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
+import rinde.sim.core.checkpoint.Checkpointable;
+import rinde.sim.core.graph.AStarSearch;
+import rinde.sim.core.graph.CompactGraph;
 import rinde.sim.core.graph.EdgeData;
 import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
 import rinde.sim.core.graph.Graphs;
 import rinde.sim.core.graph.MultiAttributeEdgeData;
 import rinde.sim.core.graph.Point;
-import rinde.sim.util.SpeedConverter;
+import rinde.sim.core.graph.RoutingStrategy;
+import rinde.sim.core.graph.VersionedGraph;
 import rinde.sim.util.TimeUnit;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.Sets;
 
 /**
@@ -32,18 +44,41 @@ import com.google.common.collect.Sets;
  *         models infrastructure
  * 
  */
-public class RoadModel implements Model<RoadUser> {
+public class RoadModel implements Model<RoadUser>, Checkpointable {
 	// TODO remove the Graph related functions, and give a reference to an unmodifiable Graph instance instead
 
-	protected volatile Map<RoadUser, Location> objLocs;
+	// the number of chunks in which the fleet is divided per processor
+	private static final int CHUNKS_PER_PROCESSOR = 4;
+
+	private final LocationStore locations;
 	final Graph<? extends EdgeData> graph;
+	// the search keeps state between queries, each thread gets its own
+	private final ThreadLocal<AStarSearch> pathSearch;
+	// the index and strategy together with the graph version they belong to
+	private volatile Snapshot<GraphIndex> graphIndex;
+	private volatile Snapshot<RoutingStrategy> routingStrategy;
+	// positions of the objects, guarded by locations
+	private SpatialGrid<RoadUser> spatialIndex;
+	// the objects that are moved by moveFleet, the arrays are guarded by fleet
+	private final Map<MovingRoadUser, RouteCursor> fleet;
+	private MovingRoadUser[] fleetObjects;
+	private RouteCursor[] fleetCursors;
 
+	/**
+	 * Creates a model on the specified graph. Modifications of a
+	 * {@link VersionedGraph} (such as {@link rinde.sim.core.graph.MultimapGraph}
+	 * and {@link rinde.sim.core.graph.TableGraph}) are detected, other graphs
+	 * must only be modified via {@link #addConnection(Point, Point)}.
+	 * @param graph The graph on which the objects are moved.
+	 */
 	public RoadModel(Graph<? extends EdgeData> graph) {
 		if (graph == null) {
 			throw new IllegalArgumentException("Graph cannot be null");
 		}
 		this.graph = graph;
-		objLocs = Collections.synchronizedMap(new LinkedHashMap<RoadUser, Location>());
+		locations = new LocationStore(this);
+		pathSearch = new ThreadLocal<AStarSearch>();
+		fleet = new LinkedHashMap<MovingRoadUser, RouteCursor>();
 	}
 
 	//TODO [bm] remove ??
@@ -52,41 +87,52 @@ public class RoadModel implements Model<RoadUser> {
 			throw new IllegalArgumentException("Connection already exists.");
 		}
 		graph.addConnection(from, to);
+		graphIndex = null;
+		routingStrategy = null;
 		assert graph.containsNode(from);
 	}
 
 	public void addObjectAt(RoadUser newObj, Point pos) {
 		if (!graph.containsNode(pos)) {
 			throw new IllegalArgumentException("Object must be initiated on a crossroad.");
-		} else if (objLocs.containsKey(newObj)) {
+		} else if (locations.contains(newObj)) {
 			throw new IllegalArgumentException("Object is already added.");
 		}
-		objLocs.put(newObj, new Location(pos, null, 0));
+		setLocation(newObj, new Location(getCanonicalNode(pos), null, 0));
 	}
 
 	public void addObjectAtSamePosition(RoadUser newObj, RoadUser existingObj) {
-		if (objLocs.containsKey(newObj)) {
+		if (locations.contains(newObj)) {
 			throw new IllegalArgumentException("Object " + newObj + " is already added.");
-		} else if (!objLocs.containsKey(existingObj)) {
+		} else if (!locations.contains(existingObj)) {
 			throw new IllegalArgumentException("Object " + existingObj + " does not exist.");
 		}
-		objLocs.put(newObj, objLocs.get(existingObj));
+		setLocation(newObj, locations.get(existingObj));
 	}
 
 	/**
 	 * Removes all objects on this RoadStructure instance.
 	 */
 	public void clear() {
-		objLocs.clear();
+		synchronized (locations) {
+			locations.clear();
+			if (spatialIndex != null) {
+				spatialIndex.clear();
+			}
+		}
+		synchronized (fleet) {
+			fleet.clear();
+			fleetObjects = null;
+		}
 	}
 
 	public boolean containsObject(RoadUser obj) {
-		return objLocs.containsKey(obj);
+		return locations.contains(obj);
 	}
 
 	public boolean containsObjectAt(RoadUser obj, Point p) {
 		if (containsObject(obj)) {
-			return objLocs.get(obj).getPosition().equals(p);
+			return locations.get(obj).getPosition().equals(p);
 		}
 		return false;
 	}
@@ -117,9 +163,9 @@ public class RoadModel implements Model<RoadUser> {
 		assert path.peek() != null : "path cannot be empty";
 		assert time > 0 : "time must be greater than 0";
 		assert object != null : "object cannot be null";
-		assert objLocs.containsKey(object) : "object must have a location";
+		assert locations.contains(object) : "object must have a location";
 
-		Location objLoc = objLocs.get(object);
+		Location objLoc = locations.get(object);
 
 		checkLocation(objLoc);
 
@@ -146,14 +192,12 @@ public class RoadModel implements Model<RoadUser> {
 		double newDis = Double.NaN;
 		boolean nextVertex = false;
 
-		final SpeedConverter sc = new SpeedConverter();
-				List<Point> travelledNodes = new ArrayList<Point>();
+		List<Point> travelledNodes = new ArrayList<Point>();
 
 		while (timeLeft > 0 && path.size() > 0) {
 
 			//speed in graph units per hour -> converting to miliseconds
-			double speed = getMaxSpeed(object, tempPos, path.peek());
-			speed = sc.from(speed, TimeUnit.H).to(TimeUnit.MS);
+			double speed = toSpeedPerMs(getMaxSpeed(object, tempPos, path.peek()));
 			double travelDistance = speed * timeLeft;
 
 			double dist = getDistance(tempPos, path.peek());
@@ -177,15 +221,15 @@ public class RoadModel implements Model<RoadUser> {
 
 		if (Double.isNaN(newDis)) {
 			if (tempPos instanceof MidPoint) {
-				objLocs.put(object, checkLocation(((MidPoint) tempPos).loc));
+				setLocation(object, checkLocation(((MidPoint) tempPos).loc));
 			} else {
-				objLocs.put(object, checkLocation(new Location(tempPos)));
+				setLocation(object, checkLocation(new Location(tempPos)));
 			}
 		} else if (nextVertex) {
 			if (path.peek() instanceof MidPoint) {
-				objLocs.put(object, checkLocation(new Location(tempPos, ((MidPoint) path.peek()).loc.to, newDis)));
+				setLocation(object, checkLocation(new Location(tempPos, ((MidPoint) path.peek()).loc.to, newDis)));
 			} else {
-				objLocs.put(object, checkLocation(new Location(tempPos, path.peek(), newDis)));
+				setLocation(object, checkLocation(new Location(tempPos, path.peek(), newDis)));
 			}
 		} else {
 			Point t = objLoc.to;
@@ -194,11 +238,394 @@ public class RoadModel implements Model<RoadUser> {
 				t = path.peek();
 				relpos = newDis;
 			}
-			objLocs.put(object, checkLocation(new Location(objLoc.from, t, relpos)));
+			setLocation(object, checkLocation(new Location(objLoc.from, t, relpos)));
 		}
 		return new PathProgress(traveled, time - (timeLeft > 0 ? timeLeft : 0), travelledNodes);
 	}
 
+	/**
+	 * Moves the specified object along the route of the cursor, like
+	 * {@link #followPath(MovingRoadUser, Queue, long)} but without creating
+	 * any objects. The reached nodes are skipped in the cursor and the
+	 * distance, time and number of reached nodes are stored in the cursor.
+	 * The length and speed limit of a connection are looked up once per
+	 * cursor, the speed is computed as in
+	 * {@link #getMaxSpeed(MovingRoadUser, Point, Point)} (subclasses that
+	 * override that method should use
+	 * {@link #followPath(MovingRoadUser, Queue, long)}). When all nodes of
+	 * the route have been reached the object is not moved.
+	 * @param object The object that is moved.
+	 * @param cursor The route of the object.
+	 * @param time The time that is available for traveling.
+	 * @return The distance traveled.
+	 * @throws IllegalArgumentException if the route does not start at the
+	 *             location of the object, or when it uses a non-existing
+	 *             connection.
+	 */
+	public double followRoute(MovingRoadUser object, RouteCursor cursor, long time) {
+		assert time > 0 : "time must be greater than 0";
+		assert object != null : "object cannot be null";
+		checkCursor(cursor);
+		cursor.resetProgress();
+		if (!cursor.hasNext()) {
+			return 0;
+		}
+		GraphIndex index = getGraphIndex();
+		synchronized (locations) {
+			locations.setIndex(index);
+			if (!readLocation(object, cursor)) {
+				throw new IllegalArgumentException("object must have a location");
+			}
+		}
+		advance(object, cursor, time, index);
+		synchronized (locations) {
+			writeLocation(object, cursor);
+		}
+		return cursor.distance;
+	}
+
+	/**
+	 * Adds an object to the fleet of this model. All objects of the fleet are
+	 * moved at once by {@link #moveFleet(long, ExecutorService)}, each along
+	 * the route of its cursor. The object is removed from the fleet when it
+	 * is removed from this model.
+	 * @param object The object, it must be in this model.
+	 * @param cursor The route of the object, it also receives the progress
+	 *            of every move.
+	 */
+	public void addToFleet(MovingRoadUser object, RouteCursor cursor) {
+		if (object == null || cursor == null) {
+			throw new IllegalArgumentException("object and cursor cannot be null");
+		}
+		checkCursor(cursor);
+		if (!containsObject(object)) {
+			throw new IllegalArgumentException("Object " + object + " does not exist.");
+		}
+		synchronized (fleet) {
+			if (fleet.containsKey(object)) {
+				throw new IllegalArgumentException("Object " + object + " is already in the fleet.");
+			}
+			fleet.put(object, cursor);
+			fleetObjects = null;
+		}
+	}
+
+	/**
+	 * @param object The object.
+	 * @return <code>true</code> if the object was in the fleet.
+	 */
+	public boolean removeFromFleet(RoadUser object) {
+		synchronized (fleet) {
+			if (fleet.remove(object) != null) {
+				fleetObjects = null;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Moves all objects of the fleet sequentially.
+	 * @param time The time that is available for traveling.
+	 * @see #moveFleet(long, ExecutorService)
+	 */
+	public void moveFleet(long time) {
+		moveFleet(time, null);
+	}
+
+	/**
+	 * Moves all objects of the fleet along the routes of their cursors, as if
+	 * {@link #followRoute(MovingRoadUser, RouteCursor, long)} is called for
+	 * every object. The locations are read and written in two short
+	 * sections that hold the lock of this model once, the moves themselves
+	 * are computed without the lock, divided in chunks over the executor.
+	 * The progress of every object is stored in its cursor. When the route of
+	 * an object is invalid the other objects are still moved, the first
+	 * exception in fleet order is rethrown afterwards.
+	 * @param time The time that is available for traveling.
+	 * @param executor The executor on which the moves are computed, or
+	 *            <code>null</code> to compute them on the calling thread.
+	 */
+	public void moveFleet(final long time, ExecutorService executor) {
+		if (time <= 0) {
+			throw new IllegalArgumentException("time must be greater than 0");
+		}
+		final MovingRoadUser[] objects;
+		final RouteCursor[] cursors;
+		synchronized (fleet) {
+			if (fleetObjects == null) {
+				fleetObjects = fleet.keySet().toArray(new MovingRoadUser[fleet.size()]);
+				fleetCursors = fleet.values().toArray(new RouteCursor[fleet.size()]);
+			}
+			objects = fleetObjects;
+			cursors = fleetCursors;
+		}
+		final GraphIndex index = getGraphIndex();
+		synchronized (locations) {
+			locations.setIndex(index);
+			for (int i = 0; i < objects.length; i++) {
+				cursors[i].resetProgress();
+				if (cursors[i].hasNext()) {
+					readLocation(objects[i], cursors[i]);
+				}
+			}
+		}
+
+		Throwable failure = null;
+		int chunks = executor == null ? 1 : Math.min(objects.length, CHUNKS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+		if (chunks <= 1) {
+			failure = advanceAll(objects, cursors, 0, objects.length, time, index);
+		} else {
+			List<Callable<Throwable>> tasks = new ArrayList<Callable<Throwable>>(chunks);
+			for (int c = 0; c < chunks; c++) {
+				final int from = (int) ((long) objects.length * c / chunks);
+				final int to = (int) ((long) objects.length * (c + 1) / chunks);
+				tasks.add(new Callable<Throwable>() {
+					@Override
+					public Throwable call() {
+						return advanceAll(objects, cursors, from, to, time, index);
+					}
+				});
+			}
+			try {
+				for (Future<Throwable> f : executor.invokeAll(tasks)) {
+					Throwable t = f.get();
+					if (failure == null) {
+						failure = t;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while moving the fleet", e);
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			}
+		}
+
+		synchronized (locations) {
+			for (int i = 0; i < objects.length; i++) {
+				if (cursors[i].moved) {
+					writeLocation(objects[i], cursors[i]);
+				}
+			}
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IllegalStateException(failure);
+		}
+	}
+
+	/**
+	 * Computes the moves of the objects in the range.
+	 * @return The first exception that was thrown, or <code>null</code>.
+	 */
+	private Throwable advanceAll(MovingRoadUser[] objects, RouteCursor[] cursors, int from, int to, long time, GraphIndex index) {
+		Throwable failure = null;
+		for (int i = from; i < to; i++) {
+			RouteCursor cursor = cursors[i];
+			if (cursor.handle >= 0 && cursor.hasNext()) {
+				try {
+					advance(objects[i], cursor, time, index);
+				} catch (RuntimeException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+		return failure;
+	}
+
+	private void checkCursor(RouteCursor cursor) {
+		if (cursor.model != this) {
+			throw new IllegalArgumentException("the cursor belongs to another model");
+		}
+	}
+
+	/**
+	 * Copies the location of the object to the cursor. Must be called while
+	 * holding the lock on locations.
+	 * @return <code>false</code> if the object is not in this model.
+	 */
+	private boolean readLocation(RoadUser object, RouteCursor cursor) {
+		int h = locations.handle(object, cursor.handle);
+		cursor.handle = h;
+		if (h < 0) {
+			return false;
+		}
+		cursor.locFrom = locations.getFrom(h);
+		cursor.locTo = locations.getTo(h);
+		cursor.locRel = locations.getRelativePosition(h);
+		return true;
+	}
+
+	/**
+	 * Copies the location in the cursor to the object, unless the object was
+	 * removed. Must be called while holding the lock on locations.
+	 */
+	private void writeLocation(RoadUser object, RouteCursor cursor) {
+		int h = cursor.handle;
+		if (locations.handle(object, h) == h) {
+			locations.move(h, cursor.locFrom, cursor.locTo, cursor.locRel, cursor.x, cursor.y);
+			getSpatialIndex().put(object, cursor.x, cursor.y);
+		}
+	}
+
+	/**
+	 * Computes the move of an object along the route of the cursor, starting
+	 * at the location in the cursor. The new location and the progress are
+	 * stored in the cursor, this model is not changed.
+	 */
+	private void advance(MovingRoadUser object, RouteCursor cursor, long time, GraphIndex index) {
+		if (cursor.index != index) {
+			cursor.reindex(index);
+		}
+		final int[] nodes = cursor.nodes;
+		final int from = cursor.locFrom;
+		int to = cursor.locTo;
+		final double rel = cursor.locRel;
+		// the cursor is only changed when the move succeeds
+		int next = cursor.next;
+		int reached = 0;
+		// on a connection: the length of the connection and, as in
+		// followPath, the straight-line distance to its end
+		double length = Double.NaN;
+		double limit = Double.NaN;
+		double remaining = Double.NaN;
+		if (to >= 0) {
+			if (nodes[next] != to) {
+				throw new IllegalArgumentException("Illegal path for this object, first point should be in current direction. " + index.getNode(nodes[next]));
+			}
+			resolve(cursor, next, from);
+			length = cursor.lengths[next];
+			limit = cursor.limits[next];
+			double perc = rel / length;
+			if (perc + Location.DELTA < 1) {
+				Point a = index.getNode(from);
+				Point b = index.getNode(to);
+				double dx = a.x + perc * (b.x - a.x) - b.x;
+				double dy = a.y + perc * (b.y - a.y) - b.y;
+				remaining = Math.sqrt(dx * dx + dy * dy);
+			}
+		}
+
+		long timeLeft = time;
+		double traveled = 0;
+		double newDis = Double.NaN;
+		int node = from;
+		while (timeLeft > 0 && next < cursor.size) {
+			int k = next;
+			double dist;
+			double speed;
+			if (to >= 0) {
+				// still on the connection on which the object started
+				if (Double.isNaN(remaining)) {
+					dist = 0;
+					speed = toSpeedPerMs(object.getSpeed());
+				} else {
+					dist = remaining;
+					speed = toSpeedPerMs(limitSpeed(object.getSpeed(), limit));
+				}
+			} else {
+				resolve(cursor, k, node);
+				dist = cursor.lengths[k];
+				speed = toSpeedPerMs(limitSpeed(object.getSpeed(), cursor.limits[k]));
+			}
+			double travelDistance = speed * timeLeft;
+
+			if (travelDistance >= dist) {
+				node = nodes[k];
+				to = -1;
+				next++;
+				reached++;
+				timeLeft -= Math.round(dist / speed);
+				traveled += dist;
+			} else {
+				newDis = travelDistance;
+				timeLeft = -Math.round(travelDistance / speed);
+				traveled += travelDistance;
+			}
+		}
+
+		int newFrom;
+		int newTo;
+		double newRel;
+		if (Double.isNaN(newDis)) {
+			newFrom = node;
+			newTo = -1;
+			newRel = -1;
+			length = Double.NaN;
+		} else if (to >= 0) {
+			newFrom = from;
+			newTo = to;
+			newRel = rel + newDis;
+		} else {
+			newFrom = node;
+			newTo = nodes[next];
+			newRel = newDis;
+			length = cursor.lengths[next];
+		}
+
+		Point a = index.getNode(newFrom);
+		double x = a.x;
+		double y = a.y;
+		if (newTo >= 0) {
+			Point b = index.getNode(newTo);
+			double perc = newRel / length;
+			if (perc + Location.DELTA >= 1) {
+				x = b.x;
+				y = b.y;
+			} else {
+				x += perc * (b.x - a.x);
+				y += perc * (b.y - a.y);
+			}
+		}
+		cursor.next = next;
+		cursor.reached = reached;
+		cursor.locFrom = newFrom;
+		cursor.locTo = newTo;
+		cursor.locRel = newRel;
+		cursor.x = x;
+		cursor.y = y;
+		cursor.distance = traveled;
+		cursor.time = time - (timeLeft > 0 ? timeLeft : 0);
+		cursor.moved = true;
+	}
+
+	/**
+	 * Looks up the length and speed limit of the connection to the node at
+	 * position <code>k</code> of the route, unless it was already done.
+	 */
+	private void resolve(RouteCursor cursor, int k, int from) {
+		if (cursor.edgeFrom[k] == from) {
+			return;
+		}
+		GraphIndex index = cursor.index;
+		int to = cursor.nodes[k];
+		if (from == to) {
+			cursor.lengths[k] = 0;
+			cursor.limits[k] = Double.NaN;
+		} else {
+			Point a = index.getNode(from);
+			Point b = index.getNode(to);
+			if (!graph.hasConnection(a, b)) {
+				throw new IllegalArgumentException("followRoute() attempts to use non-existing connection: " + a + " >> " + b + ".");
+			}
+			EdgeData data = graph.connectionData(a, b);
+			cursor.lengths[k] = data == null || Double.isNaN(data.getLength()) ? Point.distance(a, b) : data.getLength();
+			cursor.limits[k] = getSpeedLimit(a, b);
+		}
+		cursor.edgeFrom[k] = from;
+	}
+
+	// graph units per hour to graph units per millisecond
+	private static double toSpeedPerMs(double speed) {
+		return speed / TimeUnit.H.toMs() * TimeUnit.MS.toMs();
+	}
+
 	/**
 	 * Compute distance between two points. If points are equal the distance is
 	 * 0.
@@ -246,13 +673,25 @@ public class RoadModel implements Model<RoadUser> {
 		if (!hasConnection(start, stop)) {
 			throw new IllegalArgumentException("points not connected " + from + " >> " + to);
 		}
-		EdgeData data = graph.connectionData(start, stop);
+		return limitSpeed(object.getSpeed(), getSpeedLimit(start, stop));
+	}
+
+	/**
+	 * @param from The start of a connection.
+	 * @param to The end of the connection.
+	 * @return The maximum speed on the connection or {@link Double#NaN} if
+	 *         the connection has no speed limit.
+	 */
+	private double getSpeedLimit(Point from, Point to) {
+		EdgeData data = graph.connectionData(from, to);
 		if (data instanceof MultiAttributeEdgeData) {
-			MultiAttributeEdgeData maed = (MultiAttributeEdgeData) data;
-			double speed = maed.getMaxSpeed();
-			return Double.isNaN(speed) ? object.getSpeed() : Math.min(speed, object.getSpeed());
+			return ((MultiAttributeEdgeData) data).getMaxSpeed();
 		}
-		return object.getSpeed();
+		return Double.NaN;
+	}
+
+	private static double limitSpeed(double speed, double limit) {
+		return Double.isNaN(limit) ? speed : Math.min(limit, speed);
 	}
 
 	/**
@@ -279,11 +718,7 @@ public class RoadModel implements Model<RoadUser> {
 	 * @return The set of {@link RoadUser} objects.
 	 */
 	public Set<RoadUser> getObjects() {
-		synchronized (objLocs) {
-			Set<RoadUser> copy = new LinkedHashSet<RoadUser>();
-			copy.addAll(objLocs.keySet());
-			return copy;
-		}
+		return new LinkedHashSet<RoadUser>(locations.getObjects());
 	}
 
 	/**
@@ -336,19 +771,30 @@ public class RoadModel implements Model<RoadUser> {
 	 * @return A map of {@link RoadUser} to {@link Point} objects.
 	 */
 	public Map<RoadUser, Point> getObjectsAndPositions() {
-		Map<RoadUser, Location> copiedMap;
-		synchronized (objLocs) {
-			copiedMap = new LinkedHashMap<RoadUser, Location>();
-			copiedMap.putAll(objLocs);
-		}// it is save to release the lock now
-
+		List<RoadUser> objs = new ArrayList<RoadUser>();
+		List<Location> locs = new ArrayList<Location>();
+		locations.copyTo(objs, locs);
+		// the locations are immutable, the positions are computed without the lock
 		Map<RoadUser, Point> theMap = new LinkedHashMap<RoadUser, Point>();
-		for (java.util.Map.Entry<RoadUser, Location> entry : copiedMap.entrySet()) {
-			theMap.put(entry.getKey(), entry.getValue().getPosition());
+		for (int i = 0; i < objs.size(); i++) {
+			theMap.put(objs.get(i), locs.get(i).getPosition());
 		}
 		return theMap;
 	}
 
+	/**
+	 * Returns an immutable copy of the positions of all objects. Unlike
+	 * {@link #getObjectsAndPositions()} this does not create an object per
+	 * position and, as long as no object has moved since the previous call,
+	 * it returns the previous snapshot without waiting for the simulation.
+	 * Renderers and statistics that read the positions from another thread
+	 * should use this method.
+	 * @return The snapshot of the positions.
+	 */
+	public PositionSnapshot getSnapshot() {
+		return locations.snapshot();
+	}
+
 	/**
 	 * This method returns a set of {@link RoadUser} objects which exist in this
 	 * model and are instances of the specified {@link Class}. The returned set
@@ -374,12 +820,12 @@ public class RoadModel implements Model<RoadUser> {
 	 */
 	public Point getPosition(RoadUser obj) {
 		assert obj != null : "object cannot be null";
-		assert objLocs.containsKey(obj) : "object must have a location in RoadStructure " + obj;
-		return objLocs.get(obj).getPosition();
+		assert locations.contains(obj) : "object must have a location in RoadStructure " + obj;
+		return locations.get(obj).getPosition();
 	}
 	
 	public Point getLastCrossRoad(RoadUser obj){
-		return objLocs.get(obj).from;
+		return locations.get(obj).from;
 	}
 
 	/**
@@ -402,7 +848,7 @@ public class RoadModel implements Model<RoadUser> {
 	 * @return The shortest path from 'fromObj' to 'to'
 	 */
 	public List<Point> getShortestPathTo(RoadUser fromObj, Point to) {
-		assert objLocs.containsKey(fromObj) : " from object should be in RoadModel. " + fromObj;
+		assert locations.contains(fromObj) : " from object should be in RoadModel. " + fromObj;
 		Point from = getNode(fromObj);
 		return getShortestPathTo(from, to);
 	}
@@ -414,7 +860,7 @@ public class RoadModel implements Model<RoadUser> {
 	 * @return The shortest path from 'fromObj' to 'toObj'.
 	 */
 	public List<Point> getShortestPathTo(RoadUser fromObj, RoadUser toObj) {
-		assert objLocs.containsKey(toObj) : " to object should be in RoadModel. " + toObj;
+		assert locations.contains(toObj) : " to object should be in RoadModel. " + toObj;
 		//		Location l = objLocs.get(toObj);
 		List<Point> path = getShortestPathTo(fromObj, getPosition(toObj));
 		//		if (l.isEdgePoint()) {
@@ -443,7 +889,93 @@ public class RoadModel implements Model<RoadUser> {
 	}
 
 	protected List<Point> doGetShortestPathTo(Point from, Point to) {
-		return Graphs.shortestPathEuclidianDistance(graph, from, to);
+		Snapshot<RoutingStrategy> snapshot = routingStrategy;
+		// the strategy is ignored when the graph has changed since it was set
+		if (snapshot != null && snapshot.version == getGraphVersion()) {
+			RoutingStrategy strategy = snapshot.value;
+			// strategies are not required to be thread-safe
+			synchronized (strategy) {
+				return strategy.shortestPath(from, to);
+			}
+		}
+		return getPathSearch().shortestPath(from, to);
+	}
+
+	/**
+	 * Sets the strategy used for computing shortest paths, for example a
+	 * {@link rinde.sim.core.graph.ContractionHierarchy} of the graph of this
+	 * model. The strategy must have been created from this graph, it is
+	 * discarded when the graph is modified (see
+	 * {@link #RoadModel(Graph)}). Queries on the strategy are
+	 * serialized, when shortest paths are computed from multiple threads the
+	 * default A* search (which uses a search per thread) may be faster.
+	 * @param strategy The strategy to use, or <code>null</code> to use the
+	 *            default A* search.
+	 */
+	public void setRoutingStrategy(RoutingStrategy strategy) {
+		routingStrategy = strategy == null ? null : new Snapshot<RoutingStrategy>(strategy, getGraphVersion());
+	}
+
+	/**
+	 * @return The search engine of the calling thread used for computing
+	 *         shortest paths, it is (re)created when the graph has changed.
+	 */
+	protected AStarSearch getPathSearch() {
+		GraphIndex index = getGraphIndex();
+		AStarSearch search = pathSearch.get();
+		if (search == null || search.getIndex() != index) {
+			search = new AStarSearch(index);
+			pathSearch.set(search);
+		}
+		return search;
+	}
+
+	/**
+	 * @return An int-indexed snapshot of the current graph, it is shared by
+	 *         all threads and (re)created when the graph has changed.
+	 */
+	protected GraphIndex getGraphIndex() {
+		Snapshot<GraphIndex> snapshot = graphIndex;
+		if (snapshot == null || snapshot.version != getGraphVersion()) {
+			synchronized (pathSearch) {
+				snapshot = graphIndex;
+				long version = getGraphVersion();
+				if (snapshot == null || snapshot.version != version) {
+					GraphIndex index;
+					if (graph instanceof CompactGraph) {
+						index = ((CompactGraph<?>) graph).getIndex();
+					} else {
+						index = GraphIndex.create(graph);
+					}
+					snapshot = new Snapshot<GraphIndex>(index, version);
+					graphIndex = snapshot;
+				}
+			}
+		}
+		return snapshot.value;
+	}
+
+	/**
+	 * @return The version of a {@link VersionedGraph}, for other graphs the
+	 *         number of connections is used which only detects the
+	 *         modifications made via {@link #addConnection(Point, Point)}.
+	 */
+	private long getGraphVersion() {
+		if (graph instanceof VersionedGraph) {
+			return ((VersionedGraph<?>) graph).getVersion();
+		}
+		return graph.getNumberOfConnections();
+	}
+
+	// a value derived from the graph, valid as long as the version is equal
+	private static final class Snapshot<T> {
+		final T value;
+		final long version;
+
+		Snapshot(T value, long version) {
+			this.value = value;
+			this.version = version;
+		}
 	}
 
 	public boolean hasConnection(Point from, Point to) {
@@ -451,8 +983,122 @@ public class RoadModel implements Model<RoadUser> {
 	}
 
 	public void removeObject(RoadUser o) {
-		assert objLocs.containsKey(o);
-		objLocs.remove(o);
+		assert locations.contains(o);
+		synchronized (locations) {
+			locations.remove(o);
+			if (spatialIndex != null) {
+				spatialIndex.remove(o);
+			}
+		}
+		removeFromFleet(o);
+	}
+
+	/**
+	 * Sets the location of an object. All changes of object locations go
+	 * through this method, it keeps the spatial index of object positions up
+	 * to date.
+	 * @param obj The object.
+	 * @param loc The new location of the object.
+	 */
+	protected void setLocation(RoadUser obj, Location loc) {
+		GraphIndex index = getGraphIndex();
+		Point p = loc.getPosition();
+		synchronized (locations) {
+			locations.put(obj, loc, p, index);
+			getSpatialIndex().put(obj, p.x, p.y);
+		}
+	}
+
+	// must be called while holding the lock on locations
+	private SpatialGrid<RoadUser> getSpatialIndex() {
+		if (spatialIndex == null) {
+			spatialIndex = new SpatialGrid<RoadUser>(computeCellSize());
+		}
+		return spatialIndex;
+	}
+
+	// roughly one node of the graph per cell
+	private double computeCellSize() {
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (Point p : graph.getNodes()) {
+			minX = Math.min(minX, p.x);
+			maxX = Math.max(maxX, p.x);
+			minY = Math.min(minY, p.y);
+			maxY = Math.max(maxY, p.y);
+		}
+		double size = Math.max(maxX - minX, maxY - minY) / Math.ceil(Math.sqrt(graph.getNumberOfNodes()));
+		return size > 0 && !Double.isInfinite(size) ? size : 1;
+	}
+
+	/**
+	 * Finds the objects that are closest to the specified position, using a
+	 * spatial index over the object positions. Objects at equal distance are
+	 * ordered by the order in which they were added to this model.
+	 * @param pos The position.
+	 * @param predicate Only objects that satisfy the predicate are returned.
+	 * @param n The maximum number of objects to return.
+	 * @return A new list of at most <code>n</code> objects, ordered by
+	 *         increasing distance to <code>pos</code>.
+	 */
+	public List<RoadUser> getClosestObjects(Point pos, Predicate<? super RoadUser> predicate, int n) {
+		synchronized (locations) {
+			if (locations.isEmpty()) {
+				return new ArrayList<RoadUser>();
+			}
+			return getSpatialIndex().nearest(pos.x, pos.y, n, predicate);
+		}
+	}
+
+	/**
+	 * Finds the objects of the specified type that are closest to the
+	 * specified position.
+	 * @param pos The position.
+	 * @param type The type of the objects.
+	 * @param n The maximum number of objects to return.
+	 * @return A new list of at most <code>n</code> objects, ordered by
+	 *         increasing distance to <code>pos</code>.
+	 * @see #getClosestObjects(Point, Predicate, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends RoadUser> List<T> getClosestObjects(Point pos, Class<T> type, int n) {
+		return (List<T>) (List<?>) getClosestObjects(pos, Predicates.instanceOf(type), n);
+	}
+
+	/**
+	 * Finds the objects that are at a distance smaller than
+	 * <code>radius</code> from the specified position, using a spatial index
+	 * over the object positions.
+	 * @param pos The position.
+	 * @param radius The radius.
+	 * @param predicate Only objects that satisfy the predicate are returned.
+	 * @return A new list of objects, in the order in which they were added to
+	 *         this model.
+	 */
+	public List<RoadUser> getObjectsWithinRadius(Point pos, double radius, Predicate<? super RoadUser> predicate) {
+		synchronized (locations) {
+			if (locations.isEmpty()) {
+				return new ArrayList<RoadUser>();
+			}
+			return getSpatialIndex().withinRadius(pos.x, pos.y, radius, predicate);
+		}
+	}
+
+	/**
+	 * Finds the objects of the specified type that are at a distance smaller
+	 * than <code>radius</code> from the specified position.
+	 * @param pos The position.
+	 * @param radius The radius.
+	 * @param type The type of the objects.
+	 * @return A new list of objects, in the order in which they were added to
+	 *         this model.
+	 * @see #getObjectsWithinRadius(Point, double, Predicate)
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends RoadUser> List<T> getObjectsWithinRadius(Point pos, double radius, Class<T> type) {
+		return (List<T>) (List<?>) getObjectsWithinRadius(pos, radius, Predicates.instanceOf(type));
 	}
 
 	protected Location checkLocation(Location l) {
@@ -464,14 +1110,26 @@ public class RoadModel implements Model<RoadUser> {
 		return l;
 	}
 
+	/**
+	 * @param p A node of the graph.
+	 * @return The instance of the node that is used by the graph, positions
+	 *         that are equal to it can then be compared by identity.
+	 */
+	private Point getCanonicalNode(Point p) {
+		GraphIndex index = getGraphIndex();
+		int i = index.indexOf(p);
+		return i < 0 ? p : index.getNode(i);
+	}
+
 	protected Point getNode(RoadUser obj) {
 		assert obj != null;
-		assert objLocs.containsKey(obj);
+		assert locations.contains(obj);
 
-		if (objLocs.get(obj).to != null) {
-			return objLocs.get(obj).to;
+		Location loc = locations.get(obj);
+		if (loc.to != null) {
+			return loc.to;
 		} else {
-			return objLocs.get(obj).from;
+			return loc.from;
 		}
 	}
 
@@ -557,12 +1215,11 @@ public class RoadModel implements Model<RoadUser> {
 			if (!isEdgePoint()) {
 				return from;
 			}
-			Point diff = Point.diff(to, from);
 			double perc = relativePos / roadLength;
 			if (perc + DELTA >= 1) {
 				return to;
 			}
-			return new MidPoint(from.x + perc * diff.x, from.y + perc * diff.y, this);
+			return new MidPoint(from.x + perc * (to.x - from.x), from.y + perc * (to.y - from.y), this);
 		}
 	}
 
@@ -581,6 +1238,80 @@ public class RoadModel implements Model<RoadUser> {
 		}
 	}
 
+	/**
+	 * Saves the positions of the objects that are part of the checkpoint,
+	 * objects that are being unregistered are skipped. The fleet that is
+	 * moved by {@link #moveFleet(long)} is not saved, the objects add
+	 * themselves to the fleet again when they are restored.
+	 */
+	@Override
+	public void saveState(CheckpointOutput out) throws IOException {
+		List<RoadUser> all = new ArrayList<RoadUser>();
+		List<Location> allLocs = new ArrayList<Location>();
+		locations.copyTo(all, allLocs);
+		List<RoadUser> objs = new ArrayList<RoadUser>();
+		List<Location> locs = new ArrayList<Location>();
+		for (int i = 0; i < all.size(); i++) {
+			if (out.isReferable(all.get(i))) {
+				objs.add(all.get(i));
+				locs.add(allLocs.get(i));
+			}
+		}
+		out.writeVarint(objs.size());
+		for (int i = 0; i < objs.size(); i++) {
+			Location l = locs.get(i);
+			out.writeReference(objs.get(i));
+			out.writePoint(l.from);
+			out.writeBoolean(l.isEdgePoint());
+			if (l.isEdgePoint()) {
+				out.writePoint(l.to);
+				out.writeDouble(l.relativePos);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the positions of all objects with the saved positions, objects
+	 * that are not in the checkpoint are removed from this model.
+	 */
+	@Override
+	public void restoreState(CheckpointInput in) throws IOException {
+		int n = in.readVarint();
+		List<RoadUser> objs = new ArrayList<RoadUser>(n);
+		List<Location> locs = new ArrayList<Location>(n);
+		for (int i = 0; i < n; i++) {
+			RoadUser obj = in.readReference(RoadUser.class);
+			if (obj == null) {
+				throw new IOException("position without an object");
+			}
+			Point from = in.readPoint();
+			Location loc;
+			if (in.readBoolean()) {
+				Point to = in.readPoint();
+				if (!graph.hasConnection(from, to)) {
+					throw new IOException("object is on a connection that does not exist: " + from + " -> " + to);
+				}
+				loc = new Location(getCanonicalNode(from), getCanonicalNode(to), in.readDouble());
+			} else {
+				if (!graph.containsNode(from)) {
+					throw new IOException("object is on a node that does not exist: " + from);
+				}
+				loc = new Location(getCanonicalNode(from), null, 0);
+			}
+			objs.add(obj);
+			locs.add(loc);
+		}
+		synchronized (locations) {
+			locations.clear();
+			if (spatialIndex != null) {
+				spatialIndex.clear();
+			}
+			for (int i = 0; i < n; i++) {
+				setLocation(objs.get(i), locs.get(i));
+			}
+		}
+	}
+
 	@Override
 	public boolean unregister(RoadUser e) {
 		if (containsObject(e)) {
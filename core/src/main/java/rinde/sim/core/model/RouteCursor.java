@@ -0,0 +1,179 @@
+package rinde.sim.core.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import rinde.sim.core.graph.GraphIndex;
+import rinde.sim.core.graph.Point;
+
+/**
+ * A reusable route through the graph of a {@link RoadModel}, used with
+ * {@link RoadModel#followRoute(MovingRoadUser, RouteCursor, long)}. The nodes
+ * of the route are kept as indices in the graph index of the model, the
+ * length and speed limit of a connection are looked up once, when the
+ * connection is traveled for the first time. The progress of the last move
+ * is kept in the cursor, moving an object along a cursor does not create any
+ * objects. The cursor of an object in the fleet of the model (see
+ * {@link RoadModel#addToFleet(MovingRoadUser, RouteCursor)}) receives the
+ * progress of every {@link RoadModel#moveFleet(long)}.
+ * <p>
+ * A cursor is not thread-safe, typically every object has its own cursor.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class RouteCursor {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	final RoadModel model;
+	// the index to which the nodes refer
+	GraphIndex index;
+	int[] nodes;
+	int size;
+	// the position in the route of the next node to reach
+	int next;
+	// per position in the route: the node from which the connection to the
+	// node was resolved (-1 if not resolved), its length and speed limit
+	int[] edgeFrom;
+	double[] lengths;
+	double[] limits;
+	// the last known handle of the object in the location store
+	int handle;
+	// the location of the object during a move
+	int locFrom;
+	int locTo;
+	double locRel;
+	double x;
+	double y;
+	boolean moved;
+
+	double distance;
+	long time;
+	int reached;
+
+	/**
+	 * Creates an empty cursor.
+	 * @param model The model in which the route is followed.
+	 */
+	public RouteCursor(RoadModel model) {
+		if (model == null) {
+			throw new IllegalArgumentException("model cannot be null");
+		}
+		this.model = model;
+		nodes = new int[INITIAL_CAPACITY];
+		edgeFrom = new int[INITIAL_CAPACITY];
+		lengths = new double[INITIAL_CAPACITY];
+		limits = new double[INITIAL_CAPACITY];
+		handle = -1;
+	}
+
+	/**
+	 * Replaces the route of this cursor. The first node of the route must be
+	 * the node on which the object is, a node that is connected to it, or the
+	 * end of the connection on which the object is traveling, just like the
+	 * path of {@link RoadModel#followPath(MovingRoadUser, java.util.Queue, long)}.
+	 * @param route The nodes of the route.
+	 * @throws IllegalArgumentException if a point of the route is not a node
+	 *             of the graph.
+	 */
+	public void setRoute(Collection<? extends Point> route) {
+		GraphIndex idx = model.getGraphIndex();
+		if (nodes.length < route.size()) {
+			int capacity = Math.max(route.size(), nodes.length * 2);
+			nodes = new int[capacity];
+			edgeFrom = new int[capacity];
+			lengths = new double[capacity];
+			limits = new double[capacity];
+		}
+		int n = 0;
+		for (Point p : route) {
+			int i = idx.indexOf(p);
+			if (i < 0) {
+				size = next = 0;
+				throw new IllegalArgumentException("route contains a point that is not a node of the graph: " + p);
+			}
+			nodes[n++] = i;
+		}
+		index = idx;
+		size = n;
+		next = 0;
+		Arrays.fill(edgeFrom, 0, n, -1);
+	}
+
+	/**
+	 * Removes all nodes of the route.
+	 */
+	public void clear() {
+		size = next = 0;
+	}
+
+	/**
+	 * @return <code>true</code> if not all nodes of the route have been
+	 *         reached.
+	 */
+	public boolean hasNext() {
+		return next < size;
+	}
+
+	/**
+	 * @return The number of nodes of the route that have not been reached.
+	 */
+	public int getRemainingNodes() {
+		return size - next;
+	}
+
+	/**
+	 * @return The next node of the route.
+	 * @throws IllegalStateException if all nodes have been reached.
+	 */
+	public Point getNextNode() {
+		if (!hasNext()) {
+			throw new IllegalStateException("all nodes of the route have been reached");
+		}
+		return index.getNode(nodes[next]);
+	}
+
+	/**
+	 * @return The distance traveled during the last move.
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return The time spent during the last move.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return The number of nodes reached during the last move.
+	 */
+	public int getNodesReached() {
+		return reached;
+	}
+
+	void resetProgress() {
+		distance = 0;
+		time = 0;
+		reached = 0;
+		moved = false;
+	}
+
+	/**
+	 * Converts the nodes that have not been reached to the new index of the
+	 * graph, the connections are resolved again.
+	 */
+	void reindex(GraphIndex idx) {
+		for (int i = next; i < size; i++) {
+			int j = idx.indexOf(index.getNode(nodes[i]));
+			if (j < 0) {
+				throw new IllegalStateException("node of the route has been removed from the graph: " + index.getNode(nodes[i]));
+			}
+			nodes[i] = j;
+		}
+		Arrays.fill(edgeFrom, next, size, -1);
+		index = idx;
+	}
+}
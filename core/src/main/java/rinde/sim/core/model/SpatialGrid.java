@@ -0,0 +1,280 @@
+package rinde.sim.core.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Uniform grid over the positions of objects, supports nearest neighbour and
+ * range queries. Only non-empty cells are stored. Query results are
+ * deterministic: objects at equal distance are ordered by the order in which
+ * they were added to the grid.
+ * <p>
+ * This class is not thread-safe.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class SpatialGrid<T> {
+
+	private final double cellSize;
+	private final Map<T, Entry<T>> entries;
+	private final Map<Long, List<Entry<T>>> cells;
+	private long sequence;
+
+	// bounds (in cells) of the cells that have ever been occupied
+	private int minX = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int maxY = Integer.MIN_VALUE;
+
+	SpatialGrid(double cellSize) {
+		if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+			throw new IllegalArgumentException("cellSize must be positive and finite, it is: " + cellSize);
+		}
+		this.cellSize = cellSize;
+		entries = new HashMap<T, Entry<T>>();
+		cells = new HashMap<Long, List<Entry<T>>>();
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Adds the object or updates its position when it is already present.
+	 */
+	void put(T obj, double x, double y) {
+		int cx = cell(x);
+		int cy = cell(y);
+		long key = key(cx, cy);
+		Entry<T> e = entries.get(obj);
+		if (e == null) {
+			e = new Entry<T>(obj, sequence++);
+			entries.put(obj, e);
+		} else if (e.cell != key) {
+			removeFromCell(e);
+		} else {
+			e.x = x;
+			e.y = y;
+			return;
+		}
+		e.x = x;
+		e.y = y;
+		e.cell = key;
+		List<Entry<T>> list = cells.get(key);
+		if (list == null) {
+			list = new ArrayList<Entry<T>>(4);
+			cells.put(key, list);
+		}
+		e.slot = list.size();
+		list.add(e);
+		minX = Math.min(minX, cx);
+		maxX = Math.max(maxX, cx);
+		minY = Math.min(minY, cy);
+		maxY = Math.max(maxY, cy);
+	}
+
+	void remove(T obj) {
+		Entry<T> e = entries.remove(obj);
+		if (e != null) {
+			removeFromCell(e);
+		}
+	}
+
+	void clear() {
+		entries.clear();
+		cells.clear();
+		minX = minY = Integer.MAX_VALUE;
+		maxX = maxY = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Finds the <code>n</code> objects closest to the specified position that
+	 * satisfy the filter, ordered by increasing distance.
+	 */
+	List<T> nearest(double x, double y, int n, Predicate<? super T> filter) {
+		if (n <= 0 || entries.isEmpty()) {
+			return new ArrayList<T>();
+		}
+		PriorityQueue<Candidate<T>> best = new PriorityQueue<Candidate<T>>(n, Collections.reverseOrder());
+		int cx = cell(x);
+		int cy = cell(y);
+		// distance from the position to the border of its cell
+		double border = Math.min(Math.min(x - cx * cellSize, (cx + 1) * cellSize - x), Math.min(y - cy * cellSize, (cy + 1) * cellSize - y));
+		int maxRing = Math.max(Math.max(cx - minX, maxX - cx), Math.max(cy - minY, maxY - cy));
+
+		long visited = 0;
+		for (int r = 0; r <= maxRing; r++) {
+			// objects in ring r are at least this far away
+			double bound = (r - 1) * cellSize + border;
+			if (best.size() == n && best.peek().dist < bound) {
+				break;
+			}
+			visited += r == 0 ? 1 : 8L * r;
+			if (visited > entries.size()) {
+				// the grid is sparse compared to the remaining area
+				best.clear();
+				for (Entry<T> e : entries.values()) {
+					offer(best, n, e, x, y, filter);
+				}
+				break;
+			}
+			for (int i = cx - r; i <= cx + r; i++) {
+				if (i == cx - r || i == cx + r) {
+					for (int j = cy - r; j <= cy + r; j++) {
+						offerCell(best, n, i, j, x, y, filter);
+					}
+				} else {
+					offerCell(best, n, i, cy - r, x, y, filter);
+					offerCell(best, n, i, cy + r, x, y, filter);
+				}
+			}
+		}
+		List<Candidate<T>> sorted = new ArrayList<Candidate<T>>(best);
+		Collections.sort(sorted);
+		List<T> result = new ArrayList<T>(sorted.size());
+		for (Candidate<T> c : sorted) {
+			result.add(c.entry.obj);
+		}
+		return result;
+	}
+
+	/**
+	 * Finds all objects that satisfy the filter and are at a distance strictly
+	 * smaller than <code>radius</code>, in the order in which they were added.
+	 */
+	List<T> withinRadius(double x, double y, double radius, Predicate<? super T> filter) {
+		List<Entry<T>> found = new ArrayList<Entry<T>>();
+		int x0 = Math.max(minX, cell(x - radius));
+		int x1 = Math.min(maxX, cell(x + radius));
+		int y0 = Math.max(minY, cell(y - radius));
+		int y1 = Math.min(maxY, cell(y + radius));
+		if (x0 <= x1 && y0 <= y1) {
+			if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > entries.size()) {
+				for (Entry<T> e : entries.values()) {
+					if (distance(e, x, y) < radius && filter.apply(e.obj)) {
+						found.add(e);
+					}
+				}
+			} else {
+				for (int i = x0; i <= x1; i++) {
+					for (int j = y0; j <= y1; j++) {
+						List<Entry<T>> list = cells.get(key(i, j));
+						if (list != null) {
+							for (Entry<T> e : list) {
+								if (distance(e, x, y) < radius && filter.apply(e.obj)) {
+									found.add(e);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(found, SEQUENCE_ORDER);
+		List<T> result = new ArrayList<T>(found.size());
+		for (Entry<T> e : found) {
+			result.add(e.obj);
+		}
+		return result;
+	}
+
+	private void offerCell(PriorityQueue<Candidate<T>> best, int n, int i, int j, double x, double y, Predicate<? super T> filter) {
+		List<Entry<T>> list = cells.get(key(i, j));
+		if (list != null) {
+			for (Entry<T> e : list) {
+				offer(best, n, e, x, y, filter);
+			}
+		}
+	}
+
+	private void offer(PriorityQueue<Candidate<T>> best, int n, Entry<T> e, double x, double y, Predicate<? super T> filter) {
+		double d = distance(e, x, y);
+		if (best.size() == n) {
+			Candidate<T> worst = best.peek();
+			if (d > worst.dist || (d == worst.dist && e.sequence > worst.entry.sequence)) {
+				return;
+			}
+		}
+		if (!filter.apply(e.obj)) {
+			return;
+		}
+		if (best.size() == n) {
+			best.poll();
+		}
+		best.add(new Candidate<T>(e, d));
+	}
+
+	private void removeFromCell(Entry<T> e) {
+		List<Entry<T>> list = cells.get(e.cell);
+		Entry<T> last = list.remove(list.size() - 1);
+		if (last != e) {
+			list.set(e.slot, last);
+			last.slot = e.slot;
+		}
+		if (list.isEmpty()) {
+			cells.remove(e.cell);
+		}
+	}
+
+	private int cell(double coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	private static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	// identical to Point.distance(Point, Point)
+	private static double distance(Entry<?> e, double x, double y) {
+		double dx = e.x - x;
+		double dy = e.y - y;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private static final Comparator<Entry<?>> SEQUENCE_ORDER = new Comparator<Entry<?>>() {
+		@Override
+		public int compare(Entry<?> o1, Entry<?> o2) {
+			return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+		}
+	};
+
+	private static final class Entry<T> {
+		final T obj;
+		final long sequence;
+		double x;
+		double y;
+		long cell;
+		int slot;
+
+		Entry(T obj, long sequence) {
+			this.obj = obj;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final class Candidate<T> implements Comparable<Candidate<T>> {
+		final Entry<T> entry;
+		final double dist;
+
+		Candidate(Entry<T> entry, double dist) {
+			this.entry = entry;
+			this.dist = dist;
+		}
+
+		@Override
+		public int compareTo(Candidate<T> o) {
+			int c = Double.compare(dist, o.dist);
+			if (c != 0) {
+				return c;
+			}
+			return SEQUENCE_ORDER.compare(entry, o.entry);
+		}
+	}
+}
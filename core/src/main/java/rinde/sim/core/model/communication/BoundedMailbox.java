@@ -0,0 +1,195 @@
+package rinde.sim.core.model.communication;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Mailbox with a fixed capacity for agents that receive many messages. Like
+ * {@link Mailbox} a message that is already in the box is not inserted again,
+ * but the duplicate check and all other operations take constant time. The
+ * messages are kept in a ring buffer and the duplicates are detected with a
+ * hash table (using {@link Message#equals(Object)}), neither allocates after
+ * construction. When the box is full a message is dropped according to the
+ * {@link OverflowPolicy}, the number of dropped messages is counted.
+ *
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class BoundedMailbox {
+
+	/**
+	 * Determines which message is dropped when a message is received by a
+	 * full mailbox.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The oldest message in the box is dropped to make room for the new
+		 * message.
+		 */
+		DROP_OLDEST,
+		/**
+		 * The new message is dropped.
+		 */
+		DROP_NEWEST
+	}
+
+	private final OverflowPolicy policy;
+	private final Message[] ring;
+	private int head;
+	private int size;
+	private long dropped;
+
+	// open addressing with linear probing, contains the messages in the ring
+	private final Message[] table;
+	private final int mask;
+
+	/**
+	 * Creates a mailbox that drops the oldest message when it is full.
+	 * @param capacity The maximum number of messages in the box.
+	 */
+	public BoundedMailbox(int capacity) {
+		this(capacity, OverflowPolicy.DROP_OLDEST);
+	}
+
+	/**
+	 * @param capacity The maximum number of messages in the box.
+	 * @param policy Determines which message is dropped when the box is full.
+	 */
+	public BoundedMailbox(int capacity, OverflowPolicy policy) {
+		if(capacity <= 0 || capacity > 1 << 29) throw new IllegalArgumentException("capacity must be in [1, 2^29]");
+		if(policy == null) throw new IllegalArgumentException("policy cannot be null");
+		this.policy = policy;
+		ring = new Message[capacity];
+		// load factor of at most 0.5
+		table = new Message[Integer.highestOneBit(capacity * 2 - 1) * 2];
+		mask = table.length - 1;
+	}
+
+	/**
+	 * Insert a msg in the mailbox. If the message is already present in the
+	 * box it is not inserted again.
+	 * @param msg The message.
+	 * @return <code>true</code> if the message was inserted.
+	 */
+	public boolean receive(Message msg) {
+		if(msg == null) throw new NullPointerException();
+		int slot = find(msg);
+		if(table[slot] != null) return false;
+		if(size == ring.length) {
+			dropped++;
+			if(policy == OverflowPolicy.DROP_NEWEST) return false;
+			removeFromTable(ring[head]);
+			ring[head] = null;
+			head = next(head);
+			size--;
+			// the removal may have moved the free slot
+			slot = find(msg);
+		}
+		table[slot] = msg;
+		int tail = head + size;
+		ring[tail < ring.length ? tail : tail - ring.length] = msg;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Moves all messages to the collection in the order in which they were
+	 * received, the box is empty afterwards. This takes time linear in the
+	 * number of messages, not in the capacity of the box.
+	 * @param target The collection to which the messages are added.
+	 * @return The number of messages that were moved.
+	 */
+	public int drainTo(Collection<? super Message> target) {
+		int n = size;
+		for (int i = 0; i < n; i++) {
+			Message msg = ring[head];
+			target.add(msg);
+			ring[head] = null;
+			head = next(head);
+			// the slot of a message is in the run of occupied slots that starts
+			// at its home slot, the run is cleared at once such that every slot
+			// is cleared only once and the drain takes time linear in n
+			int j = hash(msg) & mask;
+			while (table[j] != null) {
+				table[j] = null;
+				j = (j + 1) & mask;
+			}
+		}
+		head = 0;
+		size = 0;
+		return n;
+	}
+
+	/**
+	 * Getting messages empties the mailbox. Use
+	 * {@link #drainTo(Collection)} to avoid the allocation of a queue.
+	 * @return The messages in the order in which they were received.
+	 */
+	public Queue<Message> getMessages() {
+		Queue<Message> messages = new LinkedList<Message>();
+		drainTo(messages);
+		return messages;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return The number of messages that were dropped because the box was
+	 *         full.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	private int next(int index) {
+		return index + 1 == ring.length ? 0 : index + 1;
+	}
+
+	/**
+	 * @return The slot of the message or the empty slot where it belongs.
+	 */
+	private int find(Message msg) {
+		int i = hash(msg) & mask;
+		while (table[i] != null && !table[i].equals(msg)) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void removeFromTable(Message msg) {
+		int i = find(msg);
+		table[i] = null;
+		// shift the following entries back to keep the probe sequences intact
+		int j = (i + 1) & mask;
+		while (table[j] != null) {
+			int home = hash(table[j]) & mask;
+			// move the entry if its home is not in the cyclic range (i, j]
+			if(i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+				table[i] = table[j];
+				table[j] = null;
+				i = j;
+			}
+			j = (j + 1) & mask;
+		}
+	}
+
+	private static int hash(Message msg) {
+		int h = msg.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,9 +1,12 @@
 package rinde.sim.core.model.communication;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -12,27 +15,57 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Predicate;
+import rinde.sim.core.IndependentTickListener;
+import rinde.sim.core.Simulator;
 import rinde.sim.core.TickListener;
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
+import rinde.sim.core.checkpoint.Checkpointable;
 import rinde.sim.core.graph.Point;
 import rinde.sim.core.model.Model;
 import rinde.sim.core.model.RoadUser;
+import rinde.sim.util.RandomStreams;
 
 /**
  * The communication model. The message is send at the end of a current tick.
+ * <p>
+ * The model is thread-safe. Messages that are sent by a registered
+ * {@link IndependentTickListener} while it is ticked concurrently (see
+ * {@link Simulator#isTickingConcurrently()}) are checked against the
+ * position of the sender when they are sent, but the reliability
+ * computations are postponed to {@link #afterTick(long, long)} and done in
+ * the order in which the senders were registered. This way the outcome does
+ * not depend on the order in which the listeners were ticked.
+ * <p>
+ * Broadcasts of an {@link ImmutableMessage} are delivered to all recipients
+ * as one shared instance, other messages are cloned for every recipient.
  * @author Bartosz Michalik <bartosz.michalik@cs.kuleuven.be>
  * @since 2.0
  */
-public class CommunicationModel implements Model<CommunicationUser>, TickListener, CommunicationAPI {
+public class CommunicationModel implements Model<CommunicationUser>, TickListener, CommunicationAPI, Checkpointable {
 
 	protected static final Logger LOGGER = LoggerFactory.getLogger(CommunicationModel.class);
 	
 	protected final Set<CommunicationUser> users;
 	
-	protected List<Entry<CommunicationUser, Message>> sendQueue;
+	protected DeliveryQueue sendQueue;
+	// the queue that is not in use, reused to avoid allocations
+	private DeliveryQueue spareQueue;
 
 	protected RandomGenerator generator;
 
 	private final boolean ignoreDistances;
+
+	// when not null each sender draws from its own stream
+	private final RandomStreams streams;
+	private final Map<CommunicationUser, RandomGenerator> senderGenerators;
+	private long registrations;
+
+	// messages of concurrently ticked listeners, guarded by this
+	private final Map<CommunicationUser, List<Request>> deferred;
+
+	// reused buffer for the recipients of a broadcast, guarded by this
+	private CommunicationUser[] recipients;
 	
 	/**
 	 * Constructs the communication model.
@@ -40,11 +73,47 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 	 * @param ignoreDistances when <code>true</code> the distances constrains are ignored.
 	 */
 	public CommunicationModel(RandomGenerator generator, boolean ignoreDistances) {
+		this(generator, null, ignoreDistances);
+	}
+	
+	/**
+	 * Constructs the communication model in which each sender draws from its
+	 * own random stream for the reliability computations. The stream of a
+	 * sender is determined by the order in which it was registered in this
+	 * model, which makes the outcome independent of the order in which
+	 * messages of different senders are processed.
+	 * @param streams the streams from which the random generators of the senders are derived
+	 * @param ignoreDistances when <code>true</code> the distances constrains are ignored.
+	 */
+	public CommunicationModel(RandomStreams streams, boolean ignoreDistances) {
+		this(checkStreams(streams).get(-1), streams, ignoreDistances);
+	}
+	
+	/**
+	 * Constructs the communication model with per sender random streams that respects the distance constrains
+	 * @param streams the streams from which the random generators of the senders are derived
+	 * @see #CommunicationModel(RandomStreams, boolean)
+	 */
+	public CommunicationModel(RandomStreams streams) {
+		this(streams, false);
+	}
+	
+	private static RandomStreams checkStreams(RandomStreams streams) {
+		if(streams == null) throw new IllegalArgumentException("streams cannot be null");
+		return streams;
+	}
+	
+	private CommunicationModel(RandomGenerator generator, RandomStreams streams, boolean ignoreDistances) {
 		if(generator == null) throw new IllegalArgumentException("generator cannot be null");
 		users = new LinkedHashSet<CommunicationUser>();
-		sendQueue = new LinkedList<Entry<CommunicationUser,Message>>();
+		sendQueue = new DeliveryQueue();
+		spareQueue = new DeliveryQueue();
+		recipients = new CommunicationUser[16];
+		deferred = new HashMap<CommunicationUser, List<Request>>();
 		this.generator = generator;
 		this.ignoreDistances = ignoreDistances;
+		this.streams = streams;
+		senderGenerators = new HashMap<CommunicationUser, RandomGenerator>();
 	}
 	
 	/**
@@ -61,9 +130,12 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 	 * when it is also {@link RoadUser}. This is required as communication model depends on elements positions.
 	 */
 	@Override
-	public boolean register(CommunicationUser element) {
+	public synchronized boolean register(CommunicationUser element) {
 		boolean result = users.add(element);
 		if(! result) return false;
+		if(streams != null) {
+			senderGenerators.put(element, streams.get(registrations++));
+		}
 		// callback
 		try {
 			element.setCommunicationAPI(this);			
@@ -71,21 +143,18 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 			// if you miss-behave you don't deserve to use our infrastructure :D
 			LOGGER.warn("callback for the communication user failed. Unregistering", e);
 			users.remove(element);
+			senderGenerators.remove(element);
 			return false;
 		}
 		return true;
 	}
 	
 	@Override
-	public boolean unregister(CommunicationUser element) {
+	public synchronized boolean unregister(CommunicationUser element) {
 		if(element == null) return false;
-		List<Entry<CommunicationUser, Message>> toRemove = new LinkedList<Entry<CommunicationUser,Message>>();
-		for (Entry<CommunicationUser, Message> e : sendQueue) {
-			if(element.equals(e.getKey()) || element.equals(e.getValue().getSender())) {
-				toRemove.add(e);
-			}
-		}
-		sendQueue.removeAll(toRemove);
+		deferred.remove(element);
+		senderGenerators.remove(element);
+		sendQueue.remove(element);
 		
 		return users.remove(element);
 	}
@@ -103,15 +172,17 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 	@Override
 	public void afterTick(long currentTime, long timeStep) {
 		long timeMillis = System.currentTimeMillis();
-		List<Entry<CommunicationUser, Message>> cache = sendQueue;
-		sendQueue = new LinkedList<Entry<CommunicationUser,Message>>();
-		for (Entry<CommunicationUser, Message> e : cache) {
-			try {
-				e.getKey().receive(e.getValue());		
-				//TODO [bm] add msg delivered event
-			} catch(Exception e1) {
-				LOGGER.warn("unexpected exception while passing message", e1);
-			}
+		DeliveryQueue cache;
+		synchronized (this) {
+			resolveDeferred();
+			cache = sendQueue;
+			sendQueue = spareQueue != null ? spareQueue : new DeliveryQueue();
+			spareQueue = null;
+		}
+		// messages that are sent by the recipients end up in the other queue
+		cache.deliver();
+		synchronized (this) {
+			spareQueue = cache;
 		}
 		if(LOGGER.isDebugEnabled()) {
 			timeMillis = (System.currentTimeMillis() - timeMillis);
@@ -121,14 +192,20 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 
 
 	@Override
-	public void send(CommunicationUser recipient, Message message) {
+	public synchronized void send(CommunicationUser recipient, Message message) {
+		CanCommunicate predicate = new CanCommunicate(message.sender);
+		if(defer(new Request(recipient, message, predicate))) return;
+		doSend(recipient, message, predicate);
+	}
+
+	private void doSend(CommunicationUser recipient, Message message, CanCommunicate predicate) {
 		if(!users.contains(recipient)) {
 			//TODO [bm] implement dropped message EVENT
 			return;
 		}
 		
-		if(new CanCommunicate(message.sender).apply(recipient)) {
-			sendQueue.add(SimpleEntry.entry(recipient, message));
+		if(predicate.apply(recipient)) {
+			sendQueue.add(recipient, message);
 		} else {
 			//TODO [bm] implement dropped message EVENT
 			return;
@@ -138,28 +215,87 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 
 	@Override
 	public void broadcast(Message message) {
-		broadcast(message, new CanCommunicate(message.sender));
+		broadcast(message, (Class<? extends CommunicationUser>) null);
 	}
 
 	@Override
-	public void broadcast(Message message,
+	public synchronized void broadcast(Message message,
 			Class<? extends CommunicationUser> type) {
-		broadcast(message, new CanCommunicate(message.sender, type));
-		
+		CanCommunicate predicate = new CanCommunicate(message.sender, type);
+		if(defer(new Request(null, message, predicate))) return;
+		broadcast(message, predicate);
+	}
+
+	/**
+	 * Postpones a message of a registered listener that is ticked concurrently
+	 * until {@link #afterTick(long, long)}.
+	 * @return <code>true</code> if the message is postponed.
+	 */
+	private boolean defer(Request request) {
+		CommunicationUser sender = request.message.sender;
+		if(!Simulator.isTickingConcurrently() || !users.contains(sender)) {
+			return false;
+		}
+		List<Request> requests = deferred.get(sender);
+		if(requests == null) {
+			requests = new ArrayList<Request>();
+			deferred.put(sender, requests);
+		}
+		requests.add(request);
+		return true;
+	}
+
+	/**
+	 * Evaluates the postponed messages in the order in which the senders were
+	 * registered.
+	 */
+	synchronized void resolveDeferred() {
+		if(deferred.isEmpty()) return;
+		for (CommunicationUser u : users) {
+			List<Request> requests = deferred.remove(u);
+			if(requests == null) continue;
+			for (Request r : requests) {
+				if(r.recipient == null) {
+					broadcast(r.message, r.predicate);
+				} else {
+					doSend(r.recipient, r.message, r.predicate);
+				}
+			}
+			if(deferred.isEmpty()) return;
+		}
 	}
 
 	private void broadcast(Message message, Predicate<CommunicationUser> predicate) {
 		if(! users.contains(message.sender)) return;
-		HashSet<CommunicationUser> uSet = new HashSet<CommunicationUser>(users.size() / 2);
-		
+		// users is a set, the recipients are unique and in registration order
+		int n = 0;
 		for (CommunicationUser u : users) {
-			if(predicate.apply(u))
-				uSet.add(u);			
+			if(predicate.apply(u)) {
+				if(n == recipients.length) recipients = Arrays.copyOf(recipients, n * 2);
+				recipients[n++] = u;
+			}
 		}
-		
-		for (CommunicationUser u : uSet) {
+		enqueue(message, recipients, n);
+		Arrays.fill(recipients, 0, n, null);
+	}
+
+	/**
+	 * Adds a broadcast message for the first <code>count</code> recipients to
+	 * the send queue. An {@link ImmutableMessage} is shared by all recipients,
+	 * otherwise every recipient receives a clone of the message.
+	 * @param message the message
+	 * @param users the recipients, the array is not retained
+	 * @param count the number of recipients
+	 */
+	protected void enqueue(Message message, CommunicationUser[] users, int count) {
+		if(count == 0) return;
+		if(message instanceof ImmutableMessage) {
+			sendQueue.add(message, Arrays.copyOf(users, count));
+			return;
+		}
+		for (int i = 0; i < count; i++) {
 			try {
-				sendQueue.add(SimpleEntry.entry(u, message.clone()));
+				sendQueue.add(users[i], message.clone());
 			} catch (CloneNotSupportedException e) {
 				LOGGER.error("clonning exception for message", e);
 			}
@@ -167,7 +303,133 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 	}
 
 	/**
-	 * Check if an message from a given sender can be deliver to recipient 
+	 * Saves the state of the random generators and the messages that are
+	 * delivered in the next {@link #afterTick(long, long)}, the messages are
+	 * written with their {@link rinde.sim.core.checkpoint.StateHook}. Users
+	 * that are not part of the checkpoint, because they are being
+	 * unregistered, are skipped together with their messages. The state
+	 * cannot be saved while messages of independent tick listeners are
+	 * postponed, i.e. while listeners are ticked concurrently.
+	 */
+	@Override
+	public synchronized void saveState(CheckpointOutput out) throws IOException {
+		if(!deferred.isEmpty()) throw new IllegalStateException("cannot save the state while messages are postponed");
+		out.writeRandomGenerator(generator);
+		out.writeVarint(registrations);
+		List<CommunicationUser> senders = new ArrayList<CommunicationUser>();
+		for (CommunicationUser u : users) {
+			if(senderGenerators.containsKey(u) && out.isReferable(u)) senders.add(u);
+		}
+		out.writeVarint(senders.size());
+		for (CommunicationUser u : senders) {
+			out.writeReference(u);
+			out.writeRandomGenerator(senderGenerators.get(u));
+		}
+		List<Integer> entries = new ArrayList<Integer>();
+		List<CommunicationUser[]> targets = new ArrayList<CommunicationUser[]>();
+		for (int i = 0; i < sendQueue.getEntries(); i++) {
+			if(!out.isReferable(sendQueue.getMessage(i).getSender())) continue;
+			CommunicationUser[] recipients = sendQueue.getRecipients(i);
+			int n = 0;
+			for (CommunicationUser u : recipients) {
+				if(out.isReferable(u)) recipients[n++] = u;
+			}
+			if(n == 0) continue;
+			entries.add(i);
+			targets.add(Arrays.copyOf(recipients, n));
+		}
+		out.writeVarint(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			out.writeValue(sendQueue.getMessage(entries.get(i)));
+			out.writeBoolean(sendQueue.isShared(entries.get(i)));
+			out.writeVarint(targets.get(i).length);
+			for (CommunicationUser u : targets.get(i)) {
+				out.writeReference(u);
+			}
+		}
+	}
+
+	/**
+	 * Restores the state of the random generators and replaces the messages
+	 * that are waiting to be delivered. The users must be registered again
+	 * before the state is restored.
+	 */
+	@Override
+	public synchronized void restoreState(CheckpointInput in) throws IOException {
+		in.readRandomGenerator(generator);
+		registrations = in.readVarLong();
+		int n = in.readVarint();
+		for (int i = 0; i < n; i++) {
+			CommunicationUser u = in.readReference(CommunicationUser.class);
+			RandomGenerator g = senderGenerators.get(u);
+			if(g == null) throw new IOException("user has no random stream: " + u);
+			in.readRandomGenerator(g);
+		}
+		sendQueue.clear();
+		int entries = in.readVarint();
+		for (int i = 0; i < entries; i++) {
+			Message message = readMessage(in);
+			boolean shared = in.readBoolean();
+			CommunicationUser[] recipients = new CommunicationUser[in.readVarint()];
+			for (int j = 0; j < recipients.length; j++) {
+				recipients[j] = in.readReference(CommunicationUser.class);
+				if(recipients[j] == null) throw new IOException("message without a recipient");
+			}
+			if(shared) {
+				sendQueue.add(message, recipients);
+			} else if(recipients.length == 1) {
+				sendQueue.add(recipients[0], message);
+			} else {
+				throw new IOException("message with " + recipients.length + " recipients is not shared");
+			}
+		}
+	}
+
+	/**
+	 * Writes the type of the recipients of a broadcast that is postponed by a
+	 * subclass.
+	 * @param out the output
+	 * @param type the type or <code>null</code> for all types
+	 * @throws IOException if the output cannot be written
+	 */
+	static void writeType(CheckpointOutput out, Class<? extends CommunicationUser> type) throws IOException {
+		out.writeUTF(type == null ? "" : type.getName());
+	}
+
+	static Class<? extends CommunicationUser> readType(CheckpointInput in) throws IOException {
+		String name = in.readUTF();
+		if(name.length() == 0) return null;
+		try {
+			return Class.forName(name).asSubclass(CommunicationUser.class);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("unknown type of recipients: " + name, e);
+		} catch (ClassCastException e) {
+			throw new IOException("not a type of recipients: " + name, e);
+		}
+	}
+
+	static Message readMessage(CheckpointInput in) throws IOException {
+		Object message = in.readValue();
+		if(!(message instanceof Message)) throw new IOException("not a message: " + message);
+		return (Message) message;
+	}
+
+	/**
+	 * @param sender the sender of a message
+	 * @return the random generator that is used for the reliability computations of messages of the sender
+	 */
+	protected RandomGenerator getGenerator(CommunicationUser sender) {
+		if(streams != null) {
+			RandomGenerator g = senderGenerators.get(sender);
+			if(g != null) return g;
+		}
+		return generator;
+	}
+
+	/**
+	 * Check if an message from a given sender can be deliver to recipient. The
+	 * position, radius and reliability of the sender are those at the moment
+	 * the predicate is created.
 	 * @see CanCommunicate#apply(CommunicationUser)
 	 * @author Bartosz Michalik <bartosz.michalik@cs.kuleuven.be>
 	 * @since 2.0
@@ -176,13 +438,19 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 
 		private Class<? extends CommunicationUser> clazz;
 		private final CommunicationUser sender;
+		private final Point sPos;
+		private final double sRadius;
+		private final double sReliability;
 		private Rectangle rec;
 
 		public CanCommunicate(CommunicationUser sender, Class<? extends CommunicationUser> clazz) {
 			this.sender = sender;
 			this.clazz = clazz;
-			if(sender.getPosition() != null)
-				rec = new Rectangle(sender.getPosition(), sender.getRadius());
+			sPos = sender.getPosition();
+			sRadius = sender.getRadius();
+			sReliability = sender.getReliability();
+			if(sPos != null)
+				rec = new Rectangle(sPos, sRadius);
 		}
 		
 		public CanCommunicate(CommunicationUser sender) {
@@ -200,14 +468,25 @@ public class CommunicationModel implements Model<CommunicationUser>, TickListene
 			if(!ignoreDistances && !rec.contains(iPos)) {
 				return false;
 			}
-			double prob = input.getReliability() * sender.getReliability();
-			double minRadius = Math.min(input.getRadius(), sender.getRadius());
-			double rand = generator.nextDouble();
-			Point sPos = sender.getPosition();
+			double prob = input.getReliability() * sReliability;
+			double minRadius = Math.min(input.getRadius(), sRadius);
+			double rand = getGenerator(sender).nextDouble();
 			return prob > rand && (ignoreDistances ? true : Point.distance(sPos, iPos) <= minRadius);
 		}
 	}
 	
+	private static class Request {
+		final CommunicationUser recipient;
+		final Message message;
+		final CanCommunicate predicate;
+
+		Request(CommunicationUser recipient, Message message, CanCommunicate predicate) {
+			this.recipient = recipient;
+			this.message = message;
+			this.predicate = predicate;
+		}
+	}
+
 	private static class Rectangle {
 		private double y1;
 		private double x1;
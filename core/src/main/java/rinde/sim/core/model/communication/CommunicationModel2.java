@@ -1,19 +1,26 @@
 package rinde.sim.core.model.communication;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import org.apache.commons.math.random.RandomGenerator;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
 import rinde.sim.core.graph.Point;
+import rinde.sim.util.RandomStreams;
 
 /**
- * A version optimized for broadcasting
+ * A version optimized for broadcasting. All broadcasts are evaluated in
+ * {@link #afterTick(long, long)} in the order in which the senders were
+ * registered.
  * 
  * @author Bartosz Michalik <bartosz.michalik@cs.kuleuven.be>
  * @since 2.0
@@ -29,7 +36,8 @@ public class CommunicationModel2 extends CommunicationModel {
 			if (diff != 0)
 				return diff > 0 ? 1 : -1;
 
-			return o1.hashCode() - o2.hashCode();
+			// the sort is stable, ties keep the registration order
+			return 0;
 		}
 	};
 
@@ -40,7 +48,8 @@ public class CommunicationModel2 extends CommunicationModel {
 			if (diff != 0)
 				return diff > 0 ? 1 : -1;
 
-			return o1.hashCode() - o2.hashCode();
+			// the sort is stable, ties keep the registration order
+			return 0;
 		}
 	};
 
@@ -49,14 +58,66 @@ public class CommunicationModel2 extends CommunicationModel {
 		toBroadcast = ArrayListMultimap.create();
 	}
 
+	/**
+	 * @param streams the streams from which the random generators of the senders are derived
+	 * @see CommunicationModel#CommunicationModel(RandomStreams)
+	 */
+	public CommunicationModel2(RandomStreams streams) {
+		super(streams);
+		toBroadcast = ArrayListMultimap.create();
+	}
+
+
+	/**
+	 * Also saves the broadcasts that are evaluated in the next
+	 * {@link #afterTick(long, long)}.
+	 */
+	@Override
+	public synchronized void saveState(CheckpointOutput out) throws IOException {
+		super.saveState(out);
+		// broadcasts of senders that are not registered are never evaluated
+		List<CommunicationUser> senders = new ArrayList<CommunicationUser>();
+		int n = 0;
+		for (CommunicationUser sender : users) {
+			if(out.isReferable(sender)) {
+				senders.add(sender);
+				n += toBroadcast.get(sender).size();
+			}
+		}
+		out.writeVarint(n);
+		for (CommunicationUser sender : senders) {
+			for (SimpleEntry<Message, Class<? extends CommunicationUser>> e : toBroadcast.get(sender)) {
+				out.writeReference(sender);
+				out.writeValue(e.getKey());
+				writeType(out, e.getValue());
+			}
+		}
+	}
+
+	@Override
+	public synchronized void restoreState(CheckpointInput in) throws IOException {
+		super.restoreState(in);
+		toBroadcast.clear();
+		int n = in.readVarint();
+		for (int i = 0; i < n; i++) {
+			CommunicationUser sender = in.readReference(CommunicationUser.class);
+			Message message = readMessage(in);
+			toBroadcast.put(sender, new SimpleEntry<Message, Class<? extends CommunicationUser>>(message,
+					readType(in)));
+		}
+	}
 
 	@Override
 	public void afterTick(long currentTime, long timeStep) {
+		// the messages that were sent during the tick come first
+		resolveDeferred();
 		broadcast();
 		super.afterTick(currentTime, timeStep);
 	}
 
-	private void broadcast() {
+	private synchronized void broadcast() {
+		if (toBroadcast.isEmpty())
+			return;
 
 		final ArrayList<CommunicationUser> xSorted = new ArrayList<CommunicationUser>(
 				users);
@@ -65,7 +126,9 @@ public class CommunicationModel2 extends CommunicationModel {
 		Multimap<CommunicationUser, SimpleEntry<Message, Class<? extends CommunicationUser>>> cache = toBroadcast;
 		toBroadcast = ArrayListMultimap.create();
 
-		for (CommunicationUser sender : cache.keySet()) {
+		for (CommunicationUser sender : users) {
+			if (!cache.containsKey(sender))
+				continue;
 			ArrayList<CommunicationUser> toCheck = select(xSorted, sender, true);
 
 			CanCommunicate predicate = new CanCommunicate(sender);
@@ -98,9 +161,9 @@ public class CommunicationModel2 extends CommunicationModel {
 				break;
 		}
 		if (isX) {
-			distance = sender.getPosition().x - sender.getRadius();
+			distance = sender.getPosition().x + sender.getRadius();
 		} else {
-			distance = sender.getPosition().y - sender.getRadius();
+			distance = sender.getPosition().y + sender.getRadius();
 		}
 		for (int i = idx + 1; i < from.size(); ++i) {
 			CommunicationUser user = from.get(i);
@@ -114,14 +177,14 @@ public class CommunicationModel2 extends CommunicationModel {
 	}
 
 	@Override
-	public void broadcast(Message message) {
+	public synchronized void broadcast(Message message) {
 		toBroadcast.put(message.sender,
 				new SimpleEntry<Message, Class<? extends CommunicationUser>>(
 						message, null));
 	}
 
 	@Override
-	public void broadcast(Message message,
+	public synchronized void broadcast(Message message,
 			Class<? extends CommunicationUser> type) {
 		toBroadcast.put(message.sender,
 				new SimpleEntry<Message, Class<? extends CommunicationUser>>(
@@ -146,7 +209,7 @@ public class CommunicationModel2 extends CommunicationModel {
 		}
 		toCommunicate.remove(sender);
 
-		HashSet<CommunicationUser> uSet = new HashSet<CommunicationUser>(
+		LinkedHashSet<CommunicationUser> uSet = new LinkedHashSet<CommunicationUser>(
 				toCommunicate.size() / 2);
 
 		for (CommunicationUser u : toCommunicate) {
@@ -154,17 +217,14 @@ public class CommunicationModel2 extends CommunicationModel {
 				uSet.add(u);
 		}
 
-		for (CommunicationUser u : uSet) {
-			try {
-				for (SimpleEntry<Message, Class<? extends CommunicationUser>> p : collection) {
-					if (p.getValue() != null
-							&& !p.getValue().equals(u.getClass()))
-						continue;
-					sendQueue.add(SimpleEntry.entry(u, p.getKey().clone()));
-				}
-			} catch (CloneNotSupportedException e) {
-				LOGGER.error("clonning exception for message", e);
+		CommunicationUser[] recipients = new CommunicationUser[uSet.size()];
+		for (SimpleEntry<Message, Class<? extends CommunicationUser>> p : collection) {
+			int n = 0;
+			for (CommunicationUser u : uSet) {
+				if (p.getValue() == null || p.getValue().equals(u.getClass()))
+					recipients[n++] = u;
 			}
+			enqueue(p.getKey(), recipients, n);
 		}
 	}
 
@@ -201,7 +261,7 @@ public class CommunicationModel2 extends CommunicationModel {
 			final Point iPos = input.getPosition();
 
 			double prob = input.getReliability() * sender.getReliability();
-			double rand = generator.nextDouble();
+			double rand = getGenerator(sender).nextDouble();
 			if (prob <= rand)
 				return false;
 
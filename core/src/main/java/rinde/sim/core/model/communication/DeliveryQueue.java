@@ -0,0 +1,175 @@
+package rinde.sim.core.model.communication;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Array based queue of the messages that are delivered at the end of a tick.
+ * An entry is either a message for a single recipient or a message that is
+ * shared by a number of recipients, adding an entry does not allocate any
+ * objects once the arrays have grown to the typical number of entries. The
+ * queue is not thread-safe, it is guarded by the {@link CommunicationModel}
+ * that owns it.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class DeliveryQueue {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeliveryQueue.class);
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Message[] messages;
+	// a CommunicationUser or a CommunicationUser[] per entry
+	private Object[] recipients;
+	private int entries;
+	private int size;
+
+	public DeliveryQueue() {
+		messages = new Message[INITIAL_CAPACITY];
+		recipients = new Object[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a message for a single recipient.
+	 * @param recipient The recipient.
+	 * @param message The message.
+	 */
+	public void add(CommunicationUser recipient, Message message) {
+		if(recipient == null || message == null) throw new IllegalArgumentException("recipient and message cannot be null");
+		append(message, recipient);
+		size++;
+	}
+
+	/**
+	 * Adds a message that is delivered to all recipients, each recipient
+	 * receives the same instance. The array is owned by the queue after this
+	 * call, it must not be modified by the caller.
+	 * @param message The message.
+	 * @param users The recipients, without <code>null</code> elements.
+	 */
+	public void add(Message message, CommunicationUser[] users) {
+		if(message == null || users == null) throw new IllegalArgumentException("message and users cannot be null");
+		if(users.length == 0) return;
+		append(message, users);
+		size += users.length;
+	}
+
+	private void append(Message message, Object target) {
+		if(entries == messages.length) {
+			messages = Arrays.copyOf(messages, entries * 2);
+			recipients = Arrays.copyOf(recipients, entries * 2);
+		}
+		messages[entries] = message;
+		recipients[entries] = target;
+		entries++;
+	}
+
+	/**
+	 * @return The number of deliveries in the queue.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all deliveries to the user and all messages sent by the user.
+	 * @param user The user.
+	 */
+	public void remove(CommunicationUser user) {
+		int k = 0;
+		for (int i = 0; i < entries; i++) {
+			Message m = messages[i];
+			Object r = recipients[i];
+			if(user.equals(m.getSender())) {
+				size -= count(r);
+				continue;
+			}
+			if(r instanceof CommunicationUser[]) {
+				CommunicationUser[] users = (CommunicationUser[]) r;
+				int n = 0;
+				for (CommunicationUser u : users) {
+					if(!user.equals(u)) users[n++] = u;
+				}
+				size -= users.length - n;
+				if(n == 0) continue;
+				if(n < users.length) r = Arrays.copyOf(users, n);
+			} else if(user.equals(r)) {
+				size--;
+				continue;
+			}
+			messages[k] = m;
+			recipients[k] = r;
+			k++;
+		}
+		Arrays.fill(messages, k, entries, null);
+		Arrays.fill(recipients, k, entries, null);
+		entries = k;
+	}
+
+	private static int count(Object r) {
+		return r instanceof CommunicationUser[] ? ((CommunicationUser[]) r).length : 1;
+	}
+
+	/**
+	 * Delivers all messages in the order in which they were added and empties
+	 * the queue. An exception that is thrown by a recipient is logged, the
+	 * other messages are still delivered.
+	 */
+	public void deliver() {
+		for (int i = 0; i < entries; i++) {
+			Message m = messages[i];
+			Object r = recipients[i];
+			if(r instanceof CommunicationUser[]) {
+				for (CommunicationUser u : (CommunicationUser[]) r) {
+					deliver(u, m);
+				}
+			} else {
+				deliver((CommunicationUser) r, m);
+			}
+		}
+		clear();
+	}
+
+	private static void deliver(CommunicationUser recipient, Message message) {
+		try {
+			recipient.receive(message);
+			//TODO [bm] add msg delivered event
+		} catch(Exception e) {
+			LOGGER.warn("unexpected exception while passing message", e);
+		}
+	}
+
+	// the entries are read when the queue is saved in a checkpoint
+	int getEntries() {
+		return entries;
+	}
+
+	Message getMessage(int entry) {
+		return messages[entry];
+	}
+
+	boolean isShared(int entry) {
+		return recipients[entry] instanceof CommunicationUser[];
+	}
+
+	CommunicationUser[] getRecipients(int entry) {
+		Object r = recipients[entry];
+		if(r instanceof CommunicationUser[]) {
+			return ((CommunicationUser[]) r).clone();
+		}
+		return new CommunicationUser[] { (CommunicationUser) r };
+	}
+
+	public void clear() {
+		Arrays.fill(messages, 0, entries, null);
+		Arrays.fill(recipients, 0, entries, null);
+		entries = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,287 @@
+package rinde.sim.core.model.communication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
+import rinde.sim.core.graph.Point;
+import rinde.sim.util.RandomStreams;
+
+/**
+ * A version optimized for broadcasting with many users. The users are kept in
+ * a uniform grid that is rebuilt once per tick, a broadcast only visits the
+ * cells that overlap with the radius of the sender. Like
+ * {@link CommunicationModel2} all broadcasts are evaluated in
+ * {@link #afterTick(long, long)} in the order in which the senders were
+ * registered, which is also the order in which the messages of independent
+ * tick listeners are evaluated by {@link CommunicationModel}. The recipients
+ * of a broadcast are evaluated in registration order and the reliability is
+ * sampled for exactly the same users as in {@link CommunicationModel}, with
+ * the same random streams both models deliver the same messages.
+ * <p>
+ * Unless a cell size is specified the cell size is the median of the radii of
+ * the users at the moment the grid is built.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class GridCommunicationModel extends CommunicationModel {
+
+	private final double fixedCellSize;
+
+	// broadcasts per sender, guarded by this
+	private ListMultimap<CommunicationUser, Broadcast> toBroadcast;
+
+	// the grid, only valid during the evaluation of the broadcasts
+	private CommunicationUser[] ordered;
+	private Map<Long, int[]> cells;
+	private double cellSize;
+	// reused buffer for the recipients of a broadcast
+	private CommunicationUser[] recipients = new CommunicationUser[0];
+
+	/**
+	 * @param generator the random number generator that is used for reliability computations
+	 */
+	public GridCommunicationModel(RandomGenerator generator) {
+		super(generator);
+		fixedCellSize = Double.NaN;
+		toBroadcast = ArrayListMultimap.create();
+	}
+
+	/**
+	 * @param generator the random number generator that is used for reliability computations
+	 * @param cellSize the size of the cells of the grid, preferably close to the typical radius of the users
+	 */
+	public GridCommunicationModel(RandomGenerator generator, double cellSize) {
+		super(generator);
+		fixedCellSize = checkCellSize(cellSize);
+		toBroadcast = ArrayListMultimap.create();
+	}
+
+	/**
+	 * @param streams the streams from which the random generators of the senders are derived
+	 * @see CommunicationModel#CommunicationModel(RandomStreams)
+	 */
+	public GridCommunicationModel(RandomStreams streams) {
+		super(streams);
+		fixedCellSize = Double.NaN;
+		toBroadcast = ArrayListMultimap.create();
+	}
+
+	/**
+	 * @param streams the streams from which the random generators of the senders are derived
+	 * @param cellSize the size of the cells of the grid, preferably close to the typical radius of the users
+	 * @see CommunicationModel#CommunicationModel(RandomStreams)
+	 */
+	public GridCommunicationModel(RandomStreams streams, double cellSize) {
+		super(streams);
+		fixedCellSize = checkCellSize(cellSize);
+		toBroadcast = ArrayListMultimap.create();
+	}
+
+	private static double checkCellSize(double cellSize) {
+		if(!(cellSize > 0) || Double.isInfinite(cellSize)) throw new IllegalArgumentException("cellSize must be a positive number");
+		return cellSize;
+	}
+
+	@Override
+	public synchronized boolean unregister(CommunicationUser element) {
+		if(element != null) toBroadcast.removeAll(element);
+		return super.unregister(element);
+	}
+
+	/**
+	 * Also saves the broadcasts that are evaluated in the next
+	 * {@link #afterTick(long, long)}.
+	 */
+	@Override
+	public synchronized void saveState(CheckpointOutput out) throws IOException {
+		super.saveState(out);
+		// broadcasts of senders that are not registered are never evaluated
+		List<CommunicationUser> senders = new ArrayList<CommunicationUser>();
+		int n = 0;
+		for (CommunicationUser sender : users) {
+			if(out.isReferable(sender)) {
+				senders.add(sender);
+				n += toBroadcast.get(sender).size();
+			}
+		}
+		out.writeVarint(n);
+		for (CommunicationUser sender : senders) {
+			for (Broadcast b : toBroadcast.get(sender)) {
+				out.writeReference(sender);
+				out.writeValue(b.message);
+				writeType(out, b.type);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void restoreState(CheckpointInput in) throws IOException {
+		super.restoreState(in);
+		toBroadcast.clear();
+		int n = in.readVarint();
+		for (int i = 0; i < n; i++) {
+			CommunicationUser sender = in.readReference(CommunicationUser.class);
+			Message message = readMessage(in);
+			toBroadcast.put(sender, new Broadcast(message, readType(in)));
+		}
+	}
+
+	@Override
+	public void afterTick(long currentTime, long timeStep) {
+		// the messages that were sent during the tick come first
+		resolveDeferred();
+		broadcast();
+		super.afterTick(currentTime, timeStep);
+	}
+
+	@Override
+	public synchronized void broadcast(Message message, Class<? extends CommunicationUser> type) {
+		toBroadcast.put(message.sender, new Broadcast(message, type));
+	}
+
+	private synchronized void broadcast() {
+		if(toBroadcast.isEmpty()) return;
+		ListMultimap<CommunicationUser, Broadcast> cache = toBroadcast;
+		toBroadcast = ArrayListMultimap.create();
+
+		buildGrid();
+		try {
+			for (CommunicationUser sender : users) {
+				if(!cache.containsKey(sender)) continue;
+				for (Broadcast b : cache.get(sender)) {
+					broadcast(sender, b);
+				}
+			}
+		} finally {
+			ordered = null;
+			cells = null;
+		}
+	}
+
+	private void broadcast(CommunicationUser sender, Broadcast b) {
+		if(sender.getPosition() == null) return;
+		CanCommunicate predicate = new CanCommunicate(sender, b.type);
+		int[] candidates = candidates(sender.getPosition(), sender.getRadius());
+		if(recipients.length < candidates.length) recipients = new CommunicationUser[candidates.length];
+		int n = 0;
+		for (int i : candidates) {
+			CommunicationUser u = ordered[i];
+			if(predicate.apply(u)) recipients[n++] = u;
+		}
+		enqueue(b.message, recipients, n);
+		Arrays.fill(recipients, 0, n, null);
+	}
+
+	/**
+	 * Builds the grid from the current positions of the users. Users without
+	 * a position are left out, they can not receive broadcasts.
+	 */
+	private void buildGrid() {
+		ordered = users.toArray(new CommunicationUser[users.size()]);
+		cellSize = Double.isNaN(fixedCellSize) ? medianRadius() : fixedCellSize;
+
+		Map<Long, int[]> grid = new HashMap<Long, int[]>();
+		for (int i = 0; i < ordered.length; i++) {
+			Point p = ordered[i].getPosition();
+			if(p == null) continue;
+			Long key = key(cell(p.x), cell(p.y));
+			int[] cell = grid.get(key);
+			if(cell == null) {
+				// first element is the number of indices in the cell
+				cell = new int[5];
+			} else if(cell[0] + 1 == cell.length) {
+				cell = Arrays.copyOf(cell, cell.length * 2);
+			}
+			cell[++cell[0]] = i;
+			grid.put(key, cell);
+		}
+		cells = grid;
+	}
+
+	private double medianRadius() {
+		double[] radii = new double[ordered.length];
+		int n = 0;
+		for (CommunicationUser u : ordered) {
+			double r = u.getRadius();
+			if(r > 0 && !Double.isInfinite(r)) radii[n++] = r;
+		}
+		if(n == 0) return 1;
+		Arrays.sort(radii, 0, n);
+		return radii[n / 2];
+	}
+
+	/**
+	 * @return The indices of the users in the cells that overlap with the
+	 *         square around the position, in registration order.
+	 */
+	private int[] candidates(Point p, double radius) {
+		if(!(radius >= 0)) return new int[0];
+		long x0 = cell(p.x - radius);
+		long x1 = cell(p.x + radius);
+		long y0 = cell(p.y - radius);
+		long y1 = cell(p.y + radius);
+
+		List<int[]> selected = new ArrayList<int[]>();
+		double area = ((double) x1 - x0 + 1) * ((double) y1 - y0 + 1);
+		if(area > cells.size()) {
+			// visiting the occupied cells is cheaper than visiting the square
+			for (Entry<Long, int[]> e : cells.entrySet()) {
+				long cx = e.getKey() >> 32;
+				long cy = (int) e.getKey().longValue();
+				if(cx >= x0 && cx <= x1 && cy >= y0 && cy <= y1) selected.add(e.getValue());
+			}
+		} else {
+			for (long x = x0; x <= x1; x++) {
+				for (long y = y0; y <= y1; y++) {
+					int[] cell = cells.get(key(x, y));
+					if(cell != null) selected.add(cell);
+				}
+			}
+		}
+
+		int size = 0;
+		for (int[] cell : selected) {
+			size += cell[0];
+		}
+		int[] result = new int[size];
+		int k = 0;
+		for (int[] cell : selected) {
+			System.arraycopy(cell, 1, result, k, cell[0]);
+			k += cell[0];
+		}
+		if(selected.size() > 1) Arrays.sort(result);
+		return result;
+	}
+
+	private long cell(double coordinate) {
+		double c = Math.floor(coordinate / cellSize);
+		// clamp to the range of the key
+		return (long) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, c));
+	}
+
+	private static Long key(long x, long y) {
+		return (x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	private static class Broadcast {
+		final Message message;
+		final Class<? extends CommunicationUser> type;
+
+		Broadcast(Message message, Class<? extends CommunicationUser> type) {
+			this.message = message;
+			this.type = type;
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package rinde.sim.core.model.communication;
+
+/**
+ * Marks a {@link Message} that is not modified after it is sent. A broadcast
+ * of an immutable message is not cloned for every recipient, all recipients
+ * receive the same instance. Recipients must therefore not modify the
+ * message.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface ImmutableMessage {
+
+}
@@ -0,0 +1,333 @@
+package rinde.sim.scenario;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import rinde.sim.scenario.BatchRunner.Progress;
+import rinde.sim.scenario.BatchRunner.Result;
+import rinde.sim.scenario.BatchRunner.ResultListener;
+import rinde.sim.scenario.BatchRunner.Run;
+
+/**
+ * Reports for the results of a {@link BatchRunner}. The reports are written
+ * while the batch is running, the writer is flushed after every run but it
+ * is not closed.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class BatchReports {
+
+	private BatchReports() {}
+
+	/**
+	 * Creates a report with one line per run: the run index, configuration,
+	 * replication, seed, parameters, duration (ms), measurements and error.
+	 * The measurement columns are taken from the first run that succeeded.
+	 * @param writer The writer to write to.
+	 * @return The listener that writes the report.
+	 */
+	public static ResultListener csv(Writer writer) {
+		return new CsvReport(writer);
+	}
+
+	/**
+	 * Creates a JSON report: an object with all runs, per configuration the
+	 * mean and standard deviation of the numeric measurements over the
+	 * successful replications, and a summary of the batch.
+	 * @param writer The writer to write to.
+	 * @return The listener that writes the report.
+	 */
+	public static ResultListener json(Writer writer) {
+		return new JsonReport(writer);
+	}
+
+	private static class CsvReport implements ResultListener {
+		private final Writer writer;
+		private List<String> columns;
+		// failed runs that precede the first successful run
+		private final List<Result> buffer;
+
+		CsvReport(Writer writer) {
+			this.writer = writer;
+			buffer = new ArrayList<Result>();
+		}
+
+		@Override
+		public void runFinished(Result result, Progress progress) {
+			if (columns == null) {
+				if (result.isFailed()) {
+					buffer.add(result);
+					return;
+				}
+				writeHeader(result);
+			}
+			writeRow(result);
+			flush();
+		}
+
+		@Override
+		public void batchFinished(Progress progress) {
+			if (columns == null && !buffer.isEmpty()) {
+				writeHeader(buffer.get(0));
+			}
+			flush();
+		}
+
+		private void writeHeader(Result first) {
+			columns = new ArrayList<String>();
+			if (first.getMeasurements() != null) {
+				columns.addAll(first.getMeasurements().keySet());
+			}
+			StringBuilder sb = new StringBuilder("index,configuration,replication,seed");
+			for (String p : first.getRun().getParameters().keySet()) {
+				sb.append(',').append(escape(p));
+			}
+			sb.append(",duration");
+			for (String c : columns) {
+				sb.append(',').append(escape(c));
+			}
+			sb.append(",error\n");
+			write(sb);
+			for (Result r : buffer) {
+				writeRow(r);
+			}
+			buffer.clear();
+		}
+
+		private void writeRow(Result result) {
+			Run run = result.getRun();
+			StringBuilder sb = new StringBuilder();
+			sb.append(run.getIndex()).append(',').append(run.getConfiguration()).append(',')
+					.append(run.getReplication()).append(',').append(run.getSeed());
+			for (Object v : run.getParameters().values()) {
+				sb.append(',').append(escape(String.valueOf(v)));
+			}
+			sb.append(',').append(result.getDuration());
+			for (String c : columns) {
+				sb.append(',');
+				if (result.getMeasurements() != null && result.getMeasurements().get(c) != null) {
+					sb.append(escape(String.valueOf(result.getMeasurements().get(c))));
+				}
+			}
+			sb.append(',');
+			if (result.isFailed()) {
+				sb.append(escape(String.valueOf(result.getFailure())));
+			}
+			sb.append('\n');
+			write(sb);
+		}
+
+		private static String escape(String s) {
+			if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+				return s;
+			}
+			return '"' + s.replace("\"", "\"\"") + '"';
+		}
+
+		private void write(CharSequence s) {
+			try {
+				writer.append(s);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write report. " + e.getMessage(), e);
+			}
+		}
+
+		private void flush() {
+			BatchReports.flush(writer);
+		}
+	}
+
+	private static class JsonReport implements ResultListener {
+		private final Writer writer;
+		private int runs;
+		// per configuration: parameters and statistics per measurement
+		private final Map<Integer, Map<String, Object>> parameters;
+		private final Map<Integer, Map<String, double[]>> statistics;
+		private final Map<Integer, int[]> counts;
+
+		JsonReport(Writer writer) {
+			this.writer = writer;
+			parameters = new LinkedHashMap<Integer, Map<String, Object>>();
+			statistics = new LinkedHashMap<Integer, Map<String, double[]>>();
+			counts = new LinkedHashMap<Integer, int[]>();
+		}
+
+		@Override
+		public void runFinished(Result result, Progress progress) {
+			Run run = result.getRun();
+			StringBuilder sb = new StringBuilder();
+			sb.append(runs == 0 ? "{\"runs\":[\n" : ",\n");
+			sb.append("{\"index\":").append(run.getIndex());
+			sb.append(",\"configuration\":").append(run.getConfiguration());
+			sb.append(",\"replication\":").append(run.getReplication());
+			sb.append(",\"seed\":").append(run.getSeed());
+			sb.append(",\"parameters\":");
+			object(sb, run.getParameters());
+			sb.append(",\"duration\":").append(result.getDuration());
+			if (result.isFailed()) {
+				sb.append(",\"error\":");
+				value(sb, String.valueOf(result.getFailure()));
+			} else {
+				sb.append(",\"measurements\":");
+				object(sb, result.getMeasurements());
+			}
+			sb.append('}');
+			write(sb);
+			flush(writer);
+			runs++;
+			collect(result);
+		}
+
+		private void collect(Result result) {
+			int c = result.getRun().getConfiguration();
+			if (!parameters.containsKey(c)) {
+				parameters.put(c, result.getRun().getParameters());
+				statistics.put(c, new LinkedHashMap<String, double[]>());
+				counts.put(c, new int[2]);
+			}
+			counts.get(c)[result.isFailed() ? 1 : 0]++;
+			if (result.isFailed()) {
+				return;
+			}
+			Map<String, double[]> stats = statistics.get(c);
+			for (Entry<String, Object> m : result.getMeasurements().entrySet()) {
+				if (m.getValue() instanceof Number) {
+					double v = ((Number) m.getValue()).doubleValue();
+					double[] s = stats.get(m.getKey());
+					if (s == null) {
+						s = new double[3];
+						stats.put(m.getKey(), s);
+					}
+					s[0]++;
+					s[1] += v;
+					s[2] += v * v;
+				}
+			}
+		}
+
+		@Override
+		public void batchFinished(Progress progress) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(runs == 0 ? "{\"runs\":[" : "\n");
+			sb.append("],\n\"configurations\":[");
+			boolean first = true;
+			for (Entry<Integer, Map<String, Object>> c : parameters.entrySet()) {
+				sb.append(first ? "\n" : ",\n");
+				first = false;
+				sb.append("{\"configuration\":").append(c.getKey());
+				sb.append(",\"parameters\":");
+				object(sb, c.getValue());
+				sb.append(",\"runs\":").append(counts.get(c.getKey())[0]);
+				sb.append(",\"failed\":").append(counts.get(c.getKey())[1]);
+				Map<String, Object> mean = new LinkedHashMap<String, Object>();
+				Map<String, Object> stddev = new LinkedHashMap<String, Object>();
+				for (Entry<String, double[]> s : statistics.get(c.getKey()).entrySet()) {
+					double n = s.getValue()[0];
+					double m = s.getValue()[1] / n;
+					mean.put(s.getKey(), m);
+					stddev.put(s.getKey(), n > 1 ? Math.sqrt(Math.max(0, (s.getValue()[2] - n * m * m) / (n - 1))) : 0d);
+				}
+				sb.append(",\"mean\":");
+				object(sb, mean);
+				sb.append(",\"stddev\":");
+				object(sb, stddev);
+				sb.append('}');
+			}
+			sb.append("],\n\"summary\":{\"total\":").append(progress.getTotal());
+			sb.append(",\"completed\":").append(progress.getCompleted());
+			sb.append(",\"failed\":").append(progress.getFailed());
+			sb.append(",\"elapsed\":").append(progress.getElapsed());
+			sb.append(",\"throughput\":");
+			value(sb, progress.getThroughput());
+			sb.append("}}\n");
+			write(sb);
+			flush(writer);
+		}
+
+		private static void object(StringBuilder sb, Map<String, ?> map) {
+			sb.append('{');
+			boolean first = true;
+			for (Entry<String, ?> e : map.entrySet()) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				value(sb, e.getKey());
+				sb.append(':');
+				value(sb, e.getValue());
+			}
+			sb.append('}');
+		}
+
+		private static void value(StringBuilder sb, Object v) {
+			if (v == null) {
+				sb.append("null");
+			} else if (v instanceof Boolean) {
+				sb.append(v);
+			} else if (v instanceof Number) {
+				double d = ((Number) v).doubleValue();
+				if (Double.isNaN(d) || Double.isInfinite(d)) {
+					sb.append("null");
+				} else if (v instanceof Double || v instanceof Float) {
+					sb.append(String.format(Locale.US, "%s", v));
+				} else {
+					sb.append(v);
+				}
+			} else {
+				String s = v.toString();
+				sb.append('"');
+				for (int i = 0; i < s.length(); i++) {
+					char ch = s.charAt(i);
+					switch (ch) {
+					case '"':
+						sb.append("\\\"");
+						break;
+					case '\\':
+						sb.append("\\\\");
+						break;
+					case '\n':
+						sb.append("\\n");
+						break;
+					case '\r':
+						sb.append("\\r");
+						break;
+					case '\t':
+						sb.append("\\t");
+						break;
+					default:
+						if (ch < 0x20) {
+							sb.append(String.format("\\u%04x", (int) ch));
+						} else {
+							sb.append(ch);
+						}
+					}
+				}
+				sb.append('"');
+			}
+		}
+
+		private void write(CharSequence s) {
+			try {
+				writer.append(s);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write report. " + e.getMessage(), e);
+			}
+		}
+	}
+
+	static void flush(Writer writer) {
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write report. " + e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,463 @@
+package rinde.sim.scenario;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.math.random.RandomGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rinde.sim.util.RandomStreams;
+
+/**
+ * Runs a {@link Scenario} for every combination of a grid of parameter values
+ * and a number of replications, on a bounded pool of worker threads. Every
+ * run is performed by an {@link Experiment} that creates its own isolated
+ * {@link rinde.sim.core.Simulator}.
+ * <p>
+ * The seed of a run only depends on the seed of the runner and the
+ * replication, all configurations use the same seeds (common random
+ * numbers). Results are passed to the {@link ResultListener}s in the order of
+ * the runs, regardless of the order in which they finish, so reports (see
+ * {@link BatchReports}) are reproducible.
+ *
+ * <pre>
+ * List&lt;Result&gt; results = new BatchRunner(scenario, experiment)
+ * 		.addParameter(&quot;vehicles&quot;, 10, 20, 50).setReplications(30)
+ * 		.addListener(BatchReports.csv(writer)).run();
+ * </pre>
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class BatchRunner {
+
+	protected static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class);
+
+	private final Scenario scenario;
+	private final Experiment experiment;
+	private final Map<String, List<Object>> parameters;
+	private final List<ResultListener> listeners;
+	private int replications;
+	private long seed;
+	private int threads;
+
+	/**
+	 * @param scenario The scenario of all runs, it is shared by all runs and
+	 *            should therefore not be modified by the experiment (a
+	 *            {@link ScenarioController} makes a copy).
+	 * @param experiment The experiment that performs the runs.
+	 */
+	public BatchRunner(Scenario scenario, Experiment experiment) {
+		if (scenario == null || experiment == null) {
+			throw new IllegalArgumentException("scenario and experiment cannot be null");
+		}
+		this.scenario = scenario;
+		this.experiment = experiment;
+		parameters = new LinkedHashMap<String, List<Object>>();
+		listeners = new ArrayList<ResultListener>();
+		replications = 1;
+		seed = 123;
+		threads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Adds a dimension to the grid of configurations. Every combination of the
+	 * values of all parameters is a configuration, the first parameter varies
+	 * slowest.
+	 * @param name The name of the parameter.
+	 * @param values The values of the parameter.
+	 * @return This runner.
+	 */
+	public BatchRunner addParameter(String name, Object... values) {
+		if (name == null || values.length == 0) {
+			throw new IllegalArgumentException("a parameter needs a name and at least one value");
+		}
+		if (parameters.containsKey(name)) {
+			throw new IllegalArgumentException("duplicate parameter: " + name);
+		}
+		List<Object> list = new ArrayList<Object>(values.length);
+		Collections.addAll(list, values);
+		parameters.put(name, Collections.unmodifiableList(list));
+		return this;
+	}
+
+	public BatchRunner setReplications(int replications) {
+		if (replications < 1) {
+			throw new IllegalArgumentException("replications must be positive");
+		}
+		this.replications = replications;
+		return this;
+	}
+
+	public BatchRunner setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param threads The number of worker threads, by default the number of
+	 *            available processors.
+	 * @return This runner.
+	 */
+	public BatchRunner setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	public BatchRunner addListener(ResultListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("listener cannot be null");
+		}
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * @return All runs in the order in which they are reported: replications
+	 *         of the same configuration are adjacent.
+	 */
+	public List<Run> getRuns() {
+		List<Map<String, Object>> configurations = new ArrayList<Map<String, Object>>();
+		configurations.add(new LinkedHashMap<String, Object>());
+		for (Entry<String, List<Object>> p : parameters.entrySet()) {
+			List<Map<String, Object>> next = new ArrayList<Map<String, Object>>();
+			for (Map<String, Object> c : configurations) {
+				for (Object v : p.getValue()) {
+					Map<String, Object> copy = new LinkedHashMap<String, Object>(c);
+					copy.put(p.getKey(), v);
+					next.add(copy);
+				}
+			}
+			configurations = next;
+		}
+		long[] seeds = new long[replications];
+		RandomStreams streams = new RandomStreams(seed);
+		for (int r = 0; r < replications; r++) {
+			seeds[r] = streams.get(r).nextLong();
+		}
+		List<Run> runs = new ArrayList<Run>(configurations.size() * replications);
+		for (int c = 0; c < configurations.size(); c++) {
+			for (int r = 0; r < replications; r++) {
+				runs.add(new Run(runs.size(), c, r, seeds[r], configurations.get(c)));
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Performs all runs and blocks until they are finished. A run that throws
+	 * an exception or an error (e.g. an {@link AssertionError}) is reported
+	 * as failed, the other runs continue.
+	 * @return The results in the order of the runs.
+	 * @throws InterruptedException if the calling thread is interrupted, the
+	 *             runs that are still in progress are then interrupted too.
+	 */
+	public List<Result> run() throws InterruptedException {
+		final List<Run> runs = getRuns();
+		final long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, runs.size()), new WorkerFactory());
+		List<Result> results = new ArrayList<Result>(runs.size());
+		try {
+			CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+			for (final Run run : runs) {
+				completion.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						return perform(run);
+					}
+				});
+			}
+			// results that finished before some of their predecessors
+			Result[] pending = new Result[runs.size()];
+			int completed = 0;
+			int failed = 0;
+			int lastDecile = 0;
+			for (int i = 0; i < runs.size(); i++) {
+				Result r;
+				try {
+					r = completion.take().get();
+				} catch (ExecutionException e) {
+					// perform() catches everything the experiment throws
+					throw new IllegalStateException(e.getCause());
+				}
+				completed++;
+				if (r.isFailed()) {
+					failed++;
+					LOGGER.warn("run " + r.getRun() + " failed", r.getFailure());
+				}
+				pending[r.getRun().index] = r;
+				Progress progress = new Progress(completed, failed, runs.size(), System.currentTimeMillis() - start);
+				while (results.size() < pending.length && pending[results.size()] != null) {
+					Result next = pending[results.size()];
+					pending[results.size()] = null;
+					results.add(next);
+					for (ResultListener l : listeners) {
+						l.runFinished(next, progress);
+					}
+				}
+				int decile = completed * 10 / runs.size();
+				if (decile > lastDecile) {
+					lastDecile = decile;
+					LOGGER.info(progress.toString());
+				}
+			}
+			Progress progress = new Progress(completed, failed, runs.size(), System.currentTimeMillis() - start);
+			for (ResultListener l : listeners) {
+				l.batchFinished(progress);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+
+	Result perform(Run run) {
+		long start = System.currentTimeMillis();
+		try {
+			Map<String, ?> measurements = experiment.perform(scenario, run);
+			Map<String, Object> copy = new LinkedHashMap<String, Object>();
+			if (measurements != null) {
+				copy.putAll(measurements);
+			}
+			return new Result(run, Collections.unmodifiableMap(copy), null, System.currentTimeMillis() - start);
+		} catch (Throwable t) {
+			// also errors, such that one broken run does not abort the batch
+			return new Result(run, null, t, System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Performs a single run.
+	 */
+	public static interface Experiment {
+
+		/**
+		 * Performs a run, this method is called concurrently from multiple
+		 * threads. Each call should create its own
+		 * {@link rinde.sim.core.Simulator} (e.g. via a
+		 * {@link ScenarioController}, see {@link ScenarioController#run()})
+		 * seeded with {@link Run#getSeed()} and should not share mutable state
+		 * with other runs.
+		 * @param scenario The scenario, it should not be modified.
+		 * @param run The configuration of the run.
+		 * @return The measurements of the run by name, the iteration order
+		 *         determines the order in the reports.
+		 * @throws Exception to indicate that the run failed.
+		 */
+		Map<String, ?> perform(Scenario scenario, Run run) throws Exception;
+	}
+
+	/**
+	 * Receives the results of a batch, all calls are made from the thread
+	 * that calls {@link BatchRunner#run()}.
+	 */
+	public static interface ResultListener {
+
+		/**
+		 * Called for each run, in the order of the runs.
+		 * @param result The result of the run.
+		 * @param progress The progress of the batch at the moment the result
+		 *            was reported.
+		 */
+		void runFinished(Result result, Progress progress);
+
+		/**
+		 * Called after the last result.
+		 * @param progress The final progress.
+		 */
+		void batchFinished(Progress progress);
+	}
+
+	/**
+	 * The configuration of a single run.
+	 */
+	public static final class Run {
+		final int index;
+		final int configuration;
+		final int replication;
+		final long seed;
+		final Map<String, Object> parameters;
+
+		Run(int index, int configuration, int replication, long seed, Map<String, Object> parameters) {
+			this.index = index;
+			this.configuration = configuration;
+			this.replication = replication;
+			this.seed = seed;
+			this.parameters = Collections.unmodifiableMap(parameters);
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return The index of the combination of parameter values.
+		 */
+		public int getConfiguration() {
+			return configuration;
+		}
+
+		public int getReplication() {
+			return replication;
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		/**
+		 * @return A new generator seeded with the seed of this run.
+		 */
+		public RandomGenerator createRandomGenerator() {
+			return new RandomStreams(seed).get(0);
+		}
+
+		public Map<String, Object> getParameters() {
+			return parameters;
+		}
+
+		public Object get(String parameter) {
+			if (!parameters.containsKey(parameter)) {
+				throw new IllegalArgumentException("unknown parameter: " + parameter);
+			}
+			return parameters.get(parameter);
+		}
+
+		@Override
+		public String toString() {
+			return index + parameters.toString() + "#" + replication;
+		}
+	}
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static final class Result {
+		private final Run run;
+		private final Map<String, Object> measurements;
+		private final Throwable failure;
+		private final long duration;
+
+		Result(Run run, Map<String, Object> measurements, Throwable failure, long duration) {
+			this.run = run;
+			this.measurements = measurements;
+			this.failure = failure;
+			this.duration = duration;
+		}
+
+		public Run getRun() {
+			return run;
+		}
+
+		/**
+		 * @return The measurements, or <code>null</code> if the run failed.
+		 */
+		public Map<String, Object> getMeasurements() {
+			return measurements;
+		}
+
+		public boolean isFailed() {
+			return failure != null;
+		}
+
+		/**
+		 * @return The exception or error that was thrown by the run, or
+		 *         <code>null</code> if the run did not fail.
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+
+		/**
+		 * @return The wall clock duration of the run in milliseconds.
+		 */
+		public long getDuration() {
+			return duration;
+		}
+	}
+
+	/**
+	 * Snapshot of the progress of a batch.
+	 */
+	public static final class Progress {
+		private final int completed;
+		private final int failed;
+		private final int total;
+		private final long elapsed;
+
+		Progress(int completed, int failed, int total, long elapsed) {
+			this.completed = completed;
+			this.failed = failed;
+			this.total = total;
+			this.elapsed = elapsed;
+		}
+
+		public int getCompleted() {
+			return completed;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return The wall clock time since the start of the batch in
+		 *         milliseconds.
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * @return The number of completed runs per second.
+		 */
+		public double getThroughput() {
+			return elapsed == 0 ? 0 : completed * 1000d / elapsed;
+		}
+
+		/**
+		 * @return The estimated remaining time in milliseconds, based on the
+		 *         throughput so far.
+		 */
+		public long getEstimatedRemaining() {
+			return completed == 0 ? -1 : (long) ((double) elapsed / completed * (total - completed));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d/%d runs (%d failed), %.2f runs/s, %d s remaining", completed, total, failed, getThroughput(), getEstimatedRemaining() / 1000);
+		}
+	}
+
+	private static class WorkerFactory implements ThreadFactory {
+		private static final AtomicInteger BATCHES = new AtomicInteger();
+		private final int batch = BATCHES.incrementAndGet();
+		private final AtomicInteger workers = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "batch-" + batch + "-worker-" + workers.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -14,6 +14,7 @@ import java.util.PriorityQueue;
 import rinde.sim.event.pdp.StandardType;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Iterables;
 
 /**
@@ -48,19 +49,38 @@ public class Scenario implements Serializable {
 	}
 
 	/**
-	 * Copying constructor.
+	 * Copying constructor. The copy contains the events of
+	 * {@link #getEventsToCopy()}, a {@link StreamingScenario} is copied by
+	 * creating all its events.
 	 * @param s
 	 */
 	public Scenario(Scenario s) {
 		if(s == null) throw new IllegalArgumentException("scenario cannot be null");
 		this.events = new PriorityQueue<TimedEvent>(1024, new TimeComparator());
-		this.events.addAll(s.events);
+		this.events.addAll(s.getEventsToCopy());
 	}
 	
 	public Scenario() {
 		this.events = new PriorityQueue<TimedEvent>(1024, new TimeComparator());
 	}
 
+	/**
+	 * @return The events that are copied by the copying constructor.
+	 */
+	Collection<TimedEvent> getEventsToCopy() {
+		return events;
+	}
+
+	/**
+	 * Creates a copy that can be run independently of this scenario, by
+	 * default with the copying constructor.
+	 * @return The copy.
+	 * @since 2.1
+	 */
+	public Scenario copy() {
+		return new Scenario(this);
+	}
+
 	/**
 	 * Return a scenario as a list of (time sorted) events;
 	 * @return
@@ -117,14 +137,23 @@ public class Scenario implements Serializable {
 		return events.size();
 	}
 	
+	/**
+	 * Two scenarios are equal when they contain the same events, the order of
+	 * events with the same time stamp is not taken into account.
+	 */
 	@Override
 	public boolean equals(Object other) {
-		if (other instanceof Scenario && events.size() == ((Scenario) other).events.size()) {
+		if (other instanceof Scenario && size() == ((Scenario) other).size()) {
 			Scenario s1 = (Scenario) other;
-			return asList().equals(s1.asList());
+			return HashMultiset.create(asList()).equals(HashMultiset.create(s1.asList()));
 		}
 		return false;
 	}
+
+	@Override
+	public int hashCode() {
+		return HashMultiset.create(asList()).hashCode();
+	}
 	
 	/**
 	 * Specify event types that can occur in a scenario. The events added to scenario are 
@@ -1,9 +1,16 @@
 package rinde.sim.scenario;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 
 import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
 
 public class ScenarioBuilder {
 	
@@ -27,6 +34,26 @@ public class ScenarioBuilder {
 		}
 		return s;
 	}
+
+	/**
+	 * Builds a scenario that creates the events of the generators when they
+	 * are needed. The events of a {@link StreamGenerator} are created one by
+	 * one, the events of other generators are created and sorted when the
+	 * first event of the scenario is requested.
+	 * @return A new {@link StreamingScenario}.
+	 * @since 2.1
+	 */
+	public StreamingScenario buildStreaming() {
+		List<Iterable<? extends TimedEvent>> sources = new ArrayList<Iterable<? extends TimedEvent>>();
+		for (Generator<? extends TimedEvent> g : generators) {
+			if (g instanceof StreamGenerator) {
+				sources.add((StreamGenerator<? extends TimedEvent>) g);
+			} else {
+				sources.add(new SortedEvents(g));
+			}
+		}
+		return new StreamingScenario(sources, supportedTypes);
+	}
 	
 	public ScenarioBuilder(Enum<?>... supportedTypes) {
 		this.supportedTypes = supportedTypes;
@@ -36,9 +63,38 @@ public class ScenarioBuilder {
 	public static interface Generator<T extends TimedEvent> {
 		Collection<T> generate();
 	}
+
+	/**
+	 * A generator that can create its events one by one: every iterator
+	 * returns all events, in time order, and creates each event when it is
+	 * requested.
+	 * @since 2.1
+	 */
+	public static interface StreamGenerator<T extends TimedEvent> extends Generator<T>, Iterable<T> {}
+
+	// the events of a generator sorted by time, generated for every iterator
+	private static class SortedEvents implements Iterable<TimedEvent> {
+		private final Generator<? extends TimedEvent> generator;
+
+		SortedEvents(Generator<? extends TimedEvent> generator) {
+			this.generator = generator;
+		}
+
+		@Override
+		public Iterator<TimedEvent> iterator() {
+			List<TimedEvent> events = new ArrayList<TimedEvent>(generator.generate());
+			Collections.sort(events, new Comparator<TimedEvent>() {
+				@Override
+				public int compare(TimedEvent o1, TimedEvent o2) {
+					return o1.time < o2.time ? -1 : (o1.time == o2.time ? 0 : 1);
+				}
+			});
+			return events.iterator();
+		}
+	}
 	
 	
-	public static class MultipleEventGenerator<T extends TimedEvent> implements Generator<T> {
+	public static class MultipleEventGenerator<T extends TimedEvent> implements StreamGenerator<T> {
 		
 		private long time;
 		private int amount;
@@ -55,16 +111,27 @@ public class ScenarioBuilder {
 		
 		@Override
 		public Collection<T> generate() {
-			LinkedList<T> result = new LinkedList<T>();
-			for(int i = 0; i < amount; ++i) {
-				result.add(function.apply(time));
-			}
-			return result;
+			return Lists.newLinkedList(this);
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return new AbstractIterator<T>() {
+				private int i;
+
+				@Override
+				protected T computeNext() {
+					if (i++ < amount) {
+						return function.apply(time);
+					}
+					return endOfData();
+				}
+			};
 		}
 		
 	}
 	
-	public static class TimeSeries<T extends TimedEvent> implements Generator<T> {
+	public static class TimeSeries<T extends TimedEvent> implements StreamGenerator<T> {
 		private long start;
 		private long end;
 		private long step;
@@ -79,11 +146,24 @@ public class ScenarioBuilder {
 		}
 		
 		public Collection<T> generate() {
-			LinkedList<T> result = new LinkedList<T>();
-			for(long t = start; t <= end; t += step) {
-				result.add(function.apply(t));
-			}
-			return result;
+			return Lists.newLinkedList(this);
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return new AbstractIterator<T>() {
+				private long t = start;
+
+				@Override
+				protected T computeNext() {
+					if (t <= end) {
+						T event = function.apply(t);
+						t += step;
+						return event;
+					}
+					return endOfData();
+				}
+			};
 		}
 	}
 	
@@ -1,5 +1,6 @@
 package rinde.sim.scenario;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedList;
 
@@ -8,6 +9,10 @@ import org.slf4j.LoggerFactory;
 
 import rinde.sim.core.Simulator;
 import rinde.sim.core.TickListener;
+import rinde.sim.core.WakeUpListener;
+import rinde.sim.core.checkpoint.CheckpointInput;
+import rinde.sim.core.checkpoint.CheckpointOutput;
+import rinde.sim.core.checkpoint.Checkpointable;
 import rinde.sim.event.Event;
 import rinde.sim.event.EventDispatcher;
 import rinde.sim.event.Listener;
@@ -16,12 +21,26 @@ import rinde.sim.event.pdp.StandardType;
 /**
  * A simulator controller represents single simulation run. This class is
  * intended for extension.
+ * <p>
+ * When the simulator is in event-driven mode (see
+ * {@link Simulator#setEventDriven(boolean)}) the controller does not listen
+ * to ticks, instead it schedules a wake-up at the time of each event of the
+ * scenario.
+ * <p>
+ * The scenario is copied with {@link Scenario#copy()}. The events are polled
+ * from the copy when they are due, a {@link StreamingScenario} only creates
+ * them at that moment.
+ * <p>
+ * In a checkpoint (see {@link rinde.sim.core.checkpoint.Checkpointer}) the
+ * controller saves the number of events that were dispatched, when it is
+ * restored these events are polled from the scenario without dispatching
+ * them.
  * 
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
  * @author Bartosz Michalik <bartosz.michalik@cs.kuleuven.be>
  * @since 2.0
  */
-public abstract class ScenarioController implements TickListener, Listener {
+public abstract class ScenarioController implements TickListener, WakeUpListener, Listener, Checkpointable {
 
 	public enum Type {
 		SCENARIO_STARTED, SCENARIO_FINISHED;
@@ -32,6 +51,10 @@ public abstract class ScenarioController implements TickListener, Listener {
 
 	protected final Scenario scenario;
 	private int ticks;
+	// time at which the simulation is stopped in event-driven mode, or -1
+	private long endTime;
+	// the number of events that were polled from the scenario
+	private long dispatched;
 	private final EventDispatcher disp;
 
 	
@@ -62,7 +85,7 @@ public abstract class ScenarioController implements TickListener, Listener {
 		if (scen == null)
 			throw new ConfigurationException("scenarion cannot be null");
 		ticks = numberOfTicks;
-		scenario = new Scenario(scen);
+		scenario = scen.copy();
 		disp = new EventDispatcher(merge(scenario.getPossibleEventTypes(), Type.values()));
 		disp.addListener(this, scenario.getPossibleEventTypes());
 	}
@@ -84,7 +107,16 @@ public abstract class ScenarioController implements TickListener, Listener {
 		simulator.configure();
 		LOGGER.info("simulator created");
 
-		simulator.addTickListener(this);
+		if (simulator.isEventDriven()) {
+			endTime = ticks < 0 ? -1 : simulator.getCurrentTime() + ticks * simulator.getTimeStep();
+			if (endTime >= 0) {
+				simulator.scheduleWakeUp(this, endTime);
+			}
+			TimedEvent first = scenario.peek();
+			simulator.scheduleWakeUp(this, first == null ? simulator.getCurrentTime() : first.time);
+		} else {
+			simulator.addTickListener(this);
+		}
 
 		uiMode = createUserInterface();
 	}
@@ -160,6 +192,7 @@ public abstract class ScenarioController implements TickListener, Listener {
 	public void stop() {
 		if (!uiMode) {
 			simulator.removeTickListener(this);
+			simulator.cancelWakeUps(this);
 			simulator.stop();
 		}
 	}
@@ -176,6 +209,20 @@ public abstract class ScenarioController implements TickListener, Listener {
 		}
 	}
 
+	/**
+	 * Runs the simulation in the calling thread, the method returns when the
+	 * simulator is stopped: by the number of ticks that was specified in the
+	 * constructor, by a call to {@link #stop()} or, in event-driven mode, when
+	 * nothing is scheduled anymore. Unlike {@link #start()} no thread is
+	 * created, which makes this method suitable for running many simulations
+	 * on a thread pool (see {@link BatchRunner}).
+	 * @throws ConfigurationException if the simulator was not created.
+	 */
+	public void run() throws ConfigurationException {
+		checkSimulator();
+		simulator.start();
+	}
+
 	/**
 	 * Returns true if all events of this scenario have been dispatched.
 	 * 
@@ -195,9 +242,37 @@ public abstract class ScenarioController implements TickListener, Listener {
 			LOGGER.debug("ticks to end: " + ticks);			
 		} 
 		if(ticks > -1) ticks--;
+		if(dispatchEvents(currentTime)) {
+			simulator.removeTickListener(this);
+		}
+	}
+
+	@Override
+	final public void wakeUp(long currentTime) {
+		if (!uiMode && endTime >= 0 && currentTime >= endTime) {
+			LOGGER.info("scenario finished at virtual time:" + currentTime);
+			simulator.stop();
+			endTime = -1;
+		}
+		if (status == Type.SCENARIO_FINISHED) {
+			return;
+		}
+		// the wake-up at the end time can precede the next event
+		TimedEvent next = scenario.peek();
+		if ((next == null || next.time <= currentTime) && !dispatchEvents(currentTime)) {
+			simulator.scheduleWakeUp(this, scenario.peek().time);
+		}
+	}
+
+	/**
+	 * Dispatches all events that are due.
+	 * @return <code>true</code> if the scenario has just finished.
+	 */
+	private boolean dispatchEvents(long currentTime) {
 		TimedEvent e = null;
 		while ((e = scenario.peek()) != null && e.time <= currentTime) {
 			scenario.poll();
+			dispatched++;
 			if(status == null) {
 				LOGGER.info("scenario started at virtual time:" + currentTime);
 				status = Type.SCENARIO_STARTED;
@@ -210,16 +285,51 @@ public abstract class ScenarioController implements TickListener, Listener {
 		if(e == null && status != Type.SCENARIO_FINISHED) {
 			LOGGER.info("scenario finished at virtual time:" + currentTime);
 			status = Type.SCENARIO_FINISHED;
-			simulator.removeTickListener(this);
 			disp.dispatchEvent(new Event(status, this));
+			return true;
 		}
-
+		return false;
 	}
 
 	@Override
 	public void afterTick(long currentTime, long timeStep) {
 		// not needed
 	}
+
+	@Override
+	public void saveState(CheckpointOutput out) throws IOException {
+		out.writeVarint(dispatched);
+		out.writeInt(ticks);
+		out.writeLong(endTime);
+		out.writeByte(status == null ? -1 : status.ordinal());
+	}
+
+	/**
+	 * Skips the events that were dispatched before the checkpoint, the
+	 * wake-ups of the controller are restored by the simulator.
+	 */
+	@Override
+	public void restoreState(CheckpointInput in) throws IOException {
+		long n = in.readVarLong();
+		for (; dispatched < n; dispatched++) {
+			if (scenario.poll() == null) {
+				throw new IOException("the scenario has fewer events than the checkpoint: " + dispatched);
+			}
+		}
+		if (dispatched != n) {
+			throw new IOException("the controller has already dispatched " + dispatched + " events");
+		}
+		ticks = in.readInt();
+		endTime = in.readLong();
+		byte s = in.readByte();
+		if (s >= Type.values().length) {
+			throw new IOException("unknown status: " + s);
+		}
+		status = s < 0 ? null : Type.values()[s];
+		if (status == Type.SCENARIO_FINISHED) {
+			simulator.removeTickListener(this);
+		}
+	}
 	
 	public void handleEvent(Event e) {
 		if(e.getEventType() instanceof StandardType) {
@@ -0,0 +1,214 @@
+package rinde.sim.scenario;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A scenario that creates its events when they are needed. The events are
+ * read from a number of sources, each of which returns its events in time
+ * order, and are merged on demand: only the next event of every source is
+ * kept in memory. A {@link ScenarioController} polls the events when they
+ * are due, such that the memory that a long scenario needs does not depend
+ * on the number of events.
+ * <p>
+ * The sources are iterated again by {@link #copy()}, every controller that
+ * runs the scenario gets its own iterators. A streaming scenario cannot be
+ * modified. Like {@link #asList()}, {@link #size()}, the copying constructor
+ * {@link Scenario#Scenario(Scenario)} and {@link #equals(Object)} consider
+ * all events of the sources, they iterate the sources of a copy.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class StreamingScenario extends Scenario {
+	private static final long serialVersionUID = -5030932180232580946L;
+
+	private final List<Iterable<? extends TimedEvent>> sources;
+	private final Enum<?>[] types;
+	// the next event of every source that has events left, created on first
+	// use
+	private PriorityQueue<Head> heads;
+	// the number of events of the sources, counted on first use
+	private int size = -1;
+
+	/**
+	 * @param sources The sources of the events, the iterator of every source
+	 *            must return the events in non-decreasing time order.
+	 * @param types The types of events that can occur in the scenario.
+	 */
+	public StreamingScenario(Collection<? extends Iterable<? extends TimedEvent>> sources, Enum<?>... types) {
+		if (sources == null || types == null) {
+			throw new IllegalArgumentException("sources and types cannot be null");
+		}
+		this.sources = new ArrayList<Iterable<? extends TimedEvent>>(sources);
+		this.types = types.clone();
+	}
+
+	@Override
+	public Enum<?>[] getPossibleEventTypes() {
+		return types.clone();
+	}
+
+	/**
+	 * @return A new streaming scenario that starts again at the first event of
+	 *         every source.
+	 */
+	@Override
+	public StreamingScenario copy() {
+		return new StreamingScenario(sources, types);
+	}
+
+	@Override
+	public TimedEvent peek() {
+		Head head = heads().peek();
+		return head == null ? null : head.event;
+	}
+
+	@Override
+	public TimedEvent poll() {
+		PriorityQueue<Head> queue = heads();
+		Head head = queue.poll();
+		if (head == null) {
+			return null;
+		}
+		TimedEvent event = head.event;
+		if (head.advance()) {
+			queue.add(head);
+		}
+		return event;
+	}
+
+	/**
+	 * Returns all remaining events of a copy of the scenario, this creates all
+	 * events at once.
+	 */
+	@Override
+	public List<TimedEvent> asList() {
+		StreamingScenario copy = copy();
+		List<TimedEvent> result = new ArrayList<TimedEvent>();
+		TimedEvent e;
+		while ((e = copy.poll()) != null) {
+			result.add(e);
+		}
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		heads = new PriorityQueue<Head>(1, new HeadComparator());
+	}
+
+	/**
+	 * Counts the events of the sources, the first call iterates the sources of
+	 * a copy.
+	 * @return The number of events of {@link #asList()}.
+	 */
+	@Override
+	public int size() {
+		if (size < 0) {
+			StreamingScenario copy = copy();
+			int n = 0;
+			while (copy.poll() != null) {
+				n++;
+			}
+			size = n;
+		}
+		return size;
+	}
+
+	@Override
+	Collection<TimedEvent> getEventsToCopy() {
+		return asList();
+	}
+
+	@Override
+	public boolean add(TimedEvent e) {
+		throw new UnsupportedOperationException("a streaming scenario cannot be modified");
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends TimedEvent> c) {
+		throw new UnsupportedOperationException("a streaming scenario cannot be modified");
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException("a streaming scenario cannot be modified");
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException("a streaming scenario cannot be modified");
+	}
+
+	private PriorityQueue<Head> heads() {
+		if (heads == null) {
+			heads = new PriorityQueue<Head>(Math.max(1, sources.size()), new HeadComparator());
+			for (int i = 0; i < sources.size(); i++) {
+				Head head = new Head(sources.get(i).iterator(), i);
+				if (head.advance()) {
+					heads.add(head);
+				}
+			}
+		}
+		return heads;
+	}
+
+	private boolean isSupported(TimedEvent e) {
+		for (Enum<?> t : types) {
+			if (e.getEventType() == t) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		throw new NotSerializableException("a streaming scenario cannot be serialized, use asList() instead");
+	}
+
+	private class Head {
+		final Iterator<? extends TimedEvent> iterator;
+		final int source;
+		TimedEvent event;
+
+		Head(Iterator<? extends TimedEvent> iterator, int source) {
+			this.iterator = iterator;
+			this.source = source;
+		}
+
+		// moves to the next event of the source, returns false if there is none
+		boolean advance() {
+			if (!iterator.hasNext()) {
+				return false;
+			}
+			TimedEvent next = iterator.next();
+			if (!isSupported(next)) {
+				throw new IllegalArgumentException("not supported event type");
+			}
+			if (event != null && next.time < event.time) {
+				throw new IllegalStateException("events of source " + source + " are not in time order: " + next
+						+ " after " + event);
+			}
+			event = next;
+			return true;
+		}
+	}
+
+	// ties are resolved by the order of the sources
+	private static class HeadComparator implements Comparator<Head> {
+		@Override
+		public int compare(Head o1, Head o2) {
+			if (o1.event.time != o2.event.time) {
+				return o1.event.time < o2.event.time ? -1 : 1;
+			}
+			return o1.source - o2.source;
+		}
+	}
+}
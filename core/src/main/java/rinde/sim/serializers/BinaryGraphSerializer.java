@@ -0,0 +1,273 @@
+package rinde.sim.serializers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import rinde.sim.core.graph.CompactGraph.EdgeDataFactory;
+import rinde.sim.core.graph.EdgeData;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.Point;
+
+/**
+ * Binary graph format that can be memory mapped. Where
+ * {@link DotGraphSerializer} parses a text file into a new graph,
+ * {@link #map(File, EdgeDataFactory)} maps the file and returns a
+ * {@link MappedGraph} that reads the nodes and connections directly from the
+ * mapped file. Parallel runs that use the same map share the pages of the
+ * file in the page cache.
+ * <p>
+ * All values are little endian. The file consists of a header of
+ * {@value #HEADER_SIZE} bytes followed by the sections, in this order:
+ * <table>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>magic number <code>0x52534742</code></td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>version {@value #VERSION}</td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the number of nodes <code>n</code></td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the number of connections <code>m</code></td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the number of slots of the node table <code>t</code>, a power of two</td>
+ * </tr>
+ * <tr>
+ * <td><code>int[3]</code></td>
+ * <td>reserved</td>
+ * </tr>
+ * <tr>
+ * <td><code>double[n]</code> x2</td>
+ * <td>the x and y coordinates of the nodes</td>
+ * </tr>
+ * <tr>
+ * <td><code>double[m]</code> x2</td>
+ * <td>the length and maximum speed ({@link Double#NaN} if not defined) of the
+ * connections</td>
+ * </tr>
+ * <tr>
+ * <td><code>long[(m + 63) / 64]</code></td>
+ * <td>bit set of the connections that have edge data</td>
+ * </tr>
+ * <tr>
+ * <td><code>int[n + 1]</code>, <code>int[m]</code></td>
+ * <td>the outgoing connections in compressed sparse row form</td>
+ * </tr>
+ * <tr>
+ * <td><code>int[n + 1]</code>, <code>int[m]</code></td>
+ * <td>the incoming connections in compressed sparse row form</td>
+ * </tr>
+ * <tr>
+ * <td><code>int[t]</code></td>
+ * <td>open addressing table of node index + 1 (0 means empty), indexed by
+ * {@link Point#hash(double, double)} with linear probing</td>
+ * </tr>
+ * </table>
+ * The connections are numbered by start node, the connections of a node
+ * keep the order of {@link Graph#getOutgoingConnections(Point)}. A mapped
+ * file cannot be larger than 2 GB.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class BinaryGraphSerializer {
+
+	/**
+	 * The first <code>int</code> of the file.
+	 */
+	public static final int MAGIC = 0x52534742;
+
+	/**
+	 * The version of the format that is written.
+	 */
+	public static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 32;
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private BinaryGraphSerializer() {}
+
+	/**
+	 * Writes the graph, the file is overwritten.
+	 * @param graph The graph to write.
+	 * @param file The file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(Graph<? extends EdgeData> graph, File file) throws IOException {
+		GraphIndex index = GraphIndex.create(graph);
+		int n = index.getNumberOfNodes();
+		int m = index.getNumberOfConnections();
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[m];
+		double[] lengths = new double[m];
+		double[] maxSpeeds = new double[m];
+		long[] hasData = new long[(m + 63) / 64];
+		int[] inOffsets = new int[n + 1];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = e;
+			Point from = index.getNode(i);
+			for (Point to : graph.getOutgoingConnections(from)) {
+				targets[e] = index.indexOf(to);
+				inOffsets[targets[e] + 1]++;
+				EdgeData data = graph.connectionData(from, to);
+				lengths[e] = graph.connectionLength(from, to);
+				maxSpeeds[e] = data instanceof MultiAttributeEdgeData ? ((MultiAttributeEdgeData) data).getMaxSpeed()
+						: Double.NaN;
+				if (data != null) {
+					hasData[e >>> 6] |= 1L << e;
+				}
+				e++;
+			}
+		}
+		offsets[n] = e;
+		for (int i = 0; i < n; i++) {
+			inOffsets[i + 1] += inOffsets[i];
+		}
+		int[] inSources = new int[m];
+		int[] in = new int[n];
+		System.arraycopy(inOffsets, 0, in, 0, n);
+		for (int i = 0; i < n; i++) {
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				inSources[in[targets[k]]++] = i;
+			}
+		}
+		int[] slots = new int[tableSize(n)];
+		int mask = slots.length - 1;
+		for (int i = 0; i < n; i++) {
+			Point p = index.getNode(i);
+			int slot = Point.hash(p.x, p.y) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+		}
+
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ORDER);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(slots.length).putInt(0).putInt(0).putInt(0);
+			for (int i = 0; i < n; i++) {
+				ensure(channel, buffer, 8).putDouble(index.getNode(i).x);
+			}
+			for (int i = 0; i < n; i++) {
+				ensure(channel, buffer, 8).putDouble(index.getNode(i).y);
+			}
+			for (double d : lengths) {
+				ensure(channel, buffer, 8).putDouble(d);
+			}
+			for (double d : maxSpeeds) {
+				ensure(channel, buffer, 8).putDouble(d);
+			}
+			for (long l : hasData) {
+				ensure(channel, buffer, 8).putLong(l);
+			}
+			for (int[] section : new int[][] { offsets, targets, inOffsets, inSources, slots }) {
+				for (int i : section) {
+					ensure(channel, buffer, 4).putInt(i);
+				}
+			}
+			flush(channel, buffer);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Maps the file in memory. Only the sections that are used as indices are
+	 * read to check that they are valid, the nodes and connections are read
+	 * from the mapping when they are needed. The file must not be modified
+	 * while the graph is used.
+	 * @param file The file, written by {@link #write(Graph, File)}.
+	 * @param factory Creates the edge data of the connections.
+	 * @return A read-only graph.
+	 * @throws IOException if the file cannot be mapped or is not a valid graph
+	 *             file.
+	 */
+	public static <E extends EdgeData> MappedGraph<E> map(File file, EdgeDataFactory<E> factory) throws IOException {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory cannot be null");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			long size = raf.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("graph file is too large to be mapped: " + size + " bytes");
+			}
+			if (size < HEADER_SIZE) {
+				throw new IOException("not a graph file: " + file);
+			}
+			// the mapping remains valid after the file is closed
+			buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, size);
+		} finally {
+			raf.close();
+		}
+		buffer.order(ORDER);
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a graph file: " + file);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported version of graph file: " + buffer.getInt(4));
+		}
+		int n = buffer.getInt(8);
+		int m = buffer.getInt(12);
+		int t = buffer.getInt(16);
+		if (n < 0 || m < 0 || t <= n || Integer.bitCount(t) != 1 || buffer.capacity() != fileSize(n, m, t)) {
+			throw new IOException("corrupt graph file: " + file);
+		}
+		MappedGraph<E> graph = new MappedGraph<E>(buffer, n, m, t, factory);
+		if (!graph.isValid()) {
+			throw new IOException("corrupt graph file: " + file);
+		}
+		return graph;
+	}
+
+	/**
+	 * @param n The number of nodes.
+	 * @param m The number of connections.
+	 * @param t The number of slots in the node table.
+	 * @return The size of a graph file in bytes.
+	 */
+	static long fileSize(int n, int m, int t) {
+		return HEADER_SIZE + 16L * n + 16L * m + 8L * ((m + 63) / 64) + 8L * (n + 1) + 8L * m + 4L * t;
+	}
+
+	// load factor of at most 0.5
+	private static int tableSize(int n) {
+		return Integer.highestOneBit(Math.max(1, n) * 2) << 1;
+	}
+
+	private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(channel, buffer);
+		}
+		return buffer;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,284 @@
+package rinde.sim.serializers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import rinde.sim.scenario.Scenario;
+import rinde.sim.scenario.StreamingScenario;
+import rinde.sim.scenario.TimedEvent;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Binary scenario format that can be memory mapped. Where
+ * {@link rinde.sim.util.IO#serialize(java.io.Serializable, String)} writes
+ * the objects of a scenario with Java serialization, this format stores the
+ * events in columns: the times as differences with the previous event, the
+ * types as indices in a table and the fields of subclasses of
+ * {@link TimedEvent}, written by an {@link EventCodec}. A plain event takes
+ * a few bytes. {@link #map(File, EventCodec...)} maps the file and
+ * returns a {@link StreamingScenario} that creates the events when they are
+ * polled, the file is never read as a whole.
+ * <p>
+ * All numbers are little endian. Numbers marked <code>varint</code> are
+ * unsigned variable length numbers, 7 bits per byte with the lowest bits
+ * first, strings are a varint length followed by UTF-8 bytes. The file
+ * consists of a header of {@value #HEADER_SIZE} bytes followed by the
+ * tables and the columns:
+ * <table>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>magic number <code>0x52535343</code></td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>version {@value #VERSION}</td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the number of events <code>n</code></td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the offset of the time column</td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the offset of the kind column</td>
+ * </tr>
+ * <tr>
+ * <td><code>int</code></td>
+ * <td>the offset of the field column</td>
+ * </tr>
+ * <tr>
+ * <td><code>int[2]</code></td>
+ * <td>reserved</td>
+ * </tr>
+ * <tr>
+ * <td>varint, string[]</td>
+ * <td>the class names of the enums of the event types</td>
+ * </tr>
+ * <tr>
+ * <td>varint, (varint, string)[]</td>
+ * <td>the possible event types of the scenario: the index of the enum class
+ * and the name of the constant</td>
+ * </tr>
+ * <tr>
+ * <td>varint, (varint, string)[]</td>
+ * <td>the kinds of events: the index of the event type and the id of the
+ * codec, empty for a plain {@link TimedEvent}</td>
+ * </tr>
+ * <tr>
+ * <td>varint[n]</td>
+ * <td>the time column: the time of the first event and the differences
+ * between consecutive events</td>
+ * </tr>
+ * <tr>
+ * <td>varint[n]</td>
+ * <td>the kind column: the index of the kind of every event</td>
+ * </tr>
+ * <tr>
+ * <td>(varint, byte[])[]</td>
+ * <td>the field column: the length and the fields of every event that has a
+ * codec</td>
+ * </tr>
+ * </table>
+ * A mapped file cannot be larger than 2 GB.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class BinaryScenarioSerializer {
+
+	/**
+	 * The first <code>int</code> of the file.
+	 */
+	public static final int MAGIC = 0x52535343;
+
+	/**
+	 * The version of the format that is written.
+	 */
+	public static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 32;
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private BinaryScenarioSerializer() {}
+
+	/**
+	 * Creates a writer that writes events one by one, the events are encoded
+	 * when they are added and the file is written by
+	 * {@link ScenarioWriter#close()}.
+	 * @param file The file, it is overwritten.
+	 * @param types The possible event types of the scenario.
+	 * @param codecs The codecs for the subclasses of {@link TimedEvent}.
+	 * @return A new writer.
+	 */
+	public static ScenarioWriter newWriter(File file, Enum<?>[] types, EventCodec<?>... codecs) {
+		if (file == null || types == null || codecs == null) {
+			throw new IllegalArgumentException("file, types and codecs cannot be null");
+		}
+		return new ScenarioWriter(file, types, codecs);
+	}
+
+	/**
+	 * Writes all events of the scenario. The scenario is not modified, the
+	 * events are polled from a {@link Scenario#copy()}.
+	 * @param scenario The scenario.
+	 * @param file The file, it is overwritten.
+	 * @param codecs The codecs for the subclasses of {@link TimedEvent} in the
+	 *            scenario.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static void write(Scenario scenario, File file, EventCodec<?>... codecs) throws IOException {
+		if (scenario == null) {
+			throw new IllegalArgumentException("scenario cannot be null");
+		}
+		ScenarioWriter writer = newWriter(file, scenario.getPossibleEventTypes(), codecs);
+		Scenario copy = scenario.copy();
+		TimedEvent e;
+		while ((e = copy.poll()) != null) {
+			writer.add(e);
+		}
+		writer.close();
+	}
+
+	/**
+	 * Maps the file in memory. The events are read from the mapping when they
+	 * are polled from the scenario, copies of the scenario share the mapping.
+	 * The file must not be modified while the scenario is used.
+	 * @param file The file, written by a {@link ScenarioWriter}.
+	 * @param codecs The codecs of the events in the file.
+	 * @return A scenario with the events of the file.
+	 * @throws IOException if the file cannot be mapped, is not a scenario file
+	 *             or needs a codec that is not given.
+	 */
+	public static StreamingScenario map(File file, EventCodec<?>... codecs) throws IOException {
+		if (codecs == null) {
+			throw new IllegalArgumentException("codecs cannot be null");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			long size = raf.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("scenario file is too large to be mapped: " + size + " bytes");
+			}
+			if (size < HEADER_SIZE) {
+				throw new IOException("not a scenario file: " + file);
+			}
+			// the mapping remains valid after the file is closed
+			buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, size);
+		} finally {
+			raf.close();
+		}
+		buffer.order(ORDER);
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a scenario file: " + file);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported version of scenario file: " + buffer.getInt(4));
+		}
+		int n = buffer.getInt(8);
+		int times = buffer.getInt(12);
+		int kinds = buffer.getInt(16);
+		int fields = buffer.getInt(20);
+		if (n < 0 || times < HEADER_SIZE || kinds < times || fields < kinds || fields > buffer.capacity()) {
+			throw new IOException("corrupt scenario file: " + file);
+		}
+
+		Map<String, EventCodec<?>> codecsById = new HashMap<String, EventCodec<?>>();
+		for (EventCodec<?> c : codecs) {
+			codecsById.put(c.getId(), c);
+		}
+		ByteBuffer in = buffer.duplicate().order(ORDER);
+		in.position(HEADER_SIZE);
+		try {
+			String[] classes = new String[readVarint(in)];
+			for (int i = 0; i < classes.length; i++) {
+				classes[i] = readString(in);
+			}
+			Enum<?>[] types = new Enum<?>[readVarint(in)];
+			for (int i = 0; i < types.length; i++) {
+				types[i] = enumConstant(classes[readVarint(in)], readString(in));
+			}
+			int kindCount = readVarint(in);
+			Enum<?>[] kindTypes = new Enum<?>[kindCount];
+			EventCodec<?>[] kindCodecs = new EventCodec<?>[kindCount];
+			for (int i = 0; i < kindCount; i++) {
+				kindTypes[i] = types[readVarint(in)];
+				String id = readString(in);
+				if (id.length() > 0) {
+					kindCodecs[i] = codecsById.get(id);
+					if (kindCodecs[i] == null) {
+						throw new IOException("no codec for events of kind: " + id);
+					}
+				}
+			}
+			MappedEvents events = new MappedEvents(buffer, n, times, kinds, fields, kindTypes, kindCodecs);
+			return new StreamingScenario(Collections.singletonList(events), types);
+		} catch (RuntimeException e) {
+			// an index out of bounds or a buffer underflow
+			throw new IOException("corrupt scenario file: " + file, e);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Enum<?> enumConstant(String className, String name) throws IOException {
+		try {
+			return Enum.valueOf((Class) Class.forName(className), name);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("unknown event type: " + className + "." + name, e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("unknown event type: " + className + "." + name, e);
+		}
+	}
+
+	static void writeVarint(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static void writeString(ByteArrayOutputStream out, String s) {
+		byte[] bytes = s.getBytes(Charsets.UTF_8);
+		writeVarint(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	static long readVarLong(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("malformed varint");
+	}
+
+	static int readVarint(ByteBuffer in) {
+		long value = readVarLong(in);
+		if (value > Integer.MAX_VALUE) {
+			throw new IllegalStateException("varint is too large: " + value);
+		}
+		return (int) value;
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[readVarint(in)];
+		in.get(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+}
@@ -14,6 +14,7 @@ import rinde.sim.core.graph.LengthEdgeData;
 import rinde.sim.core.graph.MultiAttributeEdgeData;
 import rinde.sim.core.graph.MultimapGraph;
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.PointPool;
 
 /**
  * Dot format serializer for a road model graph.
@@ -59,12 +60,14 @@ public class DotGraphSerializer<E extends EdgeData> extends AbstractGraphSeriali
 		MultimapGraph<E> graph = new MultimapGraph<E>();
 
 		HashMap<String, Point> nodeMapping = new HashMap<String, Point>();
+		// nodes with the same position share one instance
+		PointPool pool = new PointPool();
 		String line;
 		while ((line = reader.readLine()) != null) {
 			if (line.contains(POS + "=")) {
 				String nodeName = line.substring(0, line.indexOf("[")).trim();
 				String[] position = line.split("\"")[1].split(",");
-				Point p = new Point(Double.parseDouble(position[0]), Double.parseDouble(position[1]));
+				Point p = pool.get(Double.parseDouble(position[0]), Double.parseDouble(position[1]));
 				nodeMapping.put(nodeName, p);
 			} else if (line.contains("->")) {
 				// example:
@@ -0,0 +1,48 @@
+package rinde.sim.serializers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import rinde.sim.scenario.TimedEvent;
+
+/**
+ * Writes and reads the fields of a subclass of {@link TimedEvent} for
+ * {@link BinaryScenarioSerializer}. The type and time of the event are
+ * stored by the serializer, the codec only stores the additional fields of
+ * the event, for example the position of a new truck.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public interface EventCodec<T extends TimedEvent> {
+
+	/**
+	 * @return The name of the codec that is stored in the file, the codec of
+	 *         an event is found with this name when the file is read.
+	 */
+	String getId();
+
+	/**
+	 * @return The class of the events, events of subclasses need their own
+	 *         codec.
+	 */
+	Class<T> getEventClass();
+
+	/**
+	 * Writes the fields of the event.
+	 * @param event The event.
+	 * @param out The output.
+	 * @throws IOException if the output cannot be written.
+	 */
+	void write(T event, DataOutput out) throws IOException;
+
+	/**
+	 * Reads an event that was written by {@link #write(TimedEvent, DataOutput)}.
+	 * @param type The type of the event.
+	 * @param time The time of the event.
+	 * @param in The input, positioned at the fields of the event.
+	 * @return A new event.
+	 * @throws IOException if the input cannot be read.
+	 */
+	T read(Enum<?> type, long time, DataInput in) throws IOException;
+}
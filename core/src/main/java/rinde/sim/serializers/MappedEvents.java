@@ -0,0 +1,112 @@
+package rinde.sim.serializers;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import rinde.sim.scenario.TimedEvent;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * The events of a mapped scenario file, see {@link BinaryScenarioSerializer}.
+ * Every iterator reads the columns with its own views on the mapping and
+ * creates the events one by one.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class MappedEvents implements Iterable<TimedEvent> {
+
+	private final ByteBuffer buffer;
+	private final int count;
+	private final int timeOffset;
+	private final int kindOffset;
+	private final int fieldOffset;
+	private final Enum<?>[] kindTypes;
+	private final EventCodec<?>[] kindCodecs;
+
+	MappedEvents(ByteBuffer buffer, int count, int timeOffset, int kindOffset, int fieldOffset, Enum<?>[] kindTypes,
+			EventCodec<?>[] kindCodecs) {
+		this.buffer = buffer;
+		this.count = count;
+		this.timeOffset = timeOffset;
+		this.kindOffset = kindOffset;
+		this.fieldOffset = fieldOffset;
+		this.kindTypes = kindTypes;
+		this.kindCodecs = kindCodecs;
+	}
+
+	@Override
+	public Iterator<TimedEvent> iterator() {
+		final ByteBuffer times = view(timeOffset);
+		final ByteBuffer kinds = view(kindOffset);
+		final ByteBuffer fields = view(fieldOffset);
+		final DataInputStream in = new DataInputStream(new BufferInputStream(fields));
+		return new AbstractIterator<TimedEvent>() {
+			private int index;
+			private long time;
+
+			@Override
+			protected TimedEvent computeNext() {
+				if (index == count) {
+					return endOfData();
+				}
+				index++;
+				try {
+					time += BinaryScenarioSerializer.readVarLong(times);
+					int kind = BinaryScenarioSerializer.readVarint(kinds);
+					EventCodec<?> codec = kindCodecs[kind];
+					if (codec == null) {
+						return new TimedEvent(kindTypes[kind], time);
+					}
+					int length = BinaryScenarioSerializer.readVarint(fields);
+					int end = fields.position() + length;
+					fields.limit(end);
+					TimedEvent event = codec.read(kindTypes[kind], time, in);
+					fields.limit(fields.capacity());
+					fields.position(end);
+					return event;
+				} catch (IOException e) {
+					throw new IllegalStateException("corrupt scenario file, event " + index, e);
+				} catch (RuntimeException e) {
+					throw new IllegalStateException("corrupt scenario file, event " + index, e);
+				}
+			}
+		};
+	}
+
+	private ByteBuffer view(int offset) {
+		ByteBuffer b = buffer.duplicate();
+		b.position(offset);
+		return b;
+	}
+
+	// reads the remaining bytes of a buffer
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+	}
+}
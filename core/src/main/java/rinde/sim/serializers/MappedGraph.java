@@ -0,0 +1,414 @@
+package rinde.sim.serializers;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+import rinde.sim.core.graph.CompactGraph.EdgeDataFactory;
+import rinde.sim.core.graph.Connection;
+import rinde.sim.core.graph.EdgeData;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.Point;
+
+/**
+ * Read-only {@link Graph} on a memory mapped file in the format of
+ * {@link BinaryGraphSerializer}. The coordinates, the connections and the
+ * edge attributes are read from views on the mapping, nothing is copied when
+ * the graph is created. Nodes are created when they are returned and edge
+ * data is created by an {@link EdgeDataFactory} when it is asked for, like
+ * {@link rinde.sim.core.graph.CompactGraph}. Node lookups use the table of
+ * the file.
+ * <p>
+ * The graph can be read by many threads at the same time. All methods that
+ * modify the graph throw an {@link UnsupportedOperationException}.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class MappedGraph<E extends EdgeData> implements Graph<E> {
+
+	private final int nodeCount;
+	private final int connectionCount;
+	private final DoubleBuffer xs;
+	private final DoubleBuffer ys;
+	private final DoubleBuffer lengths;
+	private final DoubleBuffer maxSpeeds;
+	private final LongBuffer hasData;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final IntBuffer inOffsets;
+	private final IntBuffer inSources;
+	private final IntBuffer slots;
+	private final int mask;
+	private final EdgeDataFactory<E> factory;
+	private final Set<Point> nodeSet;
+
+	MappedGraph(ByteBuffer buffer, int n, int m, int t, EdgeDataFactory<E> factory) {
+		nodeCount = n;
+		connectionCount = m;
+		this.factory = factory;
+		int pos = BinaryGraphSerializer.HEADER_SIZE;
+		xs = section(buffer, pos, 8 * n).asDoubleBuffer();
+		pos += 8 * n;
+		ys = section(buffer, pos, 8 * n).asDoubleBuffer();
+		pos += 8 * n;
+		lengths = section(buffer, pos, 8 * m).asDoubleBuffer();
+		pos += 8 * m;
+		maxSpeeds = section(buffer, pos, 8 * m).asDoubleBuffer();
+		pos += 8 * m;
+		hasData = section(buffer, pos, 8 * ((m + 63) / 64)).asLongBuffer();
+		pos += 8 * ((m + 63) / 64);
+		offsets = section(buffer, pos, 4 * (n + 1)).asIntBuffer();
+		pos += 4 * (n + 1);
+		targets = section(buffer, pos, 4 * m).asIntBuffer();
+		pos += 4 * m;
+		inOffsets = section(buffer, pos, 4 * (n + 1)).asIntBuffer();
+		pos += 4 * (n + 1);
+		inSources = section(buffer, pos, 4 * m).asIntBuffer();
+		pos += 4 * m;
+		slots = section(buffer, pos, 4 * t).asIntBuffer();
+		mask = t - 1;
+		nodeSet = new NodeSet();
+	}
+
+	/**
+	 * Checks the sections that are used as indices: the offsets of both
+	 * compressed sparse row sections must be non-decreasing from 0 to the
+	 * number of connections, the node indices must be in range and the node
+	 * table must contain every node once, such that no method of this graph
+	 * fails on a corrupt file. This reads the index sections once.
+	 * @return <code>true</code> if the sections are valid.
+	 */
+	boolean isValid() {
+		if (!isValid(offsets, targets) || !isValid(inOffsets, inSources)) {
+			return false;
+		}
+		int used = 0;
+		for (int s = 0; s < slots.capacity(); s++) {
+			int i = slots.get(s);
+			if (i < 0 || i > nodeCount) {
+				return false;
+			}
+			if (i != 0) {
+				used++;
+			}
+		}
+		// the table has an empty slot, which ends every lookup
+		return used == nodeCount;
+	}
+
+	private boolean isValid(IntBuffer offs, IntBuffer nodes) {
+		if (offs.get(0) != 0 || offs.get(nodeCount) != connectionCount) {
+			return false;
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			if (offs.get(i) > offs.get(i + 1)) {
+				return false;
+			}
+		}
+		for (int e = 0; e < connectionCount; e++) {
+			int node = nodes.get(e);
+			if (node < 0 || node >= nodeCount) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer section(ByteBuffer buffer, int pos, int length) {
+		ByteBuffer b = buffer.duplicate();
+		b.position(pos);
+		b.limit(pos + length);
+		// slice() does not keep the byte order
+		return b.slice().order(BinaryGraphSerializer.ORDER);
+	}
+
+	/**
+	 * @param node The node.
+	 * @return The index of the node in the file or <code>-1</code> if the
+	 *         node is not part of the graph.
+	 */
+	public int indexOf(Point node) {
+		if (node == null) {
+			return -1;
+		}
+		int slot = Point.hash(node.x, node.y) & mask;
+		int i;
+		while ((i = slots.get(slot)) != 0) {
+			if (xs.get(i - 1) == node.x && ys.get(i - 1) == node.y) {
+				return i - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index The index of the node in the file.
+	 * @return A new point with the coordinates of the node.
+	 */
+	public Point getNode(int index) {
+		if (index < 0 || index >= nodeCount) {
+			throw new IndexOutOfBoundsException("index: " + index + " size: " + nodeCount);
+		}
+		return new Point(xs.get(index), ys.get(index));
+	}
+
+	/**
+	 * @param from The start node.
+	 * @param to The end node.
+	 * @return The maximum speed of the connection or {@link Double#NaN} when
+	 *         it is not defined.
+	 * @throws IllegalArgumentException when the connection does not exist.
+	 */
+	public double connectionMaxSpeed(Point from, Point to) {
+		return maxSpeeds.get(existingEdge(from, to));
+	}
+
+	@Override
+	public boolean containsNode(Point node) {
+		return indexOf(node) >= 0;
+	}
+
+	@Override
+	public Collection<Point> getOutgoingConnections(Point node) {
+		int i = indexOf(node);
+		if (i < 0) {
+			return new NodeList(targets, 0, 0);
+		}
+		return new NodeList(targets, offsets.get(i), offsets.get(i + 1));
+	}
+
+	@Override
+	public Collection<Point> getIncomingConnections(Point node) {
+		int i = indexOf(node);
+		if (i < 0) {
+			return new NodeList(inSources, 0, 0);
+		}
+		return new NodeList(inSources, inOffsets.get(i), inOffsets.get(i + 1));
+	}
+
+	@Override
+	public boolean hasConnection(Point from, Point to) {
+		return edge(from, to) >= 0;
+	}
+
+	@Override
+	public Connection<E> getConnection(Point from, Point to) {
+		int e = edge(from, to);
+		if (e < 0) {
+			throw new IllegalArgumentException(from + " -> " + to + " is not a connection.");
+		}
+		return new Connection<E>(from, to, data(e));
+	}
+
+	@Override
+	public E connectionData(Point from, Point to) {
+		int e = edge(from, to);
+		return e < 0 ? null : data(e);
+	}
+
+	@Override
+	public double connectionLength(Point from, Point to) {
+		return lengths.get(existingEdge(from, to));
+	}
+
+	@Override
+	public int getNumberOfConnections() {
+		return connectionCount;
+	}
+
+	@Override
+	public List<Connection<E>> getConnections() {
+		List<Connection<E>> connections = new ArrayList<Connection<E>>(connectionCount);
+		for (int i = 0; i < nodeCount; i++) {
+			Point from = getNode(i);
+			for (int e = offsets.get(i); e < offsets.get(i + 1); e++) {
+				connections.add(new Connection<E>(from, getNode(targets.get(e)), data(e)));
+			}
+		}
+		return connections;
+	}
+
+	@Override
+	public int getNumberOfNodes() {
+		return nodeCount;
+	}
+
+	@Override
+	public Set<Point> getNodes() {
+		return nodeSet;
+	}
+
+	@Override
+	public void addConnection(Point from, Point to, E edgeData) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public void addConnection(Point from, Point to) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public void addConnection(Connection<E> connection) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public E setEdgeData(Point from, Point to, E edgeData) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public void addConnections(Collection<Connection<E>> connections) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public void merge(Graph<E> other) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return connectionCount == 0;
+	}
+
+	@Override
+	public void removeNode(Point node) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@Override
+	public void removeConnection(Point from, Point to) {
+		throw new UnsupportedOperationException("MappedGraph is read-only");
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Graph ? equals((Graph) other) : false;
+	}
+
+	@Override
+	public boolean equals(Graph<? extends E> other) {
+		return Graphs.equals(this, other);
+	}
+
+	@Override
+	public int hashCode() {
+		return Graphs.hashCode(this);
+	}
+
+	@Override
+	public Point getRandomNode(RandomGenerator generator) {
+		if (nodeCount == 0) {
+			throw new IllegalStateException("no nodes in the graph");
+		}
+		return getNode(generator.nextInt(nodeCount));
+	}
+
+	private int edge(Point from, Point to) {
+		int f = indexOf(from);
+		if (f < 0 || to == null) {
+			return -1;
+		}
+		for (int e = offsets.get(f); e < offsets.get(f + 1); e++) {
+			int t = targets.get(e);
+			if (xs.get(t) == to.x && ys.get(t) == to.y) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	private int existingEdge(Point from, Point to) {
+		int e = edge(from, to);
+		if (e < 0) {
+			throw new IllegalArgumentException("Can not get connection length from a non-existing connection.");
+		}
+		return e;
+	}
+
+	private E data(int edge) {
+		if ((hasData.get(edge >>> 6) & 1L << edge) == 0) {
+			return null;
+		}
+		return factory.create(lengths.get(edge), maxSpeeds.get(edge));
+	}
+
+	// unmodifiable view on a slice of node indices
+	private class NodeList extends AbstractList<Point> {
+		private final IntBuffer elements;
+		private final int from;
+		private final int to;
+
+		NodeList(IntBuffer elements, int from, int to) {
+			this.elements = elements;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Point get(int i) {
+			if (i < 0 || i >= to - from) {
+				throw new IndexOutOfBoundsException("index: " + i + " size: " + size());
+			}
+			return getNode(elements.get(from + i));
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	private class NodeSet extends AbstractSet<Point> {
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Point && indexOf((Point) o) >= 0;
+		}
+
+		@Override
+		public Iterator<Point> iterator() {
+			return new Iterator<Point>() {
+				private int i;
+
+				@Override
+				public boolean hasNext() {
+					return i < nodeCount;
+				}
+
+				@Override
+				public Point next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return getNode(i++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("MappedGraph is read-only");
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return nodeCount;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package rinde.sim.serializers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rinde.sim.scenario.TimedEvent;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+/**
+ * Writes a scenario file in the format of {@link BinaryScenarioSerializer}
+ * event by event. Every event is encoded in the columns when it is added,
+ * the writer only keeps the encoded columns in memory (a few bytes per
+ * event) and writes them to the file when it is closed.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class ScenarioWriter implements Closeable {
+
+	private final File file;
+	private final Enum<?>[] types;
+	private final Map<Enum<?>, Integer> typeIndices;
+	private final Map<Class<?>, EventCodec<?>> codecs;
+	// kind index by type and codec id, the codec id of plain events is ""
+	private final Table<Enum<?>, String, Integer> kinds;
+	private final List<Integer> kindTypes;
+	private final List<String> kindCodecs;
+	private final ByteArrayOutputStream times;
+	private final ByteArrayOutputStream kindColumn;
+	private final ByteArrayOutputStream fields;
+	private final ByteArrayOutputStream eventFields;
+	private final DataOutputStream eventOut;
+	private int count;
+	private long lastTime;
+	private boolean closed;
+
+	ScenarioWriter(File file, Enum<?>[] types, EventCodec<?>[] codecs) {
+		this.file = file;
+		this.types = types.clone();
+		typeIndices = new HashMap<Enum<?>, Integer>();
+		for (int i = 0; i < types.length; i++) {
+			typeIndices.put(types[i], i);
+		}
+		this.codecs = new HashMap<Class<?>, EventCodec<?>>();
+		for (EventCodec<?> c : codecs) {
+			if (c.getId() == null || c.getId().length() == 0) {
+				throw new IllegalArgumentException("the id of a codec cannot be empty");
+			}
+			this.codecs.put(c.getEventClass(), c);
+		}
+		kinds = HashBasedTable.create();
+		kindTypes = new ArrayList<Integer>();
+		kindCodecs = new ArrayList<String>();
+		times = new ByteArrayOutputStream();
+		kindColumn = new ByteArrayOutputStream();
+		fields = new ByteArrayOutputStream();
+		eventFields = new ByteArrayOutputStream();
+		eventOut = new DataOutputStream(eventFields);
+	}
+
+	/**
+	 * Adds an event, events must be added in time order.
+	 * @param event The event.
+	 * @throws IOException if the codec of the event fails.
+	 */
+	@SuppressWarnings("unchecked")
+	public void add(TimedEvent event) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("the writer is closed");
+		}
+		if (event == null) {
+			throw new IllegalArgumentException("event cannot be null");
+		}
+		Integer type = typeIndices.get(event.getEventType());
+		if (type == null) {
+			throw new IllegalArgumentException("not supported event type: " + event.getEventType());
+		}
+		if (event.time < lastTime) {
+			throw new IllegalArgumentException("events must be added in time order: " + event.time + " < "
+					+ lastTime);
+		}
+		EventCodec<?> codec = null;
+		if (event.getClass() != TimedEvent.class) {
+			codec = codecs.get(event.getClass());
+			if (codec == null) {
+				throw new IllegalArgumentException("no codec for events of class " + event.getClass().getName());
+			}
+		}
+		String id = codec == null ? "" : codec.getId();
+		Integer kind = kinds.get(event.getEventType(), id);
+		if (kind == null) {
+			kind = kindTypes.size();
+			kinds.put(event.getEventType(), id, kind);
+			kindTypes.add(type);
+			kindCodecs.add(id);
+		}
+		if (codec != null) {
+			eventFields.reset();
+			((EventCodec<TimedEvent>) codec).write(event, eventOut);
+			eventOut.flush();
+			BinaryScenarioSerializer.writeVarint(fields, eventFields.size());
+			eventFields.writeTo(fields);
+		}
+		BinaryScenarioSerializer.writeVarint(times, event.time - lastTime);
+		BinaryScenarioSerializer.writeVarint(kindColumn, kind);
+		lastTime = event.time;
+		count++;
+	}
+
+	/**
+	 * @return The number of events that were added.
+	 */
+	public int getNumberOfEvents() {
+		return count;
+	}
+
+	/**
+	 * Writes the file, no events can be added afterwards.
+	 * @throws IOException if the file cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		ByteArrayOutputStream tables = new ByteArrayOutputStream();
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (Enum<?> t : types) {
+			if (!classes.contains(t.getDeclaringClass())) {
+				classes.add(t.getDeclaringClass());
+			}
+		}
+		BinaryScenarioSerializer.writeVarint(tables, classes.size());
+		for (Class<?> c : classes) {
+			BinaryScenarioSerializer.writeString(tables, c.getName());
+		}
+		BinaryScenarioSerializer.writeVarint(tables, types.length);
+		for (Enum<?> t : types) {
+			BinaryScenarioSerializer.writeVarint(tables, classes.indexOf(t.getDeclaringClass()));
+			BinaryScenarioSerializer.writeString(tables, t.name());
+		}
+		BinaryScenarioSerializer.writeVarint(tables, kindTypes.size());
+		for (int i = 0; i < kindTypes.size(); i++) {
+			BinaryScenarioSerializer.writeVarint(tables, kindTypes.get(i));
+			BinaryScenarioSerializer.writeString(tables, kindCodecs.get(i));
+		}
+		long timeOffset = BinaryScenarioSerializer.HEADER_SIZE + tables.size();
+		long kindOffset = timeOffset + times.size();
+		long fieldOffset = kindOffset + kindColumn.size();
+		if (fieldOffset + fields.size() > Integer.MAX_VALUE) {
+			throw new IOException("scenario is too large for a scenario file");
+		}
+		ByteBuffer header = ByteBuffer.allocate(BinaryScenarioSerializer.HEADER_SIZE).order(
+				BinaryScenarioSerializer.ORDER);
+		header.putInt(BinaryScenarioSerializer.MAGIC).putInt(BinaryScenarioSerializer.VERSION).putInt(count)
+				.putInt((int) timeOffset).putInt((int) kindOffset).putInt((int) fieldOffset).putInt(0).putInt(0);
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(header.array());
+			tables.writeTo(out);
+			times.writeTo(out);
+			kindColumn.writeTo(out);
+			fields.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+}
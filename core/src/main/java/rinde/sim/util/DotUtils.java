@@ -18,6 +18,7 @@ import rinde.sim.core.graph.Graph;
 import rinde.sim.core.graph.LengthEdgeData;
 import rinde.sim.core.graph.MultimapGraph;
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.PointPool;
 import rinde.sim.core.graph.TableGraph;
 
 /**
@@ -114,12 +115,13 @@ public class DotUtils {
 			boolean containsDistances = false;
 
 			HashMap<String, Point> nodeMapping = new HashMap<String, Point>();
+			PointPool pool = new PointPool();
 			String line;
 			while ((line = reader.readLine()) != null) {
 				if (line.contains("pos=")) {
 					String nodeName = line.substring(0, line.indexOf("[")).trim();
 					String[] position = line.split("\"")[1].split(",");
-					Point p = new Point(Double.parseDouble(position[0]), Double.parseDouble(position[1]));
+					Point p = pool.get(Double.parseDouble(position[0]), Double.parseDouble(position[1]));
 					nodeMapping.put(nodeName, p);
 				} else if (line.contains("->")) {
 					// example: 
@@ -0,0 +1,164 @@
+package rinde.sim.util;
+
+import java.util.Arrays;
+
+/**
+ * Map from <code>long</code> keys to <code>int</code> values that does not
+ * box its keys and values. The entries are kept in two arrays using open
+ * addressing with linear probing, the arrays are doubled when the map is half
+ * full. Entries cannot be removed, the map is meant for assigning dense
+ * indices to sparse identifiers such as the ids of OpenStreetMap nodes.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class LongIntMap {
+
+	// marks a free slot, the entry of this key is kept outside the table
+	private static final long FREE = Long.MIN_VALUE;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	private boolean hasFreeKey;
+	private int freeKeyValue;
+
+	public LongIntMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize The number of entries for which space is reserved.
+	 */
+	public LongIntMap(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize cannot be negative");
+		}
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2L * expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * @param key The key.
+	 * @param defaultValue The value that is returned when the key is absent.
+	 * @return The value of the key or the default value.
+	 */
+	public int get(long key, int defaultValue) {
+		if (key == FREE) {
+			return hasFreeKey ? freeKeyValue : defaultValue;
+		}
+		int i = slot(key);
+		return keys[i] == FREE ? defaultValue : values[i];
+	}
+
+	public boolean containsKey(long key) {
+		return key == FREE ? hasFreeKey : keys[slot(key)] != FREE;
+	}
+
+	/**
+	 * Associates the value with the key, replacing a previous value.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	public void put(long key, int value) {
+		if (key == FREE) {
+			if (!hasFreeKey) {
+				hasFreeKey = true;
+				size++;
+			}
+			freeKeyValue = value;
+			return;
+		}
+		int i = slot(key);
+		if (keys[i] == FREE) {
+			insert(i, key, value);
+		} else {
+			values[i] = value;
+		}
+	}
+
+	/**
+	 * Associates the value with the key when the key is absent.
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The value that is associated with the key after the call.
+	 */
+	public int putIfAbsent(long key, int value) {
+		if (key == FREE) {
+			if (!hasFreeKey) {
+				put(key, value);
+			}
+			return freeKeyValue;
+		}
+		int i = slot(key);
+		if (keys[i] != FREE) {
+			return values[i];
+		}
+		insert(i, key, value);
+		return value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		hasFreeKey = false;
+		size = 0;
+	}
+
+	private void insert(int slot, long key, int value) {
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		if (2 * size > keys.length) {
+			rehash();
+		}
+	}
+
+	/**
+	 * @return The slot of the key or the free slot where it belongs.
+	 */
+	private int slot(long key) {
+		int i = hash(key) & mask;
+		while (keys[i] != FREE && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != FREE) {
+				int i = slot(oldKeys[j]);
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	// ids are often consecutive, the multiplication spreads them over the table
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -4,28 +4,36 @@
 package rinde.sim.util;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 import rinde.sim.core.graph.Connection;
 import rinde.sim.core.graph.EdgeData;
 import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
 import rinde.sim.core.graph.Graphs;
 import rinde.sim.core.graph.LengthEdgeData;
 import rinde.sim.core.graph.MultiAttributeEdgeData;
 import rinde.sim.core.graph.MultimapGraph;
 import rinde.sim.core.graph.PathNotFoundException;
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.StronglyConnectedComponents;
 import rinde.sim.core.graph.TableGraph;
 import rinde.sim.serializers.DotGraphSerializer;
 
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
@@ -260,6 +268,148 @@ public class MapPreprocessor {
 		return currentGraph;
 	}
 
+	/**
+	 * Determines how {@link MapPreprocessor#makeStronglyConnected(Graph, ConnectivityRepair, PreprocessingReport)}
+	 * makes a graph strongly connected.
+	 */
+	public enum ConnectivityRepair {
+		/**
+		 * Only the largest strongly connected component is kept, like
+		 * {@link MapPreprocessor#removeUnconnectedSubGraphs(Graph, EdgeData)}.
+		 */
+		KEEP_LARGEST,
+		/**
+		 * Every other component is connected to the largest component with
+		 * connections in both directions between its closest pair of nodes,
+		 * like {@link MapPreprocessor#connect(Graph)}.
+		 */
+		BRIDGE
+	}
+
+	/**
+	 * Makes the graph strongly connected.
+	 * @param graph The graph.
+	 * @param repair Determines what happens with the components.
+	 * @return A new graph.
+	 * @see #makeStronglyConnected(Graph, ConnectivityRepair,
+	 *      PreprocessingReport)
+	 */
+	public static <E extends EdgeData> Graph<E> makeStronglyConnected(Graph<E> graph, ConnectivityRepair repair) {
+		return makeStronglyConnected(graph, repair, new PreprocessingReport());
+	}
+
+	/**
+	 * Makes the graph strongly connected. The strongly connected components
+	 * are computed in one pass (see {@link StronglyConnectedComponents})
+	 * instead of the repeated searches of {@link #connect(Graph)} and
+	 * {@link #removeUnconnectedSubGraphs(Graph, EdgeData)}. When the
+	 * components are bridged, the closest node of the connected part is found
+	 * with a grid instead of comparing all pairs of nodes. The components are
+	 * bridged in decreasing order of size.
+	 * @param graph The graph.
+	 * @param repair Determines what happens with the components.
+	 * @param report Receives the number of components, the changes and the
+	 *            duration of every stage.
+	 * @return A new graph.
+	 */
+	public static <E extends EdgeData> Graph<E> makeStronglyConnected(Graph<E> graph, ConnectivityRepair repair,
+			PreprocessingReport report) {
+		if (graph == null || repair == null || report == null) {
+			throw new IllegalArgumentException("graph, repair and report cannot be null");
+		}
+		long start = System.nanoTime();
+		GraphIndex index = GraphIndex.create(graph);
+		start = report.stage("index", start);
+		StronglyConnectedComponents components = StronglyConnectedComponents.compute(index);
+		report.setComponents(components.getNumberOfComponents());
+		start = report.stage("components", start);
+
+		Graph<E> result = new MultimapGraph<E>();
+		int largest = components.getLargestComponent();
+		if (repair == ConnectivityRepair.KEEP_LARGEST) {
+			for (int i = 0; i < index.getNumberOfNodes(); i++) {
+				if (components.getComponent(i) != largest) {
+					continue;
+				}
+				Point from = index.getNode(i);
+				for (Point to : graph.getOutgoingConnections(from)) {
+					if (components.getComponent(to) == largest) {
+						result.addConnection(from, to, graph.connectionData(from, to));
+					}
+				}
+			}
+			report.addRemovedNodes(largest < 0 ? 0 : index.getNumberOfNodes() - components.getSize(largest));
+			report.stage("copy", start);
+			return result;
+		}
+
+		List<Tuple<Point, Point>> bridges = bridge(index, components);
+		start = report.stage("bridge", start);
+		result.merge(graph);
+		for (Tuple<Point, Point> b : bridges) {
+			if (!result.hasConnection(b.getKey(), b.getValue())) {
+				result.addConnection(b.getKey(), b.getValue());
+				report.addAddedConnections(1);
+			}
+			if (!result.hasConnection(b.getValue(), b.getKey())) {
+				result.addConnection(b.getValue(), b.getKey());
+				report.addAddedConnections(1);
+			}
+		}
+		report.stage("copy", start);
+		return result;
+	}
+
+	/**
+	 * @return For every component except the largest, the closest pair of a
+	 *         node of the component and a node of the larger components.
+	 */
+	private static List<Tuple<Point, Point>> bridge(GraphIndex index, final StronglyConnectedComponents components) {
+		int n = index.getNumberOfNodes();
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = index.getNode(i).x;
+			ys[i] = index.getNode(i).y;
+		}
+		Integer[] order = new Integer[components.getNumberOfComponents()];
+		for (int c = 0; c < order.length; c++) {
+			order[c] = c;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer c1, Integer c2) {
+				int s1 = components.getSize(c1);
+				int s2 = components.getSize(c2);
+				return s1 != s2 ? (s1 > s2 ? -1 : 1) : c1.compareTo(c2);
+			}
+		});
+
+		List<Tuple<Point, Point>> bridges = new ArrayList<Tuple<Point, Point>>();
+		NearestNodeGrid grid = new NearestNodeGrid(xs, ys);
+		for (int k = 0; k < order.length; k++) {
+			int[] nodes = components.getNodeIndices(order[k]);
+			if (k > 0) {
+				int from = -1;
+				int to = -1;
+				double minDist = Double.POSITIVE_INFINITY;
+				for (int u : nodes) {
+					int v = grid.nearest(xs[u], ys[u], minDist);
+					if (v >= 0) {
+						from = u;
+						to = v;
+						minDist = Point.distance(index.getNode(u), index.getNode(v));
+					}
+				}
+				bridges.add(new Tuple<Point, Point>(index.getNode(from), index.getNode(to)));
+			}
+			for (int u : nodes) {
+				grid.add(u);
+			}
+		}
+		return bridges;
+	}
+
 	private static <E extends EdgeData> Set<Point> unseenNeighbours(Graph<E> g, Set<Point> seen, Set<Point> current) {
 		HashSet<Point> set = new HashSet<Point>();
 		for (Point p : current) {
@@ -305,125 +455,168 @@ public class MapPreprocessor {
 		}
 	}
 
+	/**
+	 * Replaces the chains of nodes that only connect two other nodes by single
+	 * connections.
+	 * @param g The graph.
+	 * @param empty The empty edge data of the type of edge data of the graph.
+	 * @return A new graph.
+	 * @see #contractChains(Graph, EdgeData, PreprocessingReport)
+	 */
 	public static <E extends EdgeData> Graph<E> simplify(Graph<E> g, E empty) {
+		return contractChains(g, empty, new PreprocessingReport()).getGraph();
+	}
+
+	/**
+	 * Replaces every maximal chain of nodes that only connect two other nodes
+	 * by a single connection, in one pass over the graph. A node is part of a
+	 * chain if it has exactly two neighbours and either is connected in both
+	 * directions with both, or has only one incoming connection from one
+	 * neighbour and one outgoing connection to the other. Both connections
+	 * through the node must have the same maximum speed, such that speed limits
+	 * are preserved. The nodes that end a chain are used as a worklist: from
+	 * every end node the chains are followed along the outgoing connections,
+	 * the connection that replaces a chain has the summed length (and the
+	 * maximum speed) of the chain. A chain is kept as it is if it starts and
+	 * ends in the same node or if the connection between its ends already
+	 * exists.
+	 * @param g The graph.
+	 * @param empty The empty edge data of the type of edge data of the graph.
+	 * @param report Receives the number of removed nodes and the duration of
+	 *            the <code>contract</code> stage.
+	 * @return The simplified graph and the geometry of the contracted chains.
+	 */
+	public static <E extends EdgeData> SimplifiedGraph<E> contractChains(Graph<E> g, E empty,
+			PreprocessingReport report) {
+		if (g == null || empty == null || report == null) {
+			throw new IllegalArgumentException("graph, empty and report cannot be null");
+		}
+		long start = System.nanoTime();
 		TableGraph<E> newGraph = new TableGraph<E>(empty);
-		newGraph.merge(g);
-		boolean working = true;
-
-		// int iterations = 0;
-		while (working) {
-			// System.out.println("starting iteration: " + iterations);
-			// iterations++;
-			boolean edit = false;
-			// System.out.println(newGraph.getConnections());
-
-			HashSet<Connection<E>> connections = new HashSet<Connection<E>>(newGraph.getConnections());
-			HashSet<Connection<E>> removeList = new HashSet<Connection<E>>();
-			for (Connection<E> connection : connections) {
-				if (removeList.contains(connection)) {
-					continue;
+		Table<Point, Point, List<Point>> chains = HashBasedTable.create();
+		Set<Point> inner = new HashSet<Point>();
+		List<Point> ends = new ArrayList<Point>();
+		for (Point p : g.getNodes()) {
+			if (isChainNode(g, p)) {
+				inner.add(p);
+			} else {
+				ends.add(p);
+			}
+		}
+		// connections between two end nodes are kept, before any chain is
+		// contracted
+		for (Point from : ends) {
+			for (Point to : g.getOutgoingConnections(from)) {
+				if (!inner.contains(to)) {
+					newGraph.addConnection(from, to, g.connectionData(from, to));
 				}
-				Point left = connection.from;
-				Point right = connection.to;
-
-				ContractType type = isContractable(newGraph, left, right);
-				// System.out.println(type + " " + left + " " + right);
-				if (type == ContractType.NO) {
-					continue;
-				} else {
-					// double length = getLength(newGraph, left, right);
-
-					E removeEdgeData = newGraph.connectionData(left, right);
-					double removeLength = newGraph.connectionLength(left, right);
-					removeList.add(newGraph.getConnection(left, right));
-					newGraph.removeConnection(left, right);
-
-					Point removeNode = (type == ContractType.RIGHT) ? right : left;
-					Point mergeNode = (type == ContractType.RIGHT) ? left : right;
-
-					// System.out.println("remove: " + removeNode);
-					// System.out.println("merge into: " + mergeNode);
-					for (Point outgoing : newGraph.getOutgoingConnections(removeNode)) {
-						if (!outgoing.equals(mergeNode)) {
-							E edgeData = newGraph.connectionData(removeNode, outgoing);
-							double edgeLength = newGraph.connectionLength(removeNode, outgoing);
-							// double newLength = length + getLength(newGraph,
-							// removeNode, outgoing);
-
-							if (!newGraph.hasConnection(mergeNode, outgoing)) {
-								newGraph.addConnection(mergeNode, outgoing, mergeEdgeData(empty, removeEdgeData, removeLength, edgeData, edgeLength));
-							}
-							// if (clazz.equals(LengthEdgeData.class)) {
-							// newGraph.addConnection(mergeNode, outgoing, (E)
-							// new LengthEdgeData(newLength));
-							// } else if
-							// (clazz.equals(MultiAttributeEdgeData.class)) {
-							// throw new UnsupportedOperationException();
-							// TODO Merge the MultiAttributeEdgeData object
-							// here!
-							// MultiAttributeEdgeData maed =
-							// (MultiAttributeEdgeData)
-							// newGraph.connectionData(removeNode, outgoing);
-							//
-							// if(!Double.isNaN(maed.getMaxSpeed())){
-							//
-							// }
-							// newGraph.addConnection(mergeNode, outgoing, (E)
-							// new MultiAttributeEdgeData(newLength));
-							// } else {
-							// throw new UnsupportedOperationException();
-							// }
-						}
-					}
-					for (Point incoming : newGraph.getIncomingConnections(removeNode)) {
-						if (!incoming.equals(mergeNode)) {
-							E edgeData = newGraph.connectionData(incoming, removeNode);
-							double edgeLength = newGraph.connectionLength(incoming, removeNode);
-
-							// double newLength = length + getLength(newGraph,
-							// incoming, removeNode);
-							if (!newGraph.hasConnection(incoming, mergeNode)) {
-								newGraph.addConnection(incoming, mergeNode, mergeEdgeData(empty, edgeData, edgeLength, removeEdgeData, removeLength));
-							}
-							// if (clazz.equals(LengthEdgeData.class)) {
-							//
-							// } else {
-							// throw new UnsupportedOperationException();
-							// }
-
-							// newGraph.addConnection(incoming, mergeNode, new
-							// LengthEdgeData(newLength));
-						}
-					}
+			}
+		}
+		Set<Point> visited = new HashSet<Point>();
+		for (Point from : ends) {
+			contractChains(g, empty, from, inner, visited, newGraph, chains);
+		}
+		// cycles of chain nodes cannot be reached from an end node
+		for (Point p : g.getNodes()) {
+			if (inner.contains(p) && !visited.contains(p)) {
+				inner.remove(p);
+				contractChains(g, empty, p, inner, visited, newGraph, chains);
+			}
+		}
+		report.addRemovedNodes(g.getNumberOfNodes() - newGraph.getNumberOfNodes());
+		report.stage("contract", start);
+		return new SimplifiedGraph<E>(newGraph, chains);
+	}
 
-					Collection<Point> in = newGraph.getIncomingConnections(removeNode);
-					for (Point p : in) {
-						removeList.add(newGraph.getConnection(p, removeNode));
-					}
-					Collection<Point> out = newGraph.getOutgoingConnections(removeNode);
-					for (Point p : out) {
-						removeList.add(newGraph.getConnection(removeNode, p));
+	// follows all chains that start with an outgoing connection of the node
+	private static <E extends EdgeData> void contractChains(Graph<E> g, E empty, Point from, Set<Point> inner,
+			Set<Point> visited, Graph<E> newGraph, Table<Point, Point, List<Point>> chains) {
+		for (Point first : g.getOutgoingConnections(from)) {
+			if (!inner.contains(first)) {
+				continue;
+			}
+			List<Point> chain = new ArrayList<Point>();
+			chain.add(from);
+			E data = g.connectionData(from, first);
+			double length = g.connectionLength(from, first);
+			Point previous = from;
+			Point current = first;
+			while (inner.contains(current)) {
+				visited.add(current);
+				chain.add(current);
+				Point next = null;
+				for (Point p : g.getOutgoingConnections(current)) {
+					if (!p.equals(previous)) {
+						next = p;
 					}
-
-					newGraph.removeNode(removeNode);
-					edit = true;
-					// break;
 				}
+				double l = g.connectionLength(current, next);
+				data = mergeEdgeData(empty, data, length, g.connectionData(current, next), l);
+				length += l;
+				previous = current;
+				current = next;
 			}
-			if (!edit) {
-				working = false;
+			chain.add(current);
+
+			if (current.equals(from) || newGraph.hasConnection(from, current)) {
+				for (int i = 1; i < chain.size(); i++) {
+					Point a = chain.get(i - 1);
+					Point b = chain.get(i);
+					if (!newGraph.hasConnection(a, b)) {
+						newGraph.addConnection(a, b, g.connectionData(a, b));
+					}
+				}
+			} else {
+				newGraph.addConnection(from, current, data);
+				chains.put(from, current, unmodifiableList(chain));
 			}
 		}
-		return newGraph;
+	}
+
+	// a node with two neighbours that can be passed in the same directions
+	// with the same maximum speed
+	static boolean isChainNode(Graph<? extends EdgeData> g, Point node) {
+		Collection<Point> out = g.getOutgoingConnections(node);
+		Collection<Point> in = g.getIncomingConnections(node);
+		if (out.contains(node) || in.contains(node)) {
+			return false;
+		}
+		if (out.size() == 1 && in.size() == 1) {
+			Point a = in.iterator().next();
+			Point b = out.iterator().next();
+			return !a.equals(b) && sameMaxSpeed(g, a, node, b);
+		}
+		if (out.size() == 2 && in.size() == 2 && in.containsAll(out)) {
+			Iterator<Point> it = out.iterator();
+			Point a = it.next();
+			Point b = it.next();
+			return sameMaxSpeed(g, a, node, b) && sameMaxSpeed(g, b, node, a);
+		}
+		return false;
+	}
+
+	private static boolean sameMaxSpeed(Graph<? extends EdgeData> g, Point a, Point node, Point b) {
+		return Double.compare(maxSpeed(g.connectionData(a, node)), maxSpeed(g.connectionData(node, b))) == 0;
+	}
+
+	private static double maxSpeed(EdgeData data) {
+		return data instanceof MultiAttributeEdgeData ? ((MultiAttributeEdgeData) data).getMaxSpeed() : Double.NaN;
 	}
 
 	// TODO also check if input values are valid!!
-	// TODO do something with maxSpeed!!
+	/**
+	 * Merges the edge data of two consecutive connections. The maximum speed
+	 * is kept if both connections have the same maximum speed.
+	 */
 	@SuppressWarnings("unchecked")
 	static <E extends EdgeData> E mergeEdgeData(E empty, E e1, double l1, E e2, double l2) {
 		if (empty instanceof LengthEdgeData) {
 			return (E) new LengthEdgeData(l1 + l2);
 		} else if (empty instanceof MultiAttributeEdgeData) {
+			double speed = maxSpeed(e1);
+			if (!Double.isNaN(speed) && Double.compare(speed, maxSpeed(e2)) == 0) {
+				return (E) new MultiAttributeEdgeData(l1 + l2, speed);
+			}
 			return (E) new MultiAttributeEdgeData(l1 + l2);
 		}
 		throw new IllegalArgumentException("EdgeData objects are of unknown type");
@@ -577,13 +770,10 @@ public class MapPreprocessor {
 		graph.merge(g2);
 		System.out.println("(V,E) = (" + graph.getNumberOfNodes() + "," + graph.getNumberOfConnections() + ")");
 
-		long startSimplify = System.currentTimeMillis();
-		graph = MapPreprocessor.simplify(graph, MultiAttributeEdgeData.EMPTY);
-		System.out.println("simplifying took: " + (System.currentTimeMillis() - startSimplify));
-
-		long startFix = System.currentTimeMillis();
-		graph = MapPreprocessor.removeUnconnectedSubGraphs(graph, MultiAttributeEdgeData.EMPTY);
-		System.out.println("fixing took: " + (System.currentTimeMillis() - startFix));
+		PreprocessingReport report = new PreprocessingReport();
+		graph = MapPreprocessor.contractChains(graph, MultiAttributeEdgeData.EMPTY, report).getGraph();
+		graph = MapPreprocessor.makeStronglyConnected(graph, ConnectivityRepair.KEEP_LARGEST, report);
+		System.out.println(report);
 		serializer.write(graph, "dot-files/" + name + "-simple.dot");
 	}
 }
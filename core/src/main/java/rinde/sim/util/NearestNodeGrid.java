@@ -0,0 +1,125 @@
+package rinde.sim.util;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of square cells over the bounding box of a set of nodes, to
+ * which the nodes can be added one by one. {@link #nearest(double, double, double)}
+ * searches the cells in rings around the cell of the query point and stops
+ * as soon as no cell in the next ring can contain a closer node. The grid
+ * has about one cell per node, the nodes of a cell are kept in a linked list
+ * of node indices.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class NearestNodeGrid {
+
+	private final double[] xs;
+	private final double[] ys;
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	// first node of every cell and the next node in the same cell, or -1
+	private final int[] heads;
+	private final int[] next;
+
+	/**
+	 * Creates an empty grid.
+	 * @param xs The x coordinates of all nodes that can be added.
+	 * @param ys The y coordinates of all nodes that can be added.
+	 */
+	NearestNodeGrid(double[] xs, double[] ys) {
+		this.xs = xs;
+		this.ys = ys;
+		int n = xs.length;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double lowX = Double.POSITIVE_INFINITY;
+		double lowY = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			lowX = Math.min(lowX, xs[i]);
+			lowY = Math.min(lowY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		if (n == 0) {
+			lowX = lowY = maxX = maxY = 0;
+		}
+		minX = lowX;
+		minY = lowY;
+		double side = Math.max(maxX - minX, maxY - minY);
+		int cellsPerSide = Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+		cellSize = side > 0 ? side / cellsPerSide : 1;
+		columns = (int) ((maxX - minX) / cellSize) + 1;
+		rows = (int) ((maxY - minY) / cellSize) + 1;
+		heads = new int[columns * rows];
+		Arrays.fill(heads, -1);
+		next = new int[n];
+	}
+
+	/**
+	 * @param node The index of the node to add, a node can only be added once.
+	 */
+	void add(int node) {
+		int cell = row(ys[node]) * columns + column(xs[node]);
+		next[node] = heads[cell];
+		heads[cell] = node;
+	}
+
+	/**
+	 * @param x The x coordinate of the query point.
+	 * @param y The y coordinate of the query point.
+	 * @param maxDistance Only nodes that are closer than this distance are
+	 *            considered.
+	 * @return The index of the added node that is closest to the query point,
+	 *         or <code>-1</code> if no node is closer than the maximum
+	 *         distance.
+	 */
+	int nearest(double x, double y, double maxDistance) {
+		int cx = column(x);
+		int cy = row(y);
+		int best = -1;
+		double bestDist = maxDistance * maxDistance;
+		int maxRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy, rows - 1 - cy));
+		for (int r = 0; r <= maxRing; r++) {
+			// the query point is at least r - 1 cells away from ring r
+			double bound = (r - 1) * cellSize;
+			if (r > 1 && bound * bound >= bestDist) {
+				break;
+			}
+			for (int j = cy - r; j <= cy + r; j++) {
+				if (j < 0 || j >= rows) {
+					continue;
+				}
+				boolean edge = j == cy - r || j == cy + r;
+				// inner rows only have the two outer cells of the ring
+				int step = edge ? 1 : Math.max(1, 2 * r);
+				for (int i = cx - r; i <= cx + r; i += step) {
+					if (i < 0 || i >= columns) {
+						continue;
+					}
+					for (int node = heads[j * columns + i]; node >= 0; node = next[node]) {
+						double dx = xs[node] - x;
+						double dy = ys[node] - y;
+						double dist = dx * dx + dy * dy;
+						if (dist < bestDist) {
+							bestDist = dist;
+							best = node;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	private int column(double x) {
+		return Math.min(columns - 1, Math.max(0, (int) ((x - minX) / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.min(rows - 1, Math.max(0, (int) ((y - minY) / cellSize)));
+	}
+}
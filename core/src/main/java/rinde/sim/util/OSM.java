@@ -6,9 +6,11 @@ package rinde.sim.util;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -21,6 +23,7 @@ import rinde.sim.core.graph.Connection;
 import rinde.sim.core.graph.Graph;
 import rinde.sim.core.graph.MultiAttributeEdgeData;
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.PointPool;
 import rinde.sim.core.graph.TableGraph;
 
 /**
@@ -31,6 +34,39 @@ public class OSM {
 
 	static HashSet<String> highwayNames = new HashSet<String>();
 
+	/**
+	 * The values of the <code>highway</code> tag of the ways that are roads.
+	 */
+	static final Set<String> HIGHWAY_TYPES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("motorway", "motorway_link", "trunk", "trunk_link", "primary", "primary_link", "motorway_junction", "secondary", "secondary_link", "tertiary", "road", "living_street", "residental", "residential", "residential;unclassified", "crossing", "ditch", "unclassified", "raceway", "path", "turning_circle", "track", "trunk_link", "trunk", "platform", "minor")));
+	// what about 'unclassified'?
+
+	/**
+	 * The values of the <code>junction</code> tag of the ways that are roads.
+	 */
+	static final Set<String> JUNCTION_TYPES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("roundabout")));
+
+	// MAGIC constant! Don't touch this without consulting either
+	// Rinde van Lon or Bartosz Michalik, preferably both :-)
+	private static final double SCALE = 1000000 / 1.425139046;
+
+	/**
+	 * @param lon The longitude in degrees.
+	 * @return The x coordinate of the longitude in the projection used for
+	 *         maps.
+	 */
+	static double projectX(double lon) {
+		return SCALE * lon;
+	}
+
+	/**
+	 * @param lat The latitude in degrees.
+	 * @return The y coordinate of the latitude in the projection used for
+	 *         maps.
+	 */
+	static double projectY(double lat) {
+		return SCALE * Math.toDegrees(1.0 / Math.sinh(Math.tan(Math.toRadians(lat))));
+	}
+
 	public static Graph<MultiAttributeEdgeData> parse(String filename) {
 		try {
 			InputSource inputSource = new InputSource(new FileInputStream(filename));
@@ -68,12 +104,15 @@ public class OSM {
 
 		protected Graph<MultiAttributeEdgeData> rs;
 		protected HashMap<String, Point> nodes;
+		// nodes with the same coordinates share one instance
+		protected PointPool pool;
 		protected WayParser current;
 
 		public OSMParser(Graph<MultiAttributeEdgeData> rs) {
 			super();
 			this.rs = rs;
 			nodes = new HashMap<String, Point>();
+			pool = new PointPool();
 		}
 
 		// the earth radius in meters
@@ -106,13 +145,8 @@ public class OSM {
 				// = (cos(latitude * pi/180) * 2 * pi * 6378137 meters) / (256 *
 				// 2^level pixels)
 
-				// MAGIC constant! Don't touch this without consulting either
-				// Rinde van Lon or Bartosz Michalik, preferably both :-)
-				double scale = 1000000 / 1.425139046;// Math.toDegrees(Math.cos(Math.toRadians(lat)
-														// * Math.PI /
-														// Math.toRadians(180)))
-														// * 2 * Math.PI *
-														// earthRadius / 1000;
+				// the MAGIC constant and the projection are in projectX and
+				// projectY
 
 				//
 
@@ -129,15 +163,8 @@ public class OSM {
 				// sinLattitude)) / (4 * Math.PI));
 
 				// MERCATOR:
-				double x = scale * lon; // Math.round(earthRadius *
-										// Math.cos(lat) * Math.sin(lon));
-				double y = scale * Math.toDegrees(1.0 / Math.sinh(Math.tan(Math.toRadians(lat))));// Math.log(Math.tan(.25
-																									// *
-																									// Math.PI
-																									// +
-																									// .5
-																									// *
-																									// gradeToRadian(lat)));
+				double x = projectX(lon);
+				double y = projectY(lat);
 
 				// check: http://www.movable-type.co.uk/scripts/latlong.html for
 				// a great explanation
@@ -169,7 +196,7 @@ public class OSM {
 				// Point(Double.parseDouble(converted[2]),
 				// -Double.parseDouble(converted[3])));
 
-				nodes.put(attributes.getValue("id"), new Point(x, y));
+				nodes.put(attributes.getValue("id"), pool.get(x, y));
 
 			} else if (localName.equals("way")) {
 				current = new WayParser(nodes);
@@ -191,11 +218,9 @@ public class OSM {
 
 	static class WayParser extends DefaultHandler {
 
-		protected final HashSet<String> highwayTypes = new HashSet<String>(
-				Arrays.asList("motorway", "motorway_link", "trunk", "trunk_link", "primary", "primary_link", "motorway_junction", "secondary", "secondary_link", "tertiary", "road", "living_street", "residental", "residential", "residential;unclassified", "crossing", "ditch", "unclassified", "raceway", "path", "turning_circle", "track", "trunk_link", "trunk", "platform", "minor"));
-		// what about 'unclassified'?
+		protected final HashSet<String> highwayTypes = new HashSet<String>(HIGHWAY_TYPES);
 
-		protected final HashSet<String> junctionTypes = new HashSet<String>(Arrays.asList("roundabout"));
+		protected final HashSet<String> junctionTypes = new HashSet<String>(JUNCTION_TYPES);
 
 		protected List<String> nodes;
 		protected double maxSpeed;
@@ -0,0 +1,40 @@
+package rinde.sim.util;
+
+/**
+ * Receives the nodes and ways that are read from an OpenStreetMap file. The
+ * readers reuse the arrays that are passed to
+ * {@link #way(long, long[], int, String[], String[], int)}, a handler must
+ * copy what it wants to keep.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+interface OsmHandler {
+
+	/**
+	 * @return <code>true</code> if the handler wants to receive the nodes.
+	 */
+	boolean wantsNodes();
+
+	/**
+	 * @return <code>true</code> if the handler wants to receive the ways.
+	 */
+	boolean wantsWays();
+
+	/**
+	 * @param id The id of the node.
+	 * @param lat The latitude in degrees.
+	 * @param lon The longitude in degrees.
+	 */
+	void node(long id, double lat, double lon);
+
+	/**
+	 * @param id The id of the way.
+	 * @param refs The ids of the nodes of the way, in order.
+	 * @param refCount The number of node ids in <code>refs</code>.
+	 * @param keys The keys of the tags of the way.
+	 * @param values The values of the tags of the way.
+	 * @param tagCount The number of tags in <code>keys</code> and
+	 *            <code>values</code>.
+	 */
+	void way(long id, long[] refs, int refCount, String[] keys, String[] values, int tagCount);
+}
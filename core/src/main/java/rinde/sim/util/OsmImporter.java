@@ -0,0 +1,276 @@
+package rinde.sim.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import rinde.sim.core.graph.CompactGraph;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.PointPool;
+
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.common.io.InputSupplier;
+
+/**
+ * Imports the road network of an OpenStreetMap file in the XML or the PBF
+ * format into a {@link CompactGraph}. The result is equal to the graph that
+ * is created by {@link OSM#parse(String)}, but the file is streamed twice
+ * instead of being loaded in memory:
+ * <ol>
+ * <li>The ways are read, ways that are not roads (see
+ * {@link OSM#HIGHWAY_TYPES} and {@link OSM#JUNCTION_TYPES}) are dropped
+ * immediately. The ids of the nodes of the roads are mapped to dense indices
+ * with a {@link LongIntMap}, a road is kept as an <code>int[]</code> slice of
+ * these indices.</li>
+ * <li>The nodes are read, only the coordinates of nodes that have an index
+ * are kept.</li>
+ * </ol>
+ * Finally the connections are added to a {@link CompactGraph.Builder}. The
+ * memory that is needed is proportional to the road network, not to the
+ * size of the file.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class OsmImporter {
+
+	private OsmImporter() {}
+
+	/**
+	 * Imports a file, files with the extension <code>.pbf</code> are read as
+	 * PBF, all other files as XML.
+	 * @param file The file.
+	 * @return The road network.
+	 * @throws IOException if the file cannot be read or is not a valid
+	 *             OpenStreetMap file.
+	 */
+	public static CompactGraph<MultiAttributeEdgeData> importFile(File file) throws IOException {
+		if (file.getName().toLowerCase().endsWith(".pbf")) {
+			return importPbf(Files.newInputStreamSupplier(file));
+		}
+		return importXml(Files.newInputStreamSupplier(file));
+	}
+
+	/**
+	 * @param input Supplies the XML, it is opened twice.
+	 * @return The road network.
+	 * @throws IOException if the input cannot be read or is not a valid
+	 *             OpenStreetMap XML file.
+	 */
+	public static CompactGraph<MultiAttributeEdgeData> importXml(InputSupplier<? extends InputStream> input)
+			throws IOException {
+		return importGraph(input, false);
+	}
+
+	/**
+	 * @param input Supplies the PBF, it is opened twice.
+	 * @return The road network.
+	 * @throws IOException if the input cannot be read or is not a valid
+	 *             OpenStreetMap PBF file.
+	 */
+	public static CompactGraph<MultiAttributeEdgeData> importPbf(InputSupplier<? extends InputStream> input)
+			throws IOException {
+		return importGraph(input, true);
+	}
+
+	private static CompactGraph<MultiAttributeEdgeData> importGraph(InputSupplier<? extends InputStream> input,
+			boolean pbf) throws IOException {
+		RoadCollector roads = new RoadCollector();
+		read(input, roads, pbf);
+		NodeCollector nodes = new NodeCollector(roads.ids);
+		read(input, nodes, pbf);
+		return roads.build(nodes);
+	}
+
+	private static void read(InputSupplier<? extends InputStream> input, OsmHandler handler, boolean pbf)
+			throws IOException {
+		InputStream in = input.getInput();
+		boolean threw = true;
+		try {
+			if (pbf) {
+				new OsmPbfReader(handler).read(in);
+			} else {
+				new OsmXmlReader(handler).read(in);
+			}
+			threw = false;
+		} finally {
+			Closeables.close(in, threw);
+		}
+	}
+
+	/**
+	 * Keeps the ways that are roads as slices of node indices.
+	 */
+	static class RoadCollector implements OsmHandler {
+		final LongIntMap ids;
+		int[] nodes;
+		int nodeCount;
+		// road i consists of nodes[starts[i]] ... nodes[starts[i + 1] - 1]
+		int[] starts;
+		double[] maxSpeeds;
+		final BitSet oneWay;
+		int roadCount;
+
+		RoadCollector() {
+			ids = new LongIntMap();
+			nodes = new int[1024];
+			starts = new int[65];
+			maxSpeeds = new double[64];
+			oneWay = new BitSet();
+		}
+
+		@Override
+		public boolean wantsNodes() {
+			return false;
+		}
+
+		@Override
+		public boolean wantsWays() {
+			return true;
+		}
+
+		@Override
+		public void node(long id, double lat, double lon) {}
+
+		@Override
+		public void way(long id, long[] refs, int refCount, String[] keys, String[] values, int tagCount) {
+			boolean isValidRoad = false;
+			boolean isOneWay = false;
+			double maxSpeed = Double.NaN;
+			// the same rules as OSM.WayParser
+			for (int i = 0; i < tagCount; i++) {
+				String k = keys[i];
+				String v = values[i];
+				if (k.equals("oneway") && v.equals("yes")) {
+					isOneWay = true;
+				} else if (k.equals("highway") && OSM.HIGHWAY_TYPES.contains(v)) {
+					isValidRoad = true;
+				} else if (k.equals("junction") && OSM.JUNCTION_TYPES.contains(v)) {
+					isValidRoad = true;
+				} else if (k.equals("maxspeed")) {
+					try {
+						maxSpeed = 1000.0 * Integer.parseInt(v.replaceAll("\\D", ""));
+					} catch (NumberFormatException nfe) {
+						// no max speed was defined
+					}
+				}
+			}
+			if (!isValidRoad || refCount < 2) {
+				return;
+			}
+			if (roadCount + 1 == maxSpeeds.length) {
+				maxSpeeds = Arrays.copyOf(maxSpeeds, maxSpeeds.length * 2);
+				starts = Arrays.copyOf(starts, maxSpeeds.length + 1);
+			}
+			if (nodeCount + refCount > nodes.length) {
+				nodes = Arrays.copyOf(nodes, Math.max(nodeCount + refCount, nodes.length * 2));
+			}
+			for (int i = 0; i < refCount; i++) {
+				nodes[nodeCount++] = ids.putIfAbsent(refs[i], ids.size());
+			}
+			maxSpeeds[roadCount] = maxSpeed;
+			oneWay.set(roadCount, isOneWay);
+			roadCount++;
+			starts[roadCount] = nodeCount;
+		}
+
+		CompactGraph<MultiAttributeEdgeData> build(NodeCollector coordinates) {
+			// nodes with the same coordinates are the same node
+			PointPool pool = new PointPool(ids.size());
+			Map<Point, Integer> distinct = new HashMap<Point, Integer>();
+			Point[] points = new Point[ids.size()];
+			int[] canonical = new int[ids.size()];
+			for (int i = 0; i < points.length; i++) {
+				if (Double.isNaN(coordinates.xs[i])) {
+					// a road refers to a node that is not in the file
+					canonical[i] = -1;
+				} else {
+					points[i] = pool.get(coordinates.xs[i], coordinates.ys[i]);
+					Integer c = distinct.get(points[i]);
+					if (c == null) {
+						c = i;
+						distinct.put(points[i], c);
+					}
+					canonical[i] = c;
+				}
+			}
+			// the first road that connects two nodes determines the data
+			LongIntMap connections = new LongIntMap(nodeCount);
+			CompactGraph.Builder<MultiAttributeEdgeData> builder = new CompactGraph.Builder<MultiAttributeEdgeData>(
+					CompactGraph.MULTI_ATTRIBUTE_DATA);
+			for (int r = 0; r < roadCount; r++) {
+				for (int i = starts[r] + 1; i < starts[r + 1]; i++) {
+					int from = canonical[nodes[i - 1]];
+					int to = canonical[nodes[i]];
+					if (from < 0 || to < 0 || from == to) {
+						continue;
+					}
+					double length = Point.distance(points[from], points[to]);
+					if (addConnection(connections, from, to)) {
+						builder.addConnection(points[from], points[to], new MultiAttributeEdgeData(length, maxSpeeds[r]));
+					}
+					if (!oneWay.get(r) && addConnection(connections, to, from)) {
+						builder.addConnection(points[to], points[from], new MultiAttributeEdgeData(length, maxSpeeds[r]));
+					}
+				}
+			}
+			return builder.build();
+		}
+
+		/**
+		 * @return <code>false</code> if the connection was already added.
+		 */
+		private static boolean addConnection(LongIntMap connections, int from, int to) {
+			long key = (long) from << 32 | to;
+			if (connections.containsKey(key)) {
+				return false;
+			}
+			connections.put(key, 0);
+			return true;
+		}
+	}
+
+	/**
+	 * Keeps the projected coordinates of the nodes of the roads.
+	 */
+	static class NodeCollector implements OsmHandler {
+		final LongIntMap ids;
+		final double[] xs;
+		final double[] ys;
+
+		NodeCollector(LongIntMap ids) {
+			this.ids = ids;
+			xs = new double[ids.size()];
+			ys = new double[ids.size()];
+			Arrays.fill(xs, Double.NaN);
+			Arrays.fill(ys, Double.NaN);
+		}
+
+		@Override
+		public boolean wantsNodes() {
+			return true;
+		}
+
+		@Override
+		public boolean wantsWays() {
+			return false;
+		}
+
+		@Override
+		public void node(long id, double lat, double lon) {
+			int i = ids.get(id, -1);
+			if (i >= 0) {
+				xs[i] = OSM.projectX(lon);
+				ys[i] = OSM.projectY(lat);
+			}
+		}
+
+		@Override
+		public void way(long id, long[] refs, int refCount, String[] keys, String[] values, int tagCount) {}
+	}
+}
@@ -0,0 +1,409 @@
+package rinde.sim.util;
+
+import static rinde.sim.util.ProtobufReader.fieldNumber;
+import static rinde.sim.util.ProtobufReader.wireType;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streams the nodes and ways of an OpenStreetMap PBF file to an
+ * {@link OsmHandler}. A PBF file is a sequence of blobs that each contain a
+ * block of at most a few thousand entities, only one block is decoded at a
+ * time. The protocol buffers messages are decoded by hand (see
+ * {@link ProtobufReader}), only uncompressed and zlib compressed blobs are
+ * supported. The decoding buffers are reused for all blocks.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ * @see <a href="http://wiki.openstreetmap.org/wiki/PBF_Format">PBF
+ *      Format</a>
+ */
+final class OsmPbfReader {
+
+	// limits of the specification
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+	private static final Set<String> SUPPORTED_FEATURES = new HashSet<String>(Arrays.asList("OsmSchema-V0.6", "DenseNodes"));
+
+	// BlobHeader
+	private static final int HEADER_TYPE = 1;
+	private static final int HEADER_DATASIZE = 3;
+	// Blob
+	private static final int BLOB_RAW = 1;
+	private static final int BLOB_RAW_SIZE = 2;
+	private static final int BLOB_ZLIB_DATA = 3;
+	// HeaderBlock
+	private static final int HEADER_REQUIRED_FEATURES = 4;
+	// PrimitiveBlock
+	private static final int BLOCK_STRINGTABLE = 1;
+	private static final int BLOCK_GROUP = 2;
+	private static final int BLOCK_GRANULARITY = 17;
+	private static final int BLOCK_LAT_OFFSET = 19;
+	private static final int BLOCK_LON_OFFSET = 20;
+	private static final int STRINGTABLE_S = 1;
+	// PrimitiveGroup
+	private static final int GROUP_NODES = 1;
+	private static final int GROUP_DENSE = 2;
+	private static final int GROUP_WAYS = 3;
+	// Node and DenseNodes
+	private static final int NODE_ID = 1;
+	private static final int NODE_LAT = 8;
+	private static final int NODE_LON = 9;
+	// Way
+	private static final int WAY_ID = 1;
+	private static final int WAY_KEYS = 2;
+	private static final int WAY_VALS = 3;
+	private static final int WAY_REFS = 8;
+
+	private static final int DEFAULT_GRANULARITY = 100;
+	private static final double NANO = .000000001;
+
+	private final OsmHandler handler;
+	private final Inflater inflater;
+	private byte[] blob;
+	private byte[] data;
+	private String[] strings;
+	private final List<ProtobufReader> groups;
+	private long[] refs;
+	private int[] keyIndices;
+	private int[] valueIndices;
+	private String[] keys;
+	private String[] values;
+
+	OsmPbfReader(OsmHandler handler) {
+		this.handler = handler;
+		inflater = new Inflater();
+		blob = new byte[0];
+		data = new byte[0];
+		strings = new String[0];
+		groups = new ArrayList<ProtobufReader>();
+		refs = new long[64];
+		keyIndices = new int[8];
+		valueIndices = new int[8];
+		keys = new String[8];
+		values = new String[8];
+	}
+
+	/**
+	 * Reads the complete stream, the stream is not closed.
+	 * @param in The stream.
+	 * @throws IOException if the stream cannot be read or is not a valid PBF
+	 *             file.
+	 */
+	void read(InputStream in) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+		try {
+			while (true) {
+				int first = input.read();
+				if (first < 0) {
+					return;
+				}
+				int headerSize = first << 24 | input.readUnsignedByte() << 16 | input.readUnsignedShort();
+				if (headerSize > MAX_HEADER_SIZE) {
+					throw new IOException("invalid blob header size " + headerSize);
+				}
+				byte[] header = new byte[headerSize];
+				input.readFully(header);
+				String type = null;
+				int dataSize = -1;
+				ProtobufReader r = new ProtobufReader(header, 0, headerSize);
+				while (r.hasMore()) {
+					int key = r.readKey();
+					if (fieldNumber(key) == HEADER_TYPE) {
+						type = r.readString();
+					} else if (fieldNumber(key) == HEADER_DATASIZE) {
+						dataSize = r.readVarint32();
+					} else {
+						r.skip(key);
+					}
+				}
+				if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+					throw new IOException("invalid blob header");
+				}
+				if (blob.length < dataSize) {
+					blob = new byte[dataSize];
+				}
+				input.readFully(blob, 0, dataSize);
+				if (type.equals("OSMHeader")) {
+					readHeader(decode(dataSize));
+				} else if (type.equals("OSMData")) {
+					readBlock(decode(dataSize));
+				}
+				// other types of blobs must be skipped
+			}
+		} catch (EOFException e) {
+			throw new IOException("unexpected end of the PBF stream", e);
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	/**
+	 * @return A reader of the content of the blob in {@link #blob}.
+	 */
+	private ProtobufReader decode(int blobSize) throws IOException {
+		ProtobufReader r = new ProtobufReader(blob, 0, blobSize);
+		byte[] raw = null;
+		byte[] zlib = null;
+		int rawSize = -1;
+		while (r.hasMore()) {
+			int key = r.readKey();
+			switch (fieldNumber(key)) {
+			case BLOB_RAW:
+				raw = r.readBytes();
+				break;
+			case BLOB_RAW_SIZE:
+				rawSize = r.readVarint32();
+				break;
+			case BLOB_ZLIB_DATA:
+				zlib = r.readBytes();
+				break;
+			default:
+				if (wireType(key) == ProtobufReader.LENGTH_DELIMITED) {
+					throw new IOException("unsupported compression of blob (field " + fieldNumber(key) + ")");
+				}
+				r.skip(key);
+			}
+		}
+		if (raw != null) {
+			return new ProtobufReader(raw, 0, raw.length);
+		}
+		if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+			throw new IOException("invalid blob");
+		}
+		if (data.length < rawSize) {
+			data = new byte[rawSize];
+		}
+		inflater.reset();
+		inflater.setInput(zlib);
+		int n = 0;
+		try {
+			while (n < rawSize && !inflater.finished()) {
+				int k = inflater.inflate(data, n, rawSize - n);
+				if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				n += k;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("invalid zlib data in blob", e);
+		}
+		if (n != rawSize) {
+			throw new IOException("zlib data of blob does not have the declared size " + rawSize);
+		}
+		return new ProtobufReader(data, 0, rawSize);
+	}
+
+	private void readHeader(ProtobufReader block) throws IOException {
+		while (block.hasMore()) {
+			int key = block.readKey();
+			if (fieldNumber(key) == HEADER_REQUIRED_FEATURES) {
+				String feature = block.readString();
+				if (!SUPPORTED_FEATURES.contains(feature)) {
+					throw new IOException("unsupported required feature: " + feature);
+				}
+			} else {
+				block.skip(key);
+			}
+		}
+	}
+
+	private void readBlock(ProtobufReader block) throws IOException {
+		groups.clear();
+		int stringCount = 0;
+		long granularity = DEFAULT_GRANULARITY;
+		long latOffset = 0;
+		long lonOffset = 0;
+		// the groups can precede the fields that are needed to decode them
+		while (block.hasMore()) {
+			int key = block.readKey();
+			switch (fieldNumber(key)) {
+			case BLOCK_STRINGTABLE:
+				if (handler.wantsWays()) {
+					stringCount = readStrings(block.readMessage());
+				} else {
+					block.skip(key);
+				}
+				break;
+			case BLOCK_GROUP:
+				groups.add(block.readMessage());
+				break;
+			case BLOCK_GRANULARITY:
+				granularity = block.readVarint();
+				break;
+			case BLOCK_LAT_OFFSET:
+				latOffset = block.readVarint();
+				break;
+			case BLOCK_LON_OFFSET:
+				lonOffset = block.readVarint();
+				break;
+			default:
+				block.skip(key);
+			}
+		}
+		for (ProtobufReader group : groups) {
+			while (group.hasMore()) {
+				int key = group.readKey();
+				int field = fieldNumber(key);
+				if (field == GROUP_NODES && handler.wantsNodes()) {
+					readNode(group.readMessage(), granularity, latOffset, lonOffset);
+				} else if (field == GROUP_DENSE && handler.wantsNodes()) {
+					readDenseNodes(group.readMessage(), granularity, latOffset, lonOffset);
+				} else if (field == GROUP_WAYS && handler.wantsWays()) {
+					readWay(group.readMessage(), stringCount);
+				} else {
+					group.skip(key);
+				}
+			}
+		}
+		groups.clear();
+	}
+
+	private int readStrings(ProtobufReader table) throws IOException {
+		int n = 0;
+		while (table.hasMore()) {
+			int key = table.readKey();
+			if (fieldNumber(key) == STRINGTABLE_S) {
+				if (n == strings.length) {
+					strings = Arrays.copyOf(strings, Math.max(64, n * 2));
+				}
+				strings[n++] = table.readString();
+			} else {
+				table.skip(key);
+			}
+		}
+		return n;
+	}
+
+	private void readNode(ProtobufReader node, long granularity, long latOffset, long lonOffset) throws IOException {
+		long id = 0;
+		long lat = 0;
+		long lon = 0;
+		while (node.hasMore()) {
+			int key = node.readKey();
+			switch (fieldNumber(key)) {
+			case NODE_ID:
+				id = node.readSignedVarint();
+				break;
+			case NODE_LAT:
+				lat = node.readSignedVarint();
+				break;
+			case NODE_LON:
+				lon = node.readSignedVarint();
+				break;
+			default:
+				node.skip(key);
+			}
+		}
+		handler.node(id, NANO * (latOffset + granularity * lat), NANO * (lonOffset + granularity * lon));
+	}
+
+	private void readDenseNodes(ProtobufReader dense, long granularity, long latOffset, long lonOffset) throws IOException {
+		ProtobufReader ids = null;
+		ProtobufReader lats = null;
+		ProtobufReader lons = null;
+		while (dense.hasMore()) {
+			int key = dense.readKey();
+			switch (fieldNumber(key)) {
+			case NODE_ID:
+				ids = dense.readRepeated(key);
+				break;
+			case NODE_LAT:
+				lats = dense.readRepeated(key);
+				break;
+			case NODE_LON:
+				lons = dense.readRepeated(key);
+				break;
+			default:
+				dense.skip(key);
+			}
+		}
+		if (ids == null) {
+			return;
+		}
+		if (lats == null || lons == null) {
+			throw new IOException("dense nodes without coordinates");
+		}
+		long id = 0;
+		long lat = 0;
+		long lon = 0;
+		while (ids.hasMore()) {
+			// delta coded
+			id += ids.readSignedVarint();
+			lat += lats.readSignedVarint();
+			lon += lons.readSignedVarint();
+			handler.node(id, NANO * (latOffset + granularity * lat), NANO * (lonOffset + granularity * lon));
+		}
+	}
+
+	private void readWay(ProtobufReader way, int stringCount) throws IOException {
+		long id = 0;
+		int keyCount = 0;
+		int valueCount = 0;
+		int refCount = 0;
+		long ref = 0;
+		while (way.hasMore()) {
+			int key = way.readKey();
+			switch (fieldNumber(key)) {
+			case WAY_ID:
+				id = way.readVarint();
+				break;
+			case WAY_KEYS:
+				for (ProtobufReader r = way.readRepeated(key); r.hasMore();) {
+					if (keyCount == keyIndices.length) {
+						keyIndices = Arrays.copyOf(keyIndices, keyCount * 2);
+					}
+					keyIndices[keyCount++] = r.readVarint32();
+				}
+				break;
+			case WAY_VALS:
+				for (ProtobufReader r = way.readRepeated(key); r.hasMore();) {
+					if (valueCount == valueIndices.length) {
+						valueIndices = Arrays.copyOf(valueIndices, valueCount * 2);
+					}
+					valueIndices[valueCount++] = r.readVarint32();
+				}
+				break;
+			case WAY_REFS:
+				for (ProtobufReader r = way.readRepeated(key); r.hasMore();) {
+					if (refCount == refs.length) {
+						refs = Arrays.copyOf(refs, refCount * 2);
+					}
+					// delta coded
+					ref += r.readSignedVarint();
+					refs[refCount++] = ref;
+				}
+				break;
+			default:
+				way.skip(key);
+			}
+		}
+		if (keyCount != valueCount) {
+			throw new IOException("way " + id + " has " + keyCount + " keys and " + valueCount + " values");
+		}
+		if (keys.length < keyCount) {
+			keys = new String[keyIndices.length];
+			values = new String[keyIndices.length];
+		}
+		for (int i = 0; i < keyCount; i++) {
+			if (keyIndices[i] < 0 || keyIndices[i] >= stringCount || valueIndices[i] < 0
+					|| valueIndices[i] >= stringCount) {
+				throw new IOException("tag of way " + id + " refers to a string that is not in the string table");
+			}
+			keys[i] = strings[keyIndices[i]];
+			values[i] = strings[valueIndices[i]];
+		}
+		handler.way(id, refs, refCount, keys, values, keyCount);
+	}
+}
@@ -0,0 +1,94 @@
+package rinde.sim.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Streams the nodes and ways of an OpenStreetMap XML file to an
+ * {@link OsmHandler}. The ids are parsed to <code>long</code>s and the node
+ * ids and tags of a way are collected in arrays that are reused for all ways.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class OsmXmlReader extends DefaultHandler {
+
+	private final OsmHandler handler;
+	private boolean inWay;
+	private long wayId;
+	private long[] refs;
+	private int refCount;
+	private String[] keys;
+	private String[] values;
+	private int tagCount;
+
+	OsmXmlReader(OsmHandler handler) {
+		this.handler = handler;
+		refs = new long[64];
+		keys = new String[8];
+		values = new String[8];
+	}
+
+	/**
+	 * Reads the complete stream, the stream is not closed.
+	 * @param in The stream.
+	 * @throws IOException if the stream cannot be read or is not a valid OSM
+	 *             XML file.
+	 */
+	void read(InputStream in) throws IOException {
+		try {
+			XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+			xmlReader.setContentHandler(this);
+			xmlReader.setErrorHandler(this);
+			xmlReader.parse(new InputSource(in));
+		} catch (SAXException e) {
+			throw new IOException("invalid OSM XML: " + e.getMessage(), e);
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid number in OSM XML: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void startElement(String namespaceURI, String localName, String qualifiedName, Attributes attributes) {
+		if (localName.equals("node")) {
+			if (handler.wantsNodes()) {
+				handler.node(Long.parseLong(attributes.getValue("id")), Double.parseDouble(attributes.getValue("lat")), Double.parseDouble(attributes.getValue("lon")));
+			}
+		} else if (localName.equals("way")) {
+			if (handler.wantsWays()) {
+				inWay = true;
+				wayId = Long.parseLong(attributes.getValue("id"));
+				refCount = 0;
+				tagCount = 0;
+			}
+		} else if (inWay && localName.equals("nd")) {
+			if (refCount == refs.length) {
+				refs = Arrays.copyOf(refs, refCount * 2);
+			}
+			refs[refCount++] = Long.parseLong(attributes.getValue("ref"));
+		} else if (inWay && localName.equals("tag")) {
+			if (tagCount == keys.length) {
+				keys = Arrays.copyOf(keys, tagCount * 2);
+				values = Arrays.copyOf(values, tagCount * 2);
+			}
+			keys[tagCount] = attributes.getValue("k");
+			values[tagCount] = attributes.getValue("v");
+			tagCount++;
+		}
+	}
+
+	@Override
+	public void endElement(String namespaceURI, String localName, String qualifiedName) {
+		if (inWay && localName.equals("way")) {
+			inWay = false;
+			handler.way(wayId, refs, refCount, keys, values, tagCount);
+		}
+	}
+}
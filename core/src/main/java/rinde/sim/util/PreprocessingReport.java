@@ -0,0 +1,86 @@
+package rinde.sim.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Records what a preprocessing step of {@link MapPreprocessor} did and how
+ * long each of its stages took. A report can be passed to several steps, the
+ * durations of stages with the same name are added.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class PreprocessingReport {
+
+	private final Map<String, Long> durations;
+	private int components;
+	private int removedNodes;
+	private int addedConnections;
+
+	public PreprocessingReport() {
+		durations = new LinkedHashMap<String, Long>();
+	}
+
+	/**
+	 * Ends a stage.
+	 * @param name The name of the stage.
+	 * @param start The value of {@link System#nanoTime()} at the start of the
+	 *            stage.
+	 * @return The value of {@link System#nanoTime()} at the end of the stage,
+	 *         which is the start of the next stage.
+	 */
+	long stage(String name, long start) {
+		long end = System.nanoTime();
+		Long previous = durations.get(name);
+		durations.put(name, (previous == null ? 0 : previous) + end - start);
+		return end;
+	}
+
+	void setComponents(int count) {
+		components = count;
+	}
+
+	void addRemovedNodes(int count) {
+		removedNodes += count;
+	}
+
+	void addAddedConnections(int count) {
+		addedConnections += count;
+	}
+
+	/**
+	 * @return The durations of the stages in nanoseconds, in the order in
+	 *         which the stages were executed.
+	 */
+	public Map<String, Long> getStageDurations() {
+		return Collections.unmodifiableMap(durations);
+	}
+
+	/**
+	 * @return The number of strongly connected components that were found.
+	 */
+	public int getComponents() {
+		return components;
+	}
+
+	public int getRemovedNodes() {
+		return removedNodes;
+	}
+
+	public int getAddedConnections() {
+		return addedConnections;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("components: ").append(components).append(", removed nodes: ").append(removedNodes)
+				.append(", added connections: ").append(addedConnections);
+		for (Entry<String, Long> e : durations.entrySet()) {
+			sb.append("\n").append(e.getKey()).append(" took: ").append(e.getValue() / 1000000).append(" ms");
+		}
+		return sb.toString();
+	}
+}
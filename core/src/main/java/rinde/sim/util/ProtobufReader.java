@@ -0,0 +1,163 @@
+package rinde.sim.util;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the fields of a protocol buffers message from a byte array. Only the
+ * wire format is implemented: the caller knows the meaning of the fields. A
+ * nested message or a packed repeated field is read with a new reader on the
+ * same array, no bytes are copied.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+final class ProtobufReader {
+
+	static final int VARINT = 0;
+	static final int FIXED64 = 1;
+	static final int LENGTH_DELIMITED = 2;
+	static final int FIXED32 = 5;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final byte[] buffer;
+	private final int limit;
+	private int pos;
+
+	ProtobufReader(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		pos = offset;
+		limit = offset + length;
+	}
+
+	boolean hasMore() {
+		return pos < limit;
+	}
+
+	/**
+	 * @return The key of the next field, use {@link #fieldNumber(int)} and
+	 *         {@link #wireType(int)} to decode it.
+	 * @throws IOException if the key is invalid.
+	 */
+	int readKey() throws IOException {
+		int key = readVarint32();
+		if (fieldNumber(key) == 0) {
+			throw new IOException("invalid field number 0");
+		}
+		return key;
+	}
+
+	static int fieldNumber(int key) {
+		return key >>> 3;
+	}
+
+	static int wireType(int key) {
+		return key & 7;
+	}
+
+	long readVarint() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (pos >= limit) {
+				throw new IOException("truncated varint");
+			}
+			byte b = buffer[pos++];
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	int readVarint32() throws IOException {
+		return (int) readVarint();
+	}
+
+	long readSignedVarint() throws IOException {
+		long v = readVarint();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * @return A reader of the next length delimited field, this reader
+	 *         continues after the field.
+	 * @throws IOException if the field exceeds the message.
+	 */
+	ProtobufReader readMessage() throws IOException {
+		int length = readLength();
+		ProtobufReader reader = new ProtobufReader(buffer, pos, length);
+		pos += length;
+		return reader;
+	}
+
+	/**
+	 * Reads a repeated field that can be packed or not packed.
+	 * @param key The key of the field.
+	 * @return A reader of all values of a packed field or a reader of the
+	 *         single value of a field that is not packed.
+	 * @throws IOException if the field is malformed.
+	 */
+	ProtobufReader readRepeated(int key) throws IOException {
+		if (wireType(key) == LENGTH_DELIMITED) {
+			return readMessage();
+		}
+		int start = pos;
+		skip(key);
+		return new ProtobufReader(buffer, start, pos - start);
+	}
+
+	String readString() throws IOException {
+		int length = readLength();
+		String s = new String(buffer, pos, length, UTF8);
+		pos += length;
+		return s;
+	}
+
+	byte[] readBytes() throws IOException {
+		int length = readLength();
+		byte[] bytes = new byte[length];
+		System.arraycopy(buffer, pos, bytes, 0, length);
+		pos += length;
+		return bytes;
+	}
+
+	/**
+	 * Skips the value of a field that is not needed.
+	 * @param key The key of the field.
+	 * @throws IOException if the wire type is not supported.
+	 */
+	void skip(int key) throws IOException {
+		switch (wireType(key)) {
+		case VARINT:
+			readVarint();
+			break;
+		case FIXED64:
+			advance(8);
+			break;
+		case LENGTH_DELIMITED:
+			advance(readLength());
+			break;
+		case FIXED32:
+			advance(4);
+			break;
+		default:
+			throw new IOException("unsupported wire type " + wireType(key) + " of field " + fieldNumber(key));
+		}
+	}
+
+	private int readLength() throws IOException {
+		int length = readVarint32();
+		if (length < 0 || length > limit - pos) {
+			throw new IOException("length delimited field exceeds the message");
+		}
+		return length;
+	}
+
+	private void advance(int n) throws IOException {
+		if (n > limit - pos) {
+			throw new IOException("field exceeds the message");
+		}
+		pos += n;
+	}
+}
@@ -0,0 +1,35 @@
+package rinde.sim.util;
+
+import org.apache.commons.math.random.RandomGenerator;
+
+/**
+ * Derives independent random streams from a single seed. The stream with a
+ * certain id only depends on the seed and the id, not on which other streams
+ * were created or in which order they are used. This keeps simulations in
+ * which every agent draws from its own stream reproducible, regardless of the
+ * order (or the thread) in which the agents are executed.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class RandomStreams {
+
+	private final long seed;
+
+	public RandomStreams(long seed) {
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Creates the generator of a stream. Calling this method twice with the
+	 * same id gives two generators that produce the same sequence.
+	 * @param id The id of the stream.
+	 * @return A new generator for the stream.
+	 */
+	public RandomGenerator get(long id) {
+		return new XoroshiroRandomGenerator(XoroshiroRandomGenerator.mix(seed ^ XoroshiroRandomGenerator.mix(id)));
+	}
+}
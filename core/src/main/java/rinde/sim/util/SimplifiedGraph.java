@@ -0,0 +1,72 @@
+package rinde.sim.util;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.List;
+
+import rinde.sim.core.graph.EdgeData;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.Point;
+
+import com.google.common.collect.Table;
+
+/**
+ * The result of {@link MapPreprocessor#contractChains(Graph, EdgeData, PreprocessingReport)}:
+ * the simplified graph and, for every connection that replaces a chain of
+ * nodes, the nodes of the original chain. The chains can be used to draw the
+ * simplified graph with the shape of the original roads.
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public final class SimplifiedGraph<E extends EdgeData> {
+
+	private final Graph<E> graph;
+	private final Table<Point, Point, List<Point>> chains;
+
+	SimplifiedGraph(Graph<E> graph, Table<Point, Point, List<Point>> chains) {
+		this.graph = graph;
+		this.chains = chains;
+	}
+
+	/**
+	 * @return The simplified graph.
+	 */
+	public Graph<E> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @param from The start node of a connection of the simplified graph.
+	 * @param to The end node of the connection.
+	 * @return <code>true</code> if the connection replaces a chain of nodes.
+	 */
+	public boolean isContracted(Point from, Point to) {
+		return chains.contains(from, to);
+	}
+
+	/**
+	 * @return The number of connections that replace a chain of nodes.
+	 */
+	public int getNumberOfContractedConnections() {
+		return chains.size();
+	}
+
+	/**
+	 * @param from The start node of a connection of the simplified graph.
+	 * @param to The end node of the connection.
+	 * @return The nodes of the original graph that the connection passes, in
+	 *         order and including <code>from</code> and <code>to</code>.
+	 * @throws IllegalArgumentException if the connection does not exist.
+	 */
+	public List<Point> getGeometry(Point from, Point to) {
+		List<Point> chain = chains.get(from, to);
+		if (chain != null) {
+			return chain;
+		}
+		if (!graph.hasConnection(from, to)) {
+			throw new IllegalArgumentException(from + " -> " + to + " is not a connection.");
+		}
+		return unmodifiableList(asList(from, to));
+	}
+}
@@ -0,0 +1,98 @@
+package rinde.sim.util;
+
+import org.apache.commons.math.random.BitsStreamGenerator;
+
+/**
+ * Small and fast random generator (xoroshiro128**, Blackman and Vigna) with a
+ * period of 2<sup>128</sup>-1. Seeds are expanded with SplitMix64 so that
+ * similar seeds give unrelated sequences. The generator is not thread-safe,
+ * use one instance per thread or agent (see {@link RandomStreams}).
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ * @since 2.1
+ */
+public class XoroshiroRandomGenerator extends BitsStreamGenerator {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final long[] JUMP = { 0xdf900294d8f554a5L, 0x170865df4b3201fcL };
+
+	private long s0;
+	private long s1;
+
+	public XoroshiroRandomGenerator(long seed) {
+		setSeed(seed);
+	}
+
+	@Override
+	public void setSeed(int seed) {
+		setSeed((long) seed);
+	}
+
+	@Override
+	public void setSeed(int[] seed) {
+		long s = 0;
+		for (int i : seed) {
+			s = mix(s + GOLDEN_GAMMA + (i & 0xFFFFFFFFL));
+		}
+		setSeed(s);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		s0 = mix(seed + GOLDEN_GAMMA);
+		s1 = mix(seed + 2 * GOLDEN_GAMMA);
+		if (s0 == 0 && s1 == 0) {
+			s1 = GOLDEN_GAMMA;
+		}
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		final long a = s0;
+		long b = s1;
+		final long result = Long.rotateLeft(a * 5, 7) * 9;
+		b ^= a;
+		s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+		s1 = Long.rotateLeft(b, 37);
+		return result;
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Advances the generator 2<sup>64</sup> steps, this can be used to create
+	 * up to 2<sup>64</sup> non-overlapping subsequences from the same seed.
+	 */
+	public void jump() {
+		long j0 = 0;
+		long j1 = 0;
+		for (long jump : JUMP) {
+			for (int b = 0; b < 64; b++) {
+				if ((jump & (1L << b)) != 0) {
+					j0 ^= s0;
+					j1 ^= s1;
+				}
+				nextLong();
+			}
+		}
+		s0 = j0;
+		s1 = j1;
+	}
+
+	/**
+	 * The SplitMix64 finalizer, a bijective function that scrambles the bits
+	 * of its input.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
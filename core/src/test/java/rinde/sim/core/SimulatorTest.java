@@ -3,13 +3,26 @@
  */
 package rinde.sim.core;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
 import org.junit.Before;
 import org.junit.Test;
 
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.MultimapGraph;
+import rinde.sim.core.model.RoadModel;
+
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
  * 
@@ -47,6 +60,192 @@ public class SimulatorTest {
 
 	}
 
+	@Test
+	public void testParallelTicks() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		simulator.setTickExecutor(executor);
+		try {
+			final List<String> log = new ArrayList<String>();
+			final List<IndependentTickListenerImpl> independent = new ArrayList<IndependentTickListenerImpl>();
+			for (int i = 0; i < 100; i++) {
+				IndependentTickListenerImpl l = new IndependentTickListenerImpl();
+				independent.add(l);
+				simulator.addTickListener(l);
+			}
+			// a dependent listener separates the independent listeners
+			simulator.addTickListener(new TickListenerImpl() {
+				@Override
+				public void tick(long currentTime, long timeStep) {
+					for (IndependentTickListenerImpl l : independent) {
+						assertEquals(currentTime / 100 + 1, l.getTickCount());
+					}
+					log.add("dependent");
+				}
+			});
+			IndependentTickListenerImpl last = new IndependentTickListenerImpl();
+			simulator.addTickListener(last);
+
+			simulator.tick();
+			simulator.tick();
+			for (IndependentTickListenerImpl l : independent) {
+				assertEquals(2, l.getTickCount());
+				assertTrue(l.getExecTime() < l.getAfterExecTime());
+			}
+			assertEquals(2, last.getTickCount());
+			assertEquals(2, log.size());
+
+			simulator.removeTickListener(last);
+			simulator.tick();
+			assertEquals(2, last.getTickCount());
+			assertEquals(3, independent.get(0).getTickCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testParallelTickException() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		simulator.setTickExecutor(executor);
+		try {
+			simulator.addTickListener(new IndependentTickListenerImpl());
+			simulator.addTickListener(new IndependentTickListenerImpl() {
+				@Override
+				public void tick(long currentTime, long timeStep) {
+					throw new IllegalStateException();
+				}
+			});
+			simulator.tick();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRandomStreams() {
+		simulator.configure();
+		Object a = new Object();
+		Object b = new Object();
+		simulator.register(a);
+		simulator.register(b);
+		RandomGenerator ra = simulator.getRandomGenerator(a);
+		assertSame(ra, simulator.getRandomGenerator(a));
+		double[] expected = { ra.nextDouble(), simulator.getRandomGenerator(b).nextDouble() };
+
+		// the stream of an object only depends on its registration order
+		Simulator other = new Simulator(new MersenneTwister(123), 100L);
+		other.configure();
+		Object c = new Object();
+		Object d = new Object();
+		other.register(c);
+		other.register(d);
+		assertEquals(expected[1], other.getRandomGenerator(d).nextDouble(), 0);
+		assertEquals(expected[0], other.getRandomGenerator(c).nextDouble(), 0);
+	}
+
+	@Test
+	public void testRandomStreamsIndependentOfMainGenerator() {
+		simulator.configure();
+		Object a = new Object();
+		simulator.register(a);
+		double expected = simulator.getRandomGenerator(a).nextDouble();
+
+		// using the main generator before the first stream is requested
+		Simulator other = new Simulator(new MersenneTwister(123), 100L);
+		other.configure();
+		Object b = new Object();
+		other.register(b);
+		other.getRandomGenerator().nextLong();
+		assertEquals(expected, other.getRandomGenerator(b).nextDouble(), 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRandomStreamBeforeConfigure() {
+		RoadModel model = new RoadModel(new MultimapGraph<MultiAttributeEdgeData>());
+		simulator.register(model);
+		simulator.getRandomGenerator(model);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRandomStreamUnregistered() {
+		simulator.getRandomGenerator(new Object());
+	}
+
+	@Test
+	public void testEventDriven() {
+		simulator.setEventDriven(true);
+		simulator.configure();
+		final List<String> log = new ArrayList<String>();
+		WakeUpListenerImpl a = new WakeUpListenerImpl("a", log);
+		WakeUpListenerImpl b = new WakeUpListenerImpl("b", log);
+		simulator.register(a);
+		simulator.register(b);
+		simulator.scheduleWakeUp(b, 5000);
+		simulator.scheduleWakeUp(a, 5000);
+		simulator.scheduleWakeUp(a, 250);
+
+		assertTrue(simulator.step());
+		assertEquals(250, simulator.getCurrentTime());
+		assertTrue(simulator.step());
+		assertEquals(5000, simulator.getCurrentTime());
+		// same time: registration order
+		assertEquals(asList("a@250", "a@5000", "b@5000"), log);
+		assertFalse(simulator.step());
+
+		simulator.scheduleWakeUp(a, 6000);
+		simulator.unregister(a);
+		assertFalse(simulator.step());
+	}
+
+	@Test
+	public void testEventDrivenWithTickListeners() {
+		simulator.setEventDriven(true);
+		final List<String> log = new ArrayList<String>();
+		WakeUpListenerImpl a = new WakeUpListenerImpl("a", log);
+		simulator.scheduleWakeUp(a, 250);
+		simulator.scheduleWakeUp(a, 200);
+		simulator.addTickListener(new TickListenerImpl() {
+			@Override
+			public void tick(long currentTime, long timeStep) {
+				log.add("tick@" + currentTime);
+			}
+		});
+		for (int i = 0; i < 5; i++) {
+			simulator.step();
+		}
+		assertEquals(asList("tick@0", "tick@100", "a@200", "tick@200", "a@250", "tick@300"), log);
+		assertEquals(400, simulator.getCurrentTime());
+	}
+
+	@Test
+	public void testWakeUpsInFixedStepMode() {
+		final List<String> log = new ArrayList<String>();
+		simulator.scheduleWakeUp(new WakeUpListenerImpl("a", log), 150);
+		simulator.tick();
+		simulator.tick();
+		assertTrue(log.isEmpty());
+		simulator.tick();
+		assertEquals(asList("a@200"), log);
+		assertEquals(Long.MAX_VALUE, simulator.getNextWakeUpTime());
+	}
+
+	class WakeUpListenerImpl implements WakeUpListener {
+		final String name;
+		final List<String> log;
+
+		WakeUpListenerImpl(String name, List<String> log) {
+			this.name = name;
+			this.log = log;
+		}
+
+		@Override
+		public void wakeUp(long currentTime) {
+			log.add(name + "@" + currentTime);
+		}
+	}
+
+	class IndependentTickListenerImpl extends TickListenerImpl implements IndependentTickListener {}
+
 	class TickListenerImpl implements TickListener {
 		private int count = 0;
 		private long execTime;
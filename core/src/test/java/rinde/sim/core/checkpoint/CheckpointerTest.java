@@ -0,0 +1,492 @@
+package rinde.sim.core.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rinde.sim.core.Simulator;
+import rinde.sim.core.SimulatorAPI;
+import rinde.sim.core.SimulatorUser;
+import rinde.sim.core.TickListener;
+import rinde.sim.core.WakeUpListener;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.LengthEdgeData;
+import rinde.sim.core.graph.MultimapGraph;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.MovingRoadUser;
+import rinde.sim.core.model.RoadModel;
+import rinde.sim.core.model.communication.CommunicationAPI;
+import rinde.sim.core.model.communication.CommunicationModel;
+import rinde.sim.core.model.communication.CommunicationUser;
+import rinde.sim.core.model.communication.GridCommunicationModel;
+import rinde.sim.core.model.communication.Message;
+import rinde.sim.event.Event;
+import rinde.sim.event.pdp.StandardType;
+import rinde.sim.scenario.ConfigurationException;
+import rinde.sim.scenario.Scenario;
+import rinde.sim.scenario.ScenarioController;
+import rinde.sim.scenario.TimedEvent;
+import rinde.sim.util.RandomStreams;
+import rinde.sim.util.XoroshiroRandomGenerator;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class CheckpointerTest {
+
+	static final long STEP = 1000;
+	static final int SIZE = 5;
+
+	File file;
+	ExecutorService executor;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("checkpoint", ".bin");
+		file.deleteOnExit();
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void restoreContinuesLikeUninterruptedRun() throws IOException {
+		Simulator original = createSimulator(7, false);
+		original.configure();
+		for (int i = 0; i < 20; i++) {
+			original.register(new Agent(i, node(i * 3)));
+		}
+		for (int i = 0; i < 30; i++) {
+			original.tick();
+		}
+		String atCheckpoint = state(original);
+		Checkpointer checkpointer = new Checkpointer(original, null, new AgentHook(), new PingHook());
+		checkpointer.write(file);
+		for (int i = 0; i < 30; i++) {
+			original.tick();
+		}
+
+		Simulator restored = createSimulator(7, false);
+		restored.configure();
+		new Checkpointer(restored, null, new AgentHook(), new PingHook()).restore(file);
+		assertEquals(atCheckpoint, state(restored));
+		for (int i = 0; i < 30; i++) {
+			restored.tick();
+		}
+		assertEquals(state(original), state(restored));
+		assertEquals(original.getRandomGenerator().nextLong(), restored.getRandomGenerator().nextLong());
+	}
+
+	@Test
+	public void periodicCheckpointsOfScenario() throws Exception {
+		Controller original = new Controller(createScenario(), 3);
+		Simulator sim = original.getSimulator();
+		Checkpointer checkpointer = new Checkpointer(sim, original, new AgentHook(), new PingHook());
+		sim.addTickListener(checkpointer);
+		checkpointer.setInterval(7 * STEP, file, executor);
+		List<String> states = new ArrayList<String>();
+		for (int i = 0; i < 45; i++) {
+			sim.tick();
+			states.add(state(sim));
+		}
+		checkpointer.getLastWrite().get();
+
+		Controller restored = new Controller(createScenario(), 3);
+		new Checkpointer(restored.getSimulator(), restored, new AgentHook(), new PingHook()).restore(file);
+		long time = restored.getSimulator().getCurrentTime();
+		assertTrue(time > 30 * STEP);
+		assertEquals(0, time % STEP);
+		int index = (int) (time / STEP) - 1;
+		assertEquals(states.get(index), state(restored.getSimulator()));
+		for (int i = index + 1; i < states.size(); i++) {
+			restored.getSimulator().tick();
+			assertEquals(states.get(i), state(restored.getSimulator()));
+		}
+		assertEquals(original.nextId, restored.nextId);
+		assertEquals(original.isScenarioFinished(), restored.isScenarioFinished());
+	}
+
+	@Test
+	public void randomGeneratorState() throws IOException {
+		for (RandomGenerator g : new RandomGenerator[] { new MersenneTwister(3), new XoroshiroRandomGenerator(3) }) {
+			g.nextInt();
+			// the second gaussian is cached by the generator
+			g.nextGaussian();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			CheckpointOutput out = new CheckpointOutput(bytes, Collections.<StateHook<?>> emptyList());
+			out.writeRandomGenerator(g);
+			out.flush();
+
+			RandomGenerator copy = g instanceof MersenneTwister ? new MersenneTwister(5) : new XoroshiroRandomGenerator(5);
+			new CheckpointInput(new ByteArrayInputStream(bytes.toByteArray())).readRandomGenerator(copy);
+			assertEquals(g.nextGaussian(), copy.nextGaussian(), 0);
+			for (int i = 0; i < 100; i++) {
+				assertEquals(g.nextLong(), copy.nextLong());
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void otherGenerator() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CheckpointOutput out = new CheckpointOutput(bytes, Collections.<StateHook<?>> emptyList());
+		out.writeRandomGenerator(new MersenneTwister(3));
+		out.flush();
+		new CheckpointInput(new ByteArrayInputStream(bytes.toByteArray())).readRandomGenerator(new XoroshiroRandomGenerator(
+				3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingHook() {
+		Simulator sim = createSimulator(7, false);
+		sim.configure();
+		sim.register(new Agent(0, node(0)));
+		new Checkpointer(sim, null, new PingHook()).capture();
+	}
+
+	@Test
+	public void restoreNeedsSameModels() throws IOException {
+		Simulator sim = createSimulator(7, false);
+		sim.configure();
+		sim.register(new Agent(0, node(0)));
+		byte[] state = new Checkpointer(sim, null, new AgentHook(), new PingHook()).capture();
+
+		Simulator other = createSimulator(7, true);
+		other.configure();
+		try {
+			new Checkpointer(other, null, new AgentHook(), new PingHook()).restore(state);
+			fail();
+		} catch (IOException e) {}
+
+		Simulator same = createSimulator(7, false);
+		same.configure();
+		try {
+			new Checkpointer(same, null, new AgentHook()).restore(state);
+			fail();
+		} catch (IOException e) {}
+
+		same.register(new Agent(0, node(0)));
+		try {
+			new Checkpointer(same, null, new AgentHook(), new PingHook()).restore(state);
+			fail();
+		} catch (IllegalStateException e) {}
+	}
+
+	@Test
+	public void corruptFiles() throws IOException {
+		Simulator sim = createSimulator(7, false);
+		sim.configure();
+		sim.register(new Agent(0, node(0)));
+		Checkpointer checkpointer = new Checkpointer(sim, null, new AgentHook(), new PingHook());
+		checkpointer.write(file);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() / 2);
+		} finally {
+			raf.close();
+		}
+		Simulator restored = createSimulator(7, false);
+		restored.configure();
+		try {
+			new Checkpointer(restored, null, new AgentHook(), new PingHook()).restore(file);
+			fail();
+		} catch (IOException e) {}
+
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.writeInt(0);
+		} finally {
+			raf.close();
+		}
+		try {
+			new Checkpointer(restored, null, new AgentHook(), new PingHook()).restore(file);
+			fail();
+		} catch (IOException e) {}
+	}
+
+	static Simulator createSimulator(int seed, boolean grid) {
+		Simulator sim = new Simulator(new MersenneTwister(seed), STEP);
+		sim.register(new RoadModel(createGraph()));
+		sim.register(grid ? new GridCommunicationModel(new RandomStreams(seed)) : new CommunicationModel(
+				new RandomStreams(seed)));
+		return sim;
+	}
+
+	static Graph<LengthEdgeData> createGraph() {
+		Graph<LengthEdgeData> graph = new MultimapGraph<LengthEdgeData>();
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				if (i + 1 < SIZE) {
+					graph.addConnection(new Point(10 * i, 10 * j), new Point(10 * i + 10, 10 * j));
+					graph.addConnection(new Point(10 * i + 10, 10 * j), new Point(10 * i, 10 * j));
+				}
+				if (j + 1 < SIZE) {
+					graph.addConnection(new Point(10 * i, 10 * j), new Point(10 * i, 10 * j + 10));
+					graph.addConnection(new Point(10 * i, 10 * j + 10), new Point(10 * i, 10 * j));
+				}
+			}
+		}
+		return graph;
+	}
+
+	static Point node(int i) {
+		return new Point(10 * (i % SIZE), 10 * (i / SIZE % SIZE));
+	}
+
+	static Scenario createScenario() {
+		Scenario scenario = new Scenario();
+		for (int i = 0; i < 30; i++) {
+			scenario.add(new TimedEvent(StandardType.ADD_TRUCK, i * 1500));
+		}
+		for (int i = 0; i < 8; i++) {
+			scenario.add(new TimedEvent(StandardType.REMOVE_TRUCK, i * 4000 + 500));
+		}
+		return scenario;
+	}
+
+	static String state(Simulator sim) {
+		RoadModel rm = (RoadModel) sim.getModels().get(0);
+		StringBuilder sb = new StringBuilder();
+		sb.append(sim.getCurrentTime()).append(" ").append(sim.getNextWakeUpTime()).append("\n");
+		for (Object o : sim.getRegisteredObjects()) {
+			Agent a = (Agent) o;
+			sb.append(a.id).append(" ").append(rm.containsObject(a) ? rm.getPosition(a) : null).append(" ")
+					.append(a.path).append(" ").append(a.received).append(" ").append(a.wakeUps).append(" ")
+					.append(a.traveled).append("\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates an agent for every truck that is added, removes the oldest
+	 * agent when a truck is removed.
+	 */
+	static class Controller extends ScenarioController {
+		final int seed;
+		int nextId;
+
+		Controller(Scenario scenario, int seed) throws ConfigurationException {
+			super(scenario, -1);
+			this.seed = seed;
+			initialize();
+		}
+
+		@Override
+		protected Simulator createSimulator() {
+			return CheckpointerTest.createSimulator(seed, true);
+		}
+
+		@Override
+		protected boolean handleAddTruck(Event e) {
+			getSimulator().register(new Agent(nextId, node(nextId * 7)));
+			nextId++;
+			return true;
+		}
+
+		@Override
+		protected boolean handleRemoveTruck(Event e) {
+			List<Object> objects = getSimulator().getRegisteredObjects();
+			if (!objects.isEmpty()) {
+				getSimulator().unregister(objects.get(0));
+			}
+			return true;
+		}
+
+		@Override
+		public void saveState(CheckpointOutput out) throws IOException {
+			super.saveState(out);
+			out.writeInt(nextId);
+		}
+
+		@Override
+		public void restoreState(CheckpointInput in) throws IOException {
+			super.restoreState(in);
+			nextId = in.readInt();
+		}
+	}
+
+	/**
+	 * Drives to random nodes, broadcasts random numbers and answers some of
+	 * the messages it receives.
+	 */
+	static class Agent implements MovingRoadUser, CommunicationUser, TickListener, WakeUpListener, SimulatorUser {
+		final int id;
+		final Point start;
+		SimulatorAPI sim;
+		RoadModel roadModel;
+		CommunicationAPI api;
+		LinkedList<Point> path = new LinkedList<Point>();
+		long received;
+		int wakeUps;
+		double traveled;
+
+		Agent(int id, Point start) {
+			this.id = id;
+			this.start = start;
+		}
+
+		@Override
+		public void setSimulator(SimulatorAPI api) {
+			sim = api;
+			sim.scheduleWakeUp(this, sim.getCurrentTime() + 3500);
+		}
+
+		@Override
+		public void initRoadUser(RoadModel model) {
+			roadModel = model;
+			model.addObjectAt(this, start);
+		}
+
+		@Override
+		public void setCommunicationAPI(CommunicationAPI communicationAPI) {
+			api = communicationAPI;
+		}
+
+		@Override
+		public double getSpeed() {
+			return 25000;
+		}
+
+		@Override
+		public Point getPosition() {
+			return roadModel.containsObject(this) ? roadModel.getPosition(this) : null;
+		}
+
+		@Override
+		public double getRadius() {
+			return 25;
+		}
+
+		@Override
+		public double getReliability() {
+			return 0.8;
+		}
+
+		@Override
+		public void tick(long currentTime, long timeStep) {
+			RandomGenerator rng = sim.getRandomGenerator(this);
+			if (path.isEmpty()) {
+				path = new LinkedList<Point>(roadModel.getShortestPathTo(this, node(rng.nextInt(SIZE * SIZE))));
+			}
+			traveled += roadModel.followPath(this, path, timeStep).distance;
+			if (rng.nextDouble() < 0.4) {
+				api.broadcast(new Ping(this, rng.nextInt(50)));
+			}
+		}
+
+		@Override
+		public void afterTick(long currentTime, long timeStep) {}
+
+		@Override
+		public void wakeUp(long currentTime) {
+			wakeUps++;
+			sim.scheduleWakeUp(this, currentTime + 3500);
+		}
+
+		@Override
+		public void receive(Message message) {
+			Ping p = (Ping) message;
+			received = received * 31 + p.value;
+			if (p.value < 10) {
+				api.send(p.getSender(), new Ping(this, 100 + p.value));
+			} else if (p.value >= 30 && p.value < 50) {
+				api.broadcast(new Ping(this, 200 + p.value));
+			}
+		}
+	}
+
+	static class Ping extends Message {
+		final int value;
+
+		Ping(CommunicationUser sender, int value) {
+			super(sender);
+			this.value = value;
+		}
+	}
+
+	static class AgentHook implements StateHook<Agent> {
+		@Override
+		public String getId() {
+			return "agent";
+		}
+
+		@Override
+		public Class<Agent> getType() {
+			return Agent.class;
+		}
+
+		@Override
+		public void save(Agent agent, CheckpointOutput out) throws IOException {
+			out.writeVarint(agent.id);
+			out.writePoint(agent.start);
+			out.writeVarint(agent.path.size());
+			for (Point p : agent.path) {
+				out.writePoint(p);
+			}
+			out.writeLong(agent.received);
+			out.writeVarint(agent.wakeUps);
+			out.writeDouble(agent.traveled);
+		}
+
+		@Override
+		public Agent restore(CheckpointInput in) throws IOException {
+			Agent agent = new Agent(in.readVarint(), in.readPoint());
+			int n = in.readVarint();
+			for (int i = 0; i < n; i++) {
+				agent.path.add(in.readPoint());
+			}
+			agent.received = in.readLong();
+			agent.wakeUps = in.readVarint();
+			agent.traveled = in.readDouble();
+			return agent;
+		}
+	}
+
+	static class PingHook implements StateHook<Ping> {
+		@Override
+		public String getId() {
+			return "ping";
+		}
+
+		@Override
+		public Class<Ping> getType() {
+			return Ping.class;
+		}
+
+		@Override
+		public void save(Ping ping, CheckpointOutput out) throws IOException {
+			out.writeReference(ping.getSender());
+			out.writeVarint(ping.value);
+		}
+
+		@Override
+		public Ping restore(CheckpointInput in) throws IOException {
+			return new Ping(in.readReference(CommunicationUser.class), in.readVarint());
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package rinde.sim.core.graph;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import rinde.sim.serializers.DotGraphSerializer;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+@RunWith(Parameterized.class)
+public class AStarSearchTest {
+	protected static final double DELTA = 0.0001;
+
+	Graph<MultiAttributeEdgeData> graph;
+	Class<? extends Graph<MultiAttributeEdgeData>> graphType;
+
+	Point A, B, C, D, E;
+
+	public AStarSearchTest(Class<? extends Graph<MultiAttributeEdgeData>> c) {
+		graphType = c;
+	}
+
+	@Parameters
+	public static Collection<Object[]> configs() {
+		return Arrays.asList(new Object[][] { { TestMultimapGraph.class }, { TestTableGraph.class } });
+	}
+
+	@Before
+	public void setUp() throws InstantiationException, IllegalAccessException {
+		graph = graphType.newInstance();
+		A = new Point(0, 0);
+		B = new Point(10, 0);
+		C = new Point(10, 10);
+		D = new Point(0, 10);
+		E = new Point(20, 20);
+		Graphs.addBiPath(graph, A, B, C, D, A);
+		Graphs.addPath(graph, C, E);
+	}
+
+	@Test
+	public void simplePaths() {
+		AStarSearch search = new AStarSearch(GraphIndex.create(graph));
+		assertEquals(asList(A), search.shortestPath(A, A));
+		assertEquals(asList(A, B), search.shortestPath(A, B));
+		assertEquals(asList(D, C, E), search.shortestPath(D, E));
+		assertEquals(Graphs.shortestPathEuclidianDistance(graph, A, E), search.shortestPath(A, E));
+	}
+
+	@Test
+	public void indices() {
+		GraphIndex index = GraphIndex.create(graph);
+		assertEquals(5, index.getNumberOfNodes());
+		assertEquals(9, index.getNumberOfConnections());
+		assertEquals(-1, index.indexOf(new Point(1, 1)));
+		assertEquals(-1, index.indexOf(null));
+		for (Point p : graph.getNodes()) {
+			assertEquals(p, index.getNode(index.indexOf(new Point(p.x, p.y))));
+		}
+		AStarSearch search = new AStarSearch(index);
+		int[] path = search.shortestPath(index.indexOf(B), index.indexOf(E));
+		assertArrayEquals(new int[] { index.indexOf(B), index.indexOf(C), index.indexOf(E) }, path);
+	}
+
+	@Test(expected = PathNotFoundException.class)
+	public void unreachable() {
+		new AStarSearch(GraphIndex.create(graph)).shortestPath(E, A);
+	}
+
+	@Test(expected = PathNotFoundException.class)
+	public void unknownDestination() {
+		new AStarSearch(GraphIndex.create(graph)).shortestPath(A, new Point(-1, -1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownOrigin() {
+		new AStarSearch(GraphIndex.create(graph)).shortestPath(new Point(-1, -1), A);
+	}
+
+	/**
+	 * The reused search state may not leak between queries, results are
+	 * compared with the reference implementation on a real map.
+	 */
+	@Test
+	public void compareWithGraphs() throws IOException {
+		graph.merge(DotGraphSerializer.getMultiAttributeGraphSerializer().read("files/maps/leuven-simple.dot"));
+		AStarSearch search = new AStarSearch(GraphIndex.create(graph));
+		List<Point> nodes = new ArrayList<Point>(graph.getNodes());
+		RandomGenerator rng = new MersenneTwister(123);
+		for (int i = 0; i < 50; i++) {
+			Point from = nodes.get(rng.nextInt(nodes.size()));
+			Point to = nodes.get(rng.nextInt(nodes.size()));
+			List<Point> expected = null;
+			try {
+				expected = Graphs.shortestPathEuclidianDistance(graph, from, to);
+			} catch (PathNotFoundException e) {
+				continue;
+			}
+			List<Point> actual = search.shortestPath(from, to);
+			assertEquals(from, actual.get(0));
+			assertEquals(to, actual.get(actual.size() - 1));
+			assertEquals(Graphs.pathLength(expected), Graphs.pathLength(actual), DELTA);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package rinde.sim.core.graph;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import rinde.sim.core.model.RoadModel;
+import rinde.sim.serializers.DotGraphSerializer;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+@RunWith(Parameterized.class)
+public class CompactGraphTest {
+	protected static final double DELTA = 0.0001;
+
+	Graph<MultiAttributeEdgeData> source;
+	CompactGraph<MultiAttributeEdgeData> graph;
+	Class<? extends Graph<MultiAttributeEdgeData>> graphType;
+
+	Point A, B, C, D, E;
+
+	public CompactGraphTest(Class<? extends Graph<MultiAttributeEdgeData>> c) {
+		graphType = c;
+	}
+
+	@Parameters
+	public static Collection<Object[]> configs() {
+		return Arrays.asList(new Object[][] { { TestMultimapGraph.class }, { TestTableGraph.class } });
+	}
+
+	@Before
+	public void setUp() throws InstantiationException, IllegalAccessException {
+		source = graphType.newInstance();
+		A = new Point(0, 0);
+		B = new Point(10, 0);
+		C = new Point(10, 10);
+		D = new Point(0, 10);
+		E = new Point(20, 20);
+		Graphs.addBiPath(source, A, B, C, D, A);
+		source.addConnection(C, E, new MultiAttributeEdgeData(30, 5));
+		source.setEdgeData(A, B, new MultiAttributeEdgeData(12));
+		graph = CompactGraph.copyOf(source, CompactGraph.MULTI_ATTRIBUTE_DATA);
+	}
+
+	@Test
+	public void copy() {
+		assertTrue(graph.equals(source));
+		assertTrue(source.equals(graph));
+		assertEquals(Graphs.hashCode(source), graph.hashCode());
+		assertEquals(source.getNumberOfNodes(), graph.getNumberOfNodes());
+		assertEquals(source.getNumberOfConnections(), graph.getNumberOfConnections());
+		assertEquals(new ArrayList<Point>(source.getNodes()), new ArrayList<Point>(graph.getNodes()));
+		for (Point p : source.getNodes()) {
+			assertTrue(graph.containsNode(p));
+			assertEquals(new ArrayList<Point>(source.getOutgoingConnections(p)), graph.getOutgoingConnections(p));
+			assertEquals(newHashSet(source.getIncomingConnections(p)), newHashSet(graph.getIncomingConnections(p)));
+		}
+		assertFalse(graph.containsNode(new Point(1, 1)));
+		assertTrue(graph.getOutgoingConnections(new Point(1, 1)).isEmpty());
+		assertFalse(graph.isEmpty());
+	}
+
+	@Test
+	public void edgeData() {
+		assertEquals(12, graph.connectionLength(A, B), DELTA);
+		assertEquals(new MultiAttributeEdgeData(12), graph.connectionData(A, B));
+		assertTrue(Double.isNaN(graph.connectionMaxSpeed(A, B)));
+
+		assertEquals(30, graph.connectionLength(C, E), DELTA);
+		assertEquals(5, graph.connectionMaxSpeed(C, E), DELTA);
+		assertEquals(new MultiAttributeEdgeData(30, 5), graph.getConnection(C, E).edgeData);
+
+		assertNull(graph.connectionData(B, A));
+		assertEquals(10, graph.connectionLength(B, A), DELTA);
+		assertNull(graph.connectionData(E, C));
+		assertFalse(graph.hasConnection(E, C));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void lengthOfNonExistingConnection() {
+		graph.connectionLength(E, C);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void immutable() {
+		graph.addConnection(E, A);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void immutableNodes() {
+		graph.getNodes().clear();
+	}
+
+	@Test
+	public void randomNode() {
+		for (int i = 0; i < 10; i++) {
+			assertEquals(source.getRandomNode(new MersenneTwister(i)), graph.getRandomNode(new MersenneTwister(i)));
+		}
+	}
+
+	@Test
+	public void builder() {
+		CompactGraph<LengthEdgeData> g = new CompactGraph.Builder<LengthEdgeData>(CompactGraph.LENGTH_DATA)
+				.addConnection(A, B).addConnection(B, C, new LengthEdgeData(15)).build();
+		assertEquals(asList(A, B, C), new ArrayList<Point>(g.getNodes()));
+		assertEquals(15, g.connectionLength(B, C), DELTA);
+		assertEquals(new LengthEdgeData(15), g.connectionData(B, C));
+		assertEquals(asList(A), g.getIncomingConnections(B));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void builderDuplicate() {
+		new CompactGraph.Builder<LengthEdgeData>(CompactGraph.LENGTH_DATA).addConnection(A, B).addConnection(A, B)
+				.build();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void builderCircular() {
+		new CompactGraph.Builder<LengthEdgeData>(CompactGraph.LENGTH_DATA).addConnection(A, A);
+	}
+
+	@Test
+	public void roadModel() throws IOException {
+		source.merge(DotGraphSerializer.getMultiAttributeGraphSerializer().read("files/maps/leuven-simple.dot"));
+		graph = CompactGraph.copyOf(source, CompactGraph.MULTI_ATTRIBUTE_DATA);
+		assertTrue(graph.equals(source));
+
+		RoadModel original = new RoadModel(source);
+		RoadModel compact = new RoadModel(graph);
+		List<Point> nodes = new ArrayList<Point>(source.getNodes());
+		MersenneTwister rng = new MersenneTwister(123);
+		for (int i = 0; i < 20; i++) {
+			Point from = nodes.get(rng.nextInt(nodes.size()));
+			Point to = nodes.get(rng.nextInt(nodes.size()));
+			try {
+				assertEquals(original.getShortestPathTo(from, to), compact.getShortestPathTo(from, to));
+			} catch (PathNotFoundException e) {
+				continue;
+			}
+		}
+	}
+}
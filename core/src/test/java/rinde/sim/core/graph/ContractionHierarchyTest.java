@@ -0,0 +1,200 @@
+package rinde.sim.core.graph;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import rinde.sim.core.model.RoadModel;
+import rinde.sim.serializers.DotGraphSerializer;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+@RunWith(Parameterized.class)
+public class ContractionHierarchyTest {
+	protected static final double DELTA = 0.0001;
+
+	Graph<MultiAttributeEdgeData> graph;
+	Class<? extends Graph<MultiAttributeEdgeData>> graphType;
+
+	Point A, B, C, D, E;
+
+	public ContractionHierarchyTest(Class<? extends Graph<MultiAttributeEdgeData>> c) {
+		graphType = c;
+	}
+
+	@Parameters
+	public static Collection<Object[]> configs() {
+		return Arrays.asList(new Object[][] { { TestMultimapGraph.class }, { TestTableGraph.class } });
+	}
+
+	@Before
+	public void setUp() throws InstantiationException, IllegalAccessException {
+		graph = graphType.newInstance();
+		A = new Point(0, 0);
+		B = new Point(10, 0);
+		C = new Point(10, 10);
+		D = new Point(0, 10);
+		E = new Point(20, 20);
+		Graphs.addBiPath(graph, A, B, C, D, A);
+		Graphs.addPath(graph, C, E);
+	}
+
+	@Test
+	public void simplePaths() {
+		ContractionHierarchy ch = ContractionHierarchy.create(graph);
+		assertEquals(asList(A), ch.shortestPath(A, A));
+		assertEquals(asList(A, B), ch.shortestPath(A, B));
+		assertEquals(asList(D, C, E), ch.shortestPath(D, E));
+		assertEquals(20 + Math.sqrt(200), Graphs.pathLength(ch.shortestPath(A, E)), DELTA);
+	}
+
+	@Test(expected = PathNotFoundException.class)
+	public void unreachable() {
+		ContractionHierarchy.create(graph).shortestPath(E, A);
+	}
+
+	@Test(expected = PathNotFoundException.class)
+	public void unknownDestination() {
+		ContractionHierarchy.create(graph).shortestPath(A, new Point(-1, -1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownOrigin() {
+		ContractionHierarchy.create(graph).shortestPath(new Point(-1, -1), A);
+	}
+
+	@Test
+	public void compareWithGraphs() throws IOException {
+		graph.merge(DotGraphSerializer.getMultiAttributeGraphSerializer().read("files/maps/leuven-simple.dot"));
+		ContractionHierarchy ch = ContractionHierarchy.create(graph);
+		assertTrue(ch.getNumberOfShortcuts() > 0);
+		compare(ch, 100);
+	}
+
+	@Test
+	public void writeRead() throws IOException {
+		graph.merge(DotGraphSerializer.getMultiAttributeGraphSerializer().read("files/maps/leuven-simple.dot"));
+		ContractionHierarchy ch = ContractionHierarchy.create(graph);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ch.write(out);
+		ContractionHierarchy copy = ContractionHierarchy.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(ch.getNumberOfShortcuts(), copy.getNumberOfShortcuts());
+		assertEquals(graph.getNumberOfNodes(), copy.getIndex().getNumberOfNodes());
+		assertEquals(graph.getNumberOfConnections(), copy.getIndex().getNumberOfConnections());
+		compare(copy, 50);
+	}
+
+	@Test
+	public void readFollowedByData() throws IOException {
+		graph.merge(DotGraphSerializer.getMultiAttributeGraphSerializer().read("files/maps/leuven-simple.dot"));
+		ContractionHierarchy ch = ContractionHierarchy.create(graph);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ch.write(out);
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeUTF("trailing data");
+		data.flush();
+
+		// the bytes after the hierarchy are left in the stream
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+		ContractionHierarchy copy = ContractionHierarchy.read(in);
+		assertEquals(ch.getNumberOfShortcuts(), copy.getNumberOfShortcuts());
+		assertEquals("trailing data", in.readUTF());
+		assertEquals(-1, in.read());
+	}
+
+	@Test(expected = IOException.class)
+	public void readInvalid() throws IOException {
+		ContractionHierarchy.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+	}
+
+	/**
+	 * Corrupts the number of nodes, a node of an edge and an edge of a
+	 * shortcut and truncates the stream, all must be reported as
+	 * {@link IOException}.
+	 */
+	@Test
+	public void readCorrupt() throws IOException {
+		ContractionHierarchy ch = ContractionHierarchy.create(graph);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ch.write(out);
+		byte[] bytes = out.toByteArray();
+		int n = graph.getNumberOfNodes();
+		// magic, version, n, the nodes and m
+		int edges = 12 + n * 20 + 4;
+		int last = bytes.length - 24;
+
+		assertCorrupt(bytes, 8, -1);
+		assertCorrupt(bytes, edges + 4, n);
+		assertCorrupt(bytes, edges, -2);
+		assertTrue(ch.getNumberOfShortcuts() > 0);
+		assertCorrupt(bytes, last + 16, (bytes.length - edges) / 24);
+		assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1), 0, ContractionHierarchy.MAGIC);
+	}
+
+	static void assertCorrupt(byte[] bytes, int offset, int value) {
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).putInt(offset, value);
+		try {
+			ContractionHierarchy.read(new ByteArrayInputStream(copy));
+		} catch (IOException e) {
+			return;
+		}
+		fail("corrupt hierarchy was read");
+	}
+
+	@Test
+	public void roadModel() {
+		RoadModel rm = new RoadModel(graph);
+		rm.setRoutingStrategy(ContractionHierarchy.create(graph));
+		assertEquals(asList(D, C, E), rm.getShortestPathTo(D, E));
+	}
+
+	void compare(ContractionHierarchy ch, int queries) {
+		List<Point> nodes = new ArrayList<Point>(graph.getNodes());
+		RandomGenerator rng = new MersenneTwister(123);
+		for (int i = 0; i < queries; i++) {
+			Point from = nodes.get(rng.nextInt(nodes.size()));
+			Point to = nodes.get(rng.nextInt(nodes.size()));
+			List<Point> expected = null;
+			try {
+				expected = Graphs.shortestPathEuclidianDistance(graph, from, to);
+			} catch (PathNotFoundException e) {
+				try {
+					ch.shortestPath(from, to);
+				} catch (PathNotFoundException e2) {
+					continue;
+				}
+				throw new AssertionError("path should not exist: " + from + " -> " + to);
+			}
+			List<Point> actual = ch.shortestPath(from, to);
+			assertEquals(from, actual.get(0));
+			assertEquals(to, actual.get(actual.size() - 1));
+			for (int j = 1; j < actual.size(); j++) {
+				assertTrue(graph.hasConnection(actual.get(j - 1), actual.get(j)));
+			}
+			assertEquals(Graphs.pathLength(expected), Graphs.pathLength(actual), DELTA);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package rinde.sim.core.graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PointPoolTest {
+
+	@Test
+	public void canonicalInstances() {
+		PointPool pool = new PointPool(2);
+		Random r = new Random(123);
+		List<Point> points = new ArrayList<Point>();
+		for (int i = 0; i < 1000; i++) {
+			points.add(pool.get(r.nextInt(100), r.nextInt(10) / 4d));
+		}
+		assertTrue(pool.size() <= 1000);
+		for (Point p : points) {
+			assertSame(p, pool.get(p.x, p.y));
+			assertSame(p, pool.intern(new Point(p.x, p.y)));
+		}
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertNotSame(points.get(0), pool.get(points.get(0).x, points.get(0).y));
+	}
+
+	@Test
+	public void intern() {
+		PointPool pool = new PointPool();
+		Point p = new Point(1, 2);
+		assertSame(p, pool.intern(p));
+		assertSame(p, pool.get(1, 2));
+
+		Point sub = new Point(3, 4) {
+			private static final long serialVersionUID = 1L;
+		};
+		Point q = pool.intern(sub);
+		assertNotSame(sub, q);
+		assertEquals(Point.class, q.getClass());
+		assertEquals(sub, q);
+		assertEquals(2, pool.size());
+	}
+
+	@Test
+	public void zeroAndNegativeZero() {
+		assertEquals(new Point(0, 0), new Point(-0d, -0d));
+		assertEquals(new Point(0, 0).hashCode(), new Point(-0d, -0d).hashCode());
+		PointPool pool = new PointPool();
+		assertSame(pool.get(0, 0), pool.get(-0d, -0d));
+	}
+
+	@Test
+	public void hashDependsOnBothCoordinates() {
+		assertFalse(new Point(1, 2).hashCode() == new Point(2, 1).hashCode());
+		assertFalse(new Point(1, 2).hashCode() == new Point(1, 3).hashCode());
+		assertEquals(new Point(1.5, 2.5).hashCode(), new Point(1.5, 2.5).hashCode());
+	}
+}
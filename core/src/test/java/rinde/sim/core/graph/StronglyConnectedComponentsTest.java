@@ -0,0 +1,122 @@
+package rinde.sim.core.graph;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Test;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class StronglyConnectedComponentsTest {
+
+	@Test
+	public void twoComponents() {
+		Point a = new Point(0, 0), b = new Point(1, 0), c = new Point(2, 0), d = new Point(3, 0), e = new Point(4, 0);
+		Graph<LengthEdgeData> graph = new MultimapGraph<LengthEdgeData>();
+		Graphs.addBiPath(graph, a, b);
+		graph.addConnection(b, c);
+		Graphs.addBiPath(graph, c, d);
+		// e can only be reached
+		graph.addConnection(d, e);
+
+		StronglyConnectedComponents scc = StronglyConnectedComponents.compute(GraphIndex.create(graph));
+		assertEquals(3, scc.getNumberOfComponents());
+		assertFalse(scc.isStronglyConnected());
+		assertEquals(scc.getComponent(a), scc.getComponent(b));
+		assertEquals(scc.getComponent(c), scc.getComponent(d));
+		assertTrue(scc.getComponent(a) != scc.getComponent(c));
+		// reverse topological order
+		assertTrue(scc.getComponent(b) > scc.getComponent(c));
+		assertTrue(scc.getComponent(d) > scc.getComponent(e));
+		assertEquals(1, scc.getSize(scc.getComponent(e)));
+		assertEquals(-1, scc.getComponent(new Point(9, 9)));
+
+		int largest = scc.getLargestComponent();
+		assertEquals(2, scc.getSize(largest));
+		assertEquals(asList(c, d), scc.getNodes(largest));
+	}
+
+	@Test
+	public void empty() {
+		StronglyConnectedComponents scc = StronglyConnectedComponents.compute(GraphIndex
+				.create(new MultimapGraph<LengthEdgeData>()));
+		assertEquals(0, scc.getNumberOfComponents());
+		assertTrue(scc.isStronglyConnected());
+		assertEquals(-1, scc.getLargestComponent());
+	}
+
+	@Test
+	public void deepGraphs() {
+		// would overflow the stack of a recursive implementation
+		int n = 200000;
+		Graph<LengthEdgeData> path = new MultimapGraph<LengthEdgeData>();
+		for (int i = 1; i < n; i++) {
+			path.addConnection(new Point(i - 1, 0), new Point(i, 0));
+		}
+		assertEquals(n, StronglyConnectedComponents.compute(GraphIndex.create(path)).getNumberOfComponents());
+
+		path.addConnection(new Point(n - 1, 0), new Point(0, 0));
+		StronglyConnectedComponents scc = StronglyConnectedComponents.compute(GraphIndex.create(path));
+		assertTrue(scc.isStronglyConnected());
+		assertEquals(n, scc.getSize(0));
+	}
+
+	@Test
+	public void sameAsReachability() {
+		RandomGenerator rng = new MersenneTwister(123);
+		for (int run = 0; run < 50; run++) {
+			Graph<LengthEdgeData> graph = new MultimapGraph<LengthEdgeData>();
+			int n = 2 + rng.nextInt(30);
+			int m = rng.nextInt(3 * n);
+			for (int k = 0; k < m; k++) {
+				int i = rng.nextInt(n);
+				int j = rng.nextInt(n);
+				if (i != j) {
+					graph.addConnection(new Point(i, 0), new Point(j, 0));
+				}
+			}
+			GraphIndex index = GraphIndex.create(graph);
+			StronglyConnectedComponents scc = StronglyConnectedComponents.compute(index);
+			int total = 0;
+			for (int c = 0; c < scc.getNumberOfComponents(); c++) {
+				total += scc.getSize(c);
+			}
+			assertEquals(index.getNumberOfNodes(), total);
+			for (Point p : graph.getNodes()) {
+				Set<Point> from = reachable(graph, p);
+				for (Point q : graph.getNodes()) {
+					boolean strong = from.contains(q) && reachable(graph, q).contains(p);
+					assertEquals(strong, scc.getComponent(p) == scc.getComponent(q));
+				}
+			}
+			// connections between components go to a lower number
+			for (Connection<LengthEdgeData> c : graph.getConnections()) {
+				assertTrue(scc.getComponent(c.from) >= scc.getComponent(c.to));
+			}
+		}
+	}
+
+	static Set<Point> reachable(Graph<?> graph, Point p) {
+		Set<Point> seen = new HashSet<Point>(asList(p));
+		ArrayDeque<Point> queue = new ArrayDeque<Point>(asList(p));
+		while (!queue.isEmpty()) {
+			for (Point q : graph.getOutgoingConnections(queue.poll())) {
+				if (seen.add(q)) {
+					queue.add(q);
+				}
+			}
+		}
+		return seen;
+	}
+
+}
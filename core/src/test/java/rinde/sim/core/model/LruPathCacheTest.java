@@ -0,0 +1,80 @@
+package rinde.sim.core.model;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.TestMultimapGraph;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class LruPathCacheTest {
+
+	@Test
+	public void getPut() {
+		PathCache cache = new LruPathCache(100);
+		assertNull(cache.get(0, 1));
+		cache.put(0, 1, new int[] { 0, 2, 1 });
+		cache.put(1, 0, new int[] { 1, 0 });
+		assertArrayEquals(new int[] { 0, 2, 1 }, cache.get(0, 1));
+		assertArrayEquals(new int[] { 1, 0 }, cache.get(1, 0));
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.stats().hitCount());
+		assertEquals(1, cache.stats().missCount());
+		assertEquals(2, cache.getPairs().size());
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void eviction() {
+		PathCache cache = new LruPathCache(10);
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, i + 1, new int[] { i, i + 1 });
+		}
+		assertTrue(cache.size() <= 5);
+		assertTrue(cache.stats().evictionCount() >= 5);
+		assertArrayEquals(new int[] { 9, 10 }, cache.get(9, 10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBound() {
+		new LruPathCache(0);
+	}
+
+	@Test
+	public void warmUp() throws IOException {
+		Graph<MultiAttributeEdgeData> graph = new TestMultimapGraph();
+		Point a = new Point(0, 0);
+		Point b = new Point(10, 0);
+		Point c = new Point(10, 10);
+		Graphs.addPath(graph, a, b, c);
+
+		CachedRoadModel model = new CachedRoadModel(graph);
+		model.getShortestPathTo(a, c);
+		model.getShortestPathTo(b, c);
+		File file = File.createTempFile("pairs", ".ser");
+		file.deleteOnExit();
+		model.writeCachedPairs(file.getPath());
+
+		CachedRoadModel other = new CachedRoadModel(graph);
+		assertEquals(2, other.warmUp(file.getPath()));
+		assertEquals(2, other.getPathCache().size());
+		assertEquals(asList(a, b, c), other.getShortestPathTo(a, c));
+		assertEquals(1, other.getPathCache().stats().hitCount());
+	}
+}
@@ -5,6 +5,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -56,6 +59,29 @@ public class ModelManagerTest {
 		assertArrayEquals(new Model<?>[] { model, model2 }, manager.getModels().toArray(new Model<?>[2]));
 	}
 
+	@Test
+	public void dispatchToSupertypes() {
+		OtherFooModel model = new OtherFooModel();
+		BarModel model2 = new BarModel();
+		ObjectModel model3 = new ObjectModel();
+		manager.register(model);
+		manager.register(model2);
+		manager.register(model3);
+		manager.configure();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(manager.register(new SpecialFoo()));
+		}
+		assertTrue(manager.register(new Bar()));
+		assertEquals(3, model.calledRegister);
+		assertEquals(1, model2.calledRegister);
+		assertEquals(4, model3.registered.size());
+		assertTrue(model3.registered.get(0) instanceof SpecialFoo);
+
+		assertTrue(manager.unregister(new SpecialFoo()));
+		assertEquals(1, model.callUnregister);
+		assertEquals(1, model3.unregistered);
+	}
+
 	@Test
 	public void unregisterWithoutModels() {
 		manager.configure();
@@ -141,8 +167,31 @@ class BarModel extends AbstractModel<Bar> {
 	}
 }
 
+class ObjectModel extends AbstractModel<Object> {
+	final List<Object> registered = new ArrayList<Object>();
+	int unregistered;
+
+	protected ObjectModel() {
+		super(Object.class);
+	}
+
+	@Override
+	public boolean register(Object element) {
+		return registered.add(element);
+	}
+
+	@Override
+	public boolean unregister(Object element) {
+		unregistered++;
+		return true;
+	}
+}
+
 class Foo {
 }
 
+class SpecialFoo extends Foo {
+}
+
 class Bar {
 }
\ No newline at end of file
@@ -27,6 +27,7 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
 import rinde.sim.core.graph.Point;
 import rinde.sim.core.graph.TestMultimapGraph;
 import rinde.sim.core.graph.TestTableGraph;
@@ -36,8 +37,7 @@ import rinde.sim.util.TimeUnit;
 import rinde.sim.util.TrivialRoadUser;
 
 import com.google.common.base.Predicate;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
+import com.google.common.base.Predicates;
 
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
@@ -613,18 +613,59 @@ public class RoadModelTest {
 	@Test
 	public void cacheTest() {
 		if (model instanceof CachedRoadModel) {
-			Table<Point, Point, List<Point>> cache = HashBasedTable.create();
-			List<Point> cachePath = Arrays.asList(SW, NE);
-			cache.put(SW, NE, cachePath);
-
+			PathCache cache = new LruPathCache(100);
 			((CachedRoadModel) model).setPathCache(cache);
+			assertEquals(cache, ((CachedRoadModel) model).getPathCache());
 
 			List<Point> shortPath = model.getShortestPathTo(SW, NE);
+			assertEquals(asList(SW, SE, NE), shortPath);
+			assertEquals(1, cache.size());
+			assertEquals(1, cache.stats().missCount());
+
+			GraphIndex index = model.getGraphIndex();
+			int[] cachePath = new int[] { index.indexOf(SW), index.indexOf(NE) };
+			cache.put(index.indexOf(SW), index.indexOf(NE), cachePath);
+			assertEquals(asList(SW, NE), model.getShortestPathTo(SW, NE));
+			assertEquals(1, cache.stats().hitCount());
+
+			// changing the graph invalidates the cache
+			model.addConnection(SE, SW);
+			assertEquals(asList(SW, SE, NE), model.getShortestPathTo(SW, NE));
+		}
+	}
 
-			assertEquals(shortPath, cachePath);
+	@Test
+	public void modifyGraphDirectly() {
+		assertEquals(asList(SW, SE, NE), model.getShortestPathTo(SW, NE));
+		// the number of connections does not change
+		model.graph.addConnection(SW, NE);
+		model.graph.removeConnection(SW, SE);
+		assertEquals(asList(SW, NE), model.getShortestPathTo(SW, NE));
+	}
 
-			assertEquals(cache, ((CachedRoadModel) model).getPathCache());
-		}
+	@Test
+	public void closestObjects() {
+		RoadUser agent1 = new TestRoadUser();
+		RoadUser agent2 = new TestRoadUser2();
+		SpeedyRoadUser agent3 = new SpeedyRoadUser(sc.from(5, TimeUnit.MS).to(TimeUnit.H));
+		model.addObjectAt(agent1, SW);
+		model.addObjectAt(agent2, NE);
+		model.addObjectAt(agent3, SW);
+
+		assertEquals(asList(agent1, agent3, agent2), model.getClosestObjects(SW, Predicates.alwaysTrue(), 5));
+		assertEquals(asList(agent2), model.getClosestObjects(NW, TestRoadUser2.class, 5));
+		assertEquals(asList(agent1, agent2, agent3), model.getObjectsWithinRadius(SE, 10.5, Predicates.alwaysTrue()));
+
+		// moving updates the index
+		model.followPath(agent3, new LinkedList<Point>(asList(SW, SE, NE)), 3);
+		assertEquals(new Point(10, 5), model.getPosition(agent3));
+		assertEquals(asList(agent3, agent1), model.getClosestObjects(SE, Predicates.alwaysTrue(), 2));
+		assertEquals(asList(agent2, agent3), model.getObjectsWithinRadius(NE, 6, Predicates.alwaysTrue()));
+
+		model.removeObject(agent3);
+		assertEquals(asList(agent1), model.getClosestObjects(SE, TestRoadUser.class, 2));
+		model.clear();
+		assertTrue(model.getClosestObjects(SE, Predicates.alwaysTrue(), 2).isEmpty());
 	}
 
 	@Test
@@ -662,6 +703,74 @@ public class RoadModelTest {
 	//		assertEquals(Arrays.asList(a1, SE, NE, a2), shortestPath);
 	//	}
 
+	@Test
+	public void snapshot() {
+		SpeedyRoadUser agent1 = new SpeedyRoadUser(sc.from(5, TimeUnit.MS).to(TimeUnit.H));
+		TestRoadUser agent2 = new TestRoadUser();
+		model.addObjectAt(agent1, SW);
+		model.addObjectAt(agent2, NE);
+
+		PositionSnapshot s1 = model.getSnapshot();
+		assertEquals(2, s1.size());
+		assertTrue(s1 == model.getSnapshot());
+		assertTrue(s1.getObject(0) == agent1);
+		assertEquals(SW, new Point(s1.getX(0), s1.getY(0)));
+		assertEquals(NE, new Point(s1.getX(1), s1.getY(1)));
+		GraphIndex index = s1.getGraphIndex();
+		assertEquals(SW, index.getNode(s1.getFromNode(0)));
+		assertEquals(-1, s1.getToNode(0));
+
+		model.followPath(agent1, new LinkedList<Point>(asList(SW, SE)), 1);
+		PositionSnapshot s2 = model.getSnapshot();
+		assertTrue(s2.getEpoch() > s1.getEpoch());
+		Point pos = model.getPosition(agent1);
+		assertEquals(5, pos.x, EPSILON);
+		assertEquals(pos, new Point(s2.getX(0), s2.getY(0)));
+		assertEquals(SW, index.getNode(s2.getFromNode(0)));
+		assertEquals(SE, index.getNode(s2.getToNode(0)));
+		assertEquals(5, s2.getRelativePosition(0), EPSILON);
+		assertEquals(model.getObjectsAndPositions(), s2.toMap());
+		// the previous snapshot is not modified
+		assertEquals(SW, new Point(s1.getX(0), s1.getY(0)));
+
+		model.removeObject(agent1);
+		PositionSnapshot s3 = model.getSnapshot();
+		assertEquals(1, s3.size());
+		assertTrue(s3.getObject(0) == agent2);
+		assertEquals(2, s2.size());
+	}
+
+	@Test
+	public void snapshotOrder() {
+		List<RoadUser> objects = new ArrayList<RoadUser>();
+		List<Point> positions = Arrays.asList(NE, SE, SW, NW);
+		for (int i = 0; i < 100; i++) {
+			RoadUser u = new TestRoadUser();
+			objects.add(u);
+			model.addObjectAt(u, positions.get(i % positions.size()));
+		}
+		// enough removals to close the holes in the store
+		for (int i = 90; i >= 0; i -= 3) {
+			model.removeObject(objects.remove(i));
+		}
+		for (int i = 0; i < 5; i++) {
+			RoadUser u = new TestRoadUser2();
+			objects.add(u);
+			model.addObjectAt(u, SE);
+		}
+
+		PositionSnapshot s = model.getSnapshot();
+		assertEquals(objects, new ArrayList<RoadUser>(model.getObjects()));
+		assertEquals(objects.size(), s.size());
+		for (int i = 0; i < s.size(); i++) {
+			assertTrue(s.getObject(i) == objects.get(i));
+			assertEquals(model.getPosition(objects.get(i)), new Point(s.getX(i), s.getY(i)));
+		}
+
+		model.clear();
+		assertEquals(0, model.getSnapshot().size());
+	}
+
 	@Test
 	public void testObjectOrder() {
 		List<RoadUser> objects = new ArrayList<RoadUser>();
@@ -0,0 +1,413 @@
+package rinde.sim.core.model;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.MultimapGraph;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.RoadModel.PathProgress;
+import rinde.sim.util.TimeUnit;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ */
+public class RouteCursorTest {
+
+	static final double EPSILON = 0.000001;
+
+	Graph<MultiAttributeEdgeData> graph;
+	RoadModel model;
+	Point A, B, C, D, E;
+
+	@Before
+	public void setUp() {
+		graph = new MultimapGraph<MultiAttributeEdgeData>();
+		model = new RoadModel(graph);
+		A = new Point(0, 0);
+		B = new Point(0, 10);
+		C = new Point(10, 0);
+		D = new Point(10, 10);
+		E = new Point(5, 15);
+		graph.addConnection(A, B);
+		graph.addConnection(B, C, new MultiAttributeEdgeData(10, 2.5));
+		graph.addConnection(C, B);
+		graph.addConnection(B, D, new MultiAttributeEdgeData(10, 10));
+		graph.addConnection(C, D);
+		graph.addConnection(D, C, new MultiAttributeEdgeData(12, 1));
+		graph.addConnection(D, E, new MultiAttributeEdgeData(5, 7));
+	}
+
+	@Test
+	public void followRouteWithSpeedLimits() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, A);
+		RouteCursor cursor = new RouteCursor(model);
+		cursor.setRoute(asList(A, B, C, D, E));
+		assertEquals(5, cursor.getRemainingNodes());
+
+		// A and B at full speed, B >> C at 2.5
+		long time = TimeUnit.H.toMs(2) + TimeUnit.H.toMs(4);
+		assertEquals(20, model.followRoute(agent, cursor, time), EPSILON);
+		assertEquals(time, cursor.getTime());
+		assertEquals(3, cursor.getNodesReached());
+		assertEquals(C, model.getPosition(agent));
+		assertEquals(D, cursor.getNextNode());
+
+		// half of C >> D
+		model.followRoute(agent, cursor, TimeUnit.H.toMs(1));
+		assertEquals(5, cursor.getDistance(), EPSILON);
+		assertEquals(0, cursor.getNodesReached());
+		assertEquals(new Point(10, 5), model.getPosition(agent));
+		assertEquals(D, cursor.getNextNode());
+
+		model.followRoute(agent, cursor, TimeUnit.H.toMs(10));
+		assertEquals(10, cursor.getDistance(), EPSILON);
+		assertEquals(TimeUnit.H.toMs(2), cursor.getTime());
+		assertEquals(2, cursor.getNodesReached());
+		assertEquals(E, model.getPosition(agent));
+		assertFalse(cursor.hasNext());
+
+		// the end of the route has been reached
+		assertEquals(0, model.followRoute(agent, cursor, 1000), EPSILON);
+		assertEquals(0, cursor.getTime());
+		assertEquals(E, model.getPosition(agent));
+	}
+
+	@Test
+	public void locationIsCreatedWhenNeeded() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, B);
+		RouteCursor cursor = new RouteCursor(model);
+		cursor.setRoute(asList(D, C));
+		model.followRoute(agent, cursor, TimeUnit.H.toMs(1));
+
+		Point p = model.getPosition(agent);
+		assertEquals(new Point(5, 10), p);
+		assertTrue(p instanceof RoadModel.MidPoint);
+		assertEquals(B, model.getLastCrossRoad(agent));
+		PositionSnapshot s = model.getSnapshot();
+		assertEquals(5, s.getX(0), EPSILON);
+		assertEquals(B, s.getGraphIndex().getNode(s.getFromNode(0)));
+		assertEquals(D, s.getGraphIndex().getNode(s.getToNode(0)));
+
+		// the path api continues from the location of the route
+		PathProgress pp = model.followPath(agent, new LinkedList<Point>(asList(D, C)), TimeUnit.H.toMs(1));
+		assertEquals(5, pp.distance, EPSILON);
+		assertEquals(D, model.getPosition(agent));
+	}
+
+	@Test
+	public void graphChanges() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, A);
+		RouteCursor cursor = new RouteCursor(model);
+		cursor.setRoute(asList(B, D));
+		model.followRoute(agent, cursor, TimeUnit.H.toMs(1));
+		assertEquals(new Point(0, 5), model.getPosition(agent));
+
+		model.addConnection(E, A);
+		model.followRoute(agent, cursor, TimeUnit.H.toMs(2));
+		assertEquals(new Point(5, 10), model.getPosition(agent));
+		assertEquals(B, model.getLastCrossRoad(agent));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void routeNotInGraph() {
+		new RouteCursor(model).setRoute(asList(A, new Point(1, 1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void routeNotConnected() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, A);
+		RouteCursor cursor = new RouteCursor(model);
+		cursor.setRoute(asList(A, D));
+		model.followRoute(agent, cursor, 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void routeNotInCurrentDirection() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, B);
+		RouteCursor cursor = new RouteCursor(model);
+		cursor.setRoute(asList(D));
+		model.followRoute(agent, cursor, TimeUnit.H.toMs(1));
+		cursor.setRoute(asList(C));
+		model.followRoute(agent, cursor, 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void cursorOfOtherModel() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, A);
+		RouteCursor cursor = new RouteCursor(new RoadModel(graph));
+		cursor.setRoute(asList(B));
+		model.followRoute(agent, cursor, 1000);
+	}
+
+	/**
+	 * Moves agents with {@link RoadModel#followPath} and
+	 * {@link RoadModel#followRoute} over the same routes, the results must be
+	 * the same.
+	 */
+	@Test
+	public void sameAsFollowPath() {
+		sameAsFollowPath(grid(8, false), grid(8, false));
+	}
+
+	/**
+	 * The connections have lengths that differ from the straight-line
+	 * distance, the remaining distance of an object halfway a connection is
+	 * the straight-line distance in both methods.
+	 */
+	@Test
+	public void sameAsFollowPathWithLengths() {
+		sameAsFollowPath(grid(8, true), grid(8, true));
+	}
+
+	@Test
+	public void continueHalfwayConnectionWithLength() {
+		Point X = new Point(10, -10);
+		graph.addConnection(C, X, new MultiAttributeEdgeData(10));
+		graph.removeConnection(D, C);
+		graph.addConnection(D, C, new MultiAttributeEdgeData(20));
+		RoadModel routeModel = new RoadModel(graph);
+		Agent agent = new Agent(1);
+		model.addObjectAt(agent, D);
+		routeModel.addObjectAt(agent, D);
+		LinkedList<Point> path = new LinkedList<Point>(asList(C, X));
+		RouteCursor cursor = new RouteCursor(routeModel);
+		cursor.setRoute(path);
+
+		for (int i = 0; i < 2; i++) {
+			PathProgress pp = model.followPath(agent, path, TimeUnit.H.toMs(10));
+			assertEquals(pp.distance, routeModel.followRoute(agent, cursor, TimeUnit.H.toMs(10)), EPSILON);
+			assertEquals(model.getPosition(agent), routeModel.getPosition(agent));
+		}
+		assertEquals(new Point(10, -5), routeModel.getPosition(agent));
+	}
+
+	private static void sameAsFollowPath(Graph<MultiAttributeEdgeData> pathGraph, Graph<MultiAttributeEdgeData> routeGraph) {
+		RoadModel pathModel = new RoadModel(pathGraph);
+		RoadModel routeModel = new CachedRoadModel(routeGraph);
+		List<Point> nodes = new ArrayList<Point>(pathModel.getGraph().getNodes());
+		Random rng = new Random(123);
+
+		int n = 20;
+		Agent[] agents = new Agent[n];
+		RouteCursor[] cursors = new RouteCursor[n];
+		List<LinkedList<Point>> paths = new ArrayList<LinkedList<Point>>();
+		for (int i = 0; i < n; i++) {
+			agents[i] = new Agent(1000 + rng.nextInt(20000));
+			Point start = nodes.get(rng.nextInt(nodes.size()));
+			pathModel.addObjectAt(agents[i], start);
+			routeModel.addObjectAt(agents[i], start);
+			cursors[i] = new RouteCursor(routeModel);
+			paths.add(new LinkedList<Point>());
+		}
+
+		for (int step = 0; step < 500; step++) {
+			long time = 1 + rng.nextInt(5000);
+			for (int i = 0; i < n; i++) {
+				if (paths.get(i).isEmpty() || rng.nextInt(20) == 0) {
+					Point dest = nodes.get(rng.nextInt(nodes.size()));
+					List<Point> path = pathModel.getShortestPathTo(agents[i], dest);
+					paths.get(i).clear();
+					paths.get(i).addAll(path);
+					cursors[i].setRoute(path);
+				}
+				PathProgress pp = pathModel.followPath(agents[i], paths.get(i), time);
+				double distance = routeModel.followRoute(agents[i], cursors[i], time);
+				assertEquals(pp.distance, distance, EPSILON);
+				assertEquals(pp.time, cursors[i].getTime());
+				assertEquals(pp.travelledNodes.size(), cursors[i].getNodesReached());
+				assertEquals(paths.get(i).size(), cursors[i].getRemainingNodes());
+				Point p1 = pathModel.getPosition(agents[i]);
+				Point p2 = routeModel.getPosition(agents[i]);
+				assertEquals(p1.x, p2.x, EPSILON);
+				assertEquals(p1.y, p2.y, EPSILON);
+				assertEquals(pathModel.getLastCrossRoad(agents[i]), routeModel.getLastCrossRoad(agents[i]));
+			}
+		}
+	}
+
+	@Test
+	public void fleetSameAsFollowRoute() throws InterruptedException {
+		RoadModel routeModel = new RoadModel(grid(8, false));
+		RoadModel fleetModel = new RoadModel(grid(8, false));
+		List<Point> nodes = new ArrayList<Point>(routeModel.getGraph().getNodes());
+		Random rng = new Random(456);
+
+		int n = 50;
+		Agent[] agents = new Agent[n];
+		RouteCursor[] routeCursors = new RouteCursor[n];
+		RouteCursor[] fleetCursors = new RouteCursor[n];
+		for (int i = 0; i < n; i++) {
+			agents[i] = new Agent(1000 + rng.nextInt(20000));
+			Point start = nodes.get(rng.nextInt(nodes.size()));
+			routeModel.addObjectAt(agents[i], start);
+			fleetModel.addObjectAt(agents[i], start);
+			routeCursors[i] = new RouteCursor(routeModel);
+			fleetCursors[i] = new RouteCursor(fleetModel);
+			fleetModel.addToFleet(agents[i], fleetCursors[i]);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			for (int step = 0; step < 200; step++) {
+				long time = 1 + rng.nextInt(5000);
+				for (int i = 0; i < n; i++) {
+					if (!routeCursors[i].hasNext() || rng.nextInt(20) == 0) {
+						Point dest = nodes.get(rng.nextInt(nodes.size()));
+						List<Point> path = routeModel.getShortestPathTo(agents[i], dest);
+						routeCursors[i].setRoute(path);
+						fleetCursors[i].setRoute(path);
+					}
+					routeModel.followRoute(agents[i], routeCursors[i], time);
+				}
+				if (step % 2 == 0) {
+					fleetModel.moveFleet(time, executor);
+				} else {
+					fleetModel.moveFleet(time);
+				}
+				for (int i = 0; i < n; i++) {
+					assertEquals(routeCursors[i].getDistance(), fleetCursors[i].getDistance(), 0);
+					assertEquals(routeCursors[i].getTime(), fleetCursors[i].getTime());
+					assertEquals(routeCursors[i].getNodesReached(), fleetCursors[i].getNodesReached());
+					assertEquals(routeModel.getPosition(agents[i]), fleetModel.getPosition(agents[i]));
+				}
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void fleetWithInvalidRoute() {
+		Agent agent1 = new Agent(5);
+		Agent agent2 = new Agent(5);
+		Agent agent3 = new Agent(5);
+		model.addObjectAt(agent1, A);
+		model.addObjectAt(agent2, A);
+		model.addObjectAt(agent3, C);
+		RouteCursor c1 = new RouteCursor(model);
+		RouteCursor c2 = new RouteCursor(model);
+		RouteCursor c3 = new RouteCursor(model);
+		c1.setRoute(asList(B));
+		c2.setRoute(asList(D));
+		c3.setRoute(asList(D));
+		model.addToFleet(agent1, c1);
+		model.addToFleet(agent2, c2);
+		model.addToFleet(agent3, c3);
+
+		boolean fail = false;
+		try {
+			model.moveFleet(TimeUnit.H.toMs(1));
+		} catch (IllegalArgumentException e) {
+			fail = true;
+		}
+		assertTrue(fail);
+		// the other objects are moved
+		assertEquals(new Point(0, 5), model.getPosition(agent1));
+		assertEquals(A, model.getPosition(agent2));
+		assertEquals(0, c2.getDistance(), 0);
+		assertEquals(1, c2.getRemainingNodes());
+		assertEquals(new Point(10, 5), model.getPosition(agent3));
+	}
+
+	@Test
+	public void fleetMembership() {
+		Agent agent1 = new Agent(5);
+		Agent agent2 = new Agent(5);
+		model.addObjectAt(agent1, A);
+		model.addObjectAt(agent2, A);
+		RouteCursor c1 = new RouteCursor(model);
+		RouteCursor c2 = new RouteCursor(model);
+		c1.setRoute(asList(B));
+		c2.setRoute(asList(B));
+		model.addToFleet(agent1, c1);
+		model.addToFleet(agent2, c2);
+
+		model.removeObject(agent1);
+		assertFalse(model.removeFromFleet(agent1));
+		model.moveFleet(TimeUnit.H.toMs(1));
+		assertEquals(new Point(0, 5), model.getPosition(agent2));
+		assertEquals(0, c1.getDistance(), 0);
+
+		assertTrue(model.removeFromFleet(agent2));
+		model.moveFleet(TimeUnit.H.toMs(1));
+		assertEquals(new Point(0, 5), model.getPosition(agent2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void fleetObjectNotInModel() {
+		model.addToFleet(new Agent(5), new RouteCursor(model));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void fleetObjectAddedTwice() {
+		Agent agent = new Agent(5);
+		model.addObjectAt(agent, A);
+		model.addToFleet(agent, new RouteCursor(model));
+		model.addToFleet(agent, new RouteCursor(model));
+	}
+
+	/**
+	 * @param stretch <code>true</code> to give the connections lengths that
+	 *            differ from the straight-line distance.
+	 */
+	static Graph<MultiAttributeEdgeData> grid(int size, boolean stretch) {
+		Graph<MultiAttributeEdgeData> g = new MultimapGraph<MultiAttributeEdgeData>();
+		Random rng = new Random(size);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				Point p = new Point(x * 3, y * 2);
+				if (x + 1 < size) {
+					connect(g, p, new Point(x * 3 + 3, y * 2), stretch, rng);
+				}
+				if (y + 1 < size) {
+					connect(g, p, new Point(x * 3, y * 2 + 2), stretch, rng);
+				}
+			}
+		}
+		return g;
+	}
+
+	static void connect(Graph<MultiAttributeEdgeData> g, Point a, Point b, boolean stretch, Random rng) {
+		double limit = rng.nextBoolean() ? Double.NaN : 2000 + rng.nextInt(10000);
+		double length = Point.distance(a, b) * (stretch ? 1 + rng.nextDouble() : 1);
+		g.addConnection(a, b, new MultiAttributeEdgeData(length, limit));
+		g.addConnection(b, a, new MultiAttributeEdgeData(length, limit));
+	}
+
+	static class Agent implements MovingRoadUser {
+		private final double speed;
+
+		Agent(double speed) {
+			this.speed = speed;
+		}
+
+		@Override
+		public void initRoadUser(RoadModel model) {}
+
+		@Override
+		public double getSpeed() {
+			return speed;
+		}
+	}
+}
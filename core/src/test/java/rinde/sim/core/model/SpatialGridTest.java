@@ -0,0 +1,110 @@
+package rinde.sim.core.model;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Test;
+
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.Point;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class SpatialGridTest {
+
+	static final Function<Point, Point> IDENTITY = new Function<Point, Point>() {
+		@Override
+		public Point apply(Point input) {
+			return input;
+		}
+	};
+
+	@Test
+	public void compareWithLinearScan() {
+		RandomGenerator rng = new MersenneTwister(123);
+		SpatialGrid<Point> grid = new SpatialGrid<Point>(7.5);
+		List<Point> points = new ArrayList<Point>();
+		for (int i = 0; i < 500; i++) {
+			// rounded coordinates to get equal distances
+			Point p = new Point(Math.round(rng.nextDouble() * 100), Math.round(rng.nextDouble() * 100));
+			if (!points.contains(p)) {
+				points.add(p);
+				grid.put(p, p.x, p.y);
+			}
+		}
+		assertEquals(points.size(), grid.size());
+
+		Predicate<Point> evenX = new Predicate<Point>() {
+			@Override
+			public boolean apply(Point input) {
+				return ((long) input.x) % 2 == 0;
+			}
+		};
+		for (int i = 0; i < 100; i++) {
+			Point pos = new Point(rng.nextDouble() * 140 - 20, rng.nextDouble() * 140 - 20);
+			int n = rng.nextInt(20);
+			assertEquals(Graphs.findClosestObjects(pos, points, IDENTITY, n), grid.nearest(pos.x, pos.y, n, Predicates.alwaysTrue()));
+			List<Point> even = new ArrayList<Point>();
+			for (Point p : points) {
+				if (evenX.apply(p)) {
+					even.add(p);
+				}
+			}
+			assertEquals(Graphs.findClosestObjects(pos, even, IDENTITY, n), grid.nearest(pos.x, pos.y, n, evenX));
+
+			double radius = rng.nextDouble() * 30;
+			List<Point> within = new ArrayList<Point>();
+			for (Point p : points) {
+				if (Point.distance(p, pos) < radius) {
+					within.add(p);
+				}
+			}
+			assertEquals(within, grid.withinRadius(pos.x, pos.y, radius, Predicates.alwaysTrue()));
+		}
+	}
+
+	@Test
+	public void moveAndRemove() {
+		SpatialGrid<String> grid = new SpatialGrid<String>(1);
+		grid.put("a", 0, 0);
+		grid.put("b", 5, 5);
+		grid.put("c", 10, 10);
+		assertEquals(asList("a", "b"), grid.nearest(1, 1, 2, Predicates.alwaysTrue()));
+
+		grid.put("a", 20, 20);
+		assertEquals(asList("b", "c"), grid.nearest(1, 1, 2, Predicates.alwaysTrue()));
+		assertEquals(asList("a", "c"), grid.withinRadius(15, 15, 8, Predicates.alwaysTrue()));
+
+		grid.remove("c");
+		assertEquals(asList("b", "a"), grid.nearest(1, 1, 5, Predicates.alwaysTrue()));
+		assertEquals(2, grid.size());
+
+		grid.clear();
+		assertEquals(Collections.emptyList(), grid.nearest(1, 1, 5, Predicates.alwaysTrue()));
+	}
+
+	@Test
+	public void ties() {
+		SpatialGrid<String> grid = new SpatialGrid<String>(2);
+		grid.put("d", 0, 3);
+		grid.put("a", 3, 0);
+		grid.put("c", -3, 0);
+		grid.put("b", 0, -3);
+		assertEquals(asList("d", "a", "c"), grid.nearest(0, 0, 3, Predicates.alwaysTrue()));
+		// moving does not change the order of addition
+		grid.put("d", 0, 3);
+		assertEquals(asList("d", "a"), grid.nearest(0, 0, 2, Predicates.alwaysTrue()));
+	}
+}
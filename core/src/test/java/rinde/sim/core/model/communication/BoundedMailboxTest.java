@@ -0,0 +1,150 @@
+package rinde.sim.core.model.communication;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rinde.sim.core.model.communication.BoundedMailbox.OverflowPolicy;
+
+public class BoundedMailboxTest {
+
+	@Test
+	public void testReceive() {
+		BoundedMailbox box = new BoundedMailbox(4);
+		Message msg = new Text(1);
+		assertTrue(box.receive(msg));
+		assertFalse(box.receive(msg));
+		assertEquals(1, box.size());
+		assertTrue(box.receive(new Text(2)));
+		assertFalse(box.receive(new Text(2)));
+		assertEquals(2, box.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void addingNull() {
+		new BoundedMailbox(4).receive(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCapacity() {
+		new BoundedMailbox(0);
+	}
+
+	@Test
+	public void dropOldest() {
+		BoundedMailbox box = new BoundedMailbox(3, OverflowPolicy.DROP_OLDEST);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(box.receive(new Text(i)));
+		}
+		assertEquals(2, box.getDropped());
+		assertEquals(Arrays.asList(new Text(2), new Text(3), new Text(4)), drain(box));
+		// a dropped message is no longer a duplicate
+		assertTrue(box.receive(new Text(0)));
+	}
+
+	@Test
+	public void dropNewest() {
+		BoundedMailbox box = new BoundedMailbox(3, OverflowPolicy.DROP_NEWEST);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i < 3, box.receive(new Text(i)));
+		}
+		// duplicates are not counted as dropped
+		assertFalse(box.receive(new Text(0)));
+		assertEquals(2, box.getDropped());
+		assertEquals(Arrays.asList(new Text(0), new Text(1), new Text(2)), drain(box));
+	}
+
+	@Test
+	public void drainTo() {
+		BoundedMailbox box = new BoundedMailbox(2);
+		List<Message> target = new ArrayList<Message>();
+		assertEquals(0, box.drainTo(target));
+		box.receive(new Text(1));
+		box.receive(new Text(2));
+		box.receive(new Text(3));
+		assertEquals(2, box.drainTo(target));
+		assertTrue(box.isEmpty());
+		box.receive(new Text(2));
+		assertEquals(1, box.drainTo(target));
+		assertEquals(Arrays.asList(new Text(2), new Text(3), new Text(2)), target);
+		assertEquals(Arrays.asList(), new ArrayList<Message>(box.getMessages()));
+	}
+
+	/**
+	 * Compares the mailbox with a simple reference implementation, the
+	 * messages have colliding hash codes to exercise the hash table.
+	 */
+	@Test
+	public void sameAsReference() {
+		Random r = new Random(123);
+		for (OverflowPolicy policy : OverflowPolicy.values()) {
+			for (int capacity : new int[] { 1, 3, 8, 50 }) {
+				BoundedMailbox box = new BoundedMailbox(capacity, policy);
+				LinkedHashSet<Message> reference = new LinkedHashSet<Message>();
+				long dropped = 0;
+				for (int i = 0; i < 5000; i++) {
+					if (r.nextInt(100) == 0) {
+						assertEquals(new ArrayList<Message>(reference), drain(box));
+						reference.clear();
+					}
+					Message m = new Text(r.nextInt(capacity * 3));
+					boolean inserted = !reference.contains(m);
+					if (inserted && reference.size() == capacity) {
+						dropped++;
+						if (policy == OverflowPolicy.DROP_NEWEST) {
+							inserted = false;
+						} else {
+							Iterator<Message> it = reference.iterator();
+							it.next();
+							it.remove();
+						}
+					}
+					if (inserted) {
+						reference.add(m);
+					}
+					assertEquals(inserted, box.receive(m));
+					assertEquals(reference.size(), box.size());
+				}
+				assertEquals(dropped, box.getDropped());
+				assertEquals(new ArrayList<Message>(reference), drain(box));
+			}
+		}
+	}
+
+	static List<Message> drain(BoundedMailbox box) {
+		List<Message> list = new ArrayList<Message>();
+		box.drainTo(list);
+		return list;
+	}
+
+	static class Text extends Message {
+		final int id;
+
+		Text(int id) {
+			super(null);
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Text && ((Text) o).id == id;
+		}
+
+		@Override
+		public int hashCode() {
+			return (id % 5) * 0x61c88647;
+		}
+
+		@Override
+		public String toString() {
+			return "Text" + id;
+		}
+	}
+}
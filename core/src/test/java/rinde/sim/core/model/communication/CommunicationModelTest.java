@@ -4,8 +4,12 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.math.random.MersenneTwister;
 import org.apache.commons.math.random.RandomGenerator;
@@ -15,7 +19,10 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import rinde.sim.core.IndependentTickListener;
+import rinde.sim.core.Simulator;
 import rinde.sim.core.graph.Point;
+import rinde.sim.util.RandomStreams;
 
 @RunWith(Parameterized.class)
 public class CommunicationModelTest {
@@ -38,8 +45,8 @@ public class CommunicationModelTest {
 	@Parameters
 	public static List<Object[]> parameters() {
 		return Arrays.asList(new Object[][]{
-				{CommunicationModel.class, 5}, {CommunicationModel2.class, 5},
-				{CommunicationModel.class, 50}, {CommunicationModel2.class, 50}
+				{CommunicationModel.class, 5}, {CommunicationModel2.class, 5}, {GridCommunicationModel.class, 5},
+				{CommunicationModel.class, 50}, {CommunicationModel2.class, 50}, {GridCommunicationModel.class, 50}
 		});
 //		return Arrays.asList(new Object[][]{ {CommunicationModel2.class}});
 	}
@@ -287,6 +294,205 @@ public class CommunicationModelTest {
 	}
 	
 
+	@Test
+	public void parallelTicksAreDeterministic() throws Exception {
+		List<String> sequential = simulate(null);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertEquals(sequential, simulate(executor));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Simulates independent users that broadcast and send each tick, returns
+	 * the received messages.
+	 */
+	List<String> simulate(ExecutorService executor) throws Exception {
+		Simulator sim = new Simulator(new MersenneTwister(123), 100);
+		sim.register(type.getConstructor(RandomGenerator.class).newInstance(new MersenneTwister(123)));
+		sim.configure();
+		sim.setTickExecutor(executor);
+		final List<String> received = new ArrayList<String>();
+		Random r = new Random(7);
+		final List<IndependentUser> users = new ArrayList<IndependentUser>();
+		for (int i = 0; i < 200; i++) {
+			final int id = i;
+			IndependentUser u = new IndependentUser(new Point(r.nextDouble() * 100, r.nextDouble() * 100), radius, 0.8, new Callback() {
+				@Override
+				void callBack(Message m) {
+					received.add(m.getSender() + "->" + id);
+				}
+			}) {
+				@Override
+				public void tick(long currentTime, long timeStep) {
+					api.broadcast(new Message(this) {});
+					api.send(users.get((id + 1) % users.size()), new Message(this) {});
+				}
+
+				@Override
+				public String toString() {
+					return Integer.toString(id);
+				}
+			};
+			users.add(u);
+			sim.register(u);
+		}
+		for (int i = 0; i < 5; i++) {
+			sim.tick();
+		}
+		return received;
+	}
+
+	/**
+	 * A user that sends and then moves in the same tick reaches the users that
+	 * are in range of the position from which it sent, also when it is ticked
+	 * concurrently.
+	 */
+	@Test
+	public void sendThenMove() throws Exception {
+		assertEquals(Arrays.asList("near"), sendThenMove(null));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			assertEquals(Arrays.asList("near"), sendThenMove(executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	List<String> sendThenMove(ExecutorService executor) throws Exception {
+		Simulator sim = new Simulator(new MersenneTwister(123), 100);
+		sim.register(type.getConstructor(RandomGenerator.class).newInstance(new MersenneTwister(123)));
+		sim.configure();
+		sim.setTickExecutor(executor);
+		final List<String> received = new ArrayList<String>();
+		final IndependentUser near = receiver(new Point(5, 0), "near", received);
+		final IndependentUser far = receiver(new Point(50, 0), "far", received);
+		sim.register(new IndependentUser(new Point(0, 0), 10, 1, null) {
+			@Override
+			public void tick(long currentTime, long timeStep) {
+				api.send(near, new Message(this) {});
+				api.send(far, new Message(this) {});
+				position = new Point(45, 0);
+			}
+		});
+		sim.register(near);
+		sim.register(far);
+		sim.tick();
+		return received;
+	}
+
+	IndependentUser receiver(Point position, final String name, final List<String> received) {
+		return new IndependentUser(position, 10, 1, new Callback() {
+			@Override
+			void callBack(Message m) {
+				received.add(name);
+			}
+		}) {
+			@Override
+			public void tick(long currentTime, long timeStep) {}
+		};
+	}
+
+	@Test
+	public void randomStreamsIndependentOfSendOrder() throws Exception {
+		assertEquals(receivers(false), receivers(true));
+	}
+
+	/**
+	 * Two senders with unreliable links broadcast to the same users, returns
+	 * which users received the messages of which sender.
+	 */
+	List<String> receivers(boolean reversed) throws Exception {
+		model = type.getConstructor(RandomStreams.class).newInstance(new RandomStreams(123));
+		final List<String> received = new ArrayList<String>();
+		final List<TestCommunicationUser> senders = new ArrayList<TestCommunicationUser>();
+		for (int i = 0; i < 2; i++) {
+			TestCommunicationUser s = new TestCommunicationUser(new Point(0, 0), 50, 0.7, null);
+			senders.add(s);
+			model.register(s);
+		}
+		for (int i = 0; i < 50; i++) {
+			final int id = i;
+			model.register(new TestCommunicationUser(new Point(1, 1), 50, 0.7, new Callback() {
+				@Override
+				void callBack(Message m) {
+					received.add(senders.indexOf(m.getSender()) + "->" + id);
+				}
+			}));
+		}
+		List<TestCommunicationUser> order = new ArrayList<TestCommunicationUser>(senders);
+		if (reversed) {
+			Collections.reverse(order);
+		}
+		for (int k = 0; k < 5; k++) {
+			for (TestCommunicationUser s : order) {
+				model.broadcast(new Message(s) {});
+			}
+		}
+		model.afterTick(0, 100);
+		Collections.sort(received);
+		return received;
+	}
+
+	@Test
+	public void immutableBroadcastIsShared() {
+		final List<Message> received = new ArrayList<Message>();
+		Callback c = new Callback() {
+			@Override
+			void callBack(Message m) {
+				received.add(m);
+			}
+		};
+		TestCommunicationUser sender = new TestCommunicationUser(new Point(0, 0), 10, 1, null);
+		model.register(sender);
+		for (int i = 0; i < 5; i++) {
+			model.register(new TestCommunicationUser(new Point(1, 1), 10, 1, c));
+		}
+		Message immutable = new TestImmutableMessage(sender);
+		model.broadcast(immutable);
+		model.afterTick(0, 100);
+		assertEquals(5, received.size());
+		for (Message m : received) {
+			assertSame(immutable, m);
+		}
+
+		received.clear();
+		Message mutable = new Message(sender) {};
+		model.broadcast(mutable);
+		model.afterTick(100, 100);
+		assertEquals(5, received.size());
+		assertEquals(5, new HashSet<Message>(received).size());
+		assertFalse(received.contains(mutable));
+	}
+
+	@Test
+	public void unregisterRemovesSharedDeliveries() {
+		final List<Message> received = new ArrayList<Message>();
+		Callback c = new Callback() {
+			@Override
+			void callBack(Message m) {
+				received.add(m);
+			}
+		};
+		TestCommunicationUser sender = new TestCommunicationUser(new Point(0, 0), 10, 1, null);
+		TestCommunicationUser recipient = new TestCommunicationUser(new Point(1, 1), 10, 1, c);
+		TestCommunicationUser leaving = new TestCommunicationUser(new Point(1, 1), 10, 1, c);
+		model.register(sender);
+		model.register(recipient);
+		model.register(leaving);
+		model.broadcast(new TestImmutableMessage(sender));
+		model.broadcast(new TestImmutableMessage(leaving));
+		model.tick(0, 100);
+		model.unregister(leaving);
+		model.afterTick(0, 100);
+		assertEquals(1, received.size());
+		assertSame(sender, received.get(0).getSender());
+	}
+
 	@Test
 	public void testGetSupportedType() {
 		assertEquals(CommunicationUser.class, model.getSupportedType());
@@ -337,6 +543,28 @@ public class CommunicationModelTest {
 		}
 	}
 	
+	abstract class IndependentUser extends TestCommunicationUser implements IndependentTickListener {
+		CommunicationAPI api;
+
+		public IndependentUser(Point position, double radius, double reliability, Callback c) {
+			super(position, radius, reliability, c);
+		}
+
+		@Override
+		public void setCommunicationAPI(CommunicationAPI api) {
+			this.api = api;
+		}
+
+		@Override
+		public void afterTick(long currentTime, long timeStep) {}
+	}
+
+	static class TestImmutableMessage extends Message implements ImmutableMessage {
+		TestImmutableMessage(CommunicationUser sender) {
+			super(sender);
+		}
+	}
+
 	abstract class Callback {
 		abstract void callBack(Message m);
 	}
@@ -0,0 +1,131 @@
+package rinde.sim.core.model.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+
+public class DeliveryQueueTest {
+
+	DeliveryQueue queue;
+	List<String> received;
+	User a, b, c;
+
+	@Before
+	public void setUp() {
+		queue = new DeliveryQueue();
+		received = new ArrayList<String>();
+		a = new User("a");
+		b = new User("b");
+		c = new User("c");
+	}
+
+	@Test
+	public void deliverInOrder() {
+		for (int i = 0; i < 20; i++) {
+			queue.add(b, new Text(a, "" + i));
+		}
+		queue.add(new Text(a, "x"), new CommunicationUser[] { b, c });
+		queue.add(new Text(a, "empty"), new CommunicationUser[0]);
+		assertEquals(22, queue.size());
+		queue.deliver();
+		assertTrue(queue.isEmpty());
+		assertEquals(22, received.size());
+		assertEquals("a:0->b", received.get(0));
+		assertEquals("a:19->b", received.get(19));
+		assertEquals(Arrays.asList("a:x->b", "a:x->c"), received.subList(20, 22));
+
+		queue.deliver();
+		assertEquals(22, received.size());
+	}
+
+	@Test
+	public void remove() {
+		queue.add(b, new Text(a, "1"));
+		queue.add(new Text(a, "2"), new CommunicationUser[] { b, c });
+		queue.add(new Text(b, "3"), new CommunicationUser[] { a, c });
+		queue.add(c, new Text(a, "4"));
+		queue.add(new Text(a, "5"), new CommunicationUser[] { b });
+		assertEquals(7, queue.size());
+
+		queue.remove(b);
+		assertEquals(2, queue.size());
+		queue.deliver();
+		assertEquals(Arrays.asList("a:2->c", "a:4->c"), received);
+	}
+
+	@Test
+	public void exceptionDoesNotStopDelivery() {
+		User failing = new User("f") {
+			@Override
+			public void receive(Message message) {
+				throw new RuntimeException();
+			}
+		};
+		queue.add(new Text(a, "1"), new CommunicationUser[] { failing, b });
+		queue.deliver();
+		assertEquals(Arrays.asList("a:1->b"), received);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nullRecipient() {
+		queue.add(null, new Text(a, "1"));
+	}
+
+	class User implements CommunicationUser {
+		final String name;
+
+		User(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void setCommunicationAPI(CommunicationAPI api) {}
+
+		@Override
+		public Point getPosition() {
+			return null;
+		}
+
+		@Override
+		public double getRadius() {
+			return 0;
+		}
+
+		@Override
+		public double getReliability() {
+			return 1;
+		}
+
+		@Override
+		public void receive(Message message) {
+			received.add(message + "->" + name);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	static class Text extends Message implements ImmutableMessage {
+		final String text;
+
+		Text(CommunicationUser sender, String text) {
+			super(sender);
+			this.text = text;
+		}
+
+		@Override
+		public String toString() {
+			return sender + ":" + text;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package rinde.sim.core.model.communication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.util.RandomStreams;
+
+public class GridCommunicationModelTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCellSize() {
+		new GridCommunicationModel(new MersenneTwister(123), 0);
+	}
+
+	@Test
+	public void sameDeliveriesAsCommunicationModel() {
+		for (int seed = 0; seed < 5; seed++) {
+			List<String> expected = deliveries(new CommunicationModel(new RandomStreams(seed)), seed);
+			assertTrue(expected.size() > 0);
+			assertEquals(expected, deliveries(new GridCommunicationModel(new RandomStreams(seed)), seed));
+			assertEquals(expected, deliveries(new GridCommunicationModel(new RandomStreams(seed), 3), seed));
+			assertEquals(expected, deliveries(new GridCommunicationModel(new RandomStreams(seed), 1000), seed));
+		}
+	}
+
+	@Test
+	public void typedBroadcast() {
+		GridCommunicationModel model = new GridCommunicationModel(new MersenneTwister(123));
+		List<String> received = new ArrayList<String>();
+		User sender = new User(0, new Point(0, 0), 10, received);
+		User other = new User(1, new Point(1, 1), 10, received);
+		Special special = new Special(2, new Point(2, 2), 10, received);
+		User unplaced = new User(3, null, 10, received);
+		model.register(sender);
+		model.register(other);
+		model.register(special);
+		model.register(unplaced);
+
+		model.broadcast(new Message(sender) {}, Special.class);
+		assertEquals(0, model.sendQueue.size());
+		model.afterTick(0, 100);
+		assertEquals(Collections.singletonList("0->2"), received);
+	}
+
+	@Test
+	public void unregisteredSenderDoesNotBroadcast() {
+		GridCommunicationModel model = new GridCommunicationModel(new MersenneTwister(123));
+		List<String> received = new ArrayList<String>();
+		User sender = new User(0, new Point(0, 0), 10, received);
+		model.register(sender);
+		model.register(new User(1, new Point(1, 1), 10, received));
+		model.broadcast(new Message(sender) {});
+		model.unregister(sender);
+		model.afterTick(0, 100);
+		assertTrue(received.isEmpty());
+	}
+
+	/**
+	 * Users with different radii and unreliable links broadcast a number of
+	 * times, returns the deliveries in order of occurrence.
+	 */
+	static List<String> deliveries(CommunicationModel model, int seed) {
+		Random r = new Random(seed);
+		List<String> received = new ArrayList<String>();
+		List<User> users = new ArrayList<User>();
+		for (int i = 0; i < 300; i++) {
+			Point p = i % 50 == 0 ? null : new Point(r.nextDouble() * 100, r.nextDouble() * 100);
+			User u = new User(i, p, r.nextDouble() * (i % 7 == 0 ? 60 : 10), received);
+			u.reliability = 0.5 + r.nextDouble() / 2;
+			users.add(u);
+			model.register(u);
+		}
+		for (int k = 0; k < 3; k++) {
+			for (User u : users) {
+				if (r.nextDouble() < .3) {
+					model.broadcast(new Message(u) {});
+				}
+			}
+		}
+		model.afterTick(0, 100);
+		Collections.sort(received);
+		return received;
+	}
+
+	static class User implements CommunicationUser {
+		final int id;
+		final Point position;
+		final double radius;
+		final List<String> received;
+		double reliability = 1;
+
+		User(int id, Point position, double radius, List<String> received) {
+			this.id = id;
+			this.position = position;
+			this.radius = radius;
+			this.received = received;
+		}
+
+		@Override
+		public void setCommunicationAPI(CommunicationAPI api) {}
+
+		@Override
+		public Point getPosition() {
+			return position;
+		}
+
+		@Override
+		public double getRadius() {
+			return radius;
+		}
+
+		@Override
+		public double getReliability() {
+			return reliability;
+		}
+
+		@Override
+		public void receive(Message message) {
+			received.add(((User) message.getSender()).id + "->" + id);
+		}
+	}
+
+	static class Special extends User {
+		Special(int id, Point position, double radius, List<String> received) {
+			super(id, position, radius, received);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package rinde.sim.scenario;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.junit.Before;
+import org.junit.Test;
+
+import rinde.sim.core.Simulator;
+import rinde.sim.event.Event;
+import rinde.sim.event.pdp.StandardType;
+import rinde.sim.scenario.BatchRunner.Experiment;
+import rinde.sim.scenario.BatchRunner.Progress;
+import rinde.sim.scenario.BatchRunner.Result;
+import rinde.sim.scenario.BatchRunner.ResultListener;
+import rinde.sim.scenario.BatchRunner.Run;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class BatchRunnerTest {
+
+	Scenario scenario;
+	Experiment experiment;
+
+	@Before
+	public void setUp() {
+		scenario = new Scenario();
+		scenario.add(new TimedEvent(StandardType.ADD_TRUCK, 0));
+		scenario.add(new TimedEvent(StandardType.ADD_TRUCK, 10));
+		scenario.add(new TimedEvent(StandardType.ADD_PACKAGE, 1000));
+
+		experiment = new Experiment() {
+			@Override
+			public Map<String, ?> perform(Scenario scen, final Run run) throws Exception {
+				if (run.get("trucks").equals(-1)) {
+					throw new IllegalArgumentException("negative trucks");
+				}
+				final int[] events = new int[1];
+				ScenarioController controller = new ScenarioController(scen, -1) {
+					{
+						initialize();
+					}
+
+					@Override
+					protected Simulator createSimulator() {
+						Simulator sim = new Simulator(new MersenneTwister(run.getSeed()), 1);
+						sim.setEventDriven(true);
+						return sim;
+					}
+
+					@Override
+					protected boolean handleAddTruck(Event e) {
+						events[0] += (Integer) run.get("trucks");
+						return true;
+					}
+
+					@Override
+					protected boolean handleAddPackage(Event e) {
+						events[0]++;
+						return true;
+					}
+				};
+				controller.run();
+				Map<String, Object> m = new LinkedHashMap<String, Object>();
+				m.put("events", events[0]);
+				m.put("time", controller.getSimulator().getCurrentTime());
+				m.put("random", run.createRandomGenerator().nextDouble());
+				return m;
+			}
+		};
+	}
+
+	@Test
+	public void grid() throws InterruptedException {
+		final List<Integer> order = new ArrayList<Integer>();
+		final Progress[] last = new Progress[1];
+		List<Result> results = new BatchRunner(scenario, experiment).addParameter("trucks", 1, 2)
+				.addParameter("speed", "slow", "fast").setReplications(3).setThreads(4).addListener(new ResultListener() {
+					@Override
+					public void runFinished(Result result, Progress progress) {
+						order.add(result.getRun().getIndex());
+					}
+
+					@Override
+					public void batchFinished(Progress progress) {
+						last[0] = progress;
+					}
+				}).run();
+
+		assertEquals(12, results.size());
+		for (int i = 0; i < 12; i++) {
+			Result r = results.get(i);
+			assertEquals(i, r.getRun().getIndex());
+			assertEquals(i, order.get(i).intValue());
+			assertEquals(i / 3, r.getRun().getConfiguration());
+			assertEquals(i % 3, r.getRun().getReplication());
+			assertFalse(r.isFailed());
+			assertEquals(2 * (Integer) r.getRun().get("trucks") + 1, r.getMeasurements().get("events"));
+			assertEquals(1000L, r.getMeasurements().get("time"));
+			// common random numbers over the configurations
+			assertEquals(results.get(i % 3).getRun().getSeed(), r.getRun().getSeed());
+			assertEquals(results.get(i % 3).getMeasurements().get("random"), r.getMeasurements().get("random"));
+		}
+		assertEquals("fast", results.get(3).getRun().get("speed"));
+		assertEquals("slow", results.get(6).getRun().get("speed"));
+		assertEquals(2, results.get(6).getRun().get("trucks"));
+		assertTrue(results.get(0).getRun().getSeed() != results.get(1).getRun().getSeed());
+
+		assertEquals(12, last[0].getCompleted());
+		assertEquals(0, last[0].getFailed());
+		assertEquals(0, last[0].getEstimatedRemaining());
+	}
+
+	@Test
+	public void reports() throws InterruptedException {
+		StringWriter csv = new StringWriter();
+		StringWriter json = new StringWriter();
+		List<Result> results = new BatchRunner(scenario, experiment).addParameter("trucks", -1, 3).setReplications(2)
+				.setSeed(7).addListener(BatchReports.csv(csv)).addListener(BatchReports.json(json)).run();
+		assertTrue(results.get(0).isFailed());
+		assertNull(results.get(1).getMeasurements());
+		assertEquals(7, results.get(2).getMeasurements().get("events"));
+
+		String[] lines = csv.toString().split("\n");
+		assertEquals(5, lines.length);
+		assertEquals("index,configuration,replication,seed,trucks,duration,events,time,random,error", lines[0]);
+		assertTrue(lines[1].startsWith("0,0,0," + results.get(0).getRun().getSeed() + ",-1,"));
+		assertTrue(lines[1].endsWith(",,,,java.lang.IllegalArgumentException: negative trucks"));
+		assertTrue(lines[3].startsWith("2,1,0," + results.get(2).getRun().getSeed() + ",3,"));
+		assertTrue(lines[3].contains(",7,1000,"));
+
+		String report = json.toString();
+		assertTrue(report.startsWith("{\"runs\":[\n{\"index\":0,"));
+		assertTrue(report.contains("\"error\":\"java.lang.IllegalArgumentException: negative trucks\""));
+		assertTrue(report.contains("{\"configuration\":1,\"parameters\":{\"trucks\":3},\"runs\":2,\"failed\":0,\"mean\":{\"events\":7.0,\"time\":1000.0,"));
+		assertTrue(report.contains("\"stddev\":{\"events\":0.0,\"time\":0.0,"));
+		assertTrue(report.contains("\"summary\":{\"total\":4,\"completed\":4,\"failed\":2,"));
+		assertTrue(report.endsWith("}}\n"));
+	}
+
+	@Test
+	public void errorFailsOnlyItsRun() throws InterruptedException {
+		List<Result> results = new BatchRunner(scenario, new Experiment() {
+			@Override
+			public Map<String, ?> perform(Scenario scen, Run run) throws Exception {
+				if (run.get("trucks").equals(2)) {
+					throw new AssertionError("broken invariant");
+				}
+				return experiment.perform(scen, run);
+			}
+		}).addParameter("trucks", 1, 2, 3).setThreads(2).run();
+		assertEquals(3, results.size());
+		assertFalse(results.get(0).isFailed());
+		assertTrue(results.get(1).isFailed());
+		assertTrue(results.get(1).getFailure() instanceof AssertionError);
+		assertNull(results.get(1).getMeasurements());
+		assertEquals(7, results.get(2).getMeasurements().get("events"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownParameter() throws InterruptedException {
+		new BatchRunner(scenario, experiment).getRuns().get(0).get("trucks");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void duplicateParameter() {
+		new BatchRunner(scenario, experiment).addParameter("a", 1).addParameter("a", 2);
+	}
+}
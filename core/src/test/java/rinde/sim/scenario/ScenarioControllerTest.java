@@ -2,6 +2,10 @@ package rinde.sim.scenario;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.commons.math.random.MersenneTwister;
 import org.junit.Before;
 import org.junit.Test;
@@ -129,6 +133,82 @@ public class ScenarioControllerTest {
 		controller.stop();
 	}
 
+	@Test
+	public void eventDriven() throws ConfigurationException {
+		controller = new TestScenarioController(scenario, -1) {
+			@Override
+			protected Simulator createSimulator() {
+				Simulator sim = super.createSimulator();
+				sim.setEventDriven(true);
+				return sim;
+			}
+
+			@Override
+			protected boolean handleAddPackage(Event e) {
+				return true;
+			}
+
+			@Override
+			protected boolean handleAddTruck(Event e) {
+				return true;
+			}
+
+			@Override
+			protected boolean handleRemoveTruck(Event e) {
+				return true;
+			}
+		};
+		final List<Long> times = new ArrayList<Long>();
+		controller.addListener(new Listener() {
+			@Override
+			public void handleEvent(Event e) {
+				if (e instanceof TimedEvent) {
+					assertEquals(((TimedEvent) e).time, controller.getSimulator().getCurrentTime());
+					times.add(controller.getSimulator().getCurrentTime());
+				}
+			}
+		});
+
+		int steps = 0;
+		while (controller.getSimulator().step()) {
+			steps++;
+		}
+		// the clock jumps from event to event
+		assertEquals(4, steps);
+		assertEquals(Arrays.asList(0L, 0L, 0L, 1L, 5L, 100L), times);
+		assertTrue(controller.isScenarioFinished());
+	}
+
+	@Test
+	public void eventDrivenEndTime() throws ConfigurationException {
+		controller = new TestScenarioController(scenario, 3) {
+			@Override
+			protected Simulator createSimulator() {
+				Simulator sim = super.createSimulator();
+				sim.setEventDriven(true);
+				return sim;
+			}
+
+			@Override
+			protected boolean handleAddPackage(Event e) {
+				return true;
+			}
+
+			@Override
+			protected boolean handleAddTruck(Event e) {
+				return true;
+			}
+
+			@Override
+			protected boolean handleRemoveTruck(Event e) {
+				return true;
+			}
+		};
+		controller.getSimulator().start();
+		assertEquals(3, controller.getSimulator().getCurrentTime());
+		assertFalse(controller.isScenarioFinished());
+	}
+
 	@Test(expected = ConfigurationException.class)
 	public void testNullScenario() throws ConfigurationException {
 		new TestScenarioController(null, -1);
@@ -0,0 +1,195 @@
+package rinde.sim.scenario;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import rinde.sim.core.Simulator;
+import rinde.sim.event.Event;
+import rinde.sim.event.Listener;
+import rinde.sim.event.pdp.StandardType;
+import rinde.sim.scenario.ScenarioBuilder.EventTypeFunction;
+import rinde.sim.scenario.ScenarioBuilder.Generator;
+import rinde.sim.scenario.ScenarioBuilder.MultipleEventGenerator;
+import rinde.sim.scenario.ScenarioBuilder.TimeSeries;
+
+import com.google.common.base.Function;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class StreamingScenarioTest {
+
+	ScenarioBuilder createBuilder() {
+		ScenarioBuilder builder = new ScenarioBuilder(StandardType.ADD_TRUCK, StandardType.ADD_PACKAGE,
+				StandardType.REMOVE_TRUCK);
+		builder.add(new TimeSeries<TimedEvent>(0, 100, 10, new EventTypeFunction(StandardType.ADD_PACKAGE)));
+		builder.add(new MultipleEventGenerator<TimedEvent>(5, 3, new EventTypeFunction(StandardType.ADD_TRUCK)));
+		// not a stream generator and not sorted
+		builder.add(new Generator<TimedEvent>() {
+			@Override
+			public Collection<TimedEvent> generate() {
+				return asList(new TimedEvent(StandardType.REMOVE_TRUCK, 50), new TimedEvent(StandardType.REMOVE_TRUCK, 7));
+			}
+		});
+		return builder;
+	}
+
+	@Test
+	public void sameEventsAsBuild() {
+		List<TimedEvent> expected = createBuilder().build().asList();
+		StreamingScenario scenario = createBuilder().buildStreaming();
+		List<TimedEvent> actual = scenario.asList();
+		assertEquals(expected.size(), actual.size());
+		assertEquals(times(expected), times(actual));
+		assertTrue(actual.containsAll(expected));
+		// asList() uses a copy
+		assertEquals(new TimedEvent(StandardType.ADD_PACKAGE, 0), scenario.peek());
+	}
+
+	@Test
+	public void pollAndCopy() {
+		StreamingScenario scenario = createBuilder().buildStreaming();
+		for (long t : asList(0L, 5L, 5L, 5L, 7L, 10L)) {
+			assertEquals(t, scenario.poll().time);
+		}
+		assertEquals(20, scenario.peek().time);
+		assertEquals(0, scenario.copy().peek().time);
+		assertEquals(createBuilder().build().asList().size(), scenario.asList().size());
+
+		scenario.clear();
+		assertNull(scenario.peek());
+		assertNull(scenario.poll());
+	}
+
+	@Test
+	public void lazy() {
+		final int[] created = new int[1];
+		ScenarioBuilder builder = new ScenarioBuilder(StandardType.ADD_PACKAGE);
+		for (int i = 0; i < 3; i++) {
+			builder.add(new TimeSeries<TimedEvent>(i, 1000000, 3, new Function<Long, TimedEvent>() {
+				@Override
+				public TimedEvent apply(Long input) {
+					created[0]++;
+					return new TimedEvent(StandardType.ADD_PACKAGE, input);
+				}
+			}));
+		}
+		StreamingScenario scenario = builder.buildStreaming();
+		assertEquals(0, created[0]);
+		assertEquals(0, scenario.peek().time);
+		assertEquals(3, created[0]);
+		for (int i = 0; i < 30; i++) {
+			assertEquals(i, scenario.poll().time);
+		}
+		// only the next event of every source exists
+		assertEquals(33, created[0]);
+	}
+
+	@Test
+	public void controller() throws ConfigurationException {
+		ScenarioController controller = new TestScenarioController(createBuilder().buildStreaming(), -1) {
+			@Override
+			protected Simulator createSimulator() {
+				Simulator sim = super.createSimulator();
+				sim.setEventDriven(true);
+				return sim;
+			}
+
+			@Override
+			protected boolean handleAddPackage(Event e) {
+				return true;
+			}
+
+			@Override
+			protected boolean handleAddTruck(Event e) {
+				return true;
+			}
+
+			@Override
+			protected boolean handleRemoveTruck(Event e) {
+				return true;
+			}
+		};
+		final List<Long> times = new ArrayList<Long>();
+		controller.addListener(new Listener() {
+			@Override
+			public void handleEvent(Event e) {
+				if (e instanceof TimedEvent) {
+					times.add(((TimedEvent) e).time);
+				}
+			}
+		});
+		while (controller.getSimulator().step()) {}
+		assertEquals(times(createBuilder().build().asList()), times);
+		assertTrue(controller.isScenarioFinished());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void notInTimeOrder() {
+		List<TimedEvent> events = asList(new TimedEvent(StandardType.ADD_TRUCK, 5), new TimedEvent(
+				StandardType.ADD_TRUCK, 4));
+		StreamingScenario scenario = new StreamingScenario(Collections.singleton(events), StandardType.values());
+		scenario.poll();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedType() {
+		List<TimedEvent> events = asList(new TimedEvent(StandardType.ADD_TRUCK, 5));
+		new StreamingScenario(Collections.singleton(events), StandardType.ADD_PACKAGE).peek();
+	}
+
+	@Test
+	public void size() {
+		StreamingScenario scenario = createBuilder().buildStreaming();
+		int size = createBuilder().build().size();
+		assertEquals(size, scenario.size());
+		scenario.poll();
+		// like asList() the size includes the events that were polled
+		assertEquals(size, scenario.size());
+	}
+
+	@Test
+	public void copyingConstructor() {
+		StreamingScenario streaming = createBuilder().buildStreaming();
+		Scenario eager = new Scenario(streaming);
+		assertEquals(Scenario.class, eager.getClass());
+		assertEquals(streaming.size(), eager.size());
+		assertEquals(times(streaming.asList()), times(eager.asList()));
+		assertEquals(0, eager.poll().time);
+	}
+
+	@Test
+	public void equalToEagerScenario() {
+		StreamingScenario streaming = createBuilder().buildStreaming();
+		Scenario eager = createBuilder().build();
+		assertEquals(eager, streaming);
+		assertEquals(streaming, eager);
+		assertEquals(eager.hashCode(), streaming.hashCode());
+		eager.poll();
+		assertFalse(streaming.equals(eager));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void add() {
+		createBuilder().buildStreaming().add(new TimedEvent(StandardType.ADD_TRUCK, 5));
+	}
+
+	static List<Long> times(List<TimedEvent> events) {
+		List<Long> times = new ArrayList<Long>();
+		for (TimedEvent e : events) {
+			times.add(e.time);
+		}
+		return times;
+	}
+}
@@ -0,0 +1,227 @@
+package rinde.sim.serializers;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rinde.sim.core.graph.CompactGraph;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.LengthEdgeData;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.MultimapGraph;
+import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.RoadModel;
+import rinde.sim.util.TrivialRoadUser;
+
+import com.google.common.io.Files;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class BinaryGraphSerializerTest {
+
+	Graph<MultiAttributeEdgeData> source;
+	Point A, B, C, D, E;
+	File file;
+
+	@Before
+	public void setUp() throws IOException {
+		source = new MultimapGraph<MultiAttributeEdgeData>();
+		A = new Point(0, 0);
+		B = new Point(10, 0);
+		C = new Point(10, 10);
+		D = new Point(0, 10);
+		E = new Point(20, 20);
+		Graphs.addBiPath(source, A, B, C, D, A);
+		source.addConnection(C, E, new MultiAttributeEdgeData(30, 5));
+		source.setEdgeData(A, B, new MultiAttributeEdgeData(12));
+		source.setEdgeData(B, A, new MultiAttributeEdgeData(12, 50));
+		file = File.createTempFile("graph", ".bin");
+		file.deleteOnExit();
+	}
+
+	MappedGraph<MultiAttributeEdgeData> writeAndMap(Graph<?> graph) throws IOException {
+		BinaryGraphSerializer.write(graph, file);
+		return BinaryGraphSerializer.map(file, CompactGraph.MULTI_ATTRIBUTE_DATA);
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		MappedGraph<MultiAttributeEdgeData> graph = writeAndMap(source);
+		assertTrue(graph.equals(source));
+		assertTrue(source.equals(graph));
+		assertEquals(Graphs.hashCode(source), graph.hashCode());
+		assertEquals(source.getNumberOfNodes(), graph.getNumberOfNodes());
+		assertEquals(source.getNumberOfConnections(), graph.getNumberOfConnections());
+		assertEquals(new ArrayList<Point>(source.getNodes()), new ArrayList<Point>(graph.getNodes()));
+		for (Point p : source.getNodes()) {
+			assertTrue(graph.containsNode(p));
+			assertTrue(graph.getNodes().contains(p));
+			assertEquals(new ArrayList<Point>(source.getOutgoingConnections(p)), graph.getOutgoingConnections(p));
+			assertEquals(newHashSet(source.getIncomingConnections(p)), newHashSet(graph.getIncomingConnections(p)));
+		}
+		assertNull(graph.connectionData(A, D));
+		assertEquals(10, graph.connectionLength(A, D), 0);
+		assertEquals(12, graph.connectionLength(A, B), 0);
+		assertTrue(Double.isNaN(graph.connectionMaxSpeed(A, B)));
+		assertEquals(50, graph.connectionMaxSpeed(B, A), 0);
+		assertEquals(new MultiAttributeEdgeData(30, 5), graph.getConnection(C, E).edgeData);
+		assertFalse(graph.hasConnection(E, C));
+		assertFalse(graph.containsNode(new Point(1, 1)));
+		assertTrue(graph.getOutgoingConnections(new Point(1, 1)).isEmpty());
+		assertTrue(graph.getIncomingConnections(null).isEmpty());
+		assertEquals(-1, graph.indexOf(new Point(1, 1)));
+		assertEquals(E, graph.getNode(graph.indexOf(E)));
+	}
+
+	@Test
+	public void negativeZero() throws IOException {
+		MappedGraph<MultiAttributeEdgeData> graph = writeAndMap(source);
+		assertTrue(graph.containsNode(new Point(-0.0, -0.0)));
+		assertTrue(graph.hasConnection(new Point(-0.0, 0), new Point(10, -0.0)));
+	}
+
+	@Test
+	public void otherEdgeData() throws IOException {
+		Graph<LengthEdgeData> lengthGraph = new MultimapGraph<LengthEdgeData>();
+		lengthGraph.addConnection(A, B, new LengthEdgeData(15));
+		lengthGraph.addConnection(B, A);
+		BinaryGraphSerializer.write(lengthGraph, file);
+		MappedGraph<LengthEdgeData> graph = BinaryGraphSerializer.map(file, CompactGraph.LENGTH_DATA);
+		assertTrue(graph.equals(lengthGraph));
+		assertEquals(15, graph.connectionLength(A, B), 0);
+		assertTrue(Double.isNaN(graph.connectionMaxSpeed(A, B)));
+	}
+
+	@Test
+	public void largeGraph() throws IOException {
+		// larger than the write buffer
+		Graph<MultiAttributeEdgeData> grid = new MultimapGraph<MultiAttributeEdgeData>();
+		int n = 60;
+		for (int i = 0; i < n; i++) {
+			for (int j = 1; j < n; j++) {
+				Graphs.addBiPath(grid, new Point(i, j - 1), new Point(i, j));
+				Graphs.addBiPath(grid, new Point(j - 1, i), new Point(j, i));
+			}
+		}
+		MappedGraph<MultiAttributeEdgeData> graph = writeAndMap(grid);
+		assertTrue(file.length() > 64 * 1024);
+		assertTrue(graph.equals(grid));
+		assertEquals(Graphs.shortestPathEuclidianDistance(grid, new Point(0, 0), new Point(n - 1, n - 1)), Graphs
+				.shortestPathEuclidianDistance(graph, new Point(0, 0), new Point(n - 1, n - 1)));
+	}
+
+	@Test
+	public void empty() throws IOException {
+		MappedGraph<MultiAttributeEdgeData> graph = writeAndMap(new MultimapGraph<MultiAttributeEdgeData>());
+		assertTrue(graph.isEmpty());
+		assertEquals(0, graph.getNumberOfNodes());
+		assertTrue(graph.getNodes().isEmpty());
+		assertFalse(graph.containsNode(A));
+	}
+
+	@Test
+	public void roadModel() throws IOException {
+		RoadModel model = new RoadModel(writeAndMap(source));
+		TrivialRoadUser user = new TrivialRoadUser();
+		model.addObjectAt(user, A);
+		assertEquals(Arrays.asList(A, B, C, E), model.getShortestPathTo(user, E));
+	}
+
+	@Test
+	public void readOnly() throws IOException {
+		MappedGraph<MultiAttributeEdgeData> graph = writeAndMap(source);
+		try {
+			graph.addConnection(A, C);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			graph.removeNode(A);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			graph.getNodes().iterator().remove();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void invalidFiles() throws IOException {
+		Files.write(new byte[] { 1, 2, 3 }, file);
+		assertInvalid();
+		Files.write(new byte[64], file);
+		assertInvalid();
+
+		BinaryGraphSerializer.write(source, file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 4);
+		raf.close();
+		assertInvalid();
+
+		BinaryGraphSerializer.write(source, file);
+		raf = new RandomAccessFile(file, "rw");
+		// the version, little endian
+		raf.seek(4);
+		raf.write(2);
+		raf.close();
+		assertInvalid();
+	}
+
+	/**
+	 * Corrupts an offset, a target and a slot of the node table, they must be
+	 * detected when the file is mapped.
+	 */
+	@Test
+	public void corruptSections() throws IOException {
+		int n = source.getNumberOfNodes();
+		int m = source.getNumberOfConnections();
+		long offsets = BinaryGraphSerializer.HEADER_SIZE + 16L * n + 16L * m + 8L * ((m + 63) / 64);
+		long targets = offsets + 4L * (n + 1);
+		long inSources = targets + 4L * m + 4L * (n + 1);
+
+		corrupt(offsets + 4, m + 1);
+		corrupt(offsets + 4 * n, m - 1);
+		corrupt(targets, n);
+		corrupt(inSources + 4, -1);
+		corrupt(file.length() - 4, n + 1);
+	}
+
+	// writes the graph and replaces the int at the position
+	void corrupt(long position, int value) throws IOException {
+		BinaryGraphSerializer.write(source, file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(position);
+		raf.writeInt(Integer.reverseBytes(value));
+		raf.close();
+		assertInvalid();
+	}
+
+	void assertInvalid() {
+		try {
+			BinaryGraphSerializer.map(file, CompactGraph.MULTI_ATTRIBUTE_DATA);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package rinde.sim.serializers;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.apache.commons.math.random.MersenneTwister;
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import rinde.sim.core.graph.Point;
+import rinde.sim.event.pdp.StandardType;
+import rinde.sim.scenario.Scenario;
+import rinde.sim.scenario.StreamingScenario;
+import rinde.sim.scenario.TimedEvent;
+import rinde.sim.util.IO;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class BinaryScenarioSerializerTest {
+
+	Scenario source;
+	File file;
+
+	@Before
+	public void setUp() throws IOException {
+		RandomGenerator rng = new MersenneTwister(123);
+		source = new Scenario();
+		long time = 0;
+		for (int i = 0; i < 1000; i++) {
+			// many events at the same time and a few large gaps
+			time += rng.nextInt(10) < 7 ? 0 : rng.nextInt(100000);
+			if (rng.nextBoolean()) {
+				source.add(new AddTruckEvent(time, new Point(rng.nextDouble(), rng.nextDouble())));
+			} else {
+				source.add(new TimedEvent(StandardType.values()[rng.nextInt(StandardType.values().length)], time));
+			}
+		}
+		file = File.createTempFile("scenario", ".bin");
+		file.deleteOnExit();
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		BinaryScenarioSerializer.write(source, file, new AddTruckCodec());
+		StreamingScenario scenario = BinaryScenarioSerializer.map(file, new AddTruckCodec());
+		assertArrayEquals(source.getPossibleEventTypes(), scenario.getPossibleEventTypes());
+
+		List<TimedEvent> expected = source.asList();
+		List<TimedEvent> actual = scenario.asList();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			TimedEvent e = expected.get(i);
+			TimedEvent a = actual.get(i);
+			assertEquals(e.time, a.time);
+			assertEquals(e.getEventType(), a.getEventType());
+			assertEquals(e.getClass(), a.getClass());
+			if (e instanceof AddTruckEvent) {
+				assertEquals(((AddTruckEvent) e).position, ((AddTruckEvent) a).position);
+			}
+		}
+		// the source is not modified by writing
+		assertEquals(1000, source.size());
+		File serialized = File.createTempFile("scenario", ".scen");
+		serialized.deleteOnExit();
+		IO.serialize(source, serialized.getPath());
+		// smaller than compressed Java serialization
+		assertTrue(file.length() < serialized.length());
+	}
+
+	@Test
+	public void copiesAreIndependent() throws IOException {
+		BinaryScenarioSerializer.write(source, file, new AddTruckCodec());
+		StreamingScenario scenario = BinaryScenarioSerializer.map(file, new AddTruckCodec());
+		TimedEvent first = scenario.poll();
+		scenario.poll();
+		Scenario copy = scenario.copy();
+		assertEquals(first.time, copy.poll().time);
+		assertEquals(source.peek().time, first.time);
+	}
+
+	@Test
+	public void writer() throws IOException {
+		ScenarioWriter writer = BinaryScenarioSerializer.newWriter(file, StandardType.values());
+		writer.add(new TimedEvent(StandardType.ADD_TRUCK, 0));
+		writer.add(new TimedEvent(StandardType.ADD_PACKAGE, 5));
+		writer.add(new TimedEvent(StandardType.ADD_PACKAGE, 5));
+		writer.add(new TimedEvent(StandardType.REMOVE_TRUCK, 300));
+		assertEquals(4, writer.getNumberOfEvents());
+		try {
+			writer.add(new TimedEvent(StandardType.ADD_TRUCK, 299));
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			writer.add(new AddTruckEvent(400, new Point(0, 0)));
+			fail();
+		} catch (IllegalArgumentException e) {}
+		writer.close();
+		writer.close();
+		try {
+			writer.add(new TimedEvent(StandardType.ADD_TRUCK, 400));
+			fail();
+		} catch (IllegalStateException e) {}
+
+		StreamingScenario scenario = BinaryScenarioSerializer.map(file);
+		assertEquals(asList(new TimedEvent(StandardType.ADD_TRUCK, 0), new TimedEvent(StandardType.ADD_PACKAGE, 5),
+				new TimedEvent(StandardType.ADD_PACKAGE, 5), new TimedEvent(StandardType.REMOVE_TRUCK, 300)), scenario
+				.asList());
+		// the times 0, 5, 5, 300 are stored as 0, 5, 0, 295 in 5 bytes, the
+		// kinds in 4 bytes and the 3 kinds in the table in 2 bytes each
+		long length = file.length();
+		BinaryScenarioSerializer.newWriter(file, StandardType.values()).close();
+		assertEquals(file.length() + 9 + 3 * 2, length);
+	}
+
+	@Test
+	public void empty() throws IOException {
+		BinaryScenarioSerializer.write(new Scenario(), file);
+		StreamingScenario scenario = BinaryScenarioSerializer.map(file);
+		assertNull(scenario.peek());
+		assertTrue(scenario.asList().isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void missingCodec() throws IOException {
+		BinaryScenarioSerializer.write(source, file, new AddTruckCodec());
+		BinaryScenarioSerializer.map(file);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedType() throws IOException {
+		BinaryScenarioSerializer.newWriter(file, new Enum<?>[] { StandardType.ADD_PACKAGE }).add(
+				new TimedEvent(StandardType.ADD_TRUCK, 0));
+	}
+
+	@Test
+	public void corruptFiles() throws IOException {
+		BinaryScenarioSerializer.write(source, file, new AddTruckCodec());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.writeInt(0);
+		} finally {
+			raf.close();
+		}
+		try {
+			BinaryScenarioSerializer.map(file, new AddTruckCodec());
+			fail();
+		} catch (IOException e) {}
+
+		BinaryScenarioSerializer.write(source, file, new AddTruckCodec());
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(BinaryScenarioSerializer.HEADER_SIZE + 10);
+		} finally {
+			raf.close();
+		}
+		try {
+			BinaryScenarioSerializer.map(file, new AddTruckCodec());
+			fail();
+		} catch (IOException e) {}
+	}
+
+	static class AddTruckEvent extends TimedEvent {
+		private static final long serialVersionUID = -3197312620154263394L;
+		final Point position;
+
+		AddTruckEvent(long time, Point position) {
+			super(StandardType.ADD_TRUCK, time);
+			this.position = position;
+		}
+	}
+
+	static class AddTruckCodec implements EventCodec<AddTruckEvent> {
+		@Override
+		public String getId() {
+			return "add-truck";
+		}
+
+		@Override
+		public Class<AddTruckEvent> getEventClass() {
+			return AddTruckEvent.class;
+		}
+
+		@Override
+		public void write(AddTruckEvent event, DataOutput out) throws IOException {
+			out.writeDouble(event.position.x);
+			out.writeDouble(event.position.y);
+		}
+
+		@Override
+		public AddTruckEvent read(Enum<?> type, long time, DataInput in) throws IOException {
+			return new AddTruckEvent(time, new Point(in.readDouble(), in.readDouble()));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package rinde.sim.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class LongIntMapTest {
+
+	@Test
+	public void putAndGet() {
+		LongIntMap map = new LongIntMap();
+		assertTrue(map.isEmpty());
+		assertEquals(-1, map.get(42, -1));
+		map.put(42, 1);
+		map.put(-42, 2);
+		map.put(Long.MIN_VALUE, 3);
+		map.put(Long.MAX_VALUE, 4);
+		assertEquals(4, map.size());
+		assertEquals(1, map.get(42, -1));
+		assertEquals(2, map.get(-42, -1));
+		assertEquals(3, map.get(Long.MIN_VALUE, -1));
+		assertEquals(4, map.get(Long.MAX_VALUE, -1));
+
+		map.put(Long.MIN_VALUE, 5);
+		map.put(42, 6);
+		assertEquals(4, map.size());
+		assertEquals(5, map.get(Long.MIN_VALUE, -1));
+		assertEquals(6, map.get(42, -1));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(42));
+		assertFalse(map.containsKey(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void putIfAbsent() {
+		LongIntMap map = new LongIntMap(0);
+		assertEquals(0, map.putIfAbsent(7, map.size()));
+		assertEquals(1, map.putIfAbsent(8, map.size()));
+		assertEquals(0, map.putIfAbsent(7, map.size()));
+		assertEquals(2, map.putIfAbsent(Long.MIN_VALUE, map.size()));
+		assertEquals(2, map.putIfAbsent(Long.MIN_VALUE, 10));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void sameAsHashMap() {
+		Random rnd = new Random(123);
+		LongIntMap map = new LongIntMap();
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < 20000; i++) {
+			// consecutive and random keys
+			long key = i % 2 == 0 ? i : rnd.nextLong();
+			map.put(key, i);
+			expected.put(key, i);
+		}
+		assertEquals(expected.size(), map.size());
+		for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+			assertEquals(e.getValue().intValue(), map.get(e.getKey(), -1));
+		}
+		assertFalse(map.containsKey(1));
+	}
+}
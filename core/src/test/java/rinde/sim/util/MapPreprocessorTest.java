@@ -5,25 +5,32 @@ package rinde.sim.util;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import rinde.sim.core.graph.Connection;
 import rinde.sim.core.graph.EdgeData;
 import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.GraphIndex;
 import rinde.sim.core.graph.Graphs;
 import rinde.sim.core.graph.LengthEdgeData;
 import rinde.sim.core.graph.MultiAttributeEdgeData;
 import rinde.sim.core.graph.MultimapGraph;
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.graph.StronglyConnectedComponents;
 import rinde.sim.core.graph.TableGraph;
+import rinde.sim.util.MapPreprocessor.ConnectivityRepair;
 
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
@@ -281,6 +288,83 @@ public class MapPreprocessorTest<E extends EdgeData> {
 		assertEquals(12.0, out.connectionLength(a, f), 0.0002);
 	}
 
+	@Test
+	public void testContractChains() {
+		Point x = new Point(0, 1), a = new Point(0, 0), b = new Point(1, 0), c = new Point(2, 0), d = new Point(3, 0), y = new Point(3, 1);
+		Graph<E> graph = createGraph();
+		Graphs.addBiPath(graph, x, a);
+		Graphs.addPath(graph, a, b, c, d);
+		Graphs.addBiPath(graph, d, y);
+
+		PreprocessingReport report = new PreprocessingReport();
+		SimplifiedGraph<E> result = MapPreprocessor.contractChains(graph, empty, report);
+		Graph<E> out = result.getGraph();
+		assertEquals(4, out.getNumberOfNodes());
+		assertEquals(5, out.getNumberOfConnections());
+		assertTrue(out.hasConnection(a, d));
+		assertFalse(out.hasConnection(d, a));
+		assertEquals(3.0, out.connectionLength(a, d), 0.0002);
+		assertEquals(2, report.getRemovedNodes());
+		assertEquals(asList("contract"), new ArrayList<String>(report.getStageDurations().keySet()));
+
+		assertEquals(1, result.getNumberOfContractedConnections());
+		assertTrue(result.isContracted(a, d));
+		assertEquals(asList(a, b, c, d), result.getGeometry(a, d));
+		assertFalse(result.isContracted(x, a));
+		assertEquals(asList(x, a), result.getGeometry(x, a));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testContractChainsGeometryIllegal() {
+		Graph<E> graph = createGraph();
+		Graphs.addPath(graph, new Point(0, 0), new Point(1, 0));
+		MapPreprocessor.contractChains(graph, empty, new PreprocessingReport()).getGeometry(new Point(1, 0), new Point(0, 0));
+	}
+
+	@Test
+	public void testContractChainsParallel() {
+		Point a = new Point(0, 0), b = new Point(1, 1), c = new Point(2, 0), d = new Point(1, -1), e = new Point(5, 5);
+		Graph<E> graph = createGraph();
+		Graphs.addPath(graph, a, b, c);
+		Graphs.addPath(graph, a, d, c);
+		Graph<E> out = MapPreprocessor.simplify(graph, empty);
+		// only one of the chains can be replaced by a -> c
+		assertEquals(3, out.getNumberOfNodes());
+		assertEquals(3, out.getNumberOfConnections());
+		assertTrue(out.hasConnection(a, c));
+
+		// a chain next to an existing connection is kept
+		graph = createGraph();
+		Graphs.addPath(graph, a, b, c);
+		Graphs.addPath(graph, e, a, c);
+		assertEquals(graph, MapPreprocessor.simplify(graph, empty));
+	}
+
+	@Test
+	public void testContractChainsMaxSpeed() {
+		Assume.assumeTrue(empty instanceof MultiAttributeEdgeData);
+		Point a = new Point(0, 0), b = new Point(1, 0), c = new Point(2, 0), d = new Point(3, 0), e = new Point(4, 0);
+		Graph<E> graph = createGraph();
+		addBi(graph, a, b, 10);
+		addBi(graph, b, c, 10);
+		addBi(graph, c, d, 20);
+		addBi(graph, d, e, 20);
+
+		Graph<E> out = MapPreprocessor.simplify(graph, empty);
+		assertEquals(3, out.getNumberOfNodes());
+		assertEquals(4, out.getNumberOfConnections());
+		assertEquals(10, ((MultiAttributeEdgeData) out.connectionData(c, a)).getMaxSpeed(), 0);
+		assertEquals(2, out.connectionLength(a, c), 0.0002);
+		assertEquals(20, ((MultiAttributeEdgeData) out.connectionData(c, e)).getMaxSpeed(), 0);
+		assertEquals(2, out.connectionLength(e, c), 0.0002);
+	}
+
+	@SuppressWarnings("unchecked")
+	void addBi(Graph<E> graph, Point p, Point q, double speed) {
+		graph.addConnection(p, q, (E) new MultiAttributeEdgeData(Point.distance(p, q), speed));
+		graph.addConnection(q, p, (E) new MultiAttributeEdgeData(Point.distance(p, q), speed));
+	}
+
 	@Test
 	public void testIsContractableZero() {
 		Point a, b, c;
@@ -450,4 +534,75 @@ public class MapPreprocessorTest<E extends EdgeData> {
 		assertEquals(MapPreprocessor.ContractType.BOTH, MapPreprocessor.isContractable(graph, a, b));
 		assertEquals(MapPreprocessor.ContractType.BOTH, MapPreprocessor.isContractable(graph, b, a));
 	}
+
+	// two bidirectional triangles and a one way pair, joined by one way roads
+	Graph<E> createComponents() {
+		Graph<E> graph = createGraph();
+		Graphs.addBiPath(graph, new Point(0, 0), new Point(1, 0), new Point(1, 1), new Point(0, 0));
+		Graphs.addBiPath(graph, new Point(10, 0), new Point(11, 0), new Point(11, 1), new Point(10, 0));
+		graph.addConnection(new Point(1, 0), new Point(10, 0), newEdgeData(9));
+		graph.addConnection(new Point(20, 5), new Point(21, 5), newEdgeData(1));
+		graph.addConnection(new Point(11, 1), new Point(20, 5), newEdgeData(10));
+		return graph;
+	}
+
+	@Test
+	public void testMakeStronglyConnectedKeepLargest() {
+		Graph<E> graph = createComponents();
+		PreprocessingReport report = new PreprocessingReport();
+		Graph<E> result = MapPreprocessor.makeStronglyConnected(graph, ConnectivityRepair.KEEP_LARGEST, report);
+
+		assertEquals(4, report.getComponents());
+		assertEquals(5, report.getRemovedNodes());
+		assertEquals(0, report.getAddedConnections());
+		assertEquals(3, result.getNumberOfNodes());
+		assertEquals(6, result.getNumberOfConnections());
+		// ties are resolved by the lowest component number, the triangle
+		// that is completed first
+		assertTrue(result.containsNode(new Point(10, 0)));
+		assertFalse(result.containsNode(new Point(0, 0)));
+		assertTrue(StronglyConnectedComponents.compute(GraphIndex.create(result)).isStronglyConnected());
+		for (Point from : result.getNodes()) {
+			for (Point to : result.getOutgoingConnections(from)) {
+				assertEquals(graph.connectionData(from, to), result.connectionData(from, to));
+			}
+		}
+		assertEquals(asList("index", "components", "copy"), new ArrayList<String>(report.getStageDurations().keySet()));
+	}
+
+	@Test
+	public void testMakeStronglyConnectedBridge() {
+		Graph<E> graph = createComponents();
+		PreprocessingReport report = new PreprocessingReport();
+		Graph<E> result = MapPreprocessor.makeStronglyConnected(graph, ConnectivityRepair.BRIDGE, report);
+
+		assertEquals(4, report.getComponents());
+		assertEquals(0, report.getRemovedNodes());
+		assertEquals(graph.getNumberOfNodes(), result.getNumberOfNodes());
+		assertTrue(StronglyConnectedComponents.compute(GraphIndex.create(result)).isStronglyConnected());
+		for (Connection<E> c : graph.getConnections()) {
+			assertTrue(result.hasConnection(c.from, c.to));
+		}
+		// the closest pairs of nodes are bridged
+		assertTrue(result.hasConnection(new Point(10, 0), new Point(1, 0)));
+		// single nodes are bridged after the triangles, in component order
+		assertTrue(result.hasConnection(new Point(21, 5), new Point(11, 1)));
+		assertTrue(result.hasConnection(new Point(11, 1), new Point(21, 5)));
+		assertTrue(result.hasConnection(new Point(21, 5), new Point(20, 5)));
+		assertEquals(result.getNumberOfConnections() - graph.getNumberOfConnections(), report.getAddedConnections());
+		assertEquals(asList("index", "components", "bridge", "copy"), new ArrayList<String>(report.getStageDurations()
+				.keySet()));
+
+		// a strongly connected graph is left unchanged
+		PreprocessingReport second = new PreprocessingReport();
+		Graph<E> again = MapPreprocessor.makeStronglyConnected(result, ConnectivityRepair.BRIDGE, second);
+		assertEquals(1, second.getComponents());
+		assertEquals(0, second.getAddedConnections());
+		assertEquals(result.getNumberOfConnections(), again.getNumberOfConnections());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMakeStronglyConnectedNull() {
+		MapPreprocessor.makeStronglyConnected(createGraph(), null);
+	}
 }
@@ -0,0 +1,60 @@
+package rinde.sim.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class NearestNodeGridTest {
+
+	@Test
+	public void sameAsLinearSearch() {
+		Random rnd = new Random(123);
+		int n = 2000;
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			// clustered, like the nodes of a map
+			xs[i] = (i % 4) * 1000 + rnd.nextDouble() * 100;
+			ys[i] = rnd.nextDouble() * 500;
+		}
+		NearestNodeGrid grid = new NearestNodeGrid(xs, ys);
+		assertEquals(-1, grid.nearest(0, 0, Double.POSITIVE_INFINITY));
+		for (int added = 0; added < n; added += 2) {
+			grid.add(added);
+			for (int k = 0; k < 20; k++) {
+				int q = rnd.nextInt(n);
+				assertEquals(linear(xs, ys, added, xs[q], ys[q]), grid.nearest(xs[q], ys[q], Double.POSITIVE_INFINITY));
+			}
+		}
+	}
+
+	@Test
+	public void maxDistance() {
+		double[] xs = { 0, 10, 0 };
+		double[] ys = { 0, 0, 0 };
+		NearestNodeGrid grid = new NearestNodeGrid(xs, ys);
+		grid.add(1);
+		assertEquals(-1, grid.nearest(0, 0, 10));
+		assertEquals(1, grid.nearest(0, 0, 10.5));
+	}
+
+	// the closest of the nodes 0, 2, .., last
+	static int linear(double[] xs, double[] ys, int last, double x, double y) {
+		int best = -1;
+		double bestDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i <= last; i += 2) {
+			double dist = (xs[i] - x) * (xs[i] - x) + (ys[i] - y) * (ys[i] - y);
+			if (dist < bestDist) {
+				bestDist = dist;
+				best = i;
+			}
+		}
+		return best;
+	}
+}
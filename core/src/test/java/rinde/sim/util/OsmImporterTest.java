@@ -0,0 +1,330 @@
+package rinde.sim.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import rinde.sim.core.graph.CompactGraph;
+import rinde.sim.core.graph.Graph;
+import rinde.sim.core.graph.Graphs;
+import rinde.sim.core.graph.MultiAttributeEdgeData;
+import rinde.sim.core.graph.Point;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.InputSupplier;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class OsmImporterTest {
+
+	// id, latitude and longitude in nanodegrees
+	static final long[][] NODES = { { 1, 51000000000L, 4700000000L }, { 2, 51000000000L, 4710000000L },
+			{ 3, 51010000000L, 4710000000L }, { 4, 51010000000L, 4700000000L }, { 5, 51020000000L, 4700000000L },
+			// same coordinates as node 3
+			{ 6, 51010000000L, 4710000000L },
+			// not part of a road
+			{ 7, 51030000000L, 4720000000L }, { 8, 51020000000L, 4720000000L } };
+
+	static final long[] WAY_IDS = { 10, 11, 12, 13, 14, 15 };
+	static final long[][] WAY_REFS = { { 1, 2, 3 }, { 3, 4 }, { 4, 5 }, { 2, 1 },
+	// node 77 does not exist
+			{ 4, 5, 77 }, { 3, 6, 8 } };
+	static final String[][] WAY_TAGS = { { "highway", "residential", "name", "Celestijnenlaan" },
+			{ "highway", "primary", "oneway", "yes", "maxspeed", "50" }, { "highway", "footway" },
+			{ "highway", "residential", "maxspeed", "30 mph" }, { "junction", "roundabout" }, { "highway", "tertiary" } };
+
+	static final String[] FEATURES = { "OsmSchema-V0.6", "DenseNodes" };
+
+	static double degrees(long nano) {
+		return .000000001 * nano;
+	}
+
+	static Point point(int node) {
+		long[] n = NODES[node - 1];
+		return new Point(OSM.projectX(degrees(n[2])), OSM.projectY(degrees(n[1])));
+	}
+
+	static String xml() {
+		StringBuilder sb = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\">\n");
+		for (long[] n : NODES) {
+			sb.append("<node id=\"" + n[0] + "\" lat=\"" + degrees(n[1]) + "\" lon=\"" + degrees(n[2]) + "\"/>\n");
+		}
+		for (int w = 0; w < WAY_IDS.length; w++) {
+			sb.append("<way id=\"" + WAY_IDS[w] + "\">\n");
+			for (long ref : WAY_REFS[w]) {
+				sb.append("<nd ref=\"" + ref + "\"/>\n");
+			}
+			for (int t = 0; t < WAY_TAGS[w].length; t += 2) {
+				sb.append("<tag k=\"" + WAY_TAGS[w][t] + "\" v=\"" + WAY_TAGS[w][t + 1] + "\"/>\n");
+			}
+			sb.append("</way>\n");
+		}
+		return sb.append("</osm>\n").toString();
+	}
+
+	/**
+	 * Nodes 1 - 5 as dense nodes in a zlib compressed block, the other nodes
+	 * and the ways in an uncompressed block with offsets.
+	 */
+	static byte[] pbf(String... requiredFeatures) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Proto header = new Proto().bytes(1, new Proto().varint(1, 0).toByteArray());
+		for (String f : requiredFeatures) {
+			header.string(4, f);
+		}
+		header.string(16, "test");
+		blob(out, "OSMHeader", header.toByteArray(), false);
+
+		Proto dense = new Proto();
+		long id = 0, lat = 0, lon = 0;
+		Proto ids = new Proto(), lats = new Proto(), lons = new Proto(), keysVals = new Proto();
+		for (int i = 0; i < 5; i++) {
+			ids.rawSigned(NODES[i][0] - id);
+			lats.rawSigned(NODES[i][1] / 100 - lat);
+			lons.rawSigned(NODES[i][2] / 100 - lon);
+			keysVals.raw(0);
+			id = NODES[i][0];
+			lat = NODES[i][1] / 100;
+			lon = NODES[i][2] / 100;
+		}
+		dense.message(1, ids).message(8, lats).message(9, lons).message(10, keysVals);
+		Proto block = new Proto().message(1, new Proto().string(1, "")).message(2, new Proto().message(2, dense));
+		blob(out, "OSMData", block.toByteArray(), true);
+
+		// unknown blobs are skipped
+		blob(out, "OSMUnknown", new byte[] { 1, 2, 3 }, false);
+
+		long granularity = 1000;
+		long latOffset = 50000000000L;
+		long lonOffset = 4000000000L;
+		Proto nodes = new Proto();
+		for (int i = 5; i < NODES.length; i++) {
+			nodes.message(1, new Proto().signed(1, NODES[i][0]).signed(8, (NODES[i][1] - latOffset) / granularity)
+					.signed(9, (NODES[i][2] - lonOffset) / granularity));
+		}
+		String[] strings = stringTable();
+		Proto table = new Proto();
+		for (String s : strings) {
+			table.string(1, s);
+		}
+		Proto ways = new Proto();
+		for (int w = 0; w < WAY_IDS.length; w++) {
+			Proto way = new Proto().varint(1, WAY_IDS[w]);
+			Proto keys = new Proto(), vals = new Proto();
+			for (int t = 0; t < WAY_TAGS[w].length; t += 2) {
+				keys.raw(Arrays.asList(strings).indexOf(WAY_TAGS[w][t]));
+				vals.raw(Arrays.asList(strings).indexOf(WAY_TAGS[w][t + 1]));
+			}
+			way.message(2, keys).message(3, vals);
+			long ref = 0;
+			if (w % 2 == 0) {
+				Proto refs = new Proto();
+				for (long r : WAY_REFS[w]) {
+					refs.rawSigned(r - ref);
+					ref = r;
+				}
+				way.message(8, refs);
+			} else {
+				// not packed
+				for (long r : WAY_REFS[w]) {
+					way.signed(8, r - ref);
+					ref = r;
+				}
+			}
+			ways.message(3, way);
+		}
+		block = new Proto().message(1, table).message(2, nodes).message(2, ways).varint(17, granularity)
+				.varint(19, latOffset).varint(20, lonOffset);
+		blob(out, "OSMData", block.toByteArray(), false);
+		return out.toByteArray();
+	}
+
+	static String[] stringTable() {
+		List<String> strings = new ArrayList<String>();
+		strings.add("");
+		for (String[] tags : WAY_TAGS) {
+			for (String s : tags) {
+				if (!strings.contains(s)) {
+					strings.add(s);
+				}
+			}
+		}
+		return strings.toArray(new String[strings.size()]);
+	}
+
+	static void blob(ByteArrayOutputStream out, String type, byte[] content, boolean compress) throws IOException {
+		Proto blob = new Proto();
+		if (compress) {
+			Deflater deflater = new Deflater();
+			deflater.setInput(content);
+			deflater.finish();
+			byte[] buffer = new byte[content.length + 64];
+			int n = deflater.deflate(buffer);
+			deflater.end();
+			blob.varint(2, content.length).bytes(3, Arrays.copyOf(buffer, n));
+		} else {
+			blob.bytes(1, content).varint(2, content.length);
+		}
+		byte[] b = blob.toByteArray();
+		byte[] header = new Proto().string(1, type).varint(3, b.length).toByteArray();
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(header.length);
+		data.write(header);
+		data.write(b);
+		data.flush();
+	}
+
+	static InputSupplier<? extends InputStream> supplier(byte[] bytes) {
+		return ByteStreams.newInputStreamSupplier(bytes);
+	}
+
+	@Test
+	public void importXml() throws IOException {
+		CompactGraph<MultiAttributeEdgeData> graph = OsmImporter.importXml(supplier(xml().getBytes(Charsets.UTF_8)));
+		assertEquals(6, graph.getNumberOfNodes());
+		assertFalse(graph.containsNode(point(7)));
+		assertEquals(9, graph.getNumberOfConnections());
+
+		assertTrue(graph.hasConnection(point(1), point(2)));
+		assertTrue(graph.hasConnection(point(2), point(1)));
+		// the first way determines the data
+		assertTrue(Double.isNaN(graph.connectionData(point(2), point(1)).getMaxSpeed()));
+		assertEquals(Point.distance(point(1), point(2)), graph.connectionLength(point(1), point(2)), 0);
+
+		// one way
+		assertTrue(graph.hasConnection(point(3), point(4)));
+		assertFalse(graph.hasConnection(point(4), point(3)));
+		assertEquals(50000, graph.connectionData(point(3), point(4)).getMaxSpeed(), 0);
+
+		// the footway is not a road, the roundabout is
+		assertTrue(graph.hasConnection(point(5), point(4)));
+		// node 6 is node 3
+		assertTrue(graph.hasConnection(point(3), point(8)));
+		assertTrue(graph.hasConnection(point(8), point(6)));
+	}
+
+	@Test
+	public void sameAsParse() throws IOException {
+		File file = File.createTempFile("osm", ".osm");
+		file.deleteOnExit();
+		Files.write(xml(), file, Charsets.UTF_8);
+		Graph<MultiAttributeEdgeData> parsed = CompactGraph
+				.copyOf(OSM.parse(file.getAbsolutePath()), CompactGraph.MULTI_ATTRIBUTE_DATA);
+		assertTrue(Graphs.equals(parsed, OsmImporter.importFile(file)));
+		assertTrue(Graphs.equals(parsed, OsmImporter.importXml(Files.newInputStreamSupplier(file))));
+	}
+
+	@Test
+	public void importPbf() throws IOException {
+		CompactGraph<MultiAttributeEdgeData> xml = OsmImporter.importXml(supplier(xml().getBytes(Charsets.UTF_8)));
+		CompactGraph<MultiAttributeEdgeData> pbf = OsmImporter.importPbf(supplier(pbf(FEATURES)));
+		assertTrue(Graphs.equals(xml, pbf));
+
+		File file = File.createTempFile("osm", ".osm.pbf");
+		file.deleteOnExit();
+		Files.write(pbf(FEATURES), file);
+		assertTrue(Graphs.equals(xml, OsmImporter.importFile(file)));
+	}
+
+	@Test
+	public void unsupportedFeature() {
+		try {
+			OsmImporter.importPbf(supplier(pbf("OsmSchema-V0.6", "HistoricalInformation")));
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("HistoricalInformation"));
+		}
+	}
+
+	@Test
+	public void truncatedPbf() {
+		byte[] pbf;
+		try {
+			pbf = pbf(FEATURES);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		for (int length : new int[] { 2, 10, pbf.length / 2, pbf.length - 1 }) {
+			try {
+				OsmImporter.importPbf(supplier(Arrays.copyOf(pbf, length)));
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidXml() throws IOException {
+		OsmImporter.importXml(supplier("<osm><way id=\"1\">".getBytes(Charsets.UTF_8)));
+	}
+
+	@Test
+	public void empty() throws IOException {
+		assertTrue(OsmImporter.importPbf(supplier(new byte[0])).isEmpty());
+		assertTrue(OsmImporter.importXml(supplier("<osm/>".getBytes(Charsets.UTF_8))).isEmpty());
+	}
+
+	/**
+	 * Writes protocol buffers messages.
+	 */
+	static class Proto {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Proto raw(long v) {
+			while ((v & ~0x7FL) != 0) {
+				out.write((int) (v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			out.write((int) v);
+			return this;
+		}
+
+		Proto rawSigned(long v) {
+			return raw(v << 1 ^ v >> 63);
+		}
+
+		Proto varint(int field, long v) {
+			return raw(field << 3).raw(v);
+		}
+
+		Proto signed(int field, long v) {
+			return raw(field << 3).rawSigned(v);
+		}
+
+		Proto bytes(int field, byte[] b) {
+			raw(field << 3 | 2).raw(b.length);
+			out.write(b, 0, b.length);
+			return this;
+		}
+
+		Proto string(int field, String s) {
+			return bytes(field, s.getBytes(Charsets.UTF_8));
+		}
+
+		Proto message(int field, Proto m) {
+			return bytes(field, m.toByteArray());
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+}
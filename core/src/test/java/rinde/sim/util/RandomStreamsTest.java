@@ -0,0 +1,73 @@
+package rinde.sim.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.math.random.RandomGenerator;
+import org.junit.Test;
+
+/**
+ * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
+ *
+ */
+public class RandomStreamsTest {
+
+	@Test
+	public void reproducible() {
+		RandomStreams streams = new RandomStreams(123);
+		RandomGenerator a = streams.get(7);
+		// creating and using other streams does not influence stream 7
+		for (int i = 0; i < 10; i++) {
+			streams.get(i).nextLong();
+		}
+		RandomGenerator b = new RandomStreams(123).get(7);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(a.nextLong(), b.nextLong());
+		}
+	}
+
+	@Test
+	public void independent() {
+		RandomStreams streams = new RandomStreams(123);
+		Set<Long> firsts = new HashSet<Long>();
+		for (int i = 0; i < 1000; i++) {
+			firsts.add(streams.get(i).nextLong());
+		}
+		assertEquals(1000, firsts.size());
+		assertFalse(new RandomStreams(124).get(0).nextLong() == streams.get(0).nextLong());
+	}
+
+	@Test
+	public void doubles() {
+		RandomGenerator rng = new RandomStreams(0).get(0);
+		double sum = 0;
+		for (int i = 0; i < 10000; i++) {
+			double d = rng.nextDouble();
+			assertTrue(d >= 0 && d < 1);
+			sum += d;
+		}
+		assertEquals(0.5, sum / 10000, 0.02);
+		for (int i = 0; i < 1000; i++) {
+			int n = rng.nextInt(10);
+			assertTrue(n >= 0 && n < 10);
+		}
+	}
+
+	@Test
+	public void seedAndJump() {
+		XoroshiroRandomGenerator a = new XoroshiroRandomGenerator(5);
+		XoroshiroRandomGenerator b = new XoroshiroRandomGenerator(6);
+		b.setSeed(5L);
+		assertEquals(a.nextLong(), b.nextLong());
+		a.jump();
+		assertFalse(a.nextLong() == b.nextLong());
+
+		b.setSeed(new int[] { 1, 2 });
+		a.setSeed(new int[] { 1, 2 });
+		assertEquals(a.nextInt(), b.nextInt());
+	}
+}
@@ -3,15 +3,11 @@
  */
 package rinde.sim.ui.renderers;
 
-import java.util.Map;
-import java.util.Map.Entry;
-
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
-import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.PositionSnapshot;
 import rinde.sim.core.model.RoadModel;
-import rinde.sim.core.model.RoadUser;
 
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
@@ -43,30 +39,30 @@ public class ObjectRenderer implements Renderer {
 		uiSchema.initialize();
 		gc.setBackground(uiSchema.getDefaultColor());
 
-		Map<RoadUser, Point> objects = rs.getObjectsAndPositions();
-		synchronized (objects) {
-			for (Entry<RoadUser, Point> entry : objects.entrySet()) {
-				Point p = entry.getValue();
-				Class<?> type = entry.getKey().getClass();
-				final Image image = uiSchema.getImage(type);
-				final int x = (int) (xOrigin + (p.x - minX) * m) - radius;
-				final int y = (int) (yOrigin + (p.y - minY) * m) - radius;
-				if(image != null) {
-					int offsetX = x - image.getBounds().width / 2;
-					int offsetY = y - image.getBounds().height / 2;
-					gc.drawImage(image, offsetX, offsetY);
-				} else {
-					final Color color = uiSchema.getColor(type);
-					if(color == null) continue;
-					gc.setBackground(color);
-					if (useEncirclement) {
-						gc.setForeground(gc.getBackground());
-						gc.drawOval((int) (xOrigin + (p.x - minX) * m) - outerRadius, (int) (yOrigin + (p.y - minY) * m) - outerRadius, 2 * outerRadius, 2 * outerRadius);
-					}
-					gc.fillOval((int) (xOrigin + (p.x - minX) * m) - radius, (int) (yOrigin + (p.y - minY) * m) - radius, 2 * radius, 2 * radius);
+		// the snapshot is immutable, the simulation is not blocked while drawing
+		PositionSnapshot objects = rs.getSnapshot();
+		for (int i = 0; i < objects.size(); i++) {
+			double px = objects.getX(i);
+			double py = objects.getY(i);
+			Class<?> type = objects.getObject(i).getClass();
+			final Image image = uiSchema.getImage(type);
+			final int x = (int) (xOrigin + (px - minX) * m) - radius;
+			final int y = (int) (yOrigin + (py - minY) * m) - radius;
+			if(image != null) {
+				int offsetX = x - image.getBounds().width / 2;
+				int offsetY = y - image.getBounds().height / 2;
+				gc.drawImage(image, offsetX, offsetY);
+			} else {
+				final Color color = uiSchema.getColor(type);
+				if(color == null) continue;
+				gc.setBackground(color);
+				if (useEncirclement) {
+					gc.setForeground(gc.getBackground());
+					gc.drawOval((int) (xOrigin + (px - minX) * m) - outerRadius, (int) (yOrigin + (py - minY) * m) - outerRadius, 2 * outerRadius, 2 * outerRadius);
 				}
-				
+				gc.fillOval((int) (xOrigin + (px - minX) * m) - radius, (int) (yOrigin + (py - minY) * m) - radius, 2 * radius, 2 * radius);
 			}
+			
 		}
 	}
 
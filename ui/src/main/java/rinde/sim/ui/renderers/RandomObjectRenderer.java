@@ -3,17 +3,14 @@
  */
 package rinde.sim.ui.renderers;
 
-import java.util.Map;
-import java.util.Map.Entry;
-
 import org.eclipse.jface.resource.ColorRegistry;
 import org.eclipse.jface.resource.ImageRegistry;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
 
 import rinde.sim.core.graph.Point;
+import rinde.sim.core.model.PositionSnapshot;
 import rinde.sim.core.model.RoadModel;
-import rinde.sim.core.model.RoadUser;
 
 /**
  * @author Rinde van Lon (rinde.vanlon@cs.kuleuven.be)
@@ -38,29 +35,27 @@ public class RandomObjectRenderer implements Renderer {
 		
 		gc.setBackground(defaultColor);
 		
-		Map<RoadUser, Point> objects = model.getObjectsAndPositions();
-		synchronized (objects) {
-			for (Entry<RoadUser, Point> entry : objects.entrySet()) {
-				Point p = entry.getValue();
-				//				if (colorMap != null) {
-				//					if (colorMap.containsKey(entry.getKey().getClass())) {
-				//						gc.setBackground(new Color(gc.getDevice(), colorMap.get(entry.getKey().getClass())));
-				//					} else {
-				//						gc.setBackground(new Color(gc.getDevice(), 255, 0, 0));
-				//					}
-				//				}
-				//				if (useEncirclement) {
-				//					gc.setForeground(gc.getBackground());
-				//					gc.drawOval((int) (xOrigin + (p.x - minX) * m) - outerRadius, (int) (yOrigin + (p.y - minY) * m) - outerRadius, 2 * outerRadius, 2 * outerRadius);
-				//				}
-				gc.setBackground(defaultColor);
-
-				int x = (int) (xOrigin + (p.x - minX) * m) - radius;
-				int y = (int) (yOrigin + (p.y - minY) * m) - radius;
-
-				gc.fillOval(x, y, 2 * radius, 2 * radius);
-				gc.drawText(entry.getKey() + "", x + 5, y - 15);
-			}
+		PositionSnapshot objects = model.getSnapshot();
+		for (int i = 0; i < objects.size(); i++) {
+			Point p = new Point(objects.getX(i), objects.getY(i));
+			//				if (colorMap != null) {
+			//					if (colorMap.containsKey(entry.getKey().getClass())) {
+			//						gc.setBackground(new Color(gc.getDevice(), colorMap.get(entry.getKey().getClass())));
+			//					} else {
+			//						gc.setBackground(new Color(gc.getDevice(), 255, 0, 0));
+			//					}
+			//				}
+			//				if (useEncirclement) {
+			//					gc.setForeground(gc.getBackground());
+			//					gc.drawOval((int) (xOrigin + (p.x - minX) * m) - outerRadius, (int) (yOrigin + (p.y - minY) * m) - outerRadius, 2 * outerRadius, 2 * outerRadius);
+			//				}
+			gc.setBackground(defaultColor);
+
+			int x = (int) (xOrigin + (p.x - minX) * m) - radius;
+			int y = (int) (yOrigin + (p.y - minY) * m) - radius;
+
+			gc.fillOval(x, y, 2 * radius, 2 * radius);
+			gc.drawText(objects.getObject(i) + "", x + 5, y - 15);
 		}
 	}
 }